@@ -27,6 +27,11 @@ import android.widget.ImageView;
 import androidx.annotation.Nullable;
 import androidx.core.app.ActivityManagerCompat;
 
+import com.android.wallpaper.monitor.DiagnosticsWriter;
+import com.android.wallpaper.monitor.PerformanceMetrics;
+import com.android.wallpaper.monitor.PerformanceMonitor;
+
+import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
 
@@ -76,6 +81,8 @@ public class BitmapCachingAsset extends Asset {
         }
     }
 
+    private static final String DUMP_SECTION = "bitmap_cache";
+
     private static int cacheSize = 100 * 1024 * 1024; // 100MiB
     private static LruCache<CacheKey, Bitmap> sCache = new LruCache<CacheKey, Bitmap>(cacheSize) {
         @Override protected int sizeOf(CacheKey key, Bitmap value) {
@@ -104,13 +111,13 @@ public class BitmapCachingAsset extends Asset {
             return;
         }
         CacheKey key = new CacheKey(mOriginalAsset, targetWidth, targetHeight);
-        Bitmap cached = sCache.get(key);
+        Bitmap cached = getCached(key);
         if (cached != null) {
             receiver.onBitmapDecoded(cached);
         } else {
             BitmapReceiver cachingReceiver = bitmap -> {
                 if (bitmap != null) {
-                    sCache.put(key, bitmap);
+                    putCached(key, bitmap);
                 }
                 receiver.onBitmapDecoded(bitmap);
             };
@@ -139,20 +146,50 @@ public class BitmapCachingAsset extends Asset {
         }
         CacheKey key = new CacheKey(mOriginalAsset, targetWidth, targetHeight, shouldAdjustForRtl,
                 rect);
-        Bitmap cached = sCache.get(key);
+        Bitmap cached = getCached(key);
         if (cached != null) {
             receiver.onBitmapDecoded(cached);
         } else {
             mOriginalAsset.decodeBitmapRegion(rect, targetWidth, targetHeight, shouldAdjustForRtl,
                     bitmap -> {
                         if (bitmap != null) {
-                            sCache.put(key, bitmap);
+                            putCached(key, bitmap);
                         }
                         receiver.onBitmapDecoded(bitmap);
                     });
         }
     }
 
+    @Nullable
+    private static Bitmap getCached(CacheKey key) {
+        Bitmap cached = sCache.get(key);
+        PerformanceMonitor.get().incrementCounter(cached != null
+                ? PerformanceMetrics.BITMAP_CACHE_HITS : PerformanceMetrics.BITMAP_CACHE_MISSES, 1);
+        return cached;
+    }
+
+    private static void putCached(CacheKey key, Bitmap bitmap) {
+        sCache.put(key, bitmap);
+        PerformanceMonitor.get().setGauge(PerformanceMetrics.BITMAP_CACHE_SIZE_BYTES,
+                sCache.size());
+    }
+
+    /**
+     * Writes the occupancy and hit rate of the shared bitmap cache to the given diagnostics dump.
+     */
+    public static void dump(DiagnosticsWriter writer) {
+        int hits = sCache.hitCount();
+        int misses = sCache.missCount();
+        writer.value(DUMP_SECTION, "size_bytes", sCache.size());
+        writer.value(DUMP_SECTION, "max_size_bytes", sCache.maxSize());
+        writer.value(DUMP_SECTION, "entries", sCache.snapshot().size());
+        writer.value(DUMP_SECTION, "hits", hits);
+        writer.value(DUMP_SECTION, "misses", misses);
+        float hitRate = hits + misses > 0 ? (float) hits / (hits + misses) : 0f;
+        writer.value(DUMP_SECTION, "hit_rate", String.format(Locale.US, "%.3f", hitRate));
+        writer.value(DUMP_SECTION, "evictions", sCache.evictionCount());
+    }
+
     @Override
     public void decodeRawDimensions(@Nullable Activity activity, DimensionsReceiver receiver) {
         mOriginalAsset.decodeRawDimensions(activity, receiver);
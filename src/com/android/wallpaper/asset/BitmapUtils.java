@@ -16,9 +16,11 @@
 package com.android.wallpaper.asset;
 
 import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
 import android.graphics.Point;
 import android.graphics.Rect;
 
+import androidx.annotation.Nullable;
 import androidx.annotation.WorkerThread;
 
 import java.io.ByteArrayInputStream;
@@ -62,6 +64,68 @@ public class BitmapUtils {
         return 1 << shift;
     }
 
+    /**
+     * Sets up {@code options} to decode a {@code srcWidth} x {@code srcHeight} image so that it is
+     * at least as large as the target in both dimensions. With {@link DecodeSizing#MEMORY}, the
+     * image is subsampled by a power of two and then scaled by density the rest of the way down, so
+     * that one of its dimensions matches the target exactly.
+     */
+    public static void setTargetSize(BitmapFactory.Options options, int srcWidth, int srcHeight,
+            int targetWidth, int targetHeight, DecodeSizing sizing) {
+        options.inScaled = false;
+        if (targetWidth <= 0 || targetHeight <= 0) {
+            // No target to size against, so decode at full size.
+            options.inSampleSize = 1;
+            return;
+        }
+        options.inSampleSize = calculateInSampleSize(srcWidth, srcHeight, targetWidth, targetHeight);
+        if (sizing != DecodeSizing.MEMORY) {
+            return;
+        }
+
+        int sampledWidth = srcWidth / options.inSampleSize;
+        int sampledHeight = srcHeight / options.inSampleSize;
+        // Scale by the larger of the two ratios so that neither dimension drops below the target.
+        int density;
+        int targetDensity;
+        if ((long) targetWidth * sampledHeight >= (long) targetHeight * sampledWidth) {
+            density = sampledWidth;
+            targetDensity = targetWidth;
+        } else {
+            density = sampledHeight;
+            targetDensity = targetHeight;
+        }
+        if (targetDensity < density) {
+            options.inScaled = true;
+            options.inDensity = density;
+            options.inTargetDensity = targetDensity;
+        }
+    }
+
+    /**
+     * Decodes {@code inputStream} with {@code options} set up by {@link #setTargetSize}. The
+     * density fields of such options hold pixel counts rather than screen densities, so the decoded
+     * bitmap is left without a density instead of the one BitmapFactory would assign, which would
+     * make e.g. {@link android.graphics.drawable.BitmapDrawable} scale it again.
+     */
+    @Nullable
+    public static Bitmap decodeStream(InputStream inputStream, BitmapFactory.Options options) {
+        Bitmap bitmap = BitmapFactory.decodeStream(inputStream, null, options);
+        if (bitmap != null) {
+            bitmap.setDensity(Bitmap.DENSITY_NONE);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Returns the scale that {@code options} applies on top of subsampling.
+     */
+    public static float getDensityScale(BitmapFactory.Options options) {
+        return options.inScaled && options.inDensity > 0 && options.inTargetDensity > 0
+                ? (float) options.inTargetDensity / options.inDensity
+                : 1f;
+    }
+
     /**
      * Generates a hash code for the given bitmap. Computation starts with a nonzero prime number,
      * then for the integer values of height, width, and a selection of pixel colors, multiplies the
@@ -162,6 +162,7 @@ public final class BuiltInWallpaperAsset extends Asset {
                 .load(mBuiltInWallpaperModel)
                 .apply(RequestOptions.centerCropTransform()
                         .placeholder(new ColorDrawable(placeholderColor)))
+                .apply(WallpaperGlideModule.thumbnailOptions())
                 .transition(DrawableTransitionOptions.withCrossFade())
                 .into(imageView);
     }
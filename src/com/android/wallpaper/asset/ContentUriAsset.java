@@ -18,6 +18,7 @@ package com.android.wallpaper.asset;
 import android.app.Activity;
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.graphics.ImageDecoder;
 import android.graphics.Point;
 import android.graphics.Rect;
 import android.graphics.drawable.ColorDrawable;
@@ -28,6 +29,10 @@ import android.widget.ImageView;
 
 import androidx.annotation.Nullable;
 
+import com.android.wallpaper.monitor.PerformanceMetrics;
+import com.android.wallpaper.monitor.PerformanceMonitor;
+import com.android.wallpaper.monitor.PerformanceMonitor.Span;
+
 import com.bumptech.glide.Glide;
 import com.bumptech.glide.load.DataSource;
 import com.bumptech.glide.load.MultiTransformation;
@@ -52,8 +57,6 @@ import java.util.concurrent.Executors;
 public final class ContentUriAsset extends StreamableAsset {
     private static final ExecutorService sExecutorService = Executors.newSingleThreadExecutor();
     private static final String TAG = "ContentUriAsset";
-    private static final String JPEG_MIME_TYPE = "image/jpeg";
-    private static final String PNG_MIME_TYPE = "image/png";
 
     private final Context mContext;
     private final Uri mUri;
@@ -61,6 +64,12 @@ public final class ContentUriAsset extends StreamableAsset {
 
     private ExifInterfaceCompat mExifCompat;
     private int mExifOrientation;
+    // Format, dimensions and EXIF read from the head of the stream, so that they cost one open
+    // of the content URI between them rather than one each.
+    private ImageHeaderProbe.Result mHeader;
+    private boolean mHeaderProbed;
+    private String mProviderMimeType;
+    private boolean mProviderMimeTypeQueried;
 
     /**
      * @param context The application's context.
@@ -113,62 +122,145 @@ public final class ContentUriAsset extends StreamableAsset {
             this(context, uri, /* uncached */ false);
     }
 
-
-
     @Override
     public void decodeBitmapRegion(final Rect rect, int targetWidth, int targetHeight,
             boolean shouldAdjustForRtl, final BitmapReceiver receiver) {
-        // BitmapRegionDecoder only supports images encoded in either JPEG or PNG, so if the content
-        // URI asset is encoded with another format (for example, GIF), then fall back to cropping a
-        // bitmap region from the full-sized bitmap.
-        if (isJpeg() || isPng()) {
-            super.decodeBitmapRegion(rect, targetWidth, targetHeight, shouldAdjustForRtl, receiver);
-            return;
-        }
-
-        decodeRawDimensions(null /* activity */, new DimensionsReceiver() {
-            @Override
-            public void onDimensionsDecoded(@Nullable Point dimensions) {
-                if (dimensions == null) {
-                    Log.e(TAG, "There was an error decoding the asset's raw dimensions with " +
-                            "content URI: " + mUri);
-                    receiver.onBitmapDecoded(null);
-                    return;
-                }
-
-                decodeBitmap(dimensions.x, dimensions.y, new BitmapReceiver() {
-                    @Override
-                    public void onBitmapDecoded(@Nullable Bitmap fullBitmap) {
-                        if (fullBitmap == null) {
-                            Log.e(TAG, "There was an error decoding the asset's full bitmap with " +
-                                    "content URI: " + mUri);
-                            decodeBitmapCompleted(receiver, null);
-                            return;
-                        }
-                        sExecutorService.execute(()-> {
-                            decodeBitmapCompleted(receiver, Bitmap.createBitmap(
-                                    fullBitmap, rect.left, rect.top, rect.width(), rect.height()));
-                        });
-                    }
-                });
+        // Finding the format reads the content URI, so do it off the main thread. Only this cheap
+        // probe runs on sExecutorService; the decode itself goes to the shared decode executor.
+        sExecutorService.execute(() -> {
+            String mimeType = getMimeType();
+            reportRegionDecodeFormat(mimeType);
+            if (supportsRegionDecoder(mimeType)) {
+                ContentUriAsset.super.decodeBitmapRegion(rect, targetWidth, targetHeight,
+                        shouldAdjustForRtl, receiver);
+            } else {
+                // BitmapRegionDecoder can't read this format (for example, AVIF or GIF), so let
+                // ImageDecoder crop and downscale while decoding instead, so that only the scaled
+                // region is ever allocated.
+                executeRegionDecode(() -> decodeBitmapCompleted(receiver,
+                        decodeRegionWithImageDecoder(
+                                rect, targetWidth, targetHeight, shouldAdjustForRtl)));
             }
         });
     }
 
+    /**
+     * Returns whether {@link android.graphics.BitmapRegionDecoder} can decode images of the given
+     * format.
+     */
+    private static boolean supportsRegionDecoder(@Nullable String mimeType) {
+        return ImageHeaderProbe.MIME_TYPE_JPEG.equals(mimeType)
+                || ImageHeaderProbe.MIME_TYPE_PNG.equals(mimeType)
+                || ImageHeaderProbe.MIME_TYPE_WEBP.equals(mimeType)
+                || ImageHeaderProbe.MIME_TYPE_HEIF.equals(mimeType);
+    }
+
+    private static void reportRegionDecodeFormat(@Nullable String mimeType) {
+        String format = mimeType == null ? "unknown"
+                : mimeType.substring(mimeType.indexOf('/') + 1);
+        PerformanceMonitor.get().incrementCounter(
+                PerformanceMetrics.REGION_DECODE_FORMAT_PREFIX + format, 1);
+    }
+
+    /**
+     * Decodes the given region of the image, downscaled by the largest power of two that keeps it
+     * at least as large as the target, using {@link ImageDecoder}. The crop is in terms of the
+     * image's EXIF-rotated resolution, which is also how ImageDecoder reports and crops it.
+     */
+    @Nullable
+    private Bitmap decodeRegionWithImageDecoder(Rect rect, int targetWidth, int targetHeight,
+            boolean shouldAdjustForRtl) {
+        Span span = PerformanceMonitor.get().beginSpan(PerformanceMetrics.REGION_DECODE);
+        ImageDecoder.Source source =
+                ImageDecoder.createSource(mContext.getContentResolver(), mUri);
+        try {
+            Bitmap bitmap = ImageDecoder.decodeBitmap(source, (decoder, info, unused) -> {
+                int width = info.getSize().getWidth();
+                int height = info.getSize().getHeight();
+                Rect cropRect = new Rect(rect);
+                // If we're in RTL mode, center in the rightmost side of the image
+                if (shouldAdjustForRtl) {
+                    cropRect.set(width - rect.right, rect.top, width - rect.left, rect.bottom);
+                }
+                int sampleSize = BitmapUtils.calculateInSampleSize(
+                        cropRect.width(), cropRect.height(), targetWidth, targetHeight);
+                int scaledWidth = Math.max(1, width / sampleSize);
+                int scaledHeight = Math.max(1, height / sampleSize);
+                Rect scaledCrop = scaleRect(cropRect, 1f / sampleSize);
+                if (!scaledCrop.intersect(0, 0, scaledWidth, scaledHeight)) {
+                    scaledCrop.set(0, 0, scaledWidth, scaledHeight);
+                }
+                decoder.setAllocator(ImageDecoder.ALLOCATOR_SOFTWARE);
+                decoder.setTargetSize(scaledWidth, scaledHeight);
+                decoder.setCrop(scaledCrop);
+            });
+            PerformanceMonitor monitor = PerformanceMonitor.get();
+            monitor.incrementCounter(PerformanceMetrics.REGION_DECODES_IMAGE_DECODER, 1);
+            monitor.incrementCounter(PerformanceMetrics.REGION_DECODE_BYTES,
+                    bitmap.getAllocationByteCount());
+            return bitmap;
+        } catch (IOException | IllegalArgumentException e) {
+            Log.e(TAG, "Unable to decode bitmap region with content URI: " + mUri, e);
+            return null;
+        } catch (OutOfMemoryError e) {
+            Log.e(TAG, "Out of memory and unable to decode bitmap region", e);
+            return null;
+        } finally {
+            span.end();
+        }
+    }
+
     /**
      * Returns whether this image is encoded in the JPEG file format.
      */
     public boolean isJpeg() {
-        String mimeType = mContext.getContentResolver().getType(mUri);
-        return mimeType != null && mimeType.equals(JPEG_MIME_TYPE);
+        return ImageHeaderProbe.MIME_TYPE_JPEG.equals(getMimeType());
     }
 
     /**
      * Returns whether this image is encoded in the PNG file format.
      */
     public boolean isPng() {
-        String mimeType = mContext.getContentResolver().getType(mUri);
-        return mimeType != null && mimeType.equals(PNG_MIME_TYPE);
+        return ImageHeaderProbe.MIME_TYPE_PNG.equals(getMimeType());
+    }
+
+    /**
+     * Returns the MIME type of this image, as identified from its encoded bytes, or as reported by
+     * its content provider if the format was not recognized. Should only be called off the main UI
+     * thread.
+     */
+    @Nullable
+    public String getMimeType() {
+        ImageHeaderProbe.Result header = getHeader();
+        if (header != null && header.mimeType != null) {
+            return header.mimeType;
+        }
+        synchronized (this) {
+            if (!mProviderMimeTypeQueried) {
+                mProviderMimeType = mContext.getContentResolver().getType(mUri);
+                mProviderMimeTypeQueried = true;
+            }
+            return mProviderMimeType;
+        }
+    }
+
+    /**
+     * Returns the header of this image, reading it on first use, or null if the content URI could
+     * not be read.
+     */
+    @Nullable
+    private synchronized ImageHeaderProbe.Result getHeader() {
+        if (!mHeaderProbed) {
+            mHeaderProbed = true;
+            try (InputStream inputStream = openInputStream()) {
+                if (inputStream != null) {
+                    mHeader = ImageHeaderProbe.probe(inputStream);
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "Couldn't read stream for " + mUri, e);
+            }
+        }
+        return mHeader;
     }
 
     /**
@@ -194,17 +286,24 @@ public final class ContentUriAsset extends StreamableAsset {
         return attribute.trim();
     }
 
-    private void ensureExifInterface() {
-        if (mExifCompat == null) {
-            try (InputStream inputStream = openInputStream()) {
-                if (inputStream != null) {
-                    mExifCompat = new ExifInterfaceCompat(inputStream);
-                }
-            } catch (IOException e) {
-                Log.w(TAG, "Couldn't read stream for " + mUri, e);
+    private synchronized void ensureExifInterface() {
+        if (mExifCompat != null) {
+            return;
+        }
+        ImageHeaderProbe.Result header = getHeader();
+        if (header != null && header.exif != null) {
+            mExifCompat = header.exif;
+            return;
+        }
+        // The EXIF metadata could not be read from the header (e.g. it is at the end of a HEIF
+        // file), so read it from the whole stream.
+        try (InputStream inputStream = openInputStream()) {
+            if (inputStream != null) {
+                mExifCompat = new ExifInterfaceCompat(inputStream);
             }
+        } catch (IOException e) {
+            Log.w(TAG, "Couldn't read stream for " + mUri, e);
         }
-
     }
 
     @Override
@@ -235,6 +334,10 @@ public final class ContentUriAsset extends StreamableAsset {
      * the main UI thread.
      */
     private int readExifOrientation() {
+        ImageHeaderProbe.Result header = getHeader();
+        if (header != null && header.exif != null) {
+            return header.getExifOrientation();
+        }
         ensureExifInterface();
         if (mExifCompat == null) {
             Log.w(TAG, "Unable to read EXIF rotation for content URI asset with content URI: "
@@ -246,6 +349,21 @@ public final class ContentUriAsset extends StreamableAsset {
                 ExifInterfaceCompat.EXIF_ORIENTATION_NORMAL);
     }
 
+    @Override
+    @Nullable
+    public Point calculateRawDimensions() {
+        ImageHeaderProbe.Result header = getHeader();
+        if (header == null || !header.hasDimensions()) {
+            return super.calculateRawDimensions();
+        }
+        int exifOrientation = getExifOrientation();
+        // Swap height and width if image is rotated 90 or 270 degrees, or transposed.
+        if (OrientedRegionDecoder.swapsDimensions(exifOrientation)) {
+            return new Point(header.height, header.width);
+        }
+        return new Point(header.width, header.height);
+    }
+
     @Override
     public void loadDrawable(Context context, ImageView imageView,
                              int placeholderColor) {
@@ -254,6 +372,7 @@ public final class ContentUriAsset extends StreamableAsset {
                 .load(mUri)
                 .apply(mRequestOptions
                         .placeholder(new ColorDrawable(placeholderColor)))
+                .apply(WallpaperGlideModule.thumbnailOptions())
                 .transition(DrawableTransitionOptions.withCrossFade())
                 .into(imageView);
     }
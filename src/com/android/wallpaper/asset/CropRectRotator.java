@@ -46,6 +46,17 @@ public class CropRectRotator {
             case ExifInterface.ORIENTATION_ROTATE_270:
                 return new Rect(dimensions.y - srcRect.bottom, srcRect.left, dimensions.y - srcRect.top,
                         srcRect.right);
+            case ExifInterface.ORIENTATION_FLIP_HORIZONTAL:
+                return new Rect(dimensions.x - srcRect.right, srcRect.top,
+                        dimensions.x - srcRect.left, srcRect.bottom);
+            case ExifInterface.ORIENTATION_FLIP_VERTICAL:
+                return new Rect(srcRect.left, dimensions.y - srcRect.bottom, srcRect.right,
+                        dimensions.y - srcRect.top);
+            case ExifInterface.ORIENTATION_TRANSPOSE:
+                return new Rect(srcRect.top, srcRect.left, srcRect.bottom, srcRect.right);
+            case ExifInterface.ORIENTATION_TRANSVERSE:
+                return new Rect(dimensions.y - srcRect.bottom, dimensions.x - srcRect.right,
+                        dimensions.y - srcRect.top, dimensions.x - srcRect.left);
             default:
                 Log.w(TAG, "Unsupported EXIF orientation " + exifOrientation);
                 return new Rect(srcRect);
@@ -135,6 +135,7 @@ public class CurrentWallpaperAsset extends StreamableAsset {
                 .asDrawable()
                 .load(CurrentWallpaperAsset.this)
                 .apply(RequestOptions.centerCropTransform())
+                .apply(WallpaperGlideModule.thumbnailOptions())
                 .transition(DrawableTransitionOptions.withCrossFade())
                 .into(imageView);
     }
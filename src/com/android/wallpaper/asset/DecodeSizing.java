@@ -0,0 +1,33 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.wallpaper.asset;
+
+/**
+ * How bitmaps decoded for a target size trade detail against memory.
+ */
+public enum DecodeSizing {
+    /**
+     * Subsample by the largest power of two that keeps the bitmap at least as large as the target,
+     * which may leave up to four times the pixels needed but keeps detail for zooming in.
+     */
+    QUALITY,
+
+    /**
+     * Subsample by a power of two, then scale down while decoding so that the bitmap is no larger
+     * than needed to cover the target.
+     */
+    MEMORY,
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.wallpaper.asset;
+
+import androidx.annotation.VisibleForTesting;
+
+/**
+ * Glide cache sizes for a device, derived from its memory class, screen area and free disk space
+ * instead of fixed numbers tuned for a single device class.
+ */
+public final class GlideCacheSizing {
+
+    /** Full-screen ARGB_8888 images the disk cache should hold, e.g. ~100MB on a 1080p phone. */
+    private static final float DISK_CACHE_SCREENS = 10f;
+    private static final long MIN_DISK_CACHE_SIZE_BYTES = 16L * 1024 * 1024;
+    /** Glide's own default, which the wallpaper cache never needs to exceed. */
+    private static final long MAX_DISK_CACHE_SIZE_BYTES = 250L * 1024 * 1024;
+    /** Never let the cache take more than this fraction of the free disk space. */
+    private static final int FREE_DISK_DIVISOR = 20;
+
+    /** Memory classes, in MB, at or above which the caches are allowed to grow. */
+    private static final int LARGE_MEMORY_CLASS_MB = 256;
+    private static final int HUGE_MEMORY_CLASS_MB = 512;
+
+    /**
+     * Screens above this many pixels (e.g. tablets and unfolded foldables) make every cached
+     * screen more expensive, so they get one tier less than their memory class would allow.
+     */
+    private static final long LARGE_SCREEN_PIXELS = 4_000_000L;
+
+    private static final int BYTES_PER_PIXEL = 4;
+
+    public final long diskCacheSizeBytes;
+    public final float bitmapPoolScreens;
+    public final float memoryCacheScreens;
+
+    @VisibleForTesting
+    GlideCacheSizing(long diskCacheSizeBytes, float bitmapPoolScreens,
+            float memoryCacheScreens) {
+        this.diskCacheSizeBytes = diskCacheSizeBytes;
+        this.bitmapPoolScreens = bitmapPoolScreens;
+        this.memoryCacheScreens = memoryCacheScreens;
+    }
+
+    /**
+     * Computes the cache sizes.
+     *
+     * @param memoryClassMb  Per-app heap limit, from {@code ActivityManager#getMemoryClass}.
+     * @param isLowRamDevice Whether the device is flagged as low-RAM.
+     * @param screenPixels   Pixel count of the largest display the picker draws to.
+     * @param freeDiskBytes  Space available to the app's cache directory.
+     */
+    public static GlideCacheSizing compute(int memoryClassMb, boolean isLowRamDevice,
+            long screenPixels, long freeDiskBytes) {
+        // Glide defaults to 4 bitmap pool screens; the baseline tier keeps the picker's historical
+        // 2 screens to leave room for tiling large previews and the daily rotation bitmap.
+        int tier;
+        if (isLowRamDevice) {
+            tier = 0;
+        } else if (memoryClassMb >= HUGE_MEMORY_CLASS_MB) {
+            tier = 3;
+        } else if (memoryClassMb >= LARGE_MEMORY_CLASS_MB) {
+            tier = 2;
+        } else {
+            tier = 1;
+        }
+        if (screenPixels > LARGE_SCREEN_PIXELS && tier > 0) {
+            tier--;
+        }
+
+        float bitmapPoolScreens;
+        float memoryCacheScreens;
+        switch (tier) {
+            case 0:
+                bitmapPoolScreens = 0.5f;
+                memoryCacheScreens = 0.5f;
+                break;
+            case 1:
+                bitmapPoolScreens = 1f;
+                memoryCacheScreens = 1f;
+                break;
+            case 2:
+                bitmapPoolScreens = 2f;
+                memoryCacheScreens = 1.2f;
+                break;
+            default:
+                bitmapPoolScreens = 3f;
+                memoryCacheScreens = 2f;
+                break;
+        }
+
+        long diskCacheSizeBytes = (long) (screenPixels * BYTES_PER_PIXEL * DISK_CACHE_SCREENS);
+        diskCacheSizeBytes = Math.min(diskCacheSizeBytes, MAX_DISK_CACHE_SIZE_BYTES);
+        diskCacheSizeBytes = Math.min(diskCacheSizeBytes, freeDiskBytes / FREE_DISK_DIVISOR);
+        diskCacheSizeBytes = Math.max(diskCacheSizeBytes, MIN_DISK_CACHE_SIZE_BYTES);
+
+        return new GlideCacheSizing(diskCacheSizeBytes, bitmapPoolScreens, memoryCacheScreens);
+    }
+
+    @Override
+    public String toString() {
+        return "GlideCacheSizing{diskCacheSizeBytes=" + diskCacheSizeBytes
+                + ", bitmapPoolScreens=" + bitmapPoolScreens
+                + ", memoryCacheScreens=" + memoryCacheScreens + "}";
+    }
+}
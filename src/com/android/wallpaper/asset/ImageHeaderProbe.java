@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.wallpaper.asset;
+
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reads the header of an encoded image in a single pass over its stream, to find its format, raw
+ * dimensions and EXIF metadata without opening the image several times.
+ */
+public final class ImageHeaderProbe {
+    private static final String TAG = "ImageHeaderProbe";
+
+    public static final String MIME_TYPE_JPEG = "image/jpeg";
+    public static final String MIME_TYPE_PNG = "image/png";
+    public static final String MIME_TYPE_WEBP = "image/webp";
+    public static final String MIME_TYPE_GIF = "image/gif";
+    public static final String MIME_TYPE_BMP = "image/bmp";
+    public static final String MIME_TYPE_HEIF = "image/heif";
+    public static final String MIME_TYPE_AVIF = "image/avif";
+
+    // Enough for the EXIF segment of a JPEG, which is at most 64 KiB, and what precedes it.
+    private static final int INITIAL_PROBE_BYTES = 64 * 1024;
+    // Large ICC profiles or embedded previews may push the frame header further. Give up after
+    // this many bytes and let callers decode the dimensions from the full stream instead.
+    private static final int MAX_PROBE_BYTES = 1024 * 1024;
+
+    private ImageHeaderProbe() {
+    }
+
+    /**
+     * What was learned from the header of an image.
+     */
+    public static final class Result {
+        /** The format of the image, or null if it was not recognized. */
+        @Nullable
+        public final String mimeType;
+        /** Width of the encoded image before EXIF rotation, or -1 if unknown. */
+        public final int width;
+        /** Height of the encoded image before EXIF rotation, or -1 if unknown. */
+        public final int height;
+        /**
+         * The EXIF metadata, or null if the format has none that can be read from the header, in
+         * which case callers have to read it from the full stream.
+         */
+        @Nullable
+        public final ExifInterfaceCompat exif;
+
+        Result(@Nullable String mimeType, int width, int height,
+                @Nullable ExifInterfaceCompat exif) {
+            this.mimeType = mimeType;
+            this.width = width;
+            this.height = height;
+            this.exif = exif;
+        }
+
+        public boolean hasDimensions() {
+            return width > 0 && height > 0;
+        }
+
+        /**
+         * Returns the EXIF orientation, or {@link ExifInterfaceCompat#EXIF_ORIENTATION_UNKNOWN} if
+         * it could not be read from the header.
+         */
+        public int getExifOrientation() {
+            return exif == null
+                    ? ExifInterfaceCompat.EXIF_ORIENTATION_UNKNOWN
+                    : exif.getAttributeInt(ExifInterfaceCompat.TAG_ORIENTATION,
+                            ExifInterfaceCompat.EXIF_ORIENTATION_NORMAL);
+        }
+    }
+
+    /**
+     * Reads the header of the image in {@code inputStream}. The stream is only read, not closed.
+     * Should only be called off the main UI thread.
+     *
+     * @return the probe result, or null if the stream could not be read.
+     */
+    @Nullable
+    public static Result probe(InputStream inputStream) {
+        byte[] header = new byte[INITIAL_PROBE_BYTES];
+        int length = 0;
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        try {
+            while (true) {
+                length += readFully(inputStream, header, length, header.length - length);
+                options.outWidth = -1;
+                options.outHeight = -1;
+                BitmapFactory.decodeByteArray(header, 0, length, options);
+                boolean isEndOfStream = length < header.length;
+                if (options.outWidth > 0 || isEndOfStream || header.length >= MAX_PROBE_BYTES) {
+                    break;
+                }
+                header = Arrays.copyOf(header, Math.min(header.length * 2, MAX_PROBE_BYTES));
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to read image header", e);
+            return null;
+        }
+
+        String mimeType = sniffMimeType(header, length);
+        if (mimeType == null) {
+            mimeType = options.outMimeType;
+        }
+        return new Result(mimeType, options.outWidth, options.outHeight,
+                readExif(mimeType, header, length));
+    }
+
+    /**
+     * Returns the MIME type of the image format identified by the magic number at the start of
+     * {@code header}, or null if it was not recognized.
+     */
+    @VisibleForTesting
+    @Nullable
+    public static String sniffMimeType(byte[] header, int length) {
+        if (startsWith(header, length, 0, 0xFF, 0xD8, 0xFF)) {
+            return MIME_TYPE_JPEG;
+        }
+        if (startsWith(header, length, 0, 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A)) {
+            return MIME_TYPE_PNG;
+        }
+        if (startsWith(header, length, 0, 'R', 'I', 'F', 'F')
+                && startsWith(header, length, 8, 'W', 'E', 'B', 'P')) {
+            return MIME_TYPE_WEBP;
+        }
+        if (startsWith(header, length, 0, 'G', 'I', 'F', '8')) {
+            return MIME_TYPE_GIF;
+        }
+        if (startsWith(header, length, 0, 'B', 'M')) {
+            return MIME_TYPE_BMP;
+        }
+        if (startsWith(header, length, 4, 'f', 't', 'y', 'p')) {
+            return sniffIsoMediaMimeType(header, length);
+        }
+        return null;
+    }
+
+    /**
+     * Identifies HEIF and AVIF images from the major and compatible brands of their ISO base
+     * media file type box.
+     */
+    @Nullable
+    private static String sniffIsoMediaMimeType(byte[] header, int length) {
+        int boxSize = ((header[0] & 0xFF) << 24) | ((header[1] & 0xFF) << 16)
+                | ((header[2] & 0xFF) << 8) | (header[3] & 0xFF);
+        int boxEnd = Math.min(boxSize, length);
+        boolean isHeif = false;
+        // The major brand is at offset 8, the compatible brands start at offset 16.
+        for (int offset = 8; offset + 4 <= boxEnd; offset += offset == 8 ? 8 : 4) {
+            String brand = new String(header, offset, 4, StandardCharsets.US_ASCII);
+            switch (brand) {
+                case "avif":
+                case "avis":
+                    return MIME_TYPE_AVIF;
+                case "heic":
+                case "heix":
+                case "heim":
+                case "heis":
+                case "hevc":
+                case "hevx":
+                case "mif1":
+                case "msf1":
+                    isHeif = true;
+                    break;
+                default:
+                    break;
+            }
+        }
+        return isHeif ? MIME_TYPE_HEIF : null;
+    }
+
+    @Nullable
+    private static ExifInterfaceCompat readExif(@Nullable String mimeType, byte[] header,
+            int length) {
+        // Only JPEG keeps its EXIF segment ahead of the image data. WebP and PNG may store it in a
+        // chunk after the image data, and HEIF and AVIF reference it from the end of the file, so a
+        // header without EXIF says nothing about the image.
+        if (!MIME_TYPE_JPEG.equals(mimeType)) {
+            return null;
+        }
+        try {
+            return new ExifInterfaceCompat(new ByteArrayInputStream(header, 0, length));
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Unable to read EXIF from image header", e);
+            return null;
+        }
+    }
+
+    private static boolean startsWith(byte[] header, int length, int offset, int... magic) {
+        if (offset + magic.length > length) {
+            return false;
+        }
+        for (int i = 0; i < magic.length; i++) {
+            if ((header[offset + i] & 0xFF) != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int readFully(InputStream inputStream, byte[] buffer, int offset, int count)
+            throws IOException {
+        int read = 0;
+        while (read < count) {
+            int result = inputStream.read(buffer, offset + read, count - read);
+            if (result < 0) {
+                break;
+            }
+            read += result;
+        }
+        return read;
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.wallpaper.asset;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.media.ExifInterface;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+/**
+ * Decodes regions of images with a non-normal EXIF orientation straight into a bitmap in their
+ * displayed orientation.
+ *
+ * <p>Rotating a decoded bitmap afterwards keeps two bitmaps of the full output size alive at once.
+ * Instead, the region is decoded in horizontal strips into one reused strip bitmap, and each strip
+ * is drawn oriented into the output, so the peak allocation is the output plus one strip.
+ */
+public final class OrientedRegionDecoder {
+
+    // Height, in output rows before orientation, of each strip.
+    private static final int DEFAULT_STRIP_ROWS = 256;
+
+    private OrientedRegionDecoder() {
+    }
+
+    /**
+     * Decodes a rectangular region of an image, such as a {@link BitmapRegionDecoder}.
+     */
+    public interface RegionSource {
+
+        /**
+         * Decodes the given region of the encoded image, honoring {@code options.inSampleSize} and
+         * decoding into {@code options.inBitmap}. Returns null if there was an error.
+         */
+        @Nullable
+        Bitmap decodeRegion(Rect rect, BitmapFactory.Options options);
+    }
+
+    /**
+     * Returns a {@link RegionSource} reading from the given region decoder.
+     */
+    public static RegionSource from(BitmapRegionDecoder regionDecoder) {
+        return regionDecoder::decodeRegion;
+    }
+
+    /**
+     * Returns whether images with the given EXIF orientation are displayed as they are encoded.
+     */
+    public static boolean isNormal(int exifOrientation) {
+        return exifOrientation < ExifInterface.ORIENTATION_FLIP_HORIZONTAL
+                || exifOrientation > ExifInterface.ORIENTATION_ROTATE_270;
+    }
+
+    /**
+     * Returns whether images with the given EXIF orientation are displayed with their width and
+     * height swapped.
+     */
+    public static boolean swapsDimensions(int exifOrientation) {
+        return exifOrientation == ExifInterface.ORIENTATION_TRANSPOSE
+                || exifOrientation == ExifInterface.ORIENTATION_ROTATE_90
+                || exifOrientation == ExifInterface.ORIENTATION_TRANSVERSE
+                || exifOrientation == ExifInterface.ORIENTATION_ROTATE_270;
+    }
+
+    /**
+     * Returns the matrix mapping a {@code width} x {@code height} image as encoded to how it is
+     * displayed for the given EXIF orientation.
+     */
+    public static Matrix getOrientationMatrix(int exifOrientation, int width, int height) {
+        Matrix matrix = new Matrix();
+        switch (exifOrientation) {
+            case ExifInterface.ORIENTATION_FLIP_HORIZONTAL:
+                matrix.setScale(-1, 1);
+                matrix.postTranslate(width, 0);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_180:
+                matrix.setRotate(180);
+                matrix.postTranslate(width, height);
+                break;
+            case ExifInterface.ORIENTATION_FLIP_VERTICAL:
+                matrix.setScale(1, -1);
+                matrix.postTranslate(0, height);
+                break;
+            case ExifInterface.ORIENTATION_TRANSPOSE:
+                matrix.setValues(new float[] {0, 1, 0, 1, 0, 0, 0, 0, 1});
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_90:
+                matrix.setRotate(90);
+                matrix.postTranslate(height, 0);
+                break;
+            case ExifInterface.ORIENTATION_TRANSVERSE:
+                matrix.setValues(new float[] {0, -1, height, -1, 0, width, 0, 0, 1});
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_270:
+                matrix.setRotate(270);
+                matrix.postTranslate(0, width);
+                break;
+            default:
+                break;
+        }
+        return matrix;
+    }
+
+    /**
+     * Decodes {@code rawRegion}, given in the encoded image's coordinates, subsampled by
+     * {@code sampleSize} and in the displayed orientation. Should only be called off the main UI
+     * thread.
+     *
+     * @return the oriented region, or null if the source failed to decode it.
+     */
+    @Nullable
+    public static Bitmap decode(RegionSource source, Rect rawRegion, int sampleSize,
+            int exifOrientation) {
+        return decode(source, rawRegion, sampleSize, /* scale= */ 1f, exifOrientation);
+    }
+
+    /**
+     * Like {@link #decode(RegionSource, Rect, int, int)}, but also scales the subsampled region by
+     * {@code scale} as it is drawn into the output.
+     */
+    @Nullable
+    public static Bitmap decode(RegionSource source, Rect rawRegion, int sampleSize, float scale,
+            int exifOrientation) {
+        return decode(source, rawRegion, sampleSize, scale, exifOrientation, DEFAULT_STRIP_ROWS);
+    }
+
+    @VisibleForTesting
+    @Nullable
+    public static Bitmap decode(RegionSource source, Rect rawRegion, int sampleSize, float scale,
+            int exifOrientation, int stripRows) {
+        int width = ceilDiv(rawRegion.width(), sampleSize);
+        int height = ceilDiv(rawRegion.height(), sampleSize);
+        if (width <= 0 || height <= 0) {
+            return null;
+        }
+        int scaledWidth = Math.max(1, Math.round(width * scale));
+        int scaledHeight = Math.max(1, Math.round(height * scale));
+        boolean swap = swapsDimensions(exifOrientation);
+        Bitmap output = Bitmap.createBitmap(swap ? scaledHeight : scaledWidth,
+                swap ? scaledWidth : scaledHeight, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(output);
+        canvas.concat(getOrientationMatrix(exifOrientation, scaledWidth, scaledHeight));
+        canvas.scale((float) scaledWidth / width, (float) scaledHeight / height);
+        Paint paint = scale == 1f ? null : new Paint(Paint.FILTER_BITMAP_FLAG);
+
+        int rowsPerStrip = Math.min(stripRows, height);
+        Bitmap strip = Bitmap.createBitmap(width, rowsPerStrip, Bitmap.Config.ARGB_8888);
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize;
+        options.inMutable = true;
+        Rect stripRegion = new Rect();
+        Rect src = new Rect();
+        Rect dst = new Rect();
+        try {
+            for (int top = 0; top < height; top += rowsPerStrip) {
+                int rows = Math.min(rowsPerStrip, height - top);
+                stripRegion.set(rawRegion.left, rawRegion.top + top * sampleSize, rawRegion.right,
+                        Math.min(rawRegion.bottom, rawRegion.top + (top + rows) * sampleSize));
+                options.inBitmap = strip;
+                Bitmap decoded = source.decodeRegion(stripRegion, options);
+                if (decoded == null) {
+                    output.recycle();
+                    return null;
+                }
+                // The strip is reused in place, but the last one may be shorter than the rest and
+                // decoders may round subsampled sizes differently, so only draw what was decoded.
+                src.set(0, 0, Math.min(width, decoded.getWidth()),
+                        Math.min(rows, decoded.getHeight()));
+                dst.set(0, top, width, top + rows);
+                canvas.drawBitmap(decoded, src, dst, paint);
+                if (decoded != strip) {
+                    decoded.recycle();
+                }
+            }
+        } finally {
+            strip.recycle();
+        }
+        return output;
+    }
+
+    private static int ceilDiv(int value, int divisor) {
+        return (value + divisor - 1) / divisor;
+    }
+}
@@ -85,6 +85,7 @@ public class ResourceAsset extends StreamableAsset {
                 .load(ResourceAsset.this)
                 .apply(mRequestOptions
                         .placeholder(new ColorDrawable(placeholderColor)))
+                .apply(WallpaperGlideModule.thumbnailOptions())
                 .transition(DrawableTransitionOptions.withCrossFade())
                 .into(imageView);
     }
@@ -30,10 +30,18 @@ import android.util.Log;
 
 import androidx.annotation.Nullable;
 
+import com.android.wallpaper.module.InjectorProvider;
+import com.android.wallpaper.monitor.DiagnosticsWriter;
+import com.android.wallpaper.monitor.PerformanceMetrics;
+import com.android.wallpaper.monitor.PerformanceMonitor;
+import com.android.wallpaper.monitor.PerformanceMonitor.Span;
+
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 /**
  * Represents Asset types for which bytes can be read directly, allowing for flexible bitmap
@@ -42,6 +50,18 @@ import java.util.concurrent.Executors;
 public abstract class StreamableAsset extends Asset {
     private static final ExecutorService sExecutorService = Executors.newCachedThreadPool();
     private static final String TAG = "StreamableAsset";
+    private static final String DUMP_SECTION = "decode_queue";
+
+    // Kinds of work run on sExecutorService, tracked separately in the diagnostics dump.
+    private static final int TASK_FULL_DECODE = 0;
+    private static final int TASK_REGION_DECODE = 1;
+    private static final int TASK_STREAM = 2;
+    private static final String[] TASK_NAMES = {"full_decode", "region_decode", "stream"};
+    private static final AtomicIntegerArray sQueuedTasks =
+            new AtomicIntegerArray(TASK_NAMES.length);
+    private static final AtomicIntegerArray sRunningTasks =
+            new AtomicIntegerArray(TASK_NAMES.length);
+    private static final AtomicInteger sOpenedRegionDecoders = new AtomicInteger();
 
     private BitmapRegionDecoder mBitmapRegionDecoder;
     private Point mDimensions;
@@ -58,104 +78,125 @@ public abstract class StreamableAsset extends Asset {
     }
 
     /**
-     * Maps from EXIF orientation tag values to counterclockwise degree rotation values.
+     * Writes the number of queued and running tasks of each kind, and the number of region decoders
+     * opened so far, to the given diagnostics dump.
      */
-    private static int getDegreesRotationForExifOrientation(int exifOrientation) {
-        switch (exifOrientation) {
-            case ExifInterface.ORIENTATION_NORMAL:
-                return 0;
-            case ExifInterface.ORIENTATION_ROTATE_90:
-                return 90;
-            case ExifInterface.ORIENTATION_ROTATE_180:
-                return 180;
-            case ExifInterface.ORIENTATION_ROTATE_270:
-                return 270;
-            default:
-                Log.w(TAG, "Unsupported EXIF orientation " + exifOrientation);
-                return 0;
+    public static void dump(DiagnosticsWriter writer) {
+        for (int task = 0; task < TASK_NAMES.length; task++) {
+            writer.value(DUMP_SECTION, TASK_NAMES[task] + ".queued", sQueuedTasks.get(task));
+            writer.value(DUMP_SECTION, TASK_NAMES[task] + ".running", sRunningTasks.get(task));
         }
+        writer.value(DUMP_SECTION, "region_decoders_opened", sOpenedRegionDecoders.get());
     }
 
-    @Override
-    public void decodeBitmap(int targetWidth, int targetHeight, boolean useHardwareBitmapIfPossible,
-                             BitmapReceiver receiver) {
+    private static void execute(int task, Runnable runnable) {
+        sQueuedTasks.incrementAndGet(task);
         sExecutorService.execute(() -> {
-            int newTargetWidth = targetWidth;
-            int newTargetHeight = targetHeight;
-            int exifOrientation = getExifOrientation();
-            // Switch target height and width if image is rotated 90 or 270 degrees.
-            if (exifOrientation == ExifInterface.ORIENTATION_ROTATE_90
-                    || exifOrientation == ExifInterface.ORIENTATION_ROTATE_270) {
-                int tempHeight = newTargetHeight;
-                newTargetHeight = newTargetWidth;
-                newTargetWidth = tempHeight;
+            sQueuedTasks.decrementAndGet(task);
+            sRunningTasks.incrementAndGet(task);
+            try {
+                runnable.run();
+            } finally {
+                sRunningTasks.decrementAndGet(task);
             }
+        });
+    }
 
-            BitmapFactory.Options options = new BitmapFactory.Options();
-
-            Point rawDimensions = calculateRawDimensions();
-            // Raw dimensions may be null if there was an error opening the underlying input stream.
-            if (rawDimensions == null) {
-                decodeBitmapCompleted(receiver, null);
-                return;
-            }
-            options.inSampleSize = BitmapUtils.calculateInSampleSize(
-                    rawDimensions.x, rawDimensions.y, newTargetWidth, newTargetHeight);
-            if (useHardwareBitmapIfPossible) {
-                options.inPreferredConfig = Config.HARDWARE;
-            }
+    /**
+     * Runs a bitmap region decode on the shared decode executor, alongside the region decodes of
+     * {@link #runDecodeBitmapRegionTask}.
+     */
+    protected static void executeRegionDecode(Runnable runnable) {
+        execute(TASK_REGION_DECODE, runnable);
+    }
 
-            InputStream inputStream = openInputStream();
-            Bitmap bitmap = null;
-            if (inputStream != null) {
-                bitmap = BitmapFactory.decodeStream(inputStream, null, options);
-                closeInputStream(
-                        inputStream, "Error closing the input stream used "
-                                + "to decode the full bitmap");
-
-                // Rotate output bitmap if necessary because of EXIF orientation tag.
-                int matrixRotation = getDegreesRotationForExifOrientation(exifOrientation);
-                if (matrixRotation > 0) {
-                    Matrix rotateMatrix = new Matrix();
-                    rotateMatrix.setRotate(matrixRotation);
-                    bitmap = Bitmap.createBitmap(
-                            bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(),
-                            rotateMatrix, false);
-                }
+    @Override
+    public void decodeBitmap(int targetWidth, int targetHeight, boolean useHardwareBitmapIfPossible,
+                             BitmapReceiver receiver) {
+        execute(TASK_FULL_DECODE, () -> {
+            Bitmap bitmap;
+            try (Span span = PerformanceMonitor.get().beginSpan(PerformanceMetrics.ASSET_DECODE)) {
+                bitmap = decodeAtTargetSize(targetWidth, targetHeight,
+                        useHardwareBitmapIfPossible);
             }
             decodeBitmapCompleted(receiver, bitmap);
         });
     }
 
+    @Nullable
+    private Bitmap decodeAtTargetSize(int targetWidth, int targetHeight,
+            boolean useHardwareBitmapIfPossible) {
+        int newTargetWidth = targetWidth;
+        int newTargetHeight = targetHeight;
+        int exifOrientation = getExifOrientation();
+        // Switch target height and width if image is rotated 90 or 270 degrees, or transposed.
+        if (OrientedRegionDecoder.swapsDimensions(exifOrientation)) {
+            int tempHeight = newTargetHeight;
+            newTargetHeight = newTargetWidth;
+            newTargetWidth = tempHeight;
+        }
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+
+        Point rawDimensions = calculateRawDimensions();
+        // Raw dimensions may be null if there was an error opening the underlying input stream.
+        if (rawDimensions == null) {
+            return null;
+        }
+        // Raw dimensions are in displayed orientation, while the target has been switched to
+        // the encoded orientation, so compare like with like.
+        boolean swap = OrientedRegionDecoder.swapsDimensions(exifOrientation);
+        BitmapUtils.setTargetSize(options, swap ? rawDimensions.y : rawDimensions.x,
+                swap ? rawDimensions.x : rawDimensions.y, newTargetWidth, newTargetHeight,
+                InjectorProvider.getInjector().getFlags().getDecodeSizing());
+        if (useHardwareBitmapIfPossible) {
+            options.inPreferredConfig = Config.HARDWARE;
+        }
+
+        Bitmap bitmap = null;
+        if (!OrientedRegionDecoder.isNormal(exifOrientation)) {
+            bitmap = decodeOrientedBitmap(rawDimensions, options.inSampleSize,
+                    BitmapUtils.getDensityScale(options), exifOrientation);
+        }
+        if (bitmap == null) {
+            bitmap = decodeStream(options, exifOrientation);
+        }
+        return bitmap;
+    }
+
     @Override
     public void decodeBitmap(BitmapReceiver receiver) {
-        sExecutorService.execute(() -> {
-            BitmapFactory.Options options = new BitmapFactory.Options();
-            options.inPreferredConfig = Config.HARDWARE;
-            InputStream inputStream = openInputStream();
-            Bitmap bitmap = null;
-            if (inputStream != null) {
-                bitmap = BitmapFactory.decodeStream(inputStream, null, options);
-                closeInputStream(inputStream,
-                        "Error closing the input stream used to decode the full bitmap");
-
-                // Rotate output bitmap if necessary because of EXIF orientation tag.
-                int exifOrientation = getExifOrientation();
-                int matrixRotation = getDegreesRotationForExifOrientation(exifOrientation);
-                if (matrixRotation > 0) {
-                    Matrix rotateMatrix = new Matrix();
-                    rotateMatrix.setRotate(matrixRotation);
-                    bitmap = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(),
-                            bitmap.getHeight(), rotateMatrix, false);
-                }
+        execute(TASK_FULL_DECODE, () -> {
+            Bitmap bitmap;
+            try (Span span = PerformanceMonitor.get().beginSpan(PerformanceMetrics.ASSET_DECODE)) {
+                bitmap = decodeFullSize();
             }
             decodeBitmapCompleted(receiver, bitmap);
         });
     }
 
+    @Nullable
+    private Bitmap decodeFullSize() {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = Config.HARDWARE;
+        int exifOrientation = getExifOrientation();
+        Bitmap bitmap = null;
+        if (!OrientedRegionDecoder.isNormal(exifOrientation)) {
+            Point rawDimensions = calculateRawDimensions();
+            if (rawDimensions != null) {
+                bitmap = decodeOrientedBitmap(rawDimensions, /* sampleSize= */ 1,
+                        /* scale= */ 1f, exifOrientation);
+            }
+        }
+        if (bitmap == null) {
+            bitmap = decodeStream(options, exifOrientation);
+        }
+        return bitmap;
+    }
+
     @Override
     public void decodeRawDimensions(Activity unused, DimensionsReceiver receiver) {
-        sExecutorService.execute(() -> {
+        execute(TASK_STREAM, () -> {
             Point result = calculateRawDimensions();
             new Handler(Looper.getMainLooper()).post(() -> {
                 receiver.onDimensionsDecoded(result);
@@ -179,7 +220,7 @@ public abstract class StreamableAsset extends Asset {
      * asynchronously back to a {@link StreamReceiver}.
      */
     public void fetchInputStream(final StreamReceiver streamReceiver) {
-        sExecutorService.execute(() -> {
+        execute(TASK_STREAM, () -> {
             InputStream result = openInputStream();
             new Handler(Looper.getMainLooper()).post(() -> {
                 streamReceiver.onInputStreamOpened(result);
@@ -193,6 +234,15 @@ public abstract class StreamableAsset extends Asset {
     @Nullable
     protected abstract InputStream openInputStream();
 
+    /**
+     * Opens an input stream of bytes for the wallpaper image asset on the calling thread, which
+     * must not be the main UI thread. The caller closes the stream.
+     */
+    @Nullable
+    public InputStream openInputStreamSync() {
+        return openInputStream();
+    }
+
     /**
      * Gets the EXIF orientation value of the asset. This method should only be called off the main UI
      * thread.
@@ -215,63 +265,73 @@ public abstract class StreamableAsset extends Asset {
      */
     public void runDecodeBitmapRegionTask(Rect rect, int targetWidth, int targetHeight,
             boolean isRtl, BitmapReceiver receiver) {
-        sExecutorService.execute(() -> {
-            int newTargetWidth = targetWidth;
-            int newTargetHeight = targetHeight;
-            Rect cropRect = rect;
-            int exifOrientation = getExifOrientation();
-            // Switch target height and width if image is rotated 90 or 270 degrees.
-            if (exifOrientation == ExifInterface.ORIENTATION_ROTATE_90
-                    || exifOrientation == ExifInterface.ORIENTATION_ROTATE_270) {
-                int tempHeight = newTargetHeight;
-                newTargetHeight = newTargetWidth;
-                newTargetWidth = tempHeight;
+        execute(TASK_REGION_DECODE, () -> {
+            Bitmap bitmap;
+            try (Span span = PerformanceMonitor.get().beginSpan(PerformanceMetrics.REGION_DECODE)) {
+                bitmap = decodeRegion(rect, targetWidth, targetHeight, isRtl);
             }
+            decodeBitmapCompleted(receiver, bitmap);
+        });
+    }
 
-            // Rotate crop rect if image is rotated more than 0 degrees.
-            Point dimensions = calculateRawDimensions();
-            cropRect = CropRectRotator.rotateCropRectForExifOrientation(
-                    dimensions, cropRect, exifOrientation);
+    @Nullable
+    private Bitmap decodeRegion(Rect rect, int targetWidth, int targetHeight, boolean isRtl) {
+        int newTargetWidth = targetWidth;
+        int newTargetHeight = targetHeight;
+        Rect cropRect = rect;
+        int exifOrientation = getExifOrientation();
+        // Switch target height and width if image is rotated 90 or 270 degrees, or transposed.
+        if (OrientedRegionDecoder.swapsDimensions(exifOrientation)) {
+            int tempHeight = newTargetHeight;
+            newTargetHeight = newTargetWidth;
+            newTargetWidth = tempHeight;
+        }
 
-            // If we're in RTL mode, center in the rightmost side of the image
-            if (isRtl) {
-                cropRect.set(dimensions.x - cropRect.right, cropRect.top,
-                        dimensions.x - cropRect.left, cropRect.bottom);
-            }
+        // Rotate crop rect if image is rotated more than 0 degrees.
+        Point dimensions = calculateRawDimensions();
+        cropRect = CropRectRotator.rotateCropRectForExifOrientation(
+                dimensions, cropRect, exifOrientation);
 
-            BitmapFactory.Options options = new BitmapFactory.Options();
-            options.inSampleSize = BitmapUtils.calculateInSampleSize(
-                    cropRect.width(), cropRect.height(), newTargetWidth, newTargetHeight);
+        // If we're in RTL mode, center in the rightmost side of the image
+        if (isRtl) {
+            cropRect.set(dimensions.x - cropRect.right, cropRect.top,
+                    dimensions.x - cropRect.left, cropRect.bottom);
+        }
 
-            if (mBitmapRegionDecoder == null) {
-                mBitmapRegionDecoder = openBitmapRegionDecoder();
-            }
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = BitmapUtils.calculateInSampleSize(
+                cropRect.width(), cropRect.height(), newTargetWidth, newTargetHeight);
+
+        if (mBitmapRegionDecoder == null) {
+            mBitmapRegionDecoder = openBitmapRegionDecoder();
+        }
 
-            // Bitmap region decoder may have failed to open if there was a problem with the
-            // underlying InputStream.
-            if (mBitmapRegionDecoder != null) {
-                try {
-                    Bitmap bitmap = mBitmapRegionDecoder.decodeRegion(cropRect, options);
-
-                    // Rotate output bitmap if necessary because of EXIF orientation.
-                    int matrixRotation = getDegreesRotationForExifOrientation(exifOrientation);
-                    if (matrixRotation > 0) {
-                        Matrix rotateMatrix = new Matrix();
-                        rotateMatrix.setRotate(matrixRotation);
-                        bitmap = Bitmap.createBitmap(
-                                bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), rotateMatrix,
-                                false);
-                    }
-                    decodeBitmapCompleted(receiver, bitmap);
-                    return;
-                } catch (OutOfMemoryError e) {
-                    Log.e(TAG, "Out of memory and unable to decode bitmap region", e);
-                } catch (IllegalArgumentException e) {
-                    Log.e(TAG, "Illegal argument for decoding bitmap region", e);
+        // Bitmap region decoder may have failed to open if there was a problem with the
+        // underlying InputStream.
+        if (mBitmapRegionDecoder != null) {
+            try {
+                // Decode straight into the EXIF orientation rather than rotating afterwards,
+                // which would briefly keep two copies of the region alive.
+                Bitmap bitmap = OrientedRegionDecoder.isNormal(exifOrientation)
+                        ? mBitmapRegionDecoder.decodeRegion(cropRect, options)
+                        : OrientedRegionDecoder.decode(
+                                OrientedRegionDecoder.from(mBitmapRegionDecoder), cropRect,
+                                options.inSampleSize, exifOrientation);
+                if (bitmap != null) {
+                    PerformanceMonitor monitor = PerformanceMonitor.get();
+                    monitor.incrementCounter(
+                            PerformanceMetrics.REGION_DECODES_REGION_DECODER, 1);
+                    monitor.incrementCounter(PerformanceMetrics.REGION_DECODE_BYTES,
+                            bitmap.getAllocationByteCount());
                 }
+                return bitmap;
+            } catch (OutOfMemoryError e) {
+                Log.e(TAG, "Out of memory and unable to decode bitmap region", e);
+            } catch (IllegalArgumentException e) {
+                Log.e(TAG, "Illegal argument for decoding bitmap region", e);
             }
-            decodeBitmapCompleted(receiver, null);
-        });
+        }
+        return null;
     }
 
     /**
@@ -298,9 +358,8 @@ public abstract class StreamableAsset extends Asset {
                 + "the image's raw dimensions");
 
         int exifOrientation = getExifOrientation();
-        // Swap height and width if image is rotated 90 or 270 degrees.
-        if (exifOrientation == ExifInterface.ORIENTATION_ROTATE_90
-                || exifOrientation == ExifInterface.ORIENTATION_ROTATE_270) {
+        // Swap height and width if image is rotated 90 or 270 degrees, or transposed.
+        if (OrientedRegionDecoder.swapsDimensions(exifOrientation)) {
             mDimensions = new Point(options.outHeight, options.outWidth);
         } else {
             mDimensions = new Point(options.outWidth, options.outHeight);
@@ -309,6 +368,67 @@ public abstract class StreamableAsset extends Asset {
         return mDimensions;
     }
 
+    /**
+     * Decodes the whole image, subsampled by {@code sampleSize} and then scaled by {@code scale},
+     * directly in its EXIF orientation with a {@link BitmapRegionDecoder}, or returns null if the
+     * image can't be region decoded.
+     *
+     * @param rawDimensions Dimensions of the image after EXIF orientation.
+     */
+    @Nullable
+    private Bitmap decodeOrientedBitmap(Point rawDimensions, int sampleSize, float scale,
+            int exifOrientation) {
+        BitmapRegionDecoder regionDecoder = openBitmapRegionDecoder();
+        if (regionDecoder == null) {
+            return null;
+        }
+        boolean swap = OrientedRegionDecoder.swapsDimensions(exifOrientation);
+        Rect rawRegion = new Rect(0, 0, swap ? rawDimensions.y : rawDimensions.x,
+                swap ? rawDimensions.x : rawDimensions.y);
+        try {
+            Bitmap bitmap = OrientedRegionDecoder.decode(OrientedRegionDecoder.from(regionDecoder),
+                    rawRegion, sampleSize, scale, exifOrientation);
+            if (bitmap != null) {
+                // Match the bitmaps decoded by decodeStream.
+                bitmap.setDensity(Bitmap.DENSITY_NONE);
+            }
+            return bitmap;
+        } catch (OutOfMemoryError | IllegalArgumentException e) {
+            Log.w(TAG, "Unable to decode oriented bitmap", e);
+            return null;
+        } finally {
+            regionDecoder.recycle();
+        }
+    }
+
+    /**
+     * Decodes the whole image from its input stream and applies the EXIF orientation afterwards.
+     * Used for formats that {@link BitmapRegionDecoder} can't read.
+     */
+    @Nullable
+    private Bitmap decodeStream(BitmapFactory.Options options, int exifOrientation) {
+        InputStream inputStream = openInputStream();
+        if (inputStream == null) {
+            return null;
+        }
+        Bitmap bitmap = BitmapUtils.decodeStream(inputStream, options);
+        closeInputStream(inputStream,
+                "Error closing the input stream used to decode the full bitmap");
+        if (bitmap == null || OrientedRegionDecoder.isNormal(exifOrientation)) {
+            return bitmap;
+        }
+
+        // Orient output bitmap if necessary because of EXIF orientation tag.
+        Matrix matrix = OrientedRegionDecoder.getOrientationMatrix(
+                exifOrientation, bitmap.getWidth(), bitmap.getHeight());
+        Bitmap oriented = Bitmap.createBitmap(
+                bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, false);
+        if (oriented != bitmap) {
+            bitmap.recycle();
+        }
+        return oriented;
+    }
+
     /**
      * Returns a BitmapRegionDecoder for the asset.
      */
@@ -324,6 +444,7 @@ public abstract class StreamableAsset extends Asset {
                 return null;
             }
             brd = BitmapRegionDecoder.newInstance(inputStream, true);
+            sOpenedRegionDecoders.incrementAndGet();
         } catch (IOException e) {
             Log.w(TAG, "Unable to open BitmapRegionDecoder", e);
         } finally {
@@ -1,50 +1,91 @@
 package com.android.wallpaper.asset;
 
+import android.app.Activity;
+import android.app.ActivityManager;
+import android.app.Application;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Point;
 import android.graphics.drawable.Drawable;
+import android.hardware.display.DisplayManager;
+import android.os.Bundle;
+import android.os.StatFs;
+import android.util.Log;
+import android.view.Display;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 
 import com.android.wallpaper.asset.CurrentWallpaperAssetLoader.CurrentWallpaperAssetLoaderFactory;
 import com.android.wallpaper.asset.LiveWallpaperThumbAssetLoader.LiveWallpaperThumbAssetLoaderFactory;
 import com.android.wallpaper.asset.ResourceAssetLoader.ResourceAssetLoaderFactory;
 import com.android.wallpaper.asset.SystemStaticAssetLoader.SystemStaticAssetLoaderFactory;
 import com.android.wallpaper.asset.WallpaperModelLoader.WallpaperModelLoaderFactory;
+import com.android.wallpaper.monitor.DiagnosticsWriter;
+import com.android.wallpaper.monitor.PerformanceMetrics;
+import com.android.wallpaper.monitor.PerformanceMonitor;
 
 import com.bumptech.glide.Glide;
 import com.bumptech.glide.GlideBuilder;
+import com.bumptech.glide.MemoryCategory;
 import com.bumptech.glide.Registry;
 import com.bumptech.glide.load.DecodeFormat;
+import com.bumptech.glide.load.engine.bitmap_recycle.BitmapPool;
+import com.bumptech.glide.load.engine.bitmap_recycle.LruBitmapPool;
+import com.bumptech.glide.load.engine.cache.DiskCache;
 import com.bumptech.glide.load.engine.cache.InternalCacheDiskCacheFactory;
+import com.bumptech.glide.load.engine.cache.LruResourceCache;
 import com.bumptech.glide.load.engine.cache.MemorySizeCalculator;
 import com.bumptech.glide.module.GlideModule;
 import com.bumptech.glide.request.RequestOptions;
 
+import java.io.File;
 import java.io.InputStream;
 
 /**
- * Provides configuration for Glide, such as specifying an internal disk cache size.
+ * Provides configuration for Glide. Cache sizes are derived from the device rather than fixed, see
+ * {@link GlideCacheSizing}, and the memory caches shrink while the system is low on memory.
  */
 public class WallpaperGlideModule implements GlideModule {
-    /**
-     * Disk cache size for wallpaper: 100MB.
-     */
-    private static final int WALLPAPER_DISK_CACHE_SIZE_BYTES = 100 * 1024 * 1024;
+    private static final String TAG = "WallpaperGlideModule";
+
+    private static final String DUMP_SECTION = "glide";
+
+    /** Glide's memory cache, kept so that its occupancy can be dumped. */
+    private static LruResourceCache sMemoryCache;
+
+    private static GlideCacheSizing sCacheSizing;
+
+    private static volatile MemoryCategory sMemoryCategory = MemoryCategory.NORMAL;
 
     @Override
     public void applyOptions(Context context, GlideBuilder builder) {
-        // Default Glide cache size is 250MB so make the wallpaper cache much smaller at 100MB.
+        GlideCacheSizing sizing = computeCacheSizing(context);
+        sCacheSizing = sizing;
+
         builder.setDiskCache(new InternalCacheDiskCacheFactory(
-                context, WALLPAPER_DISK_CACHE_SIZE_BYTES));
+                context, sizing.diskCacheSizeBytes));
 
-        // Default # of bitmap pool screens is 4, so reduce to 2 to make room for the additional memory
-        // consumed by tiling large images in preview and also the large bitmap consumed by the live
-        // wallpaper for daily rotation.
         MemorySizeCalculator calculator = new MemorySizeCalculator.Builder(context)
-                .setBitmapPoolScreens(2f)
-                .setMemoryCacheScreens(1.2f)
+                .setBitmapPoolScreens(sizing.bitmapPoolScreens)
+                .setMemoryCacheScreens(sizing.memoryCacheScreens)
                 .build();
         builder.setMemorySizeCalculator(calculator);
+        sMemoryCache = new LruResourceCache(calculator.getMemoryCacheSize());
+        builder.setMemoryCache(sMemoryCache);
+        // Full size previews and crops are still decoded with alpha; thumbnails opt out of it with
+        // thumbnailOptions().
         builder.setDefaultRequestOptions(
                 new RequestOptions().format(DecodeFormat.PREFER_ARGB_8888));
+
+        PerformanceMonitor monitor = PerformanceMonitor.get();
+        monitor.setGauge(PerformanceMetrics.GLIDE_DISK_CACHE_MAX_BYTES, sizing.diskCacheSizeBytes);
+        monitor.setGauge(PerformanceMetrics.GLIDE_MEMORY_CACHE_MAX_BYTES,
+                calculator.getMemoryCacheSize());
+        monitor.setGauge(PerformanceMetrics.GLIDE_BITMAP_POOL_MAX_BYTES,
+                calculator.getBitmapPoolSize());
     }
 
     @Override
@@ -58,5 +99,165 @@ public class WallpaperGlideModule implements GlideModule {
         registry.append(CurrentWallpaperAsset.class, InputStream.class,
                 new CurrentWallpaperAssetLoaderFactory());
         registry.append(Drawable.class, Drawable.class, new DrawableResourceDecoder());
+
+        registerMemoryCallbacks(context.getApplicationContext(), glide);
+    }
+
+    /**
+     * Returns request options for grid thumbnails. Thumbnails are opaque photos in all but rare
+     * cases, so they are decoded as RGB_565, halving their footprint in the caches; Glide still
+     * decodes images that do have alpha as ARGB_8888.
+     */
+    public static RequestOptions thumbnailOptions() {
+        return new RequestOptions().format(DecodeFormat.PREFER_RGB_565);
+    }
+
+    /**
+     * Returns whether Glide's memory caches should shrink for the given
+     * {@link ComponentCallbacks2} trim level. Glide already clears its caches in response to these
+     * levels, this keeps them from refilling to full size right after.
+     */
+    @VisibleForTesting
+    static boolean shouldShrinkMemoryCaches(int level) {
+        return level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL
+                || level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND;
+    }
+
+    private static GlideCacheSizing computeCacheSizing(Context context) {
+        ActivityManager activityManager = context.getSystemService(ActivityManager.class);
+        int memoryClassMb = activityManager.getMemoryClass();
+        boolean isLowRamDevice = activityManager.isLowRamDevice();
+
+        long screenPixels = 0;
+        Point size = new Point();
+        for (Display display : context.getSystemService(DisplayManager.class).getDisplays()) {
+            display.getRealSize(size);
+            screenPixels = Math.max(screenPixels, (long) size.x * size.y);
+        }
+
+        long freeDiskBytes;
+        try {
+            freeDiskBytes = new StatFs(context.getCacheDir().getPath()).getAvailableBytes();
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Couldn't query free space of the cache dir", e);
+            freeDiskBytes = 0;
+        }
+        return GlideCacheSizing.compute(memoryClassMb, isLowRamDevice, screenPixels,
+                freeDiskBytes);
+    }
+
+    /**
+     * Shrinks Glide's memory caches to {@link MemoryCategory#LOW} on memory pressure, and restores
+     * them once an activity of the picker is started again.
+     */
+    private static void registerMemoryCallbacks(Context appContext, Glide glide) {
+        appContext.registerComponentCallbacks(new ComponentCallbacks2() {
+            @Override
+            public void onTrimMemory(int level) {
+                if (shouldShrinkMemoryCaches(level)) {
+                    setMemoryCategory(glide, MemoryCategory.LOW);
+                }
+            }
+
+            @Override
+            public void onConfigurationChanged(@NonNull Configuration newConfig) {}
+
+            @Override
+            public void onLowMemory() {
+                setMemoryCategory(glide, MemoryCategory.LOW);
+            }
+        });
+        if (appContext instanceof Application) {
+            ((Application) appContext).registerActivityLifecycleCallbacks(
+                    new Application.ActivityLifecycleCallbacks() {
+                        @Override
+                        public void onActivityStarted(@NonNull Activity activity) {
+                            setMemoryCategory(glide, MemoryCategory.NORMAL);
+                        }
+
+                        @Override
+                        public void onActivityCreated(@NonNull Activity activity,
+                                @Nullable Bundle savedInstanceState) {}
+
+                        @Override
+                        public void onActivityResumed(@NonNull Activity activity) {}
+
+                        @Override
+                        public void onActivityPaused(@NonNull Activity activity) {}
+
+                        @Override
+                        public void onActivityStopped(@NonNull Activity activity) {}
+
+                        @Override
+                        public void onActivitySaveInstanceState(@NonNull Activity activity,
+                                @NonNull Bundle outState) {}
+
+                        @Override
+                        public void onActivityDestroyed(@NonNull Activity activity) {}
+                    });
+        }
+    }
+
+    private static void setMemoryCategory(Glide glide, MemoryCategory category) {
+        if (sMemoryCategory == category) {
+            return;
+        }
+        sMemoryCategory = category;
+        // Glide may only change its caches from the main thread, which is where both trim and
+        // activity lifecycle callbacks are delivered.
+        glide.setMemoryCategory(category);
+        PerformanceMonitor monitor = PerformanceMonitor.get();
+        if (category != MemoryCategory.NORMAL) {
+            monitor.incrementCounter(PerformanceMetrics.GLIDE_CACHE_TRIMS, 1);
+        }
+        LruResourceCache memoryCache = sMemoryCache;
+        if (memoryCache != null) {
+            monitor.setGauge(PerformanceMetrics.GLIDE_MEMORY_CACHE_MAX_BYTES,
+                    memoryCache.getMaxSize());
+        }
+        monitor.setGauge(PerformanceMetrics.GLIDE_BITMAP_POOL_MAX_BYTES,
+                glide.getBitmapPool().getMaxSize());
+    }
+
+    /**
+     * Writes the occupancy of Glide's memory cache, bitmap pool and disk cache to the given
+     * diagnostics dump. Walks the disk cache directory, so only call it from dumpsys.
+     */
+    public static void dump(Context context, DiagnosticsWriter writer) {
+        writer.value(DUMP_SECTION, "memory_category", sMemoryCategory.name());
+        LruResourceCache memoryCache = sMemoryCache;
+        if (memoryCache != null) {
+            writer.value(DUMP_SECTION, "memory_cache.size_bytes", memoryCache.getCurrentSize());
+            writer.value(DUMP_SECTION, "memory_cache.max_size_bytes", memoryCache.getMaxSize());
+        }
+        BitmapPool bitmapPool = Glide.get(context).getBitmapPool();
+        writer.value(DUMP_SECTION, "bitmap_pool.max_size_bytes", bitmapPool.getMaxSize());
+        if (bitmapPool instanceof LruBitmapPool) {
+            LruBitmapPool lruBitmapPool = (LruBitmapPool) bitmapPool;
+            writer.value(DUMP_SECTION, "bitmap_pool.size_bytes", lruBitmapPool.getCurrentSize());
+            writer.value(DUMP_SECTION, "bitmap_pool.hits", lruBitmapPool.hitCount());
+            writer.value(DUMP_SECTION, "bitmap_pool.misses", lruBitmapPool.missCount());
+            writer.value(DUMP_SECTION, "bitmap_pool.evictions", lruBitmapPool.evictionCount());
+        }
+        File diskCacheDir = new File(context.getCacheDir(),
+                DiskCache.Factory.DEFAULT_DISK_CACHE_DIR);
+        writer.value(DUMP_SECTION, "disk_cache.size_bytes", directorySize(diskCacheDir));
+        GlideCacheSizing sizing = sCacheSizing;
+        if (sizing != null) {
+            writer.value(DUMP_SECTION, "disk_cache.max_size_bytes", sizing.diskCacheSizeBytes);
+        }
+    }
+
+    private static long directorySize(File dir) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return 0;
+        }
+        long size = 0;
+        for (File file : files) {
+            size += file.isDirectory() ? directorySize(file) : file.length();
+        }
+        return size;
     }
 }
@@ -23,36 +23,45 @@ import android.app.job.JobScheduler;
 import android.app.job.JobService;
 import android.content.ComponentName;
 import android.content.Context;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.graphics.drawable.BitmapDrawable;
-import android.graphics.drawable.Drawable;
+import android.content.SharedPreferences;
 import android.os.ParcelFileDescriptor;
 import android.util.Log;
 
 import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 
-import com.android.wallpaper.asset.BitmapUtils;
+import com.android.wallpaper.backup.StreamingHashCodeGenerator.Progress;
 import com.android.wallpaper.module.Injector;
 import com.android.wallpaper.module.InjectorProvider;
 import com.android.wallpaper.module.JobSchedulerJobIds;
 import com.android.wallpaper.module.WallpaperPreferences;
 
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 
 /**
  * {@link android.app.job.JobScheduler} job for generating missing hash codes for static wallpapers
  * on N+ devices.
+ * <p>
+ * Hash codes are computed by {@link StreamingHashCodeGenerator} from the wallpaper files, so that
+ * not even an 8K wallpaper is decoded whole. Progress is checkpointed per destination, keyed by
+ * the {@link WallpaperManager} id of the wallpaper, so a job stopped by the system resumes where it
+ * left off as long as the wallpaper has not changed, and a wallpaper that cannot be decoded is not
+ * retried until it changes.
  */
 @SuppressLint("ServiceCast")
 public class MissingHashCodeGeneratorJobService extends JobService {
 
     private static final String TAG = "MissingHashCodeGenerato"; // max 23 characters
+    private static final String CHECKPOINT_PREFS_NAME = "missing_hash_code_generator";
+    private static final String DESTINATION_HOME = "home";
+    private static final String DESTINATION_LOCK = "lock";
+    private static final String KEY_SUFFIX_WALLPAPER_ID = "_wallpaper_id";
+    private static final String KEY_SUFFIX_PROGRESS = "_progress";
+    private static final String KEY_SUFFIX_FAILED_WALLPAPER_ID = "_failed_wallpaper_id";
+    private static final int NO_WALLPAPER_ID = -1;
 
     private Thread mWorkerThread;
+    private volatile boolean mStopped;
 
     public static void schedule(Context context) {
         JobScheduler scheduler = context.getSystemService(JobScheduler.class);
@@ -74,82 +83,16 @@ public class MissingHashCodeGeneratorJobService extends JobService {
         final WallpaperManager wallpaperManager = (WallpaperManager) context.getSystemService(
                 Context.WALLPAPER_SERVICE);
 
+        mStopped = false;
         // Generate missing hash codes on a plain worker thread because we need to do some
         // long-running disk I/O and can call #jobFinished from a background thread.
-        mWorkerThread = new Thread(new Runnable() {
-            @Override
-            public void run() {
-                Injector injector = InjectorProvider.getInjector();
-                WallpaperPreferences wallpaperPreferences = injector.getPreferences(context);
-
-                boolean isLiveWallpaperSet = wallpaperManager.getWallpaperInfo() != null;
-
-                // Generate and set a home wallpaper hash code if there's no live wallpaper set
-                // and no hash code stored already for the home wallpaper.
-                if (!isLiveWallpaperSet && wallpaperPreferences.getHomeWallpaperHashCode() == 0) {
-                    wallpaperManager.forgetLoadedWallpaper();
-
-                    Drawable wallpaperDrawable = wallpaperManager.getDrawable();
-                    // No work to do if the drawable returned is null due to an underlying
-                    // platform issue -- being extra defensive with this check due to instability
-                    // and variability of underlying platform.
-                    if (wallpaperDrawable == null) {
-                        jobFinished(jobParameters, false /* needsReschedule */);
-                        return;
-                    }
-
-                    Bitmap bitmap = ((BitmapDrawable) wallpaperDrawable).getBitmap();
-                    long homeBitmapHash = BitmapUtils.generateHashCode(bitmap);
-
-                    wallpaperPreferences.setHomeWallpaperHashCode(homeBitmapHash);
-                }
-
-                // Generate and set a lock wallpaper hash code if there's none saved.
-                if (wallpaperPreferences.getLockWallpaperHashCode() == 0) {
-                    ParcelFileDescriptor parcelFd = wallpaperManager.getWallpaperFile(
-                            WallpaperManager.FLAG_LOCK);
-                    boolean isLockWallpaperSet = parcelFd != null;
-
-                    // Copy the home wallpaper's hash code to lock if there's no distinct lock
-                    // wallpaper set.
-                    if (!isLockWallpaperSet) {
-                        wallpaperPreferences.setLockWallpaperHashCode(
-                                wallpaperPreferences.getHomeWallpaperHashCode());
-                        mWorkerThread = null;
-                        jobFinished(jobParameters, false /* needsReschedule */);
-                        return;
-                    }
-
-                    // Otherwise, generate and set the distinct lock wallpaper image's hash code.
-                    Bitmap lockBitmap = null;
-                    InputStream fileStream = null;
-                    try {
-                        fileStream = new FileInputStream(parcelFd.getFileDescriptor());
-                        lockBitmap = BitmapFactory.decodeStream(fileStream);
-                        parcelFd.close();
-                    } catch (IOException e) {
-                        Log.e(TAG, "IO exception when closing the file descriptor.", e);
-                    } finally {
-                        if (fileStream != null) {
-                            try {
-                                fileStream.close();
-                            } catch (IOException e) {
-                                Log.e(TAG,
-                                        "IO exception when closing input stream for lock screen "
-                                                + "wallpaper.",
-                                        e);
-                            }
-                        }
-                    }
-
-                    if (lockBitmap != null) {
-                        wallpaperPreferences.setLockWallpaperHashCode(
-                                BitmapUtils.generateHashCode(lockBitmap));
-                    }
-                    mWorkerThread = null;
-
-                    jobFinished(jobParameters, false /* needsReschedule */);
-                }
+        mWorkerThread = new Thread(() -> {
+            Injector injector = InjectorProvider.getInjector();
+            boolean finished = generateMissingHashCodes(
+                    context, wallpaperManager, injector.getPreferences(context));
+            mWorkerThread = null;
+            if (finished) {
+                jobFinished(jobParameters, false /* needsReschedule */);
             }
         });
 
@@ -161,11 +104,110 @@ public class MissingHashCodeGeneratorJobService extends JobService {
 
     @Override
     public boolean onStopJob(JobParameters jobParameters) {
-        // This job has no special execution parameters (i.e., network capability, device idle or
-        // charging), so Android should never call this method to stop the execution of this job
-        // early. Return "false" to indicate that this job should not be rescheduled when it's
-        // stopped because we have to provide an implementation of this method.
-        return false;
+        // The worker checkpoints after every row it samples and stops at the next one. Ask to be
+        // rescheduled so that the next run resumes from the checkpoint.
+        mStopped = true;
+        return true;
+    }
+
+    /**
+     * Generates and stores the hash codes that are missing.
+     *
+     * @return false if the job was stopped before it was done
+     */
+    @VisibleForTesting
+    /* package */ boolean generateMissingHashCodes(Context context,
+            WallpaperManager wallpaperManager, WallpaperPreferences wallpaperPreferences) {
+        SharedPreferences checkpoints =
+                context.getSharedPreferences(CHECKPOINT_PREFS_NAME, Context.MODE_PRIVATE);
+        boolean isLiveWallpaperSet = wallpaperManager.getWallpaperInfo() != null;
+
+        // Generate and set a home wallpaper hash code if there's no live wallpaper set
+        // and no hash code stored already for the home wallpaper.
+        if (!isLiveWallpaperSet && wallpaperPreferences.getHomeWallpaperHashCode() == 0) {
+            ParcelFileDescriptor homeFd =
+                    wallpaperManager.getWallpaperFile(WallpaperManager.FLAG_SYSTEM);
+            // No work to do if there is no file due to an underlying platform issue.
+            if (homeFd != null) {
+                Long homeHash = generateHashCode(checkpoints, homeFd,
+                        wallpaperManager.getWallpaperId(WallpaperManager.FLAG_SYSTEM),
+                        DESTINATION_HOME);
+                // A hash that was completed is kept even if the job was stopped meanwhile.
+                if (homeHash != null) {
+                    wallpaperPreferences.setHomeWallpaperHashCode(homeHash);
+                }
+                if (mStopped) {
+                    return false;
+                }
+            }
+        }
+
+        // Generate and set a lock wallpaper hash code if there's none saved.
+        if (wallpaperPreferences.getLockWallpaperHashCode() == 0) {
+            ParcelFileDescriptor lockFd =
+                    wallpaperManager.getWallpaperFile(WallpaperManager.FLAG_LOCK);
+
+            // Copy the home wallpaper's hash code to lock if there's no distinct lock
+            // wallpaper set.
+            if (lockFd == null) {
+                wallpaperPreferences.setLockWallpaperHashCode(
+                        wallpaperPreferences.getHomeWallpaperHashCode());
+                return true;
+            }
+
+            // Otherwise, generate and set the distinct lock wallpaper image's hash code.
+            Long lockHash = generateHashCode(checkpoints, lockFd,
+                    wallpaperManager.getWallpaperId(WallpaperManager.FLAG_LOCK),
+                    DESTINATION_LOCK);
+            if (lockHash != null) {
+                wallpaperPreferences.setLockWallpaperHashCode(lockHash);
+            }
+            if (mStopped) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the hash code of the wallpaper in the given file, which is closed, resuming from and
+     * updating the destination's checkpoint. Returns null if stopped, or if the wallpaper cannot be
+     * decoded now or could not be last time.
+     */
+    @Nullable
+    private Long generateHashCode(SharedPreferences checkpoints, ParcelFileDescriptor fd,
+            int wallpaperId, String destination) {
+        String wallpaperIdKey = destination + KEY_SUFFIX_WALLPAPER_ID;
+        String progressKey = destination + KEY_SUFFIX_PROGRESS;
+        String failedKey = destination + KEY_SUFFIX_FAILED_WALLPAPER_ID;
+
+        try (ParcelFileDescriptor file = fd) {
+            if (checkpoints.getInt(failedKey, NO_WALLPAPER_ID) == wallpaperId) {
+                return null;
+            }
+            Progress resumeFrom = checkpoints.getInt(wallpaperIdKey, NO_WALLPAPER_ID) == wallpaperId
+                    ? Progress.parse(checkpoints.getString(progressKey, null))
+                    : null;
+            Long hash = StreamingHashCodeGenerator.generate(file, resumeFrom,
+                    StreamingHashCodeGenerator.DEFAULT_MEMORY_BUDGET_BYTES, progress -> {
+                        checkpoints.edit()
+                                .putInt(wallpaperIdKey, wallpaperId)
+                                .putString(progressKey, progress.serialize())
+                                .apply();
+                        return !mStopped;
+                    });
+            if (hash != null) {
+                checkpoints.edit().remove(wallpaperIdKey).remove(progressKey).apply();
+            } else if (!mStopped) {
+                Log.w(TAG, "Unable to decode " + destination + " wallpaper " + wallpaperId);
+                checkpoints.edit().putInt(failedKey, wallpaperId).apply();
+            }
+            return hash;
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to read " + destination + " wallpaper " + wallpaperId, e);
+            checkpoints.edit().putInt(failedKey, wallpaperId).apply();
+            return null;
+        }
     }
 
     @Nullable
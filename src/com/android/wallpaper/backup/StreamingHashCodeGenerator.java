@@ -0,0 +1,254 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.wallpaper.backup;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.os.ParcelFileDescriptor;
+import android.text.TextUtils;
+
+import androidx.annotation.Nullable;
+
+import com.android.wallpaper.asset.BitmapUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Computes {@link BitmapUtils#generateHashCode(Bitmap)} of an encoded image without decoding it
+ * whole.
+ * <p>
+ * The hash only samples pixels on a few rows, so only a thin band around each of those rows is
+ * decoded, never more than a memory budget at once. The samples gathered so far can be saved as a
+ * {@link Progress} after each row and handed back later to resume.
+ * <p>
+ * Prefer the {@link ParcelFileDescriptor} overloads where the image is in a file: the decoder then
+ * reads the bands it needs from the file, whereas given a stream it first copies the whole encoded
+ * image into memory.
+ */
+public class StreamingHashCodeGenerator {
+
+    static final int DEFAULT_MEMORY_BUDGET_BYTES = 2 * 1024 * 1024;
+    /**
+     * Rows decoded on each side of a sampled row, so that it is decoded away from the edge of the
+     * region, where the chroma upsampling of some decoders differs from a full decode.
+     */
+    private static final int ROW_MARGIN = 16;
+    private static final int BYTES_PER_PIXEL = 4;
+
+    /** Receives the progress made after each sampled row. */
+    interface ProgressListener {
+        /** @return whether to go on with the next row */
+        boolean onProgress(Progress progress);
+    }
+
+    /** The pixels sampled so far for an image of a given size, row by row. */
+    static final class Progress {
+        private static final String SEPARATOR = ",";
+
+        final int mWidth;
+        final int mHeight;
+        /** Sampled pixels of the rows done so far, in row order. */
+        final int[] mSamples;
+
+        Progress(int width, int height, int[] samples) {
+            mWidth = width;
+            mHeight = height;
+            mSamples = samples;
+        }
+
+        int getRowsDone() {
+            return mSamples.length / sampledPositions(mWidth).length;
+        }
+
+        String serialize() {
+            StringBuilder builder = new StringBuilder();
+            builder.append(mWidth).append(SEPARATOR).append(mHeight);
+            for (int sample : mSamples) {
+                builder.append(SEPARATOR).append(sample);
+            }
+            return builder.toString();
+        }
+
+        /** Returns the progress saved by {@link #serialize()}, or null if it is malformed. */
+        @Nullable
+        static Progress parse(@Nullable String serialized) {
+            if (TextUtils.isEmpty(serialized)) {
+                return null;
+            }
+            String[] parts = serialized.split(SEPARATOR);
+            if (parts.length < 2) {
+                return null;
+            }
+            try {
+                int[] samples = new int[parts.length - 2];
+                for (int i = 0; i < samples.length; i++) {
+                    samples[i] = Integer.parseInt(parts[i + 2]);
+                }
+                Progress progress = new Progress(
+                        Integer.parseInt(parts[0]), Integer.parseInt(parts[1]), samples);
+                if (progress.mWidth <= 0 || progress.mHeight <= 0
+                        || samples.length % sampledPositions(progress.mWidth).length != 0) {
+                    return null;
+                }
+                return progress;
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+
+    private StreamingHashCodeGenerator() {
+    }
+
+    /**
+     * Returns the hash code of the image in the given file, or null if it cannot be decoded. The
+     * file is not closed.
+     */
+    @Nullable
+    public static Long generate(ParcelFileDescriptor fd) throws IOException {
+        return generate(fd, /* resumeFrom= */ null, DEFAULT_MEMORY_BUDGET_BYTES,
+                progress -> true);
+    }
+
+    /**
+     * Returns the hash code of the image in the given stream, or null if it cannot be decoded.
+     */
+    @Nullable
+    public static Long generate(InputStream inputStream) throws IOException {
+        return generate(inputStream, /* resumeFrom= */ null, DEFAULT_MEMORY_BUDGET_BYTES,
+                progress -> true);
+    }
+
+    /**
+     * Returns the hash code of the image in the given file, which is not closed.
+     *
+     * @see #generate(InputStream, Progress, int, ProgressListener)
+     */
+    @Nullable
+    static Long generate(ParcelFileDescriptor fd, @Nullable Progress resumeFrom,
+            int memoryBudgetBytes, ProgressListener listener) throws IOException {
+        return generate(BitmapRegionDecoder.newInstance(fd), resumeFrom, memoryBudgetBytes,
+                listener);
+    }
+
+    /**
+     * Returns the hash code of the image in the given stream.
+     *
+     * @param resumeFrom        progress saved by an earlier call for the same image, or null;
+     *                          ignored if it does not match the image's size
+     * @param memoryBudgetBytes upper bound for the pixels decoded at once
+     * @param listener          told about the progress after each row, and may stop the
+     *                          generation
+     * @return the hash code, or null if the listener stopped the generation or the image could not
+     * be decoded
+     */
+    @Nullable
+    static Long generate(InputStream inputStream, @Nullable Progress resumeFrom,
+            int memoryBudgetBytes, ProgressListener listener) throws IOException {
+        return generate(BitmapRegionDecoder.newInstance(inputStream, true), resumeFrom,
+                memoryBudgetBytes, listener);
+    }
+
+    @Nullable
+    private static Long generate(@Nullable BitmapRegionDecoder decoder,
+            @Nullable Progress resumeFrom, int memoryBudgetBytes, ProgressListener listener) {
+        if (decoder == null) {
+            return null;
+        }
+        try {
+            int width = decoder.getWidth();
+            int height = decoder.getHeight();
+            int[] xs = sampledPositions(width);
+            int[] ys = sampledPositions(height);
+            int margin = Math.min(ROW_MARGIN,
+                    Math.max(0, (memoryBudgetBytes / (width * BYTES_PER_PIXEL) - 1) / 2));
+
+            List<Integer> samples = new ArrayList<>(xs.length * ys.length);
+            int firstRow = 0;
+            if (resumeFrom != null && resumeFrom.mWidth == width
+                    && resumeFrom.mHeight == height) {
+                for (int sample : resumeFrom.mSamples) {
+                    samples.add(sample);
+                }
+                firstRow = resumeFrom.getRowsDone();
+            }
+
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+            for (int row = firstRow; row < ys.length; row++) {
+                int y = ys[row];
+                Rect band = new Rect(0, Math.max(0, y - margin), width,
+                        Math.min(height, y + margin + 1));
+                Bitmap bitmap = decoder.decodeRegion(band, options);
+                if (bitmap == null) {
+                    return null;
+                }
+                for (int x : xs) {
+                    samples.add(bitmap.getPixel(x, y - band.top));
+                }
+                bitmap.recycle();
+
+                if (row < ys.length - 1
+                        && !listener.onProgress(new Progress(width, height, toArray(samples)))) {
+                    return null;
+                }
+            }
+            return combine(width, height, xs.length, ys.length, samples);
+        } finally {
+            decoder.recycle();
+        }
+    }
+
+    /** Positions sampled along a side of the given length: 0, 1, 3, 7, 15 and so on. */
+    private static int[] sampledPositions(int length) {
+        int count = 0;
+        for (int i = 0; i < length; i = i * 2 + 1) {
+            count++;
+        }
+        int[] positions = new int[count];
+        for (int i = 0, position = 0; i < count; i++, position = position * 2 + 1) {
+            positions[i] = position;
+        }
+        return positions;
+    }
+
+    /** Combines row-major samples in the column-major order of the full-bitmap hash. */
+    private static long combine(int width, int height, int columns, int rows,
+            List<Integer> samples) {
+        long result = 17;
+        result = 31 * result + width;
+        result = 31 * result + height;
+        for (int column = 0; column < columns; column++) {
+            for (int row = 0; row < rows; row++) {
+                result = 31 * result + samples.get(row * columns + column);
+            }
+        }
+        return result;
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+}
@@ -29,6 +29,7 @@ import com.android.wallpaper.Flags.composeRefactorFlag
 import com.android.wallpaper.Flags.newCreativeWallpaperCategory
 import com.android.wallpaper.Flags.refactorWallpaperCategoryFlag
 import com.android.wallpaper.Flags.wallpaperRestorerFlag
+import com.android.wallpaper.asset.DecodeSizing
 import com.android.wallpaper.module.InjectorProvider
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.runBlocking
@@ -65,6 +66,9 @@ abstract class BaseFlags {
 
     open fun isComposeRefactorEnabled() = composeRefactorFlag()
 
+    /** How bitmaps decoded for a target size trade detail against memory. */
+    open fun getDecodeSizing() = DecodeSizing.MEMORY
+
     // This is just a local flag in order to ensure right behaviour in case
     // something goes wrong with PhotoPicker integration.
     open fun isPhotoPickerEnabled() = false
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.wallpaper.module
+
+import android.content.Context
+import com.android.wallpaper.model.WallpaperInfo
+import com.android.wallpaper.model.WallpaperInfoPair
+import com.android.wallpaper.module.WallpaperPreferences.PresentationMode
+import kotlin.coroutines.resume
+import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.suspendCancellableCoroutine
+
+/**
+ * Interface for factories which construct [WallpaperInfo] objects representing the device's
+ * currently set wallpapers.
+ */
+interface CurrentWallpaperInfoFactory {
+
+    /**
+     * Constructs WallpaperInfo object(s) to represent the current home wallpaper and optionally the
+     * current lock wallpaper if device is running Android N or later and lock wallpaper is
+     * explicitly set.
+     *
+     * @param forceRefresh Whether the factory should ignore cached copies of the WallpaperInfo(s)
+     *   and presentation mode that represent the currently-set wallpaper.
+     */
+    fun createCurrentWallpaperInfos(
+        context: Context,
+        forceRefresh: Boolean,
+        callback: WallpaperInfoCallback,
+    )
+
+    /**
+     * Returns a hot stream of the [WallpaperInfoPair] currently set on the device. The value is
+     * null until the first refresh completes and whenever the wallpaper changed since, and follows
+     * changes of the display configuration.
+     */
+    fun getCurrentWallpaperInfos(): StateFlow<WallpaperInfoPair?>
+
+    /**
+     * Returns the [WallpaperInfoPair] currently set on the device. The latest value of
+     * [getCurrentWallpaperInfos] is returned as it is, unless [forceRefresh] is set or there is
+     * none, in which case it waits for [createCurrentWallpaperInfos].
+     */
+    suspend fun getCurrentWallpaperInfoPair(
+        context: Context,
+        forceRefresh: Boolean,
+    ): WallpaperInfoPair =
+        getCurrentWallpaperInfos().value.takeUnless { forceRefresh }
+            ?: suspendCancellableCoroutine { continuation ->
+                createCurrentWallpaperInfos(context, forceRefresh) {
+                    homeWallpaper,
+                    lockWallpaper,
+                    presentationMode ->
+                    continuation.resume(
+                        WallpaperInfoPair(homeWallpaper, lockWallpaper, presentationMode)
+                    )
+                }
+            }
+
+    /** Clears cached wallpaper copies to let refresher load the latest wallpaper. */
+    fun clearCurrentWallpaperInfos()
+
+    /**
+     * Interface which clients may implement to receive current wallpaper [WallpaperInfo] objects
+     * constructed by the factory as well as the mode which describes their current presentation
+     * (i.e., daily rotation or static).
+     */
+    fun interface WallpaperInfoCallback {
+        fun onWallpaperInfoCreated(
+            homeWallpaper: WallpaperInfo,
+            lockWallpaper: WallpaperInfo?,
+            @PresentationMode presentationMode: Int,
+        )
+    }
+}
@@ -0,0 +1,446 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.wallpaper.module
+
+import android.app.Flags.liveWallpaperContentHandling
+import android.app.WallpaperColors
+import android.app.WallpaperManager
+import android.app.WallpaperManager.FLAG_LOCK
+import android.app.WallpaperManager.FLAG_SYSTEM
+import android.content.ComponentName
+import android.content.Context
+import android.graphics.Point
+import android.graphics.Rect
+import android.hardware.display.DisplayManager
+import android.os.Handler
+import android.os.Looper
+import android.os.SystemClock
+import com.android.wallpaper.config.BaseFlags
+import com.android.wallpaper.model.CreativeWallpaperInfo
+import com.android.wallpaper.model.CurrentWallpaperInfo
+import com.android.wallpaper.model.DefaultWallpaperInfo
+import com.android.wallpaper.model.LiveWallpaperInfo
+import com.android.wallpaper.model.LiveWallpaperMetadata
+import com.android.wallpaper.model.WallpaperInfo
+import com.android.wallpaper.model.WallpaperInfoPair
+import com.android.wallpaper.model.WallpaperMetadata
+import com.android.wallpaper.module.CurrentWallpaperInfoFactory.WallpaperInfoCallback
+import com.android.wallpaper.monitor.DiagnosticsWriter
+import com.android.wallpaper.monitor.Dumpable
+import com.android.wallpaper.picker.customization.data.content.WallpaperClient
+import com.android.wallpaper.util.DisplayUtils
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicReference
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.launch
+
+/**
+ * Default implementation of [CurrentWallpaperInfoFactory] which actually constructs
+ * [WallpaperInfo] instances representing the wallpapers currently set to the device.
+ *
+ * The latest [WallpaperInfoPair] is kept as an immutable snapshot, so callers can read it without
+ * contending on a lock. [WallpaperInfo]s are never modified once published; resolving the crop
+ * hints for new display sizes builds new instances. Crop hints are cached per wallpaper id and
+ * display size.
+ *
+ * A wallpaper change only invalidates the snapshot, since a refresh at that point would race
+ * [SetWallpaperPipeline] writing the new wallpaper's metadata. The snapshot is recomputed once the
+ * app's own set is complete, as reported by [WallpaperChangedNotifier], or else on the next read.
+ * A display configuration change re-resolves the crop hints of the current snapshot off the main
+ * thread.
+ */
+class DefaultCurrentWallpaperInfoFactory(
+    context: Context,
+    private val wallpaperRefresher: WallpaperRefresher,
+    wallpaperChangedNotifier: WallpaperChangedNotifier,
+    private val liveWallpaperInfoFactory: LiveWallpaperInfoFactory,
+    private val wallpaperClient: WallpaperClient,
+    private val displayUtils: DisplayUtils,
+    private val flags: BaseFlags,
+    bgDispatcher: CoroutineDispatcher,
+) : CurrentWallpaperInfoFactory, Dumpable {
+
+    private val appContext = context.applicationContext
+    private val wallpaperManager = WallpaperManager.getInstance(appContext)
+    private val bgScope = CoroutineScope(SupervisorJob() + bgDispatcher)
+
+    private val currentWallpaperInfos = MutableStateFlow<WallpaperInfoPair?>(null)
+
+    // Snapshot of the currently-set WallpaperInfo(s) and presentation mode, and the wallpaper ids
+    // they were created from. Replaced as a whole, never mutated in place.
+    private val snapshot = AtomicReference<Snapshot?>(null)
+    @Volatile private var displaySizes: List<Point>? = null
+    private val cropHintsCache = ConcurrentHashMap<CropHintsKey, Rect>()
+
+    // Callbacks waiting on an in-flight refresh, so that concurrent callers share one refresh.
+    private val pendingCallbacks = mutableListOf<WallpaperInfoCallback>()
+    private var isRefreshing = false
+    private var rerunRequested = false
+
+    init {
+        val mainHandler = Handler(Looper.getMainLooper())
+        wallpaperClient.addOnColorsChangedListener(
+            { _: WallpaperColors?, _: Int -> onWallpaperChanged() },
+            mainHandler,
+        )
+        wallpaperChangedNotifier.registerListener {
+            // The app's own set has written its metadata by now.
+            onWallpaperChanged()
+            refresh(callback = null, force = true)
+        }
+        appContext
+            .getSystemService(DisplayManager::class.java)
+            ?.registerDisplayListener(
+                object : DisplayManager.DisplayListener {
+                    override fun onDisplayAdded(displayId: Int) = onDisplaysChanged()
+
+                    override fun onDisplayRemoved(displayId: Int) = onDisplaysChanged()
+
+                    override fun onDisplayChanged(displayId: Int) = onDisplaysChanged()
+                },
+                mainHandler,
+            )
+    }
+
+    override fun getCurrentWallpaperInfos(): StateFlow<WallpaperInfoPair?> =
+        currentWallpaperInfos.asStateFlow()
+
+    override fun createCurrentWallpaperInfos(
+        context: Context,
+        forceRefresh: Boolean,
+        callback: WallpaperInfoCallback,
+    ) {
+        val current = snapshot.get()
+        if (
+            !forceRefresh &&
+                current != null &&
+                current.info.presentationMode != WallpaperPreferences.PRESENTATION_MODE_ROTATING &&
+                wallpaperSynced(current.info.homeWallpaper, FLAG_SYSTEM) &&
+                wallpaperSynced(current.info.lockWallpaper, FLAG_LOCK)
+        ) {
+            // Update wallpaper crop hints for static wallpaper even if home & lock wallpaper are
+            // considered synced because wallpaper info are considered synced as long as both are
+            // static
+            val resolved = resolveCropHints(current)
+            callback.onWallpaperInfoCreated(
+                resolved.info.homeWallpaper,
+                resolved.info.lockWallpaper,
+                resolved.info.presentationMode,
+            )
+            return
+        }
+
+        // Clear cached copies if we are refreshing the currently-set WallpaperInfo(s) from the
+        // Refresher so that multiple calls to this method after a call with forceRefresh=true don't
+        // provide old cached copies.
+        if (forceRefresh) {
+            clearCurrentWallpaperInfos()
+        }
+
+        refresh(callback, forceRefresh)
+    }
+
+    override fun clearCurrentWallpaperInfos() {
+        snapshot.set(null)
+        currentWallpaperInfos.value = null
+    }
+
+    private fun onWallpaperChanged() {
+        cropHintsCache.clear()
+        clearCurrentWallpaperInfos()
+    }
+
+    private fun onDisplaysChanged() {
+        val sizes = displaySizes ?: return
+        if (sizes != displayUtils.getInternalDisplaySizes(allDimensions = true)) {
+            displaySizes = null
+            snapshot.get()?.let { current -> bgScope.launch { publish(current) } }
+        }
+    }
+
+    /**
+     * Refreshes the wallpaper metadata and notifies [callback] once done. A refresh that is already
+     * in flight is joined instead of starting a new one, unless [force] is set, in which case
+     * another refresh is run after the in-flight one and serves all waiting callbacks.
+     */
+    private fun refresh(callback: WallpaperInfoCallback?, force: Boolean) {
+        synchronized(pendingCallbacks) {
+            callback?.let { pendingCallbacks.add(it) }
+            if (isRefreshing) {
+                rerunRequested = rerunRequested || force
+                return
+            }
+            isRefreshing = true
+        }
+        doRefresh()
+    }
+
+    private fun doRefresh() {
+        wallpaperRefresher.refresh { homeWallpaperMetadata, lockWallpaperMetadata, presentationMode
+            ->
+            val isLockBuiltIn =
+                lockWallpaperMetadata != null &&
+                    lockWallpaperMetadata !is LiveWallpaperMetadata &&
+                    isLockWallpaperBuiltIn()
+            val info =
+                WallpaperInfoPair(
+                    createWallpaperInfo(
+                        homeWallpaperMetadata,
+                        FLAG_SYSTEM,
+                        isBuiltIn = false,
+                        homeWallpaperMetadata.wallpaperCropHints,
+                    ),
+                    lockWallpaperMetadata?.let {
+                        createWallpaperInfo(it, FLAG_LOCK, isLockBuiltIn, it.wallpaperCropHints)
+                    },
+                    presentationMode,
+                )
+            val newSnapshot =
+                Snapshot(
+                    info,
+                    homeWallpaperMetadata,
+                    lockWallpaperMetadata,
+                    isLockBuiltIn,
+                    homeWallpaperId = wallpaperManager.getWallpaperId(FLAG_SYSTEM),
+                    lockWallpaperId = wallpaperManager.getWallpaperId(FLAG_LOCK),
+                    createdUptimeMillis = SystemClock.uptimeMillis(),
+                    cropHintsDisplaySizes = null,
+                )
+            snapshot.set(newSnapshot)
+            bgScope.launch { publish(newSnapshot) }
+
+            val callbacks =
+                synchronized(pendingCallbacks) {
+                    if (rerunRequested) {
+                        rerunRequested = false
+                        null
+                    } else {
+                        isRefreshing = false
+                        pendingCallbacks.toList().also { pendingCallbacks.clear() }
+                    }
+                }
+            if (callbacks == null) {
+                doRefresh()
+                return@refresh
+            }
+            callbacks.forEach {
+                it.onWallpaperInfoCreated(
+                    info.homeWallpaper,
+                    info.lockWallpaper,
+                    info.presentationMode,
+                )
+            }
+        }
+    }
+
+    /** Resolves the crop hints of [current] and emits it to [currentWallpaperInfos]. */
+    private fun publish(current: Snapshot) {
+        val resolved = resolveCropHints(current)
+        if (snapshot.get() === resolved) {
+            currentWallpaperInfos.value = resolved.info
+        }
+    }
+
+    /**
+     * Creates the [WallpaperInfo] for [metadata]. Crop hints are only set here, before the info is
+     * published, since [WallpaperInfo.setWallpaperCropHints] mutates the instance.
+     */
+    private fun createWallpaperInfo(
+        metadata: WallpaperMetadata,
+        which: Int,
+        isBuiltIn: Boolean,
+        cropHints: Map<Point, Rect>?,
+    ): WallpaperInfo {
+        if (metadata is LiveWallpaperMetadata) {
+            return createLiveWallpaperInfo(metadata).apply {
+                if (flags.isMultiCropEnabled()) {
+                    wallpaperCropHints = HashMap()
+                }
+            }
+        }
+        val wallpaper =
+            if (isBuiltIn) {
+                DefaultWallpaperInfo()
+            } else {
+                CurrentWallpaperInfo(
+                    metadata.attributions,
+                    metadata.actionUrl,
+                    metadata.collectionId,
+                    which,
+                    metadata.wallpaperImageUri,
+                )
+            }
+        if (flags.isMultiCropEnabled()) {
+            wallpaper.wallpaperCropHints = cropHints
+        }
+        return wallpaper
+    }
+
+    private fun createLiveWallpaperInfo(metadata: LiveWallpaperMetadata): WallpaperInfo {
+        val wallpaper = liveWallpaperInfoFactory.getLiveWallpaperInfo(metadata.wallpaperComponent)
+        if (liveWallpaperContentHandling()) {
+            (wallpaper as LiveWallpaperInfo).setWallpaperDescription(metadata.description)
+        }
+        if (wallpaper is CreativeWallpaperInfo) {
+            wallpaper.setConfigPreviewUri(metadata.previewUri)
+        }
+        return wallpaper
+    }
+
+    private fun isLockWallpaperBuiltIn(): Boolean {
+        return wallpaperManager.lockScreenWallpaperExists() &&
+            wallpaperManager.getWallpaperInfo(FLAG_LOCK) == null &&
+            wallpaperManager.getWallpaperFile(FLAG_LOCK) == null
+    }
+
+    /**
+     * Returns [current] with the crop hints of its static wallpapers resolved for the current
+     * display sizes, reading them from [cropHintsCache] and only querying [WallpaperClient] for
+     * display sizes not seen yet. Resolving builds new [WallpaperInfo]s, and the result replaces
+     * [current] as the snapshot unless it has been replaced in the meantime.
+     */
+    private fun resolveCropHints(current: Snapshot): Snapshot {
+        val multiCropEnabled = flags.isMultiCropEnabled()
+        val sizes = if (multiCropEnabled) currentDisplaySizes() else emptyList()
+        if (current.cropHintsDisplaySizes == sizes) {
+            return current
+        }
+
+        var resolvedAll = true
+        fun resolve(info: WallpaperInfo, metadata: WallpaperMetadata, which: Int, id: Int) =
+            if (info.isStatic()) {
+                val cropHints =
+                    if (multiCropEnabled) {
+                        getCropHints(sizes, which, id).also { if (it == null) resolvedAll = false }
+                    } else {
+                        null
+                    }
+                val isBuiltIn = which == FLAG_LOCK && current.isLockBuiltIn
+                createWallpaperInfo(metadata, which, isBuiltIn, cropHints)
+            } else {
+                // Live wallpapers carry no crop hints, so they are shared between snapshots.
+                info
+            }
+
+        val home =
+            resolve(
+                current.info.homeWallpaper,
+                current.homeMetadata,
+                FLAG_SYSTEM,
+                current.homeWallpaperId,
+            )
+        val lock =
+            current.lockMetadata?.let { metadata ->
+                current.info.lockWallpaper?.let {
+                    resolve(it, metadata, FLAG_LOCK, current.lockWallpaperId)
+                }
+            }
+        val resolved =
+            current.copy(
+                info = WallpaperInfoPair(home, lock, current.info.presentationMode),
+                // Left unresolved when a query failed, so that the next read retries it.
+                cropHintsDisplaySizes = if (resolvedAll) sizes else null,
+            )
+        if (snapshot.compareAndSet(current, resolved)) {
+            currentWallpaperInfos.value = resolved.info
+        }
+        return resolved
+    }
+
+    private fun currentDisplaySizes(): List<Point> =
+        displaySizes
+            ?: displayUtils.getInternalDisplaySizes(allDimensions = true).also { displaySizes = it }
+
+    private fun getCropHints(sizes: List<Point>, which: Int, wallpaperId: Int): Map<Point, Rect>? {
+        val missingSizes =
+            sizes.filterNot { cropHintsCache.containsKey(CropHintsKey(which, wallpaperId, it)) }
+        if (missingSizes.isNotEmpty()) {
+            val cropHints = wallpaperClient.getCurrentCropHints(missingSizes, which) ?: return null
+            cropHints.forEach { (size, rect) ->
+                cropHintsCache[CropHintsKey(which, wallpaperId, size)] = rect
+            }
+        }
+        return sizes
+            .mapNotNull { size ->
+                cropHintsCache[CropHintsKey(which, wallpaperId, size)]?.let { size to Rect(it) }
+            }
+            .toMap(HashMap())
+    }
+
+    private fun WallpaperInfo.isStatic(): Boolean = wallpaperComponent?.component == null
+
+    /**
+     * Check if the given wallpaper info is synced with the one from the wallpaper manager. We only
+     * try to get the underlying ComponentName from both sides. If both are null, it means both are
+     * static image wallpapers, or both are not set, which we consider synced and return true. If
+     * only of the them is null, it means one is static image wallpaper and another is live
+     * wallpaper. We should return false. If both are not null, we check if the two ComponentName(s)
+     * are equal.
+     */
+    private fun wallpaperSynced(wallpaperInfo: WallpaperInfo?, which: Int): Boolean {
+        val currentComponentName: ComponentName? =
+            wallpaperManager.getWallpaperInfo(which)?.component
+        val componentName: ComponentName? = wallpaperInfo?.wallpaperComponent?.component
+        return if (currentComponentName == null) {
+            // If both are null, it might not be synced for LOCK (param which is 2):
+            // When previous LOCK is default static then componentName will be null, and current
+            // wallpaper is live for both home and lock then currentComponentName will be null.
+            componentName == null && which != FLAG_LOCK
+        } else {
+            currentComponentName == componentName
+        }
+    }
+
+    override fun dump(writer: DiagnosticsWriter) {
+        val current = snapshot.get()
+        writer.value(DUMP_SECTION, "snapshot_present", current != null)
+        if (current != null) {
+            writer.value(
+                DUMP_SECTION,
+                "snapshot_age_ms",
+                SystemClock.uptimeMillis() - current.createdUptimeMillis,
+            )
+            writer.value(DUMP_SECTION, "presentation_mode", current.info.presentationMode)
+            writer.value(DUMP_SECTION, "home_wallpaper_id", current.homeWallpaperId)
+            writer.value(DUMP_SECTION, "lock_wallpaper_id", current.lockWallpaperId)
+        }
+        writer.value(DUMP_SECTION, "crop_hints_cached", cropHintsCache.size)
+        writer.value(DUMP_SECTION, "refreshing", synchronized(pendingCallbacks) { isRefreshing })
+    }
+
+    private data class Snapshot(
+        val info: WallpaperInfoPair,
+        val homeMetadata: WallpaperMetadata,
+        val lockMetadata: WallpaperMetadata?,
+        val isLockBuiltIn: Boolean,
+        val homeWallpaperId: Int,
+        val lockWallpaperId: Int,
+        val createdUptimeMillis: Long,
+        /** Display sizes the crop hints of [info] were resolved for, null if not resolved yet. */
+        val cropHintsDisplaySizes: List<Point>?,
+    )
+
+    private data class CropHintsKey(val which: Int, val wallpaperId: Int, val displaySize: Point)
+
+    companion object {
+        private const val DUMP_SECTION = "current_wallpaper"
+    }
+}
@@ -15,9 +15,6 @@
  */
 package com.android.wallpaper.module;
 
-import static android.app.WallpaperManager.FLAG_LOCK;
-import static android.app.WallpaperManager.FLAG_SYSTEM;
-
 import android.annotation.SuppressLint;
 import android.app.WallpaperColors;
 import android.app.WallpaperManager;
@@ -27,17 +24,12 @@ import android.graphics.Bitmap;
 import android.graphics.Bitmap.CompressFormat;
 import android.graphics.BitmapFactory;
 import android.graphics.Point;
-import android.graphics.PointF;
 import android.graphics.Rect;
-import android.graphics.drawable.BitmapDrawable;
-import android.net.Uri;
-import android.os.AsyncTask;
-import android.os.ParcelFileDescriptor;
-import android.text.TextUtils;
 import android.util.Log;
 import android.view.Display;
 import android.view.WindowManager;
 
+import androidx.annotation.GuardedBy;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
@@ -49,7 +41,6 @@ import com.android.wallpaper.asset.StreamableAsset.StreamReceiver;
 import com.android.wallpaper.model.StaticWallpaperPrefMetadata;
 import com.android.wallpaper.model.WallpaperInfo;
 import com.android.wallpaper.module.BitmapCropper.Callback;
-import com.android.wallpaper.util.BitmapTransformer;
 import com.android.wallpaper.util.DisplayUtils;
 import com.android.wallpaper.util.ScreenSizeCalculator;
 import com.android.wallpaper.util.WallpaperCropUtils;
@@ -61,6 +52,11 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+
+import kotlinx.coroutines.CoroutineDispatcher;
+import kotlinx.coroutines.CoroutineScope;
+import kotlinx.coroutines.Job;
 
 /**
  * Concrete implementation of WallpaperPersister which actually sets wallpapers to the system via
@@ -79,7 +75,7 @@ public class DefaultWallpaperPersister implements WallpaperPersister {
     private final BitmapCropper mBitmapCropper;
     private final WallpaperStatusChecker mWallpaperStatusChecker;
     private final CurrentWallpaperInfoFactory mCurrentWallpaperInfoFactory;
-    private final boolean mIsRefactorSettingWallpaper;
+    private final SetWallpaperPipeline mSetWallpaperPipeline;
 
     private WallpaperInfo mWallpaperInfoInPreview;
 
@@ -93,7 +89,9 @@ public class DefaultWallpaperPersister implements WallpaperPersister {
             BitmapCropper bitmapCropper,
             WallpaperStatusChecker wallpaperStatusChecker,
             CurrentWallpaperInfoFactory wallpaperInfoFactory,
-            boolean isRefactorSettingWallpaper
+            boolean isRefactorSettingWallpaper,
+            CoroutineScope scope,
+            CoroutineDispatcher backgroundDispatcher
     ) {
         mAppContext = context.getApplicationContext();
         mWallpaperManager = wallpaperManager;
@@ -103,13 +101,16 @@ public class DefaultWallpaperPersister implements WallpaperPersister {
         mBitmapCropper = bitmapCropper;
         mWallpaperStatusChecker = wallpaperStatusChecker;
         mCurrentWallpaperInfoFactory = wallpaperInfoFactory;
-        mIsRefactorSettingWallpaper = isRefactorSettingWallpaper;
+        mSetWallpaperPipeline = new SetWallpaperPipeline(mAppContext, wallpaperManager,
+                wallpaperPreferences, wallpaperChangedNotifier, wallpaperStatusChecker,
+                /* persister= */ this, isRefactorSettingWallpaper, scope, backgroundDispatcher);
     }
 
     @Override
-    public void setIndividualWallpaper(final WallpaperInfo wallpaper, Asset asset,
+    public SetWallpaperHandle setIndividualWallpaper(final WallpaperInfo wallpaper, Asset asset,
             @Nullable Rect cropRect, float scale, @Destination final int destination,
             final SetWallpaperCallback callback) {
+        PendingSet pendingSet = new PendingSet();
         // Set wallpaper without downscaling directly from an input stream if there's no crop rect
         // specified by the caller and the asset is streamable.
 
@@ -119,9 +120,10 @@ public class DefaultWallpaperPersister implements WallpaperPersister {
                     callback.onError(null /* throwable */);
                     return;
                 }
-                setIndividualWallpaper(wallpaper, bitmap, cropRect, destination, callback);
+                setIndividualWallpaper(pendingSet, wallpaper, bitmap, cropRect, destination,
+                        callback);
             });
-            return;
+            return pendingSet;
         }
 
         if ((cropRect == null || WallpaperManager.isMultiCropEnabled())
@@ -133,10 +135,11 @@ public class DefaultWallpaperPersister implements WallpaperPersister {
                         callback.onError(null /* throwable */);
                         return;
                     }
-                    setIndividualWallpaper(wallpaper, inputStream, cropRect, destination, callback);
+                    setIndividualWallpaper(pendingSet, wallpaper, inputStream, cropRect,
+                            destination, callback);
                 }
             });
-            return;
+            return pendingSet;
         }
 
         // If no crop rect is specified but the wallpaper asset is not streamable, then fall back to
@@ -152,16 +155,18 @@ public class DefaultWallpaperPersister implements WallpaperPersister {
                         callback.onError(null /* throwable */);
                         return;
                     }
-                    setIndividualWallpaper(wallpaper, bitmap, null, destination, callback);
+                    setIndividualWallpaper(pendingSet, wallpaper, bitmap, null, destination,
+                            callback);
                 }
             });
-            return;
+            return pendingSet;
         }
 
         mBitmapCropper.cropAndScaleBitmap(asset, scale, cropRect, false, new Callback() {
             @Override
             public void onBitmapCropped(Bitmap croppedBitmap) {
-                setIndividualWallpaper(wallpaper, croppedBitmap, destination, callback);
+                setIndividualWallpaper(pendingSet, wallpaper, croppedBitmap, destination,
+                        callback);
             }
 
             @Override
@@ -169,43 +174,47 @@ public class DefaultWallpaperPersister implements WallpaperPersister {
                 callback.onError(e);
             }
         });
+        return pendingSet;
     }
 
     /**
      * Sets a static individual wallpaper to the system via the WallpaperManager.
      *
+     * @param pendingSet    Handle the set was started with.
      * @param wallpaper     Wallpaper model object.
      * @param croppedBitmap Bitmap representing the individual wallpaper image.
      * @param destination   The destination - where to set the wallpaper to.
      * @param callback      Called once the wallpaper was set or if an error occurred.
      */
-    private void setIndividualWallpaper(WallpaperInfo wallpaper, Bitmap croppedBitmap,
-            @Destination int destination, SetWallpaperCallback callback) {
-        SetWallpaperTask setWallpaperTask =
-                new SetWallpaperTask(wallpaper, croppedBitmap, null, destination, callback);
-        setWallpaperTask.execute();
+    private void setIndividualWallpaper(PendingSet pendingSet, WallpaperInfo wallpaper,
+            Bitmap croppedBitmap, @Destination int destination, SetWallpaperCallback callback) {
+        setIndividualWallpaper(pendingSet, wallpaper, croppedBitmap, null /* cropHint */,
+                destination, callback);
     }
 
-    private void setIndividualWallpaper(WallpaperInfo wallpaper, Bitmap fullBitmap, Rect cropHint,
-            @Destination int destination, SetWallpaperCallback callback) {
-        SetWallpaperTask setWallpaperTask =
-                new SetWallpaperTask(wallpaper, fullBitmap, cropHint, destination, callback);
-        setWallpaperTask.execute();
+    private void setIndividualWallpaper(PendingSet pendingSet, WallpaperInfo wallpaper,
+            Bitmap fullBitmap, Rect cropHint, @Destination int destination,
+            SetWallpaperCallback callback) {
+        pendingSet.setJob(mSetWallpaperPipeline.launch(new SetWallpaperPipeline.Request(wallpaper,
+                fullBitmap, null /* inputStream */, cropHint, destination, null /* fillSize */,
+                null /* stretchSize */), callback));
     }
 
     /**
      * Sets a static individual wallpaper stream to the system via the WallpaperManager.
      *
+     * @param pendingSet  Handle the set was started with.
      * @param wallpaper   Wallpaper model object.
      * @param inputStream JPEG or PNG stream of wallpaper image's bytes.
      * @param destination The destination - where to set the wallpaper to.
      * @param callback    Called once the wallpaper was set or if an error occurred.
      */
-    private void setIndividualWallpaper(WallpaperInfo wallpaper, InputStream inputStream,
-            Rect cropHint, @Destination int destination, SetWallpaperCallback callback) {
-        SetWallpaperTask setWallpaperTask =
-                new SetWallpaperTask(wallpaper, inputStream, cropHint, destination, callback);
-        setWallpaperTask.execute();
+    private void setIndividualWallpaper(PendingSet pendingSet, WallpaperInfo wallpaper,
+            InputStream inputStream, Rect cropHint, @Destination int destination,
+            SetWallpaperCallback callback) {
+        pendingSet.setJob(mSetWallpaperPipeline.launch(new SetWallpaperPipeline.Request(wallpaper,
+                null /* bitmap */, inputStream, cropHint, destination, null /* fillSize */,
+                null /* stretchSize */), callback));
     }
 
     @Override
@@ -230,10 +239,56 @@ public class DefaultWallpaperPersister implements WallpaperPersister {
         // 2. Lock screen wallpaper becomes "unset" until the next time user set wallpaper solely
         //    for the lock screen
         int whichWallpaper = WallpaperManager.FLAG_SYSTEM | WallpaperManager.FLAG_LOCK;
+        RotationPrefetchJobService.schedule(mAppContext);
         return cropAndSetWallpaperBitmapInRotationStatic(wallpaperBitmap, attributions, actionUrl,
                 collectionId, whichWallpaper);
     }
 
+    @Override
+    public int setPreparedWallpaperInRotation(String key, List<String> attributions,
+            String actionUrl, String collectionId, int whichWallpaper) {
+        RotationCache rotationCache = RotationCache.getInstance(mAppContext);
+        RotationCache.Entry entry = rotationCache.get(key);
+        if (entry == null) {
+            return 0;
+        }
+
+        int wallpaperId;
+        try (InputStream inputStream = new FileInputStream(entry.getFile())) {
+            wallpaperId = entry.getCropHints().isEmpty()
+                    ? setStreamToWallpaperManager(inputStream, /* cropHint= */ null,
+                            /* allowBackup= */ false, whichWallpaper)
+                    : setStreamWithCropsToWallpaperManager(inputStream, entry.getCropHints(),
+                            /* allowBackup= */ false, whichWallpaper);
+        } catch (IOException e) {
+            Log.e(TAG, "unable to read prepared rotation wallpaper", e);
+            return 0;
+        }
+
+        if (wallpaperId > 0) {
+            // Recents only need a screen-sized copy of the wallpaper.
+            Point screenSize = ScreenSizeCalculator.getInstance().getScreenSize(
+                    mDisplayUtils.getWallpaperDisplay());
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeFile(entry.getFile().getPath(), options);
+            options.inSampleSize = BitmapUtils.calculateInSampleSize(options.outWidth,
+                    options.outHeight, screenSize.x, screenSize.y);
+            options.inJustDecodeBounds = false;
+            Bitmap bitmap = BitmapFactory.decodeFile(entry.getFile().getPath(), options);
+            if (bitmap != null) {
+                WallpaperColors colors = entry.getColors() != null
+                        ? entry.getColors() : WallpaperColors.fromBitmap(bitmap);
+                mWallpaperPreferences.storeLatestWallpaper(whichWallpaper,
+                        String.valueOf(wallpaperId), attributions, actionUrl, collectionId,
+                        bitmap, colors);
+            }
+            rotationCache.remove(key);
+        }
+        mCurrentWallpaperInfoFactory.clearCurrentWallpaperInfos();
+        return wallpaperId;
+    }
+
     @Override
     public boolean finalizeWallpaperForNextRotation(List<String> attributions, String actionUrl,
             String collectionId, int wallpaperId, String remoteId) {
@@ -310,28 +365,8 @@ public class DefaultWallpaperPersister implements WallpaperPersister {
                 resources, croppingDisplay);
         Point screenSize = ScreenSizeCalculator.getInstance().getScreenSize(croppingDisplay);
 
-        // Determine minimum zoom to fit maximum visible area of wallpaper on crop surface.
-        float minWallpaperZoom =
-                WallpaperCropUtils.calculateMinZoom(wallpaperSize, screenSize);
-
-        PointF centerPosition = WallpaperCropUtils.calculateDefaultCenter(mAppContext,
-                wallpaperSize, WallpaperCropUtils.calculateVisibleRect(wallpaperSize, screenSize));
-
-        Point scaledCenter = new Point((int) (minWallpaperZoom * centerPosition.x),
-                (int) (minWallpaperZoom * centerPosition.y));
-
-        int offsetX = Math.max(0, -(screenSize.x / 2 - scaledCenter.x));
-        int offsetY = Math.max(0, -(screenSize.y / 2 - scaledCenter.y));
-
-        Rect cropRect = WallpaperCropUtils.calculateCropRect(mAppContext, minWallpaperZoom,
-                wallpaperSize, defaultCropSurfaceSize, screenSize, offsetX,
-                offsetY, /* cropExtraWidth= */ true);
-
-        Rect scaledCropRect = new Rect(
-                (int) Math.floor((float) cropRect.left / minWallpaperZoom),
-                (int) Math.floor((float) cropRect.top / minWallpaperZoom),
-                (int) Math.floor((float) cropRect.right / minWallpaperZoom),
-                (int) Math.floor((float) cropRect.bottom / minWallpaperZoom));
+        Rect scaledCropRect = WallpaperCropUtils.calculateDefaultCropHint(mAppContext,
+                wallpaperSize, screenSize, defaultCropSurfaceSize);
 
         // Scale and crop the bitmap
         if (!WallpaperManager.isMultiCropEnabled()) {
@@ -482,345 +517,30 @@ public class DefaultWallpaperPersister implements WallpaperPersister {
         }
     }
 
-    private class SetWallpaperTask extends AsyncTask<Void, Void, Boolean> {
-
-        private final WallpaperInfo mWallpaper;
-        @Destination
-        private final int mDestination;
-        private final WallpaperPersister.SetWallpaperCallback mCallback;
-
-        private Bitmap mBitmap;
-        private InputStream mInputStream;
-        @Nullable
-        private Rect mCropHint;
-
-        /**
-         * Optional parameters for applying a post-decoding fill or stretch transformation.
-         */
-        @Nullable
-        private Point mFillSize;
+    /**
+     * Handle to a set whose pipeline job is launched once its image is ready. Cancelling it before
+     * then cancels the job as soon as it is launched.
+     */
+    private static final class PendingSet implements SetWallpaperHandle {
+        @GuardedBy("this")
+        private boolean mCancelled;
+        @GuardedBy("this")
         @Nullable
-        private Point mStretchSize;
-
-        SetWallpaperTask(WallpaperInfo wallpaper, Bitmap bitmap, Rect cropHint,
-                @Destination int destination, WallpaperPersister.SetWallpaperCallback callback) {
-            super();
-            mWallpaper = wallpaper;
-            mBitmap = bitmap;
-            mCropHint = cropHint;
-            mDestination = destination;
-            mCallback = callback;
-        }
-
-        /**
-         * Constructor for SetWallpaperTask which takes an InputStream instead of a bitmap. The task
-         * will close the InputStream once it is done with it.
-         */
-        SetWallpaperTask(WallpaperInfo wallpaper, InputStream stream, Rect cropHint,
-                @Destination int destination, WallpaperPersister.SetWallpaperCallback callback) {
-            mWallpaper = wallpaper;
-            mInputStream = stream;
-            mCropHint = cropHint;
-            mDestination = destination;
-            mCallback = callback;
-        }
-
-        void setFillSize(Point fillSize) {
-            if (mStretchSize != null) {
-                throw new IllegalArgumentException(
-                        "Can't pass a fill size option if a stretch size is "
-                                + "already set.");
-            }
-            mFillSize = fillSize;
-        }
-
-        void setStretchSize(Point stretchSize) {
-            if (mFillSize != null) {
-                throw new IllegalArgumentException(
-                        "Can't pass a stretch size option if a fill size is "
-                                + "already set.");
-            }
-            mStretchSize = stretchSize;
-        }
+        private Job mJob;
 
         @Override
-        protected Boolean doInBackground(Void... unused) {
-            int whichWallpaper;
-            if (mDestination == DEST_HOME_SCREEN) {
-                whichWallpaper = WallpaperManager.FLAG_SYSTEM;
-            } else if (mDestination == DEST_LOCK_SCREEN) {
-                whichWallpaper = WallpaperManager.FLAG_LOCK;
-            } else { // DEST_BOTH
-                whichWallpaper = WallpaperManager.FLAG_SYSTEM
-                        | WallpaperManager.FLAG_LOCK;
-            }
-
-            boolean wasLockWallpaperSet = mWallpaperStatusChecker.isLockWallpaperSet();
-
-            boolean allowBackup = mWallpaper.getBackupPermission() == WallpaperInfo.BACKUP_ALLOWED;
-            final int wallpaperId;
-            if (mBitmap != null) {
-                // Apply fill or stretch transformations on mBitmap if necessary.
-                if (mFillSize != null) {
-                    mBitmap = BitmapTransformer.applyFillTransformation(mBitmap, mFillSize);
-                }
-                if (mStretchSize != null) {
-                    mBitmap = Bitmap.createScaledBitmap(mBitmap, mStretchSize.x, mStretchSize.y,
-                            true);
-                }
-
-                wallpaperId = setBitmapToWallpaperManager(mBitmap, mCropHint, allowBackup,
-                        whichWallpaper);
-            } else if (mInputStream != null) {
-                wallpaperId = setStreamToWallpaperManager(mInputStream, mCropHint,
-                        allowBackup, whichWallpaper);
-            } else {
-                Log.e(TAG,
-                        "Both the wallpaper bitmap and input stream are null so we're unable "
-                                + "to set any kind of wallpaper here.");
-                wallpaperId = 0;
+        public synchronized void cancel() {
+            mCancelled = true;
+            if (mJob != null) {
+                mJob.cancel((CancellationException) null);
             }
-
-            if (wallpaperId > 0) {
-                if (mDestination == DEST_HOME_SCREEN
-                        && mWallpaperPreferences.getWallpaperPresentationMode()
-                        == WallpaperPreferences.PRESENTATION_MODE_ROTATING
-                        && !wasLockWallpaperSet) {
-                    copyRotatingWallpaperToLock();
-                }
-
-                if (mIsRefactorSettingWallpaper) {
-                    if (mBitmap == null) {
-                        mWallpaperManager.forgetLoadedWallpaper();
-                        mBitmap = ((BitmapDrawable) mWallpaperManager
-                                .getDrawable(WallpaperPersister.destinationToFlags(mDestination)))
-                                .getBitmap();
-                    }
-                    setStaticWallpaperMetadataToPreferences(
-                            mDestination,
-                            wallpaperId,
-                            BitmapUtils.generateHashCode(mBitmap),
-                            WallpaperColors.fromBitmap(mBitmap));
-                } else {
-                    setImageWallpaperMetadata(mDestination, wallpaperId);
-                }
-
-                return true;
-            } else {
-                return false;
-            }
-        }
-
-        @Override
-        protected void onPostExecute(Boolean isSuccess) {
-            if (mInputStream != null) {
-                try {
-                    mInputStream.close();
-                } catch (IOException e) {
-                    Log.e(TAG, "Failed to close input stream " + e);
-                    mCallback.onError(e /* throwable */);
-                    return;
-                }
-            }
-
-            if (isSuccess) {
-                mCallback.onSuccess(mWallpaper, mDestination);
-                mWallpaperChangedNotifier.notifyWallpaperChanged();
-            } else {
-                mCallback.onError(null /* throwable */);
-            }
-        }
-
-        /**
-         * Copies home wallpaper metadata to lock, and if rotation was enabled with a live wallpaper
-         * previously, then copies over the rotating wallpaper image to the WallpaperManager also.
-         * <p>
-         * Used to accommodate the case where a user had gone from a home+lock daily rotation to
-         * selecting a static wallpaper on home-only. The image and metadata that was previously
-         * rotating is now copied to the lock screen.
-         */
-        private void copyRotatingWallpaperToLock() {
-            mWallpaperPreferences.setLockWallpaperAttributions(
-                    mWallpaperPreferences.getHomeWallpaperAttributions());
-            mWallpaperPreferences.setLockWallpaperActionUrl(
-                    mWallpaperPreferences.getHomeWallpaperActionUrl());
-            mWallpaperPreferences.setLockWallpaperCollectionId(
-                    mWallpaperPreferences.getHomeWallpaperCollectionId());
-
-            // Set the lock wallpaper ID to what Android set it to, following its having
-            // copied the system wallpaper over to the lock screen when we changed from
-            // "both" to distinct system and lock screen wallpapers.
-            mWallpaperPreferences.setLockWallpaperManagerId(
-                    mWallpaperManager.getWallpaperId(WallpaperManager.FLAG_LOCK));
-        }
-
-        /**
-         * Sets the image wallpaper's metadata on SharedPreferences. This method is called after the
-         * set wallpaper operation is successful.
-         *
-         * @param destination Which destination of wallpaper the metadata corresponds to (home
-         *                    screen, lock screen, or both).
-         * @param wallpaperId The ID of the static wallpaper returned by WallpaperManager, which
-         *                    on N and later versions of Android uniquely identifies a wallpaper
-         *                    image.
-         */
-        private void setImageWallpaperMetadata(@Destination int destination, int wallpaperId) {
-            if (destination == DEST_HOME_SCREEN || destination == DEST_BOTH) {
-                mWallpaperPreferences.clearHomeWallpaperMetadata();
-                setImageWallpaperHomeMetadata(wallpaperId);
-
-                // Disable rotation wallpaper when setting static image wallpaper to home screen
-                // Daily rotation rotates both home and lock screen wallpaper when lock screen is
-                // not set; otherwise daily rotation only rotates home screen while lock screen
-                // wallpaper stays as what it's set to.
-                mWallpaperPreferences.setWallpaperPresentationMode(
-                        WallpaperPreferences.PRESENTATION_MODE_STATIC);
-                mWallpaperPreferences.clearDailyRotations();
-            }
-
-            if (destination == DEST_LOCK_SCREEN || destination == DEST_BOTH) {
-                mWallpaperPreferences.clearLockWallpaperMetadata();
-                setImageWallpaperLockMetadata(wallpaperId);
-            }
-        }
-
-        private void setImageWallpaperHomeMetadata(int homeWallpaperId) {
-            mWallpaperPreferences.setHomeWallpaperManagerId(homeWallpaperId);
-
-            // Compute bitmap hash code after setting the wallpaper because JPEG compression has
-            // likely changed many pixels' color values. Forget the previously loaded wallpaper
-            // bitmap so that WallpaperManager doesn't return the old wallpaper drawable. Do this
-            // on N+ devices in addition to saving the wallpaper ID for the purpose of backup &
-            // restore.
-            mWallpaperManager.forgetLoadedWallpaper();
-            mBitmap = ((BitmapDrawable) mWallpaperManager.getDrawable()).getBitmap();
-            long bitmapHash = BitmapUtils.generateHashCode(mBitmap);
-            WallpaperColors colors = WallpaperColors.fromBitmap(mBitmap);
-
-            mWallpaperPreferences.setHomeWallpaperHashCode(bitmapHash);
-
-            mWallpaperPreferences.setHomeWallpaperAttributions(
-                    mWallpaper.getAttributions(mAppContext));
-            mWallpaperPreferences.setHomeWallpaperActionUrl(mWallpaper.getActionUrl(mAppContext));
-            mWallpaperPreferences.setHomeWallpaperCollectionId(
-                    mWallpaper.getCollectionId(mAppContext));
-            mWallpaperPreferences.setHomeWallpaperRemoteId(mWallpaper.getWallpaperId());
-            // Wallpaper ID can not be null or empty to save to the recent wallpaper as preferences
-            String recentWallpaperId = TextUtils.isEmpty(mWallpaper.getWallpaperId())
-                    ? String.valueOf(bitmapHash) : mWallpaper.getWallpaperId();
-            mWallpaperPreferences.storeLatestWallpaper(FLAG_SYSTEM, recentWallpaperId,
-                    mWallpaper, mBitmap, colors);
         }
 
-        private void setImageWallpaperLockMetadata(int lockWallpaperId) {
-            mWallpaperPreferences.setLockWallpaperManagerId(lockWallpaperId);
-            mWallpaperPreferences.setLockWallpaperAttributions(
-                    mWallpaper.getAttributions(mAppContext));
-            mWallpaperPreferences.setLockWallpaperActionUrl(mWallpaper.getActionUrl(mAppContext));
-            mWallpaperPreferences.setLockWallpaperCollectionId(
-                    mWallpaper.getCollectionId(mAppContext));
-            mWallpaperPreferences.setLockWallpaperRemoteId(mWallpaper.getWallpaperId());
-
-            // Save the lock wallpaper image's hash code as well for the sake of backup & restore
-            // because WallpaperManager-generated IDs are specific to a physical device and
-            // cannot be  used to identify a wallpaper image on another device after restore is
-            // complete.
-            Bitmap lockBitmap = getLockWallpaperBitmap();
-            long bitmapHashCode = 0;
-            if (lockBitmap != null) {
-                saveLockWallpaperHashCode(lockBitmap);
-                bitmapHashCode = mWallpaperPreferences.getLockWallpaperHashCode();
-            }
-
-            // If the destination is both, use the home screen bitmap to populate the lock screen
-            // recents list.
-            if (lockBitmap == null
-                    && lockWallpaperId == mWallpaperPreferences.getHomeWallpaperManagerId()) {
-                lockBitmap = mBitmap;
-                bitmapHashCode = mWallpaperPreferences.getHomeWallpaperHashCode();
-            }
-
-            if (lockBitmap != null) {
-                mWallpaperPreferences.storeLatestWallpaper(FLAG_LOCK,
-                        TextUtils.isEmpty(mWallpaper.getWallpaperId()) ? String.valueOf(
-                                bitmapHashCode) : mWallpaper.getWallpaperId(), mWallpaper,
-                        lockBitmap, WallpaperColors.fromBitmap(lockBitmap));
-            }
-        }
-
-        private void setStaticWallpaperMetadataToPreferences(@Destination int destination,
-                int wallpaperId, long bitmapHash, WallpaperColors colors) {
-            Uri imageUri;
-            if (destination == DEST_HOME_SCREEN || destination == DEST_BOTH) {
-                imageUri = mWallpaperPreferences.getHomeWallpaperImageUri();
-            } else {
-                imageUri = mWallpaperPreferences.getLockWallpaperImageUri();
-            }
-            saveStaticWallpaperToPreferences(
-                    destination,
-                    new StaticWallpaperPrefMetadata(
-                            mWallpaper.getAttributions(mAppContext).stream()
-                                    .map((entry) -> (entry != null) ? entry : "")
-                                    .toList(),
-                            mWallpaper.getActionUrl(mAppContext),
-                            mWallpaper.getCollectionId(mAppContext),
-                            bitmapHash,
-                            wallpaperId,
-                            mWallpaper.getWallpaperId(),
-                            imageUri));
-
-            if (destination == DEST_HOME_SCREEN || destination == DEST_BOTH) {
-                mWallpaperPreferences.storeLatestWallpaper(
-                        FLAG_SYSTEM,
-                        mWallpaper.getWallpaperId(),
-                        mWallpaper,
-                        mBitmap,
-                        colors);
-                // Stop wallpaper rotation if a static wallpaper is set to home.
-                mWallpaperPreferences.setWallpaperPresentationMode(
-                        WallpaperPreferences.PRESENTATION_MODE_STATIC);
-                mWallpaperPreferences.clearDailyRotations();
-            }
-
-            if (destination == DEST_LOCK_SCREEN || destination == DEST_BOTH) {
-                mWallpaperPreferences.storeLatestWallpaper(
-                        FLAG_LOCK,
-                        mWallpaper.getWallpaperId(),
-                        mWallpaper,
-                        mBitmap,
-                        colors);
+        synchronized void setJob(Job job) {
+            mJob = job;
+            if (mCancelled) {
+                job.cancel((CancellationException) null);
             }
         }
-
-        private Bitmap getLockWallpaperBitmap() {
-            ParcelFileDescriptor parcelFd = mWallpaperManager.getWallpaperFile(
-                    WallpaperManager.FLAG_LOCK);
-
-            if (parcelFd == null) {
-                return null;
-            }
-
-            try (InputStream fileStream = new FileInputStream(parcelFd.getFileDescriptor())) {
-                return BitmapFactory.decodeStream(fileStream);
-            } catch (IOException e) {
-                Log.e(TAG, "IO exception when closing the file stream.", e);
-                return null;
-            } finally {
-                try {
-                    parcelFd.close();
-                } catch (IOException e) {
-                    Log.e(TAG, "IO exception when closing the file descriptor.", e);
-                }
-            }
-        }
-
-        private long saveLockWallpaperHashCode(Bitmap lockBitmap) {
-            if (lockBitmap != null) {
-                long bitmapHash = BitmapUtils.generateHashCode(lockBitmap);
-                mWallpaperPreferences.setLockWallpaperHashCode(bitmapHash);
-                return bitmapHash;
-            }
-            return 0;
-        }
     }
 }
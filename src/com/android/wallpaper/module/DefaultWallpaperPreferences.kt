@@ -61,6 +61,13 @@ constructor(@ApplicationContext private val context: Context) : WallpaperPrefere
     protected val noBackupPrefs: SharedPreferences =
         context.getSharedPreferences(NO_BACKUP_PREFS_NAME, Context.MODE_PRIVATE)
 
+    /**
+     * Pending set and rotation state, which must survive a crash but is too hot to rewrite the
+     * whole of [noBackupPrefs] for on every change. Values written to [noBackupPrefs] by older
+     * versions are read when the journal has none.
+     */
+    private val pendingStateJournal = PendingStateJournal(context)
+
     private val backupManager = BackupManager(context)
     private val sharedPrefsChangedListener = OnSharedPreferenceChangeListener { _, _ ->
         backupManager.dataChanged()
@@ -752,51 +759,41 @@ constructor(@ApplicationContext private val context: Context) : WallpaperPrefere
     }
 
     override fun setPendingWallpaperSetStatusSync(@PendingWallpaperSetStatus setStatus: Int) {
-        noBackupPrefs
-            .edit()
-            .putInt(NoBackupKeys.KEY_PENDING_WALLPAPER_SET_STATUS, setStatus)
-            .commit()
+        pendingStateJournal.putSync(JOURNAL_KEY_PENDING_WALLPAPER_SET_STATUS, setStatus)
     }
 
     @PendingWallpaperSetStatus
     override fun getPendingWallpaperSetStatus(): Int {
-        return noBackupPrefs.getInt(
-            NoBackupKeys.KEY_PENDING_WALLPAPER_SET_STATUS,
-            WallpaperPreferences.WALLPAPER_SET_NOT_PENDING,
-        )
+        return pendingStateJournal.get(JOURNAL_KEY_PENDING_WALLPAPER_SET_STATUS)
+            ?: noBackupPrefs.getInt(
+                NoBackupKeys.KEY_PENDING_WALLPAPER_SET_STATUS,
+                WallpaperPreferences.WALLPAPER_SET_NOT_PENDING,
+            )
     }
 
     override fun setPendingWallpaperSetStatus(@PendingWallpaperSetStatus setStatus: Int) {
-        noBackupPrefs
-            .edit()
-            .putInt(NoBackupKeys.KEY_PENDING_WALLPAPER_SET_STATUS, setStatus)
-            .apply()
+        pendingStateJournal.put(JOURNAL_KEY_PENDING_WALLPAPER_SET_STATUS, setStatus)
     }
 
     override fun setPendingDailyWallpaperUpdateStatusSync(
         @PendingDailyWallpaperUpdateStatus updateStatus: Int
     ) {
-        noBackupPrefs
-            .edit()
-            .putInt(NoBackupKeys.KEY_PENDING_DAILY_WALLPAPER_UPDATE_STATUS, updateStatus)
-            .commit()
+        pendingStateJournal.putSync(JOURNAL_KEY_PENDING_DAILY_WALLPAPER_UPDATE_STATUS, updateStatus)
     }
 
     @PendingDailyWallpaperUpdateStatus
     override fun getPendingDailyWallpaperUpdateStatus(): Int {
-        return noBackupPrefs.getInt(
-            NoBackupKeys.KEY_PENDING_DAILY_WALLPAPER_UPDATE_STATUS,
-            WallpaperPreferences.DAILY_WALLPAPER_UPDATE_NOT_PENDING,
-        )
+        return pendingStateJournal.get(JOURNAL_KEY_PENDING_DAILY_WALLPAPER_UPDATE_STATUS)
+            ?: noBackupPrefs.getInt(
+                NoBackupKeys.KEY_PENDING_DAILY_WALLPAPER_UPDATE_STATUS,
+                WallpaperPreferences.DAILY_WALLPAPER_UPDATE_NOT_PENDING,
+            )
     }
 
     override fun setPendingDailyWallpaperUpdateStatus(
         @PendingDailyWallpaperUpdateStatus updateStatus: Int
     ) {
-        noBackupPrefs
-            .edit()
-            .putInt(NoBackupKeys.KEY_PENDING_DAILY_WALLPAPER_UPDATE_STATUS, updateStatus)
-            .apply()
+        pendingStateJournal.put(JOURNAL_KEY_PENDING_DAILY_WALLPAPER_UPDATE_STATUS, updateStatus)
     }
 
     override fun getAppLaunchCount(): Int {
@@ -1003,5 +1000,7 @@ constructor(@ApplicationContext private val context: Context) : WallpaperPrefere
         const val NO_BACKUP_PREFS_NAME = "wallpaper-nobackup"
         const val KEY_VALUE_DIVIDER = "="
         private const val TAG = "DefaultWallpaperPreferences"
+        private const val JOURNAL_KEY_PENDING_WALLPAPER_SET_STATUS = 1
+        private const val JOURNAL_KEY_PENDING_DAILY_WALLPAPER_UPDATE_STATUS = 2
     }
 }
@@ -24,18 +24,17 @@ import android.app.WallpaperInfo;
 import android.app.WallpaperManager;
 import android.app.wallpaper.WallpaperDescription;
 import android.content.Context;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Point;
 import android.graphics.Rect;
-import android.graphics.drawable.BitmapDrawable;
 import android.net.Uri;
 import android.os.AsyncTask;
 import android.os.ParcelFileDescriptor;
 import android.util.Log;
 
+import androidx.annotation.Nullable;
+
 import com.android.wallpaper.R;
-import com.android.wallpaper.asset.BitmapUtils;
+import com.android.wallpaper.backup.StreamingHashCodeGenerator;
 import com.android.wallpaper.model.LiveWallpaperMetadata;
 import com.android.wallpaper.model.WallpaperMetadata;
 import com.android.wallpaper.picker.customization.data.content.WallpaperClient;
@@ -44,9 +43,7 @@ import com.android.wallpaper.util.DisplayUtils;
 
 import dagger.hilt.android.qualifiers.ApplicationContext;
 
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -75,6 +72,8 @@ public class DefaultWallpaperRefresher implements WallpaperRefresher {
 
     private final WallpaperClient mWallpaperClient;
 
+    private final WallpaperFingerprintIndex mFingerprintIndex;
+
     private final Executor mExecutor = Executors.newCachedThreadPool();
 
 
@@ -83,10 +82,12 @@ public class DefaultWallpaperRefresher implements WallpaperRefresher {
      */
     @Inject
     public DefaultWallpaperRefresher(@ApplicationContext Context context,
-            WallpaperPreferences wallpaperPreferences, CreativeHelper creativeHelper) {
+            WallpaperPreferences wallpaperPreferences, CreativeHelper creativeHelper,
+            WallpaperFingerprintIndex fingerprintIndex) {
         mAppContext = context;
         mWallpaperPreferences = wallpaperPreferences;
         mCreativeHelper = creativeHelper;
+        mFingerprintIndex = fingerprintIndex;
         Injector injector = InjectorProvider.getInjector();
         mWallpaperStatusChecker = injector.getWallpaperStatusChecker(context);
         mDisplayUtils = injector.getDisplayUtils(mAppContext);
@@ -131,7 +132,9 @@ public class DefaultWallpaperRefresher implements WallpaperRefresher {
             if (!isHomeScreenMetadataCurrent() || (isHomeScreenStatic
                     && isHomeScreenAttributionsEmpty())) {
                 mWallpaperPreferences.clearHomeWallpaperMetadata();
-                setFallbackHomeScreenWallpaperMetadata();
+                if (!isHomeScreenStatic || !setIndexedHomeScreenWallpaperMetadata()) {
+                    setFallbackHomeScreenWallpaperMetadata();
+                }
             }
 
             boolean isLockScreenWallpaperCurrentlySet =
@@ -181,7 +184,9 @@ public class DefaultWallpaperRefresher implements WallpaperRefresher {
             if (!isLockScreenMetadataCurrent() || (isLockScreenStatic
                     && isLockScreenAttributionsEmpty())) {
                 mWallpaperPreferences.clearLockWallpaperMetadata();
-                setFallbackLockScreenWallpaperMetadata();
+                if (!isLockScreenStatic || !setIndexedLockScreenWallpaperMetadata()) {
+                    setFallbackLockScreenWallpaperMetadata();
+                }
             }
 
             if (isLockScreenStatic) {
@@ -232,6 +237,57 @@ public class DefaultWallpaperRefresher implements WallpaperRefresher {
                     mWallpaperPreferences.getWallpaperPresentationMode());
         }
 
+        /**
+         * Sets the metadata of the on-device wallpaper whose hash code matches the current home
+         * screen image wallpaper, e.g. one restored from a backup, to WallpaperPreferences.
+         *
+         * @return false if no on-device wallpaper matches
+         */
+        private boolean setIndexedHomeScreenWallpaperMetadata() {
+            long hashCode = getCurrentHomeWallpaperHashCode();
+            WallpaperFingerprintIndex.Entry entry =
+                    hashCode != 0 ? mFingerprintIndex.lookupBlocking(hashCode) : null;
+            if (entry == null) {
+                return false;
+            }
+            mWallpaperPreferences.setHomeWallpaperAttributions(entry.getAttributions());
+            mWallpaperPreferences.setHomeWallpaperActionUrl(entry.getActionUrl());
+            mWallpaperPreferences.setHomeWallpaperCollectionId(entry.getCollectionId());
+            mWallpaperPreferences.setHomeWallpaperRemoteId(entry.getWallpaperId());
+            mWallpaperPreferences.setHomeWallpaperHashCode(hashCode);
+            mWallpaperPreferences.setHomeWallpaperManagerId(
+                    mWallpaperManager.getWallpaperId(FLAG_SYSTEM));
+
+            // As with the fallback metadata, an on-device wallpaper is not a daily rotation.
+            mWallpaperPreferences.setWallpaperPresentationMode(
+                    WallpaperPreferences.PRESENTATION_MODE_STATIC);
+            mWallpaperPreferences.clearDailyRotations();
+            return true;
+        }
+
+        /**
+         * Sets the metadata of the on-device wallpaper whose hash code matches the current lock
+         * screen image wallpaper to WallpaperPreferences.
+         *
+         * @return false if no on-device wallpaper matches
+         */
+        private boolean setIndexedLockScreenWallpaperMetadata() {
+            long hashCode = getCurrentLockWallpaperHashCode();
+            WallpaperFingerprintIndex.Entry entry =
+                    hashCode != 0 ? mFingerprintIndex.lookupBlocking(hashCode) : null;
+            if (entry == null) {
+                return false;
+            }
+            mWallpaperPreferences.setLockWallpaperAttributions(entry.getAttributions());
+            mWallpaperPreferences.setLockWallpaperActionUrl(entry.getActionUrl());
+            mWallpaperPreferences.setLockWallpaperCollectionId(entry.getCollectionId());
+            mWallpaperPreferences.setLockWallpaperRemoteId(entry.getWallpaperId());
+            mWallpaperPreferences.setLockWallpaperHashCode(hashCode);
+            mWallpaperPreferences.setLockWallpaperManagerId(
+                    mWallpaperManager.getWallpaperId(FLAG_LOCK));
+            return true;
+        }
+
         /**
          * Sets fallback wallpaper attributions to WallpaperPreferences when the saved metadata did
          * not match the system wallpaper. For live wallpapers, loads the label (title) but for
@@ -296,18 +352,10 @@ public class DefaultWallpaperRefresher implements WallpaperRefresher {
 
         private long getCurrentHomeWallpaperHashCode() {
             if (mCurrentHomeWallpaperHashCode == 0) {
-                BitmapDrawable wallpaperDrawable = (BitmapDrawable) mWallpaperManager.getDrawable();
-                // wallpaperDrawable should always be non-null, unless if there's a error in
-                // WallpaperManager's state, in which case we'll consider the hashcode as unset.
-                Bitmap wallpaperBitmap = wallpaperDrawable != null ? wallpaperDrawable.getBitmap()
-                        : null;
+                // The file should always be there, unless if there's a error in WallpaperManager's
+                // state, in which case we'll consider the hashcode as unset.
                 mCurrentHomeWallpaperHashCode =
-                        wallpaperBitmap != null ? BitmapUtils.generateHashCode(wallpaperBitmap) : 0;
-
-                // Manually request that WallpaperManager loses its reference to the current
-                // wallpaper bitmap, which can occupy a large memory allocation for the lifetime of
-                // the app.
-                mWallpaperManager.forgetLoadedWallpaper();
+                        generateHashCode(mWallpaperManager.getWallpaperFile(FLAG_SYSTEM));
             }
             return mCurrentHomeWallpaperHashCode;
         }
@@ -315,48 +363,28 @@ public class DefaultWallpaperRefresher implements WallpaperRefresher {
         private long getCurrentLockWallpaperHashCode() {
             if (mCurrentLockWallpaperHashCode == 0
                     && mWallpaperStatusChecker.isLockWallpaperSet()) {
-                Bitmap wallpaperBitmap = getLockWallpaperBitmap();
-                // If isLockWallpaperSet() returned true, wallpaperBitmap should always be
-                // non-null, unless if there's a error in WallpaperManager, in which case we'll
-                // consider the hashcode as unset.
+                // getWallpaperFile returns null if the lock screen isn't explicitly set.
                 mCurrentLockWallpaperHashCode =
-                        wallpaperBitmap != null ? BitmapUtils.generateHashCode(wallpaperBitmap) : 0;
+                        generateHashCode(mWallpaperManager.getWallpaperFile(FLAG_LOCK));
             }
             return mCurrentLockWallpaperHashCode;
         }
 
         /**
-         * Returns the lock screen wallpaper currently set on the device as a Bitmap, or null if no
-         * lock screen wallpaper is set.
+         * Returns the hash code of the wallpaper in the given file, which is closed, without
+         * decoding it whole, or 0 if there is no file or it cannot be decoded.
          */
-        private Bitmap getLockWallpaperBitmap() {
-            Bitmap lockBitmap = null;
-
-            ParcelFileDescriptor pfd = mWallpaperManager.getWallpaperFile(FLAG_LOCK);
-            // getWallpaperFile returns null if the lock screen isn't explicitly set, so need this
-            // check.
-            if (pfd != null) {
-                InputStream fileStream = null;
-                try {
-                    fileStream = new FileInputStream(pfd.getFileDescriptor());
-                    lockBitmap = BitmapFactory.decodeStream(fileStream);
-                    pfd.close();
-                    return lockBitmap;
-                } catch (IOException e) {
-                    Log.e(TAG, "IO exception when closing the file descriptor.");
-                } finally {
-                    if (fileStream != null) {
-                        try {
-                            fileStream.close();
-                        } catch (IOException e) {
-                            Log.e(TAG,
-                                    "IO exception when closing input stream for lock screen WP.");
-                        }
-                    }
-                }
+        private long generateHashCode(@Nullable ParcelFileDescriptor pfd) {
+            if (pfd == null) {
+                return 0;
+            }
+            try (ParcelFileDescriptor file = pfd) {
+                Long hashCode = StreamingHashCodeGenerator.generate(file);
+                return hashCode != null ? hashCode : 0;
+            } catch (IOException e) {
+                Log.e(TAG, "IO exception when hashing the wallpaper file.", e);
+                return 0;
             }
-
-            return lockBitmap;
         }
 
         /**
@@ -37,6 +37,7 @@ import com.android.wallpaper.picker.customization.data.content.WallpaperClient
 import com.android.wallpaper.picker.customization.data.repository.WallpaperColorsRepository
 import com.android.wallpaper.picker.customization.domain.interactor.WallpaperInteractor
 import com.android.wallpaper.picker.customization.domain.interactor.WallpaperSnapshotRestorer
+import com.android.wallpaper.picker.network.domain.PrefetchPolicy
 import com.android.wallpaper.picker.undo.domain.interactor.SnapshotRestorer
 import com.android.wallpaper.picker.undo.domain.interactor.UndoInteractor
 import com.android.wallpaper.util.DisplayUtils
@@ -88,6 +89,8 @@ interface Injector {
 
     fun getPerformanceMonitor(): PerformanceMonitor?
 
+    fun getPrefetchPolicy(context: Context): PrefetchPolicy
+
     // TODO b/242908637 Remove this method when migrating to the new wallpaper preview screen
     fun getPreviewFragment(
         context: Context,
@@ -99,6 +102,11 @@ interface Injector {
 
     fun getRequester(context: Context): Requester
 
+    /** Returns the source of upcoming daily-rotation wallpapers, or null if there is none. */
+    fun getRotationPrefetchSource(context: Context): RotationPrefetchSource? {
+        return null
+    }
+
     fun getSystemFeatureChecker(): SystemFeatureChecker
 
     fun getUserEventLogger(): UserEventLogger
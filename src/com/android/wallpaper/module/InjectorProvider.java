@@ -15,18 +15,23 @@
  */
 package com.android.wallpaper.module;
 
+import androidx.annotation.Nullable;
+
+import com.android.wallpaper.monitor.PerformanceMonitor;
+
 /**
  * Provides the dependency injector statically to components that need it.
  */
 public class InjectorProvider {
-    private static Injector sInjector = null;
+    private static volatile Injector sInjector = null;
+    private static volatile CachedPerformanceMonitor sPerformanceMonitor = null;
 
     /**
      * Gets the dependency injector.
      *
      * @return The injector.
      */
-    public static synchronized Injector getInjector() {
+    public static Injector getInjector() {
         return sInjector;
     }
 
@@ -36,4 +41,33 @@ public class InjectorProvider {
     public static void setInjector(Injector injector) {
         sInjector = injector;
     }
+
+    /**
+     * Gets the {@link PerformanceMonitor} of the current injector, or null if there is none. The
+     * monitor is cached per injector since it is read on hot paths such as every bitmap decode.
+     */
+    @Nullable
+    public static PerformanceMonitor getPerformanceMonitor() {
+        Injector injector = sInjector;
+        CachedPerformanceMonitor cached = sPerformanceMonitor;
+        if (cached == null || cached.mInjector != injector) {
+            cached = new CachedPerformanceMonitor(injector,
+                    injector != null ? injector.getPerformanceMonitor() : null);
+            sPerformanceMonitor = cached;
+        }
+        return cached.mMonitor;
+    }
+
+    private static final class CachedPerformanceMonitor {
+        @Nullable
+        final Injector mInjector;
+        @Nullable
+        final PerformanceMonitor mMonitor;
+
+        CachedPerformanceMonitor(@Nullable Injector injector,
+                @Nullable PerformanceMonitor monitor) {
+            mInjector = injector;
+            mMonitor = monitor;
+        }
+    }
 }
@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.wallpaper.module
+
+import android.content.Context
+import android.util.Log
+import androidx.annotation.VisibleForTesting
+import com.android.wallpaper.util.AtomicFiles
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.util.concurrent.Executor
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.zip.CRC32
+
+/**
+ * Append-only journal of small integer states that must survive a crash, such as whether a
+ * wallpaper set or a daily rotation update is pending.
+ *
+ * An update appends a checksummed record of a few bytes instead of rewriting a whole preferences
+ * file. [putSync] syncs the record to disk before returning, sharing a single fsync with concurrent
+ * [putSync] callers. [put] appends and syncs on a background thread, so a burst of updates costs a
+ * single fsync. The journal is replayed on first access, the last record of each key winning, and
+ * a torn record left at the end by a crash mid-append is dropped. Once the file holds
+ * [COMPACT_AFTER_RECORDS] records it is rewritten with one record per key.
+ */
+class PendingStateJournal
+@VisibleForTesting
+constructor(private val file: File, private val executor: Executor) {
+
+    constructor(
+        context: Context
+    ) : this(File(context.noBackupFilesDir, FILE_NAME), Executors.newSingleThreadExecutor())
+
+    // Lock order is syncLock, then lock.
+    private val lock = Any()
+    private val syncLock = Any()
+
+    // Guarded by lock.
+    private var loaded = false
+    private val values = HashMap<Int, Int>()
+    private var output: FileOutputStream? = null
+    private var recordsInFile = 0
+    private var appendedRecords = 0L
+
+    // Guarded by syncLock.
+    private var syncedRecords = 0L
+
+    private val syncScheduled = AtomicBoolean()
+    private val compactScheduled = AtomicBoolean()
+
+    /** Returns the last value put for [key], or null if there is none. */
+    fun get(key: Int): Int? {
+        synchronized(lock) {
+            ensureLoadedLocked()
+            return values[key]
+        }
+    }
+
+    /**
+     * Sets [key] to [value] in memory right away and on disk shortly after, without blocking the
+     * calling thread.
+     */
+    fun put(key: Int, value: Int) {
+        checkKey(key)
+        synchronized(lock) {
+            ensureLoadedLocked()
+            values[key] = value
+        }
+        executor.execute {
+            // Appends the latest value rather than [value], so that a put overtaken by a later
+            // putSync of the same key cannot replay over it.
+            val record = synchronized(lock) { values[key]?.let { appendLocked(key, it) } ?: 0 }
+            if (record > 0 && syncScheduled.compareAndSet(false, true)) {
+                executor.execute {
+                    syncScheduled.set(false)
+                    sync(Long.MAX_VALUE)
+                }
+            }
+        }
+    }
+
+    /**
+     * Sets [key] to [value] and returns once the update is on disk.
+     *
+     * @return whether the update was written; if not, it is still applied in memory
+     */
+    fun putSync(key: Int, value: Int): Boolean {
+        checkKey(key)
+        val record =
+            synchronized(lock) {
+                ensureLoadedLocked()
+                values[key] = value
+                appendLocked(key, value)
+            }
+        return record > 0 && sync(record)
+    }
+
+    /** Syncs the journal up to at least the given record, or everything appended so far. */
+    private fun sync(record: Long): Boolean {
+        synchronized(syncLock) {
+            if (syncedRecords >= record) {
+                return true
+            }
+            val (stream, appended) = synchronized(lock) { output to appendedRecords }
+            if (stream == null) {
+                return false
+            }
+            return try {
+                stream.fd.sync()
+                syncedRecords = appended
+                true
+            } catch (e: IOException) {
+                Log.w(TAG, "Unable to sync journal", e)
+                false
+            }
+        }
+    }
+
+    /** Appends a record and returns its sequence number, or 0 if it could not be written. */
+    private fun appendLocked(key: Int, value: Int): Long {
+        return try {
+            val stream = output ?: FileOutputStream(file, /* append= */ true).also { output = it }
+            stream.write(encode(key, value))
+            recordsInFile++
+            if (recordsInFile >= COMPACT_AFTER_RECORDS) {
+                if (compactScheduled.compareAndSet(false, true)) {
+                    executor.execute(::compact)
+                }
+            }
+            ++appendedRecords
+        } catch (e: IOException) {
+            Log.w(TAG, "Unable to append to journal", e)
+            0
+        }
+    }
+
+    private fun compact() {
+        synchronized(syncLock) {
+            synchronized(lock) {
+                compactScheduled.set(false)
+                // Sync what was appended first, in case the rewrite below fails.
+                output?.let { stream ->
+                    try {
+                        stream.fd.sync()
+                        syncedRecords = appendedRecords
+                    } catch (e: IOException) {
+                        Log.w(TAG, "Unable to sync journal", e)
+                    }
+                }
+                closeOutputLocked()
+                val snapshot = values.toMap()
+                val written =
+                    AtomicFiles.write(file) { out ->
+                        snapshot.forEach { (key, value) -> out.write(encode(key, value)) }
+                        true
+                    }
+                if (written) {
+                    // The rewritten file was synced as a whole.
+                    recordsInFile = snapshot.size
+                    syncedRecords = appendedRecords
+                }
+            }
+        }
+    }
+
+    private fun ensureLoadedLocked() {
+        if (loaded) {
+            return
+        }
+        loaded = true
+        if (!file.exists()) {
+            return
+        }
+        val bytes =
+            try {
+                file.readBytes()
+            } catch (e: IOException) {
+                Log.w(TAG, "Unable to read journal", e)
+                return
+            }
+        var offset = 0
+        while (offset + RECORD_SIZE <= bytes.size) {
+            val buffer = ByteBuffer.wrap(bytes, offset, RECORD_SIZE)
+            val key = buffer.get().toInt()
+            val value = buffer.getInt()
+            if (buffer.getInt() != checksum(bytes, offset)) {
+                break
+            }
+            values[key] = value
+            recordsInFile++
+            offset += RECORD_SIZE
+        }
+        if (offset < bytes.size) {
+            Log.w(TAG, "Dropping ${bytes.size - offset} torn bytes at the end of the journal")
+            try {
+                RandomAccessFile(file, "rw").use { it.setLength(offset.toLong()) }
+            } catch (e: IOException) {
+                Log.w(TAG, "Unable to truncate journal", e)
+            }
+        }
+    }
+
+    private fun closeOutputLocked() {
+        try {
+            output?.close()
+        } catch (e: IOException) {
+            Log.w(TAG, "Unable to close journal", e)
+        }
+        output = null
+    }
+
+    companion object {
+        private const val TAG = "PendingStateJournal"
+        private const val FILE_NAME = "pending_state.journal"
+        /** Key byte, value int and CRC32 int. */
+        private const val RECORD_SIZE = 1 + 4 + 4
+        private const val CHECKSUMMED_SIZE = 1 + 4
+        @VisibleForTesting const val COMPACT_AFTER_RECORDS = 256
+
+        private fun checkKey(key: Int) {
+            require(key in 0..Byte.MAX_VALUE) { "Journal keys must fit in a byte: $key" }
+        }
+
+        private fun encode(key: Int, value: Int): ByteArray {
+            val bytes = ByteArray(RECORD_SIZE)
+            ByteBuffer.wrap(bytes).put(key.toByte()).putInt(value)
+            ByteBuffer.wrap(bytes, CHECKSUMMED_SIZE, 4).putInt(checksum(bytes, 0))
+            return bytes
+        }
+
+        private fun checksum(bytes: ByteArray, offset: Int): Int =
+            CRC32().apply { update(bytes, offset, CHECKSUMMED_SIZE) }.value.toInt()
+    }
+}
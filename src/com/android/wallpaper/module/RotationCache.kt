@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.wallpaper.module
+
+import android.app.WallpaperColors
+import android.content.Context
+import android.graphics.Bitmap
+import android.graphics.Color
+import android.graphics.Point
+import android.graphics.Rect
+import android.util.Log
+import androidx.annotation.VisibleForTesting
+import com.android.wallpaper.util.AtomicFiles
+import java.io.File
+import java.io.IOException
+import java.security.MessageDigest
+import java.util.Properties
+
+/**
+ * Private on-disk cache of upcoming daily-rotation wallpapers, prepared ahead of time by
+ * [RotationPrefetchJobService].
+ *
+ * Each entry holds the encoded wallpaper, ready to be streamed to the system, together with its
+ * crop hint for every display size and its colors, so that rotating to it needs neither a
+ * download, a decode nor a crop. An entry only becomes visible once all of its files have been
+ * written.
+ *
+ * Writes are serialized, while reads take no lock: files are only ever replaced by rename, so a
+ * reader sees either a complete entry or none.
+ */
+class RotationCache @VisibleForTesting constructor(private val directory: File) {
+
+    /** A prepared wallpaper. [cropHints] is empty if the image has already been cropped. */
+    class Entry(val file: File, val cropHints: Map<Point, Rect>, val colors: WallpaperColors?)
+
+    /** Returns the prepared wallpaper for [key], or null if there is none. */
+    fun get(key: String): Entry? {
+        val imageFile = imageFile(key)
+        val metadataFile = metadataFile(key)
+        if (!imageFile.exists() || !metadataFile.exists()) {
+            return null
+        }
+        val properties = Properties()
+        try {
+            metadataFile.inputStream().use { properties.load(it) }
+        } catch (e: IOException) {
+            Log.w(TAG, "Unable to read rotation cache metadata", e)
+            return null
+        }
+        val cropHints = mutableMapOf<Point, Rect>()
+        properties.stringPropertyNames().forEach { name ->
+            if (name.startsWith(KEY_CROP_PREFIX)) {
+                val size = name.removePrefix(KEY_CROP_PREFIX).split('x')
+                val crop = properties.getProperty(name).split(',')
+                if (size.size == 2 && crop.size == 4) {
+                    cropHints[Point(size[0].toInt(), size[1].toInt())] =
+                        Rect(crop[0].toInt(), crop[1].toInt(), crop[2].toInt(), crop[3].toInt())
+                }
+            }
+        }
+        val colors =
+            properties.getProperty(KEY_COLORS)?.split(',')?.takeIf { it.size == 4 }?.let {
+                WallpaperColors(
+                    Color.valueOf(it[0].toInt()),
+                    it[1].toIntOrNull()?.let(Color::valueOf),
+                    it[2].toIntOrNull()?.let(Color::valueOf),
+                    it[3].toInt(),
+                )
+            }
+        return Entry(imageFile, cropHints, colors)
+    }
+
+    /** Returns whether a prepared wallpaper exists for [key]. */
+    fun contains(key: String): Boolean = imageFile(key).exists() && metadataFile(key).exists()
+
+    /**
+     * Encodes [bitmap] and stores it for [key] along with its crop hints and colors.
+     *
+     * @return whether the entry was stored
+     */
+    @Synchronized
+    fun put(
+        key: String,
+        bitmap: Bitmap,
+        cropHints: Map<Point, Rect>,
+        colors: WallpaperColors?,
+    ): Boolean {
+        if (!directory.isDirectory && !directory.mkdirs()) {
+            return false
+        }
+        val properties = Properties()
+        cropHints.forEach { (size, crop) ->
+            properties.setProperty(
+                "$KEY_CROP_PREFIX${size.x}x${size.y}",
+                "${crop.left},${crop.top},${crop.right},${crop.bottom}",
+            )
+        }
+        colors?.let {
+            properties.setProperty(
+                KEY_COLORS,
+                listOf(
+                        it.primaryColor.toArgb(),
+                        it.secondaryColor?.toArgb() ?: "",
+                        it.tertiaryColor?.toArgb() ?: "",
+                        it.colorHints,
+                    )
+                    .joinToString(","),
+            )
+        }
+        // The metadata file is written last, so a crash mid-write never leaves a visible entry.
+        metadataFile(key).delete()
+        val written =
+            AtomicFiles.write(imageFile(key)) {
+                bitmap.compress(Bitmap.CompressFormat.PNG, COMPRESS_QUALITY, it)
+            } &&
+                AtomicFiles.write(metadataFile(key)) {
+                    properties.store(it, null)
+                    true
+                }
+        if (!written) {
+            remove(key)
+        }
+        return written
+    }
+
+    /** Removes the prepared wallpaper for [key], if any. */
+    @Synchronized
+    fun remove(key: String) {
+        imageFile(key).delete()
+        metadataFile(key).delete()
+    }
+
+    /** Removes every prepared wallpaper whose key is not in [keys]. */
+    @Synchronized
+    fun retainOnly(keys: Collection<String>) {
+        val retained = keys.map { fileName(it) }.toSet()
+        directory.listFiles()?.forEach { file ->
+            if (file.nameWithoutExtension !in retained) {
+                file.delete()
+            }
+        }
+    }
+
+    /** Removes every prepared wallpaper. */
+    fun clear() = retainOnly(emptyList())
+
+    private fun imageFile(key: String) = File(directory, fileName(key) + SUFFIX_IMAGE)
+
+    private fun metadataFile(key: String) = File(directory, fileName(key) + SUFFIX_METADATA)
+
+    private fun fileName(key: String): String =
+        MessageDigest.getInstance("SHA-256").digest(key.toByteArray()).joinToString("") {
+            "%02x".format(it)
+        }
+
+    companion object {
+        private const val TAG = "RotationCache"
+        private const val DIRECTORY_NAME = "rotation_cache"
+        private const val SUFFIX_IMAGE = ".png"
+        private const val SUFFIX_METADATA = ".properties"
+        private const val KEY_CROP_PREFIX = "crop."
+        private const val KEY_COLORS = "colors"
+        private const val COMPRESS_QUALITY = 100
+
+        @Volatile private var instance: RotationCache? = null
+
+        @JvmStatic
+        fun getInstance(context: Context): RotationCache =
+            instance
+                ?: synchronized(this) {
+                    instance
+                        ?: RotationCache(File(context.noBackupFilesDir, DIRECTORY_NAME)).also {
+                            instance = it
+                        }
+                }
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.wallpaper.module
+
+import android.app.WallpaperColors
+import android.app.WallpaperManager
+import android.app.job.JobInfo
+import android.app.job.JobParameters
+import android.app.job.JobScheduler
+import android.app.job.JobService
+import android.content.ComponentName
+import android.content.Context
+import android.graphics.Bitmap
+import android.graphics.Point
+import android.graphics.Rect
+import android.util.Log
+import androidx.annotation.VisibleForTesting
+import com.android.wallpaper.asset.Asset
+import com.android.wallpaper.picker.network.domain.PrefetchPolicy.FetchType
+import com.android.wallpaper.util.DisplayUtils
+import com.android.wallpaper.util.ScreenSizeCalculator
+import com.android.wallpaper.util.WallpaperCropUtils
+import java.util.concurrent.TimeUnit
+import kotlin.math.max
+import kotlin.math.min
+import kotlinx.coroutines.CancellableContinuation
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.currentCoroutineContext
+import kotlinx.coroutines.ensureActive
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.suspendCancellableCoroutine
+
+/**
+ * [JobScheduler] job that prepares the next daily-rotation wallpapers into the [RotationCache]
+ * while the device is idle, charging and on an unmetered network.
+ *
+ * Each upcoming wallpaper from the [RotationPrefetchSource] is downloaded, decoded, cropped for
+ * every display size and encoded here, so that the rotation itself only streams a prepared file to
+ * the system, and does not depend on the network or on memory being available at that moment.
+ */
+class RotationPrefetchJobService : JobService() {
+
+    private var job: Job? = null
+
+    override fun onStartJob(params: JobParameters): Boolean {
+        val context = applicationContext
+        job =
+            InjectorProvider.getInjector().getApplicationCoroutineScope().launch(Dispatchers.IO) {
+                prefetch(context)
+                jobFinished(params, /* wantsReschedule= */ false)
+            }
+        // Return true to indicate that the work continues on a separate thread.
+        return true
+    }
+
+    override fun onStopJob(params: JobParameters): Boolean {
+        // The device is no longer idle, charging or on an unmetered network. Whatever has been
+        // prepared so far is kept, and the periodic job picks up the rest next time.
+        job?.cancel()
+        job = null
+        return false
+    }
+
+    companion object {
+        private const val TAG = "RotationPrefetchJob"
+        private const val PREFETCH_COUNT = 3
+        private val PREFETCH_PERIOD_MS = TimeUnit.HOURS.toMillis(12)
+
+        /**
+         * Schedules the periodic prefetch, unless it is already scheduled or the injector provides
+         * no [RotationPrefetchSource] to prefetch from.
+         */
+        @JvmStatic
+        fun schedule(context: Context) {
+            if (InjectorProvider.getInjector().getRotationPrefetchSource(context) == null) {
+                return
+            }
+            val scheduler = context.getSystemService(JobScheduler::class.java) ?: return
+            if (scheduler.getPendingJob(JobSchedulerJobIds.JOB_ID_PREFETCH_ROTATION) != null) {
+                return
+            }
+            scheduler.schedule(
+                JobInfo.Builder(
+                        JobSchedulerJobIds.JOB_ID_PREFETCH_ROTATION,
+                        ComponentName(context, RotationPrefetchJobService::class.java),
+                    )
+                    .setRequiresDeviceIdle(true)
+                    .setRequiresCharging(true)
+                    .setRequiredNetworkType(JobInfo.NETWORK_TYPE_UNMETERED)
+                    .setPeriodic(PREFETCH_PERIOD_MS)
+                    .setPersisted(true)
+                    .build()
+            )
+        }
+
+        /** Cancels the periodic prefetch. */
+        @JvmStatic
+        fun cancel(context: Context) {
+            context
+                .getSystemService(JobScheduler::class.java)
+                ?.cancel(JobSchedulerJobIds.JOB_ID_PREFETCH_ROTATION)
+        }
+
+        /**
+         * Prepares the upcoming rotation wallpapers that are not in the cache yet, and drops the
+         * ones that are no longer upcoming. Stops rotating prefetch altogether once daily rotation
+         * has been turned off.
+         */
+        @VisibleForTesting
+        suspend fun prefetch(context: Context) {
+            val injector = InjectorProvider.getInjector()
+            val cache = RotationCache.getInstance(context)
+            if (
+                injector.getPreferences(context).getWallpaperPresentationMode() !=
+                    WallpaperPreferences.PRESENTATION_MODE_ROTATING
+            ) {
+                cache.clear()
+                cancel(context)
+                return
+            }
+            // JobScheduler only starts the job on an unmetered network, but it may have dropped,
+            // become metered or had Data Saver turned on since.
+            if (!injector.getPrefetchPolicy(context).isAllowed(FetchType.PREFETCH)) {
+                return
+            }
+            val source = injector.getRotationPrefetchSource(context)
+            if (source == null) {
+                // Scheduled by a build that had a source. Nothing can be prefetched anymore.
+                cancel(context)
+                return
+            }
+
+            val upcoming = source.getUpcomingWallpapers(PREFETCH_COUNT)
+            cache.retainOnly(upcoming.map { it.key })
+            val displayUtils = injector.getDisplayUtils(context)
+            for (wallpaper in upcoming) {
+                currentCoroutineContext().ensureActive()
+                if (!cache.contains(wallpaper.key)) {
+                    prepare(context, cache, displayUtils, wallpaper)
+                }
+            }
+        }
+
+        private suspend fun prepare(
+            context: Context,
+            cache: RotationCache,
+            displayUtils: DisplayUtils,
+            wallpaper: RotationPrefetchSource.UpcomingWallpaper,
+        ) {
+            val maxDimension = displayUtils.getMaxDisplaysDimension().let { max(it.x, it.y) }
+            val bitmap = wallpaper.asset.awaitBitmap(maxDimension, maxDimension)
+            if (bitmap == null) {
+                Log.w(TAG, "Unable to decode upcoming rotation wallpaper")
+                return
+            }
+            val wallpaperSize = Point(bitmap.width, bitmap.height)
+
+            val image: Bitmap
+            val cropHints: Map<Point, Rect>
+            if (WallpaperManager.isMultiCropEnabled()) {
+                image = bitmap
+                cropHints =
+                    displayUtils.getInternalDisplaySizes(allDimensions = true).associateWith {
+                        getDefaultCropHint(context, wallpaperSize, it)
+                    }
+            } else {
+                // Without multi-crop the system takes a single image, so store it pre-cropped for
+                // the wallpaper display, as the persister would.
+                val display = displayUtils.getWallpaperDisplay()
+                val crop =
+                    WallpaperCropUtils.calculateDefaultCropHint(
+                        context,
+                        wallpaperSize,
+                        ScreenSizeCalculator.getInstance().getScreenSize(display),
+                        WallpaperCropUtils.getDefaultCropSurfaceSize(context.resources, display),
+                    )
+                image =
+                    Bitmap.createBitmap(bitmap, crop.left, crop.top, crop.width(), crop.height())
+                cropHints = emptyMap()
+            }
+
+            cache.put(wallpaper.key, image, cropHints, WallpaperColors.fromBitmap(image))
+            if (image !== bitmap) {
+                image.recycle()
+            }
+            bitmap.recycle()
+        }
+
+        private fun getDefaultCropHint(context: Context, wallpaperSize: Point, size: Point): Rect =
+            WallpaperCropUtils.calculateDefaultCropHint(
+                context,
+                wallpaperSize,
+                size,
+                WallpaperCropUtils.calculateCropSurfaceSize(
+                    context.resources,
+                    max(size.x, size.y),
+                    min(size.x, size.y),
+                    size.x,
+                    size.y,
+                ),
+            )
+
+        private suspend fun Asset.awaitBitmap(width: Int, height: Int): Bitmap? =
+            suspendCancellableCoroutine { k: CancellableContinuation<Bitmap?> ->
+                decodeBitmap(width, height) { k.resumeWith(Result.success(it)) }
+            }
+    }
+}
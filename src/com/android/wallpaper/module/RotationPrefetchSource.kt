@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.wallpaper.module
+
+import com.android.wallpaper.asset.Asset
+
+/** Supplies the wallpapers daily rotation will show next, so they can be prepared ahead of time. */
+interface RotationPrefetchSource {
+
+    /**
+     * Returns up to [count] upcoming rotation wallpapers, soonest first. Called off the main
+     * thread, and may block on the network.
+     */
+    fun getUpcomingWallpapers(count: Int): List<UpcomingWallpaper>
+
+    /**
+     * An upcoming rotation wallpaper.
+     *
+     * @property key stable identifier of the wallpaper, later passed to
+     *   [WallpaperPersister.setPreparedWallpaperInRotation]
+     */
+    data class UpcomingWallpaper(val key: String, val asset: Asset)
+}
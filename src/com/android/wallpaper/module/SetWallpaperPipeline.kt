@@ -0,0 +1,545 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.wallpaper.module
+
+import android.app.WallpaperColors
+import android.app.WallpaperManager
+import android.app.WallpaperManager.FLAG_LOCK
+import android.app.WallpaperManager.FLAG_SYSTEM
+import android.content.Context
+import android.graphics.Bitmap
+import android.graphics.BitmapFactory
+import android.graphics.Point
+import android.graphics.Rect
+import android.graphics.drawable.BitmapDrawable
+import android.os.ParcelFileDescriptor
+import android.util.Log
+import com.android.wallpaper.asset.BitmapUtils
+import com.android.wallpaper.backup.StreamingHashCodeGenerator
+import com.android.wallpaper.model.StaticWallpaperPrefMetadata
+import com.android.wallpaper.model.WallpaperInfo
+import com.android.wallpaper.module.WallpaperPersister.DEST_BOTH
+import com.android.wallpaper.module.WallpaperPersister.DEST_HOME_SCREEN
+import com.android.wallpaper.module.WallpaperPersister.DEST_LOCK_SCREEN
+import com.android.wallpaper.module.WallpaperPersister.Destination
+import com.android.wallpaper.module.WallpaperPersister.SetWallpaperCallback
+import com.android.wallpaper.monitor.PerformanceMetrics
+import com.android.wallpaper.monitor.PerformanceMonitor
+import com.android.wallpaper.monitor.measure
+import com.android.wallpaper.util.BitmapTransformer
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.IOException
+import java.io.InputStream
+import kotlin.coroutines.cancellation.CancellationException
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.CoroutineStart
+import kotlinx.coroutines.Deferred
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.NonCancellable
+import kotlinx.coroutines.async
+import kotlinx.coroutines.currentCoroutineContext
+import kotlinx.coroutines.ensureActive
+import kotlinx.coroutines.isActive
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
+
+/**
+ * Sets a static wallpaper to [WallpaperManager] as a sequence of stages: transform, encode, commit,
+ * fingerprint and colors, then metadata. The latency of each stage is reported to
+ * [PerformanceMonitor].
+ *
+ * The fingerprint and colors are computed from the bitmap being set alongside encoding and
+ * committing, rather than from the wallpaper read back afterwards. They are only kept if
+ * [WallpaperManager] stored the bitmap as it is. If it cropped or scaled it, they are computed
+ * again from the stored wallpaper, which is what [DefaultWallpaperRefresher] compares against.
+ *
+ * Work before the commit stage can be cancelled and leaves the current wallpaper untouched. Once
+ * the commit starts, the remaining stages always run so that preferences match what
+ * [WallpaperManager] holds.
+ */
+class SetWallpaperPipeline(
+    context: Context,
+    private val wallpaperManager: WallpaperManager,
+    private val preferences: WallpaperPreferences,
+    private val changedNotifier: WallpaperChangedNotifier,
+    private val statusChecker: WallpaperStatusChecker,
+    private val persister: WallpaperPersister,
+    private val isRefactorSettingWallpaper: Boolean,
+    private val scope: CoroutineScope,
+    private val backgroundDispatcher: CoroutineDispatcher,
+) {
+
+    private val appContext = context.applicationContext
+
+    /**
+     * A static wallpaper to set, either as a decoded [bitmap] or as an encoded [inputStream], which
+     * the pipeline closes once it is done with it.
+     */
+    class Request(
+        val wallpaper: WallpaperInfo,
+        val bitmap: Bitmap?,
+        val inputStream: InputStream?,
+        val cropHint: Rect?,
+        @Destination val destination: Int,
+        /** Optional size to fill with [bitmap], keeping its aspect ratio, before setting it. */
+        val fillSize: Point?,
+        /** Optional size to stretch [bitmap] to before setting it. */
+        val stretchSize: Point?,
+    ) {
+        init {
+            require(fillSize == null || stretchSize == null) {
+                "Can't pass both a fill size and a stretch size."
+            }
+        }
+    }
+
+    /**
+     * Starts setting the wallpaper described by [request] and reports the result to [callback] on
+     * the pipeline's scope. Cancelling the returned job before the commit stage abandons the set
+     * without calling [callback].
+     */
+    fun launch(request: Request, callback: SetWallpaperCallback): Job =
+        // Started atomically, so that the request's stream is closed even if the job is cancelled
+        // before it gets to run.
+        scope.launch(start = CoroutineStart.ATOMIC) {
+            val wallpaperId =
+                try {
+                    PerformanceMonitor.get().measure(PerformanceMetrics.WALLPAPER_SET) {
+                        setWallpaper(request)
+                    }
+                } catch (e: CancellationException) {
+                    PerformanceMonitor.get()
+                        .incrementCounter(PerformanceMetrics.WALLPAPER_SETS_CANCELLED, 1)
+                    throw e
+                } finally {
+                    request.inputStream?.let { closeStream(it) }
+                }
+
+            if (wallpaperId > 0) {
+                callback.onSuccess(request.wallpaper, request.destination)
+                changedNotifier.notifyWallpaperChanged()
+            } else {
+                callback.onError(null /* throwable */)
+            }
+        }
+
+    /** Runs the stages and returns the new wallpaper ID, or 0 if the wallpaper couldn't be set. */
+    private suspend fun setWallpaper(request: Request): Int {
+        val allowBackup = request.wallpaper.backupPermission == WallpaperInfo.BACKUP_ALLOWED
+        val wasLockWallpaperSet =
+            withContext(backgroundDispatcher) { statusChecker.isLockWallpaperSet() }
+
+        val bitmap =
+            request.bitmap?.let {
+                stage(PerformanceMetrics.WALLPAPER_SET_STAGE_TRANSFORM) { transform(request, it) }
+            }
+        val fingerprint = bitmap?.let { fingerprintAsync(it) }
+        val colors = bitmap?.let { colorsAsync(it) }
+        val encoded =
+            try {
+                bitmap?.let { stage(PerformanceMetrics.WALLPAPER_SET_STAGE_ENCODE) { encode(it) } }
+            } catch (e: CancellationException) {
+                fingerprint?.cancel()
+                colors?.cancel()
+                throw e
+            }
+
+        // Last chance to back out: from here on the system wallpaper changes.
+        if (!currentCoroutineContext().isActive) {
+            fingerprint?.cancel()
+            colors?.cancel()
+            currentCoroutineContext().ensureActive()
+        }
+        return withContext(NonCancellable) {
+            commitAndSaveMetadata(
+                request,
+                bitmap,
+                encoded,
+                fingerprint,
+                colors,
+                allowBackup,
+                wasLockWallpaperSet,
+            )
+        }
+    }
+
+    /**
+     * Runs the commit stage and the stages after it, and returns the new wallpaper ID, or 0 if the
+     * wallpaper couldn't be set.
+     */
+    private suspend fun commitAndSaveMetadata(
+        request: Request,
+        bitmap: Bitmap?,
+        encoded: ByteArray?,
+        fingerprint: Deferred<Long>?,
+        colors: Deferred<WallpaperColors>?,
+        allowBackup: Boolean,
+        wasLockWallpaperSet: Boolean,
+    ): Int {
+        val destination = request.destination
+        val which = WallpaperPersister.destinationToFlags(destination)
+        val wallpaperId =
+            stage(PerformanceMetrics.WALLPAPER_SET_STAGE_COMMIT) {
+                commit(request, bitmap, encoded, allowBackup, which)
+            }
+        if (wallpaperId <= 0) {
+            fingerprint?.cancel()
+            colors?.cancel()
+            return 0
+        }
+
+        val committedWhich = if (destination == DEST_LOCK_SCREEN) FLAG_LOCK else FLAG_SYSTEM
+        val committedBitmap: Bitmap
+        val bitmapHash: Long
+        val wallpaperColors: WallpaperColors
+        if (
+            bitmap != null &&
+                fingerprint != null &&
+                colors != null &&
+                stage(PerformanceMetrics.WALLPAPER_SET_STAGE_READ_BACK) {
+                    isCommittedAsIs(request, bitmap, committedWhich)
+                }
+        ) {
+            committedBitmap = bitmap
+            bitmapHash = fingerprint.await()
+            wallpaperColors = colors.await()
+        } else {
+            // Set from an encoded stream, or cropped or scaled by WallpaperManager, so work from
+            // the wallpaper it stored.
+            fingerprint?.cancel()
+            colors?.cancel()
+            committedBitmap =
+                stage(PerformanceMetrics.WALLPAPER_SET_STAGE_READ_BACK) {
+                    (wallpaperManager.getDrawable(committedWhich) as BitmapDrawable).bitmap
+                }
+            val readBackColors = colorsAsync(committedBitmap)
+            bitmapHash =
+                stage(PerformanceMetrics.WALLPAPER_SET_STAGE_FINGERPRINT) {
+                    hashCommittedFile(committedWhich)
+                }
+            wallpaperColors = readBackColors.await()
+        }
+
+        stage(PerformanceMetrics.WALLPAPER_SET_STAGE_METADATA) {
+            if (
+                destination == DEST_HOME_SCREEN &&
+                    preferences.getWallpaperPresentationMode() ==
+                        WallpaperPreferences.PRESENTATION_MODE_ROTATING &&
+                    !wasLockWallpaperSet
+            ) {
+                copyRotatingWallpaperToLock()
+            }
+            if (isRefactorSettingWallpaper) {
+                setStaticWallpaperMetadataToPreferences(
+                    request.wallpaper,
+                    destination,
+                    wallpaperId,
+                    committedBitmap,
+                    bitmapHash,
+                    wallpaperColors,
+                )
+            } else {
+                setImageWallpaperMetadata(
+                    request.wallpaper,
+                    destination,
+                    wallpaperId,
+                    committedBitmap,
+                    bitmapHash,
+                    wallpaperColors,
+                )
+            }
+        }
+        return wallpaperId
+    }
+
+    private suspend inline fun <T> stage(name: String, crossinline block: () -> T): T =
+        withContext(backgroundDispatcher) { PerformanceMonitor.get().measure(name) { block() } }
+
+    /**
+     * Returns whether [WallpaperManager] stored [bitmap] as it is, so that what was computed from
+     * the bitmap holds for the stored wallpaper. The bitmap is encoded losslessly, so only a crop
+     * or a downscale changes its pixels, and either changes its size.
+     */
+    private fun isCommittedAsIs(request: Request, bitmap: Bitmap, which: Int): Boolean {
+        if (request.cropHint != null) {
+            return false
+        }
+        val file = wallpaperManager.getWallpaperFile(which) ?: return false
+        val options = BitmapFactory.Options().apply { inJustDecodeBounds = true }
+        try {
+            ParcelFileDescriptor.AutoCloseInputStream(file).use {
+                BitmapFactory.decodeStream(it, null, options)
+            }
+        } catch (e: IOException) {
+            Log.w(TAG, "unable to read the stored wallpaper", e)
+            return false
+        }
+        return options.outWidth == bitmap.width && options.outHeight == bitmap.height
+    }
+
+    /**
+     * Returns the fingerprint of the wallpaper file stored by [WallpaperManager], computed without
+     * decoding it whole, or 0 if it can't be read.
+     */
+    private fun hashCommittedFile(which: Int): Long {
+        val file = wallpaperManager.getWallpaperFile(which) ?: return 0
+        return try {
+            file.use { StreamingHashCodeGenerator.generate(it) ?: 0 }
+        } catch (e: IOException) {
+            Log.e(TAG, "unable to hash the stored wallpaper", e)
+            0
+        }
+    }
+
+    private fun fingerprintAsync(bitmap: Bitmap): Deferred<Long> =
+        scope.async(backgroundDispatcher) {
+            PerformanceMonitor.get().measure(PerformanceMetrics.WALLPAPER_SET_STAGE_FINGERPRINT) {
+                BitmapUtils.generateHashCode(bitmap)
+            }
+        }
+
+    private fun colorsAsync(bitmap: Bitmap): Deferred<WallpaperColors> =
+        scope.async(backgroundDispatcher) {
+            PerformanceMonitor.get().measure(PerformanceMetrics.WALLPAPER_SET_STAGE_COLORS) {
+                WallpaperColors.fromBitmap(bitmap)
+            }
+        }
+
+    private fun transform(request: Request, bitmap: Bitmap): Bitmap =
+        when {
+            request.fillSize != null ->
+                BitmapTransformer.applyFillTransformation(bitmap, request.fillSize)
+            request.stretchSize != null ->
+                Bitmap.createScaledBitmap(
+                    bitmap,
+                    request.stretchSize.x,
+                    request.stretchSize.y,
+                    /* filter= */ true,
+                )
+            else -> bitmap
+        }
+
+    /** Returns the bitmap encoded as PNG, or null if it couldn't be compressed. */
+    private fun encode(bitmap: Bitmap): ByteArray? {
+        val out = ByteArrayOutputStream()
+        return if (bitmap.compress(Bitmap.CompressFormat.PNG, COMPRESS_QUALITY, out)) {
+            out.toByteArray()
+        } else {
+            Log.e(TAG, "unable to compress wallpaper")
+            null
+        }
+    }
+
+    private fun commit(
+        request: Request,
+        bitmap: Bitmap?,
+        encoded: ByteArray?,
+        allowBackup: Boolean,
+        which: Int,
+    ): Int {
+        val wallpaperId =
+            when {
+                encoded != null ->
+                    persister.setStreamToWallpaperManager(
+                        ByteArrayInputStream(encoded),
+                        request.cropHint,
+                        allowBackup,
+                        which,
+                    )
+                bitmap != null ->
+                    try {
+                        wallpaperManager.setBitmap(bitmap, request.cropHint, allowBackup, which)
+                    } catch (e: IOException) {
+                        Log.e(TAG, "unable to set wallpaper", e)
+                        0
+                    }
+                request.inputStream != null ->
+                    persister.setStreamToWallpaperManager(
+                        request.inputStream,
+                        request.cropHint,
+                        allowBackup,
+                        which,
+                    )
+                else -> {
+                    Log.e(
+                        TAG,
+                        "Both the wallpaper bitmap and input stream are null so we're unable " +
+                            "to set any kind of wallpaper here.",
+                    )
+                    0
+                }
+            }
+        if (wallpaperId > 0) {
+            // Make sure WallpaperManager doesn't hand out the previous wallpaper from now on.
+            wallpaperManager.forgetLoadedWallpaper()
+        }
+        return wallpaperId
+    }
+
+    /**
+     * Copies home wallpaper metadata to lock, and if rotation was enabled with a live wallpaper
+     * previously, then copies over the rotating wallpaper image to the WallpaperManager also.
+     *
+     * Used to accommodate the case where a user had gone from a home+lock daily rotation to
+     * selecting a static wallpaper on home-only. The image and metadata that was previously
+     * rotating is now copied to the lock screen.
+     */
+    private fun copyRotatingWallpaperToLock() {
+        preferences.setLockWallpaperAttributions(preferences.getHomeWallpaperAttributions())
+        preferences.setLockWallpaperActionUrl(preferences.getHomeWallpaperActionUrl())
+        preferences.setLockWallpaperCollectionId(preferences.getHomeWallpaperCollectionId())
+
+        // Set the lock wallpaper ID to what Android set it to, following its having copied the
+        // system wallpaper over to the lock screen when we changed from "both" to distinct system
+        // and lock screen wallpapers.
+        preferences.setLockWallpaperManagerId(wallpaperManager.getWallpaperId(FLAG_LOCK))
+    }
+
+    /**
+     * Sets the image wallpaper's metadata on SharedPreferences, after the wallpaper was set.
+     *
+     * @param wallpaperId The ID of the static wallpaper returned by WallpaperManager, which
+     *   uniquely identifies a wallpaper image.
+     */
+    private fun setImageWallpaperMetadata(
+        wallpaper: WallpaperInfo,
+        @Destination destination: Int,
+        wallpaperId: Int,
+        bitmap: Bitmap,
+        bitmapHash: Long,
+        colors: WallpaperColors,
+    ) {
+        // Wallpaper ID can not be null or empty to save to the recent wallpaper as preferences
+        val recentWallpaperId =
+            wallpaper.wallpaperId.takeUnless { it.isNullOrEmpty() } ?: bitmapHash.toString()
+
+        if (destination == DEST_HOME_SCREEN || destination == DEST_BOTH) {
+            preferences.clearHomeWallpaperMetadata()
+            preferences.setHomeWallpaperManagerId(wallpaperId)
+            preferences.setHomeWallpaperHashCode(bitmapHash)
+            preferences.setHomeWallpaperAttributions(wallpaper.getAttributions(appContext))
+            preferences.setHomeWallpaperActionUrl(wallpaper.getActionUrl(appContext))
+            preferences.setHomeWallpaperCollectionId(wallpaper.getCollectionId(appContext))
+            preferences.setHomeWallpaperRemoteId(wallpaper.wallpaperId)
+            preferences.storeLatestWallpaper(
+                FLAG_SYSTEM,
+                recentWallpaperId,
+                wallpaper,
+                bitmap,
+                colors,
+            )
+
+            // Disable rotation wallpaper when setting static image wallpaper to home screen
+            // Daily rotation rotates both home and lock screen wallpaper when lock screen is not
+            // set; otherwise daily rotation only rotates home screen while lock screen wallpaper
+            // stays as what it's set to.
+            preferences.setWallpaperPresentationMode(WallpaperPreferences.PRESENTATION_MODE_STATIC)
+            preferences.clearDailyRotations()
+        }
+
+        if (destination == DEST_LOCK_SCREEN || destination == DEST_BOTH) {
+            preferences.clearLockWallpaperMetadata()
+            preferences.setLockWallpaperManagerId(wallpaperId)
+            preferences.setLockWallpaperAttributions(wallpaper.getAttributions(appContext))
+            preferences.setLockWallpaperActionUrl(wallpaper.getActionUrl(appContext))
+            preferences.setLockWallpaperCollectionId(wallpaper.getCollectionId(appContext))
+            preferences.setLockWallpaperRemoteId(wallpaper.wallpaperId)
+            // Only a lock-only wallpaper has an image of its own. Save its hash code for the sake
+            // of backup & restore, because WallpaperManager-generated IDs are specific to a
+            // physical device.
+            if (destination == DEST_LOCK_SCREEN) {
+                preferences.setLockWallpaperHashCode(bitmapHash)
+            }
+            preferences.storeLatestWallpaper(
+                FLAG_LOCK,
+                recentWallpaperId,
+                wallpaper,
+                bitmap,
+                colors,
+            )
+        }
+    }
+
+    private fun setStaticWallpaperMetadataToPreferences(
+        wallpaper: WallpaperInfo,
+        @Destination destination: Int,
+        wallpaperId: Int,
+        bitmap: Bitmap,
+        bitmapHash: Long,
+        colors: WallpaperColors,
+    ) {
+        val imageUri =
+            if (destination == DEST_HOME_SCREEN || destination == DEST_BOTH) {
+                preferences.getHomeWallpaperImageUri()
+            } else {
+                preferences.getLockWallpaperImageUri()
+            }
+        persister.saveStaticWallpaperToPreferences(
+            destination,
+            StaticWallpaperPrefMetadata(
+                wallpaper.getAttributions(appContext).map { it ?: "" },
+                wallpaper.getActionUrl(appContext),
+                wallpaper.getCollectionId(appContext),
+                bitmapHash,
+                wallpaperId,
+                wallpaper.wallpaperId.orEmpty(),
+                imageUri,
+            ),
+        )
+
+        val recentWallpaperId = wallpaper.wallpaperId.orEmpty()
+        if (destination == DEST_HOME_SCREEN || destination == DEST_BOTH) {
+            preferences.storeLatestWallpaper(
+                FLAG_SYSTEM,
+                recentWallpaperId,
+                wallpaper,
+                bitmap,
+                colors,
+            )
+            // Stop wallpaper rotation if a static wallpaper is set to home.
+            preferences.setWallpaperPresentationMode(WallpaperPreferences.PRESENTATION_MODE_STATIC)
+            preferences.clearDailyRotations()
+        }
+
+        if (destination == DEST_LOCK_SCREEN || destination == DEST_BOTH) {
+            preferences.storeLatestWallpaper(
+                FLAG_LOCK,
+                recentWallpaperId,
+                wallpaper,
+                bitmap,
+                colors,
+            )
+        }
+    }
+
+    private suspend fun closeStream(inputStream: InputStream) {
+        withContext(backgroundDispatcher + NonCancellable) {
+            try {
+                inputStream.close()
+            } catch (e: IOException) {
+                Log.e(TAG, "Failed to close input stream", e)
+            }
+        }
+    }
+
+    companion object {
+        private const val TAG = "SetWallpaperPipeline"
+        private const val COMPRESS_QUALITY = 100
+    }
+}
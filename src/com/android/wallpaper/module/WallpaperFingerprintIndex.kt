@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.wallpaper.module
+
+import android.content.Context
+import android.content.pm.PackageManager
+import android.util.Log
+import androidx.annotation.VisibleForTesting
+import androidx.annotation.WorkerThread
+import com.android.wallpaper.asset.StreamableAsset
+import com.android.wallpaper.backup.StreamingHashCodeGenerator
+import com.android.wallpaper.model.WallpaperCategory
+import com.android.wallpaper.model.WallpaperInfo
+import com.android.wallpaper.picker.category.client.DefaultWallpaperCategoryClient
+import com.android.wallpaper.picker.di.modules.BackgroundDispatcher
+import com.android.wallpaper.util.AtomicFiles
+import dagger.hilt.android.qualifiers.ApplicationContext
+import java.io.File
+import java.io.IOException
+import javax.inject.Inject
+import javax.inject.Singleton
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import kotlinx.coroutines.withContext
+import org.json.JSONArray
+import org.json.JSONException
+import org.json.JSONObject
+
+/**
+ * Index from the hash code of every on-device partner and system image wallpaper to the metadata it
+ * is shown with, so that a wallpaper restored from a backup can be matched back to its attributions
+ * and collection with a single lookup.
+ *
+ * Hash codes are those of [com.android.wallpaper.asset.BitmapUtils.generateHashCode], computed by
+ * [StreamingHashCodeGenerator] from the encoded images, so building the index never decodes a whole
+ * wallpaper and a lookup decodes nothing. The index is built on first use, stored in the no-backup
+ * files directory and rebuilt once the partner package or this app has been updated.
+ */
+@Singleton
+class WallpaperFingerprintIndex
+@Inject
+constructor(
+    @ApplicationContext private val context: Context,
+    private val categoryClient: DefaultWallpaperCategoryClient,
+    private val partnerProvider: PartnerProvider,
+    @BackgroundDispatcher private val bgDispatcher: CoroutineDispatcher,
+) {
+
+    /** Metadata of an indexed wallpaper. */
+    data class Entry(
+        val wallpaperId: String?,
+        val attributions: List<String?>,
+        val actionUrl: String?,
+        val collectionId: String?,
+    )
+
+    private val file = File(context.noBackupFilesDir, FILE_NAME)
+    private val mutex = Mutex()
+    // Guarded by mutex.
+    private var entries: Map<Long, Entry>? = null
+
+    /** Returns the metadata of the on-device wallpaper with the given hash code, if any. */
+    suspend fun lookup(hashCode: Long): Entry? = getEntries()[hashCode]
+
+    /** Blocking variant of [lookup] for callers that already run on a background thread. */
+    @WorkerThread fun lookupBlocking(hashCode: Long): Entry? = runBlocking { lookup(hashCode) }
+
+    private suspend fun getEntries(): Map<Long, Entry> =
+        mutex.withLock {
+            entries?.let {
+                return@withLock it
+            }
+            val loaded =
+                withContext(bgDispatcher) {
+                    val version = getVersion()
+                    load(version) ?: build().also { save(version, it) }
+                }
+            entries = loaded
+            loaded
+        }
+
+    /** Identifies the set of candidates, which only changes when either package is updated. */
+    @VisibleForTesting
+    fun getVersion(): String {
+        val packageManager = context.packageManager
+        val partnerPackageName = partnerProvider.packageName
+        val partnerVersion =
+            partnerPackageName?.let {
+                try {
+                    packageManager.getPackageInfo(it, 0).longVersionCode
+                } catch (e: PackageManager.NameNotFoundException) {
+                    null
+                }
+            }
+        val ownVersion = packageManager.getPackageInfo(context.packageName, 0).longVersionCode
+        return "$partnerPackageName:$partnerVersion:$ownVersion"
+    }
+
+    private suspend fun build(): Map<Long, Entry> {
+        val categories =
+            listOfNotNull(categoryClient.getOnDeviceCategory()) +
+                categoryClient.getSystemCategories()
+        val candidates =
+            categories.filterIsInstance<WallpaperCategory>().flatMap {
+                it.unmodifiableWallpapers
+            }
+        val index = HashMap<Long, Entry>()
+        for (wallpaper in candidates) {
+            val hashCode = generateHashCode(wallpaper) ?: continue
+            index.putIfAbsent(
+                hashCode,
+                Entry(
+                    wallpaperId = wallpaper.wallpaperId,
+                    attributions = wallpaper.getAttributions(context).orEmpty(),
+                    actionUrl = wallpaper.getActionUrl(context),
+                    collectionId = wallpaper.getCollectionId(context),
+                ),
+            )
+        }
+        Log.i(TAG, "Indexed ${index.size} of ${candidates.size} on-device wallpapers")
+        return index
+    }
+
+    private fun generateHashCode(wallpaper: WallpaperInfo): Long? {
+        // Live wallpapers and built-in defaults have no encoded image to hash.
+        val asset = wallpaper.getAsset(context) as? StreamableAsset ?: return null
+        return try {
+            asset.openInputStreamSync()?.use { StreamingHashCodeGenerator.generate(it) }
+        } catch (e: IOException) {
+            Log.w(TAG, "Unable to hash wallpaper ${wallpaper.wallpaperId}", e)
+            null
+        }
+    }
+
+    private fun load(version: String): Map<Long, Entry>? {
+        if (!file.exists()) {
+            return null
+        }
+        return try {
+            val json = JSONObject(file.readText())
+            if (json.getString(KEY_VERSION) != version) {
+                return null
+            }
+            val array = json.getJSONArray(KEY_ENTRIES)
+            (0 until array.length()).associate { i ->
+                val entry = array.getJSONObject(i)
+                val attributions = entry.getJSONArray(KEY_ATTRIBUTIONS)
+                entry.getLong(KEY_HASH_CODE) to
+                    Entry(
+                        wallpaperId = entry.optStringOrNull(KEY_WALLPAPER_ID),
+                        attributions =
+                            (0 until attributions.length()).map {
+                                if (attributions.isNull(it)) null else attributions.getString(it)
+                            },
+                        actionUrl = entry.optStringOrNull(KEY_ACTION_URL),
+                        collectionId = entry.optStringOrNull(KEY_COLLECTION_ID),
+                    )
+            }
+        } catch (e: IOException) {
+            Log.w(TAG, "Unable to read fingerprint index", e)
+            null
+        } catch (e: JSONException) {
+            Log.w(TAG, "Malformed fingerprint index", e)
+            null
+        }
+    }
+
+    private fun save(version: String, entries: Map<Long, Entry>) {
+        val array = JSONArray()
+        entries.forEach { (hashCode, entry) ->
+            array.put(
+                JSONObject()
+                    .put(KEY_HASH_CODE, hashCode)
+                    .put(KEY_WALLPAPER_ID, entry.wallpaperId)
+                    .put(KEY_ATTRIBUTIONS, JSONArray(entry.attributions))
+                    .put(KEY_ACTION_URL, entry.actionUrl)
+                    .put(KEY_COLLECTION_ID, entry.collectionId)
+            )
+        }
+        val json = JSONObject().put(KEY_VERSION, version).put(KEY_ENTRIES, array)
+        AtomicFiles.write(file) { out ->
+            out.write(json.toString().toByteArray())
+            true
+        }
+    }
+
+    private fun JSONObject.optStringOrNull(key: String): String? =
+        if (isNull(key)) null else getString(key)
+
+    companion object {
+        private const val TAG = "WallpaperFingerprintIdx"
+        private const val FILE_NAME = "wallpaper_fingerprints.json"
+        private const val KEY_VERSION = "version"
+        private const val KEY_ENTRIES = "entries"
+        private const val KEY_HASH_CODE = "hash_code"
+        private const val KEY_WALLPAPER_ID = "wallpaper_id"
+        private const val KEY_ATTRIBUTIONS = "attributions"
+        private const val KEY_ACTION_URL = "action_url"
+        private const val KEY_COLLECTION_ID = "collection_id"
+    }
+}
@@ -56,9 +56,11 @@ public interface WallpaperPersister {
      *                    device.
      * @param destination The destination - where to set the wallpaper to.
      * @param callback    Called once the wallpaper was set or if an error occurred.
+     * @return a handle to cancel the set while it is in progress
      */
-    void setIndividualWallpaper(WallpaperInfo wallpaper, Asset asset, @Nullable Rect cropRect,
-                                float scale, @Destination int destination, SetWallpaperCallback callback);
+    SetWallpaperHandle setIndividualWallpaper(WallpaperInfo wallpaper, Asset asset,
+            @Nullable Rect cropRect, float scale, @Destination int destination,
+            SetWallpaperCallback callback);
 
     /**
      * Sets an individual wallpaper to the system as the wallpaper in the current rotation along with
@@ -95,6 +97,24 @@ public interface WallpaperPersister {
     int setWallpaperBitmapInNextRotation(Bitmap wallpaperBitmap, List<String> attributions,
             String actionUrl, String collectionId);
 
+    /**
+     * Sets a wallpaper prepared ahead of time by {@link RotationPrefetchJobService} to the system as
+     * the wallpaper in rotation, streaming it from the {@link RotationCache} without downloading,
+     * decoding or cropping it. Prevents automatic wallpaper backup to conserve user data.
+     * <p>
+     * This method should only be called off the main UI thread.
+     *
+     * @param key            Key of the wallpaper, as given by the {@link RotationPrefetchSource}.
+     * @param attributions   List of attribution items.
+     * @param actionUrl      The action or "explore" URL for the wallpaper.
+     * @param collectionId   ID of this wallpaper's collection.
+     * @param whichWallpaper Flags of the wallpapers to set.
+     * @return wallpaper ID, which is a positive integer if a prepared wallpaper was found and set,
+     * or 0 otherwise, in which case callers fall back to decoding the wallpaper themselves.
+     */
+    int setPreparedWallpaperInRotation(String key, List<String> attributions, String actionUrl,
+            String collectionId, int whichWallpaper);
+
     /**
      * Persists rotating wallpaper metadata for the next rotation and finalizes the preview wallpaper
      * image so that it's visible as the actual device wallpaper.
@@ -209,6 +229,17 @@ public interface WallpaperPersister {
         void onError(@Nullable Throwable throwable);
     }
 
+    /**
+     * Handle to a wallpaper set started by {@link #setIndividualWallpaper}.
+     */
+    interface SetWallpaperHandle {
+        /**
+         * Abandons the set without calling its callback, unless the system wallpaper is already
+         * being changed, in which case the set completes as usual.
+         */
+        void cancel();
+    }
+
     /**
      * The possible destinations to which a wallpaper may be set.
      */
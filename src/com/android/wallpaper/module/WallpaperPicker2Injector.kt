@@ -33,6 +33,7 @@ import com.android.wallpaper.model.InlinePreviewIntentFactory
 import com.android.wallpaper.model.LiveWallpaperInfo
 import com.android.wallpaper.model.WallpaperInfo
 import com.android.wallpaper.module.logging.UserEventLogger
+import com.android.wallpaper.monitor.DefaultPerformanceMonitor
 import com.android.wallpaper.monitor.PerformanceMonitor
 import com.android.wallpaper.network.Requester
 import com.android.wallpaper.picker.CustomizationPickerActivity
@@ -47,8 +48,10 @@ import com.android.wallpaper.picker.customization.data.content.WallpaperClient
 import com.android.wallpaper.picker.customization.data.repository.WallpaperColorsRepository
 import com.android.wallpaper.picker.customization.domain.interactor.WallpaperInteractor
 import com.android.wallpaper.picker.customization.domain.interactor.WallpaperSnapshotRestorer
+import com.android.wallpaper.picker.di.modules.BackgroundDispatcher
 import com.android.wallpaper.picker.di.modules.MainDispatcher
 import com.android.wallpaper.picker.individual.IndividualPickerFragment2
+import com.android.wallpaper.picker.network.domain.PrefetchPolicy
 import com.android.wallpaper.picker.undo.data.repository.UndoRepository
 import com.android.wallpaper.picker.undo.domain.interactor.UndoInteractor
 import com.android.wallpaper.system.UiModeManagerWrapper
@@ -56,6 +59,7 @@ import com.android.wallpaper.util.DisplayUtils
 import dagger.Lazy
 import javax.inject.Inject
 import javax.inject.Singleton
+import kotlinx.coroutines.CoroutineDispatcher
 import kotlinx.coroutines.CoroutineScope
 
 @Singleton
@@ -63,9 +67,11 @@ open class WallpaperPicker2Injector
 @Inject
 constructor(
     @MainDispatcher private val mainScope: CoroutineScope,
+    @BackgroundDispatcher private val bgDispatcher: CoroutineDispatcher,
     private val displayUtils: Lazy<DisplayUtils>,
     private val requester: Lazy<Requester>,
     private val networkStatusNotifier: Lazy<NetworkStatusNotifier>,
+    private val prefetchPolicy: Lazy<PrefetchPolicy>,
     private val partnerProvider: Lazy<PartnerProvider>,
     private val uiModeManager: Lazy<UiModeManagerWrapper>,
     private val userEventLogger: Lazy<UserEventLogger>,
@@ -128,8 +134,14 @@ constructor(
     override fun getCurrentWallpaperInfoFactory(context: Context): CurrentWallpaperInfoFactory {
         return currentWallpaperFactory
             ?: DefaultCurrentWallpaperInfoFactory(
+                    context.applicationContext,
                     getWallpaperRefresher(context.applicationContext),
+                    WallpaperChangedNotifier.getInstance(),
                     getLiveWallpaperInfoFactory(context.applicationContext),
+                    getWallpaperClient(context.applicationContext),
+                    displayUtils.get(),
+                    getFlags(),
+                    bgDispatcher,
                 )
                 .also { currentWallpaperFactory = it }
     }
@@ -186,6 +198,11 @@ constructor(
         return networkStatusNotifier.get()
     }
 
+    @Synchronized
+    override fun getPrefetchPolicy(context: Context): PrefetchPolicy {
+        return prefetchPolicy.get()
+    }
+
     @Synchronized
     override fun getPackageStatusNotifier(context: Context): PackageStatusNotifier {
         return packageNotifier.get()
@@ -198,12 +215,8 @@ constructor(
 
     @Synchronized
     override fun getPerformanceMonitor(): PerformanceMonitor? {
-
         return performanceMonitor
-            ?: PerformanceMonitor {
-                    /** No Op */
-                }
-                .also { performanceMonitor = it }
+            ?: DefaultPerformanceMonitor().also { performanceMonitor = it }
     }
 
     override fun getPreviewFragment(
@@ -253,6 +266,8 @@ constructor(
                     getWallpaperStatusChecker(context),
                     getCurrentWallpaperInfoFactory(context),
                     getFlags().isRefactorSettingWallpaper(),
+                    mainScope,
+                    bgDispatcher,
                 )
                 .also { wallpaperPersister = it }
     }
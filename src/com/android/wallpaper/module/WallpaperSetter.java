@@ -28,6 +28,7 @@ import com.android.wallpaper.model.LiveWallpaperInfo;
 import com.android.wallpaper.model.WallpaperInfo;
 import com.android.wallpaper.module.WallpaperPersister.Destination;
 import com.android.wallpaper.module.WallpaperPersister.SetWallpaperCallback;
+import com.android.wallpaper.module.WallpaperPersister.SetWallpaperHandle;
 import com.android.wallpaper.module.logging.UserEventLogger;
 import com.android.wallpaper.module.logging.UserEventLogger.SetWallpaperEntryPoint;
 import com.android.wallpaper.picker.SetWallpaperDialogFragment;
@@ -59,6 +60,8 @@ public class WallpaperSetter {
     private final UserEventLogger mUserEventLogger;
     private final CurrentWallpaperInfoFactory mCurrentWallpaperInfoFactory;
     private ProgressDialog mProgressDialog;
+    @Nullable
+    private SetWallpaperHandle mPendingSet;
     private Optional<Integer> mCurrentScreenOrientation = Optional.empty();
 
     public WallpaperSetter(WallpaperPersister wallpaperPersister,
@@ -134,7 +137,7 @@ public class WallpaperSetter {
             mProgressDialog.show();
         }
 
-        mWallpaperPersister.setIndividualWallpaper(
+        mPendingSet = mWallpaperPersister.setIndividualWallpaper(
                 wallpaper, wallpaperAsset, cropRect,
                 wallpaperScale, destination, new SetWallpaperCallback() {
                     @Override
@@ -259,6 +262,8 @@ public class WallpaperSetter {
                 UserEventLogger.Companion.toWallpaperDestinationForLogging(destination));
         mPreferences.setPendingWallpaperSetStatus(
                 WallpaperPreferences.WALLPAPER_SET_NOT_PENDING);
+        // The set is done, so there's nothing left to cancel.
+        mPendingSet = null;
         cleanUp();
         restoreScreenOrientationIfNeeded(containerActivity);
     }
@@ -266,14 +271,21 @@ public class WallpaperSetter {
     private void onWallpaperApplyError(Activity containerActivity) {
         mPreferences.setPendingWallpaperSetStatus(
                 WallpaperPreferences.WALLPAPER_SET_NOT_PENDING);
+        // The set is done, so there's nothing left to cancel.
+        mPendingSet = null;
         cleanUp();
         restoreScreenOrientationIfNeeded(containerActivity);
     }
 
     /**
-     * Call this method to clean up this instance's state.
+     * Call this method to clean up this instance's state. A static wallpaper set that has not
+     * started changing the system wallpaper yet is abandoned.
      */
     public void cleanUp() {
+        if (mPendingSet != null) {
+            mPendingSet.cancel();
+            mPendingSet = null;
+        }
         if (mProgressDialog != null) {
             mProgressDialog.dismiss();
             mProgressDialog = null;
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.wallpaper.monitor
+
+import android.os.Debug
+import android.os.Trace
+import com.android.wallpaper.monitor.PerformanceMonitor.Span
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * [PerformanceMonitor] that emits spans and counters to [Trace], so they show up as Perfetto slices
+ * and counter tracks, and keeps in-memory [LatencyHistogram]s, counters and gauges that can be read
+ * back with [snapshot].
+ */
+class DefaultPerformanceMonitor : PerformanceMonitor, Dumpable {
+
+    private val histograms = ConcurrentHashMap<String, LatencyHistogram>()
+    private val counters = ConcurrentHashMap<String, AtomicLong>()
+    private val gauges = ConcurrentHashMap<String, AtomicLong>()
+    private val asyncCookie = AtomicInteger()
+
+    override fun recordFullResPreviewLoadedMemorySnapshot() {
+        val runtime = Runtime.getRuntime()
+        val javaHeapUsed = runtime.totalMemory() - runtime.freeMemory()
+        setGauge(PerformanceMetrics.JAVA_HEAP_USED_BYTES, javaHeapUsed)
+        setGauge(PerformanceMetrics.NATIVE_HEAP_ALLOCATED_BYTES, Debug.getNativeHeapAllocatedSize())
+    }
+
+    override fun beginSpan(name: String): Span {
+        Trace.beginSection(name)
+        return TimedSpan(name) { Trace.endSection() }
+    }
+
+    override fun beginAsyncSpan(name: String): Span {
+        val cookie = asyncCookie.incrementAndGet()
+        Trace.beginAsyncSection(name, cookie)
+        return TimedSpan(name) { Trace.endAsyncSection(name, cookie) }
+    }
+
+    override fun recordLatency(name: String, durationNanos: Long) {
+        histograms.getOrPut(name) { LatencyHistogram() }.recordNanos(durationNanos)
+    }
+
+    override fun incrementCounter(name: String, delta: Long) {
+        val value = counters.getOrPut(name) { AtomicLong() }.addAndGet(delta)
+        Trace.setCounter(name, value)
+    }
+
+    override fun setGauge(name: String, value: Long) {
+        gauges.getOrPut(name) { AtomicLong() }.set(value)
+        Trace.setCounter(name, value)
+    }
+
+    /** Returns a point-in-time copy of everything recorded so far, sorted by metric name. */
+    fun snapshot(): Snapshot =
+        Snapshot(
+            histograms = histograms.mapValues { it.value.snapshot() }.toSortedMap(),
+            counters = counters.mapValues { it.value.get() }.toSortedMap(),
+            gauges = gauges.mapValues { it.value.get() }.toSortedMap(),
+        )
+
+    override fun dump(writer: DiagnosticsWriter) {
+        val snapshot = snapshot()
+        snapshot.histograms.forEach { (name, histogram) ->
+            writer.value(SECTION_LATENCY, "$name.count", histogram.count)
+            writer.value(SECTION_LATENCY, "$name.mean_us", histogram.meanMicros)
+            PERCENTILES.forEach { percentile ->
+                writer.value(
+                    SECTION_LATENCY,
+                    "$name.p${percentile.toInt()}_us",
+                    histogram.percentileMicros(percentile),
+                )
+            }
+            writer.value(SECTION_LATENCY, "$name.max_us", histogram.maxMicros)
+        }
+        snapshot.counters.forEach { (name, value) -> writer.value(SECTION_COUNTER, name, value) }
+        snapshot.gauges.forEach { (name, value) -> writer.value(SECTION_GAUGE, name, value) }
+    }
+
+    /** Point-in-time copy of the metrics of a [DefaultPerformanceMonitor]. */
+    data class Snapshot(
+        val histograms: Map<String, LatencyHistogram.Snapshot>,
+        val counters: Map<String, Long>,
+        val gauges: Map<String, Long>,
+    )
+
+    private inner class TimedSpan(private val name: String, private val endTrace: () -> Unit) :
+        Span {
+        private val startNanos = System.nanoTime()
+        private val ended = AtomicBoolean()
+
+        override fun end() {
+            if (ended.compareAndSet(false, true)) {
+                endTrace()
+                recordLatency(name, System.nanoTime() - startNanos)
+            }
+        }
+    }
+
+    companion object {
+        private const val SECTION_LATENCY = "latency"
+        private const val SECTION_COUNTER = "counter"
+        private const val SECTION_GAUGE = "gauge"
+        private val PERCENTILES = listOf(50.0, 90.0, 99.0)
+    }
+}
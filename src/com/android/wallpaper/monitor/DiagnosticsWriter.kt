@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.wallpaper.monitor
+
+import java.io.PrintWriter
+
+/**
+ * Writes diagnostics as flat `section.key=value` lines, one value per line, so that dumps are easy
+ * to grep, parse and diff across builds. Keys and values never contain whitespace or `=`.
+ */
+class DiagnosticsWriter(private val writer: PrintWriter) {
+
+    fun value(section: String, key: String, value: Any?) {
+        writer.print(sanitize(section))
+        writer.print('.')
+        writer.print(sanitize(key))
+        writer.print('=')
+        writer.println(sanitize(value.toString()))
+    }
+
+    fun flush() = writer.flush()
+
+    private fun sanitize(text: String): String = text.replace(UNSAFE_CHARS, "_")
+
+    companion object {
+        private val UNSAFE_CHARS = Regex("[\\s=]")
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.wallpaper.monitor
+
+import androidx.annotation.VisibleForTesting
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicLongArray
+
+/**
+ * Lock-free latency histogram with fixed, HDR-style buckets.
+ *
+ * Values are recorded in microseconds. Each power-of-two range is split into [SUB_BUCKETS] linear
+ * sub-buckets, which bounds the relative error of any reported percentile to 25%, from 1 µs up to
+ * about two minutes. Larger values land in the last bucket.
+ */
+class LatencyHistogram {
+
+    private val counts = AtomicLongArray(BUCKET_COUNT)
+    private val count = AtomicLong()
+    private val sumMicros = AtomicLong()
+    private val maxMicros = AtomicLong()
+
+    fun recordNanos(durationNanos: Long) {
+        val micros = (durationNanos / 1000).coerceAtLeast(0)
+        counts.incrementAndGet(bucketIndex(micros))
+        count.incrementAndGet()
+        sumMicros.addAndGet(micros)
+        maxMicros.accumulateAndGet(micros, Math::max)
+    }
+
+    /** Returns a point-in-time copy of this histogram. */
+    fun snapshot(): Snapshot {
+        val bucketCounts = LongArray(BUCKET_COUNT) { counts.get(it) }
+        return Snapshot(bucketCounts, count.get(), sumMicros.get(), maxMicros.get())
+    }
+
+    /** Point-in-time copy of a [LatencyHistogram]. */
+    class Snapshot(
+        private val bucketCounts: LongArray,
+        val count: Long,
+        val sumMicros: Long,
+        val maxMicros: Long,
+    ) {
+        val meanMicros: Long
+            get() = if (count > 0) sumMicros / count else 0
+
+        /**
+         * Returns the upper bound, in microseconds, of the bucket holding the given [percentile]
+         * (0-100), capped at the recorded maximum.
+         */
+        fun percentileMicros(percentile: Double): Long {
+            if (count == 0L) {
+                return 0
+            }
+            val rank = Math.ceil(count * percentile / 100.0).toLong().coerceIn(1, count)
+            var seen = 0L
+            for (index in bucketCounts.indices) {
+                seen += bucketCounts[index]
+                if (seen >= rank) {
+                    return bucketUpperBound(index).coerceAtMost(maxMicros)
+                }
+            }
+            return maxMicros
+        }
+
+        /** Returns the non-empty buckets as pairs of lower bound in microseconds and count. */
+        fun nonEmptyBuckets(): List<Pair<Long, Long>> =
+            bucketCounts.indices
+                .filter { bucketCounts[it] > 0 }
+                .map { bucketLowerBound(it) to bucketCounts[it] }
+    }
+
+    companion object {
+        private const val SUB_BUCKET_BITS = 2
+        private const val SUB_BUCKETS = 1 shl SUB_BUCKET_BITS
+        /** Highest tracked power of two, in microseconds (2^27 µs is a little over 2 minutes). */
+        private const val MAX_EXPONENT = 26
+        @VisibleForTesting const val BUCKET_COUNT = SUB_BUCKETS + (MAX_EXPONENT - 1) * SUB_BUCKETS
+
+        @VisibleForTesting
+        fun bucketIndex(micros: Long): Int {
+            if (micros < SUB_BUCKETS) {
+                return micros.toInt()
+            }
+            val exponent = 63 - java.lang.Long.numberOfLeadingZeros(micros)
+            if (exponent > MAX_EXPONENT) {
+                return BUCKET_COUNT - 1
+            }
+            val shift = exponent - SUB_BUCKET_BITS
+            val subBucket = ((micros shr shift) and (SUB_BUCKETS - 1).toLong()).toInt()
+            return SUB_BUCKETS + shift * SUB_BUCKETS + subBucket
+        }
+
+        @VisibleForTesting
+        fun bucketLowerBound(index: Int): Long {
+            if (index < SUB_BUCKETS) {
+                return index.toLong()
+            }
+            val shift = (index - SUB_BUCKETS) / SUB_BUCKETS
+            val subBucket = (index - SUB_BUCKETS) % SUB_BUCKETS
+            return (SUB_BUCKETS + subBucket).toLong() shl shift
+        }
+
+        @VisibleForTesting
+        fun bucketUpperBound(index: Int): Long {
+            if (index < SUB_BUCKETS) {
+                return index.toLong()
+            }
+            val shift = (index - SUB_BUCKETS) / SUB_BUCKETS
+            return bucketLowerBound(index) + (1L shl shift) - 1
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.wallpaper.monitor
+
+/** Names of the metrics reported to [PerformanceMonitor]. */
+object PerformanceMetrics {
+    // Latencies
+    const val ASSET_DECODE = "asset_decode"
+    const val REGION_DECODE = "region_decode"
+    const val WALLPAPER_SET = "wallpaper_set"
+    const val WALLPAPER_SET_STAGE_TRANSFORM = "wallpaper_set_stage_transform"
+    const val WALLPAPER_SET_STAGE_ENCODE = "wallpaper_set_stage_encode"
+    const val WALLPAPER_SET_STAGE_COMMIT = "wallpaper_set_stage_commit"
+    const val WALLPAPER_SET_STAGE_READ_BACK = "wallpaper_set_stage_read_back"
+    const val WALLPAPER_SET_STAGE_FINGERPRINT = "wallpaper_set_stage_fingerprint"
+    const val WALLPAPER_SET_STAGE_COLORS = "wallpaper_set_stage_colors"
+    const val WALLPAPER_SET_STAGE_METADATA = "wallpaper_set_stage_metadata"
+    const val COLOR_EXTRACTION = "color_extraction"
+    const val CATEGORY_LOAD = "category_load"
+    const val RECENTS_QUERY = "recents_query"
+    const val LIVE_ENGINE_BIND = "live_engine_bind"
+    const val LIVE_ENGINE_STAGE_BIND = "live_engine_stage_bind"
+    const val LIVE_ENGINE_STAGE_ATTACH = "live_engine_stage_attach"
+    const val LIVE_ENGINE_STAGE_MIRROR = "live_engine_stage_mirror"
+    const val WORKSPACE_PREVIEW_RENDER = "workspace_preview_render"
+    const val WORKSPACE_PREVIEW_REQUEST = "workspace_preview_request"
+    const val ENGINE_FIRST_FRAME_COLD = "engine_first_frame_cold"
+    const val ENGINE_FIRST_FRAME_WARM = "engine_first_frame_warm"
+
+    // Counters
+    const val BITMAP_CACHE_HITS = "bitmap_cache_hits"
+    const val BITMAP_CACHE_MISSES = "bitmap_cache_misses"
+    const val LIVE_WARM_UPS_STARTED = "live_warm_ups_started"
+    const val LIVE_WARM_UPS_USED = "live_warm_ups_used"
+    const val LIVE_ENGINE_TIMEOUTS = "live_engine_timeouts"
+    const val WALLPAPER_SETS_CANCELLED = "wallpaper_sets_cancelled"
+    const val REGION_DECODES_REGION_DECODER = "region_decodes_region_decoder"
+    const val REGION_DECODES_IMAGE_DECODER = "region_decodes_image_decoder"
+    const val REGION_DECODE_BYTES = "region_decode_bytes"
+    /** Prefix of per-format region decode counters, followed by the MIME subtype. */
+    const val REGION_DECODE_FORMAT_PREFIX = "region_decode_format_"
+    const val CROP_PLANS_APPLIED = "crop_plans_applied"
+    const val CROP_PLANS_OVER_CAP = "crop_plans_over_cap"
+    const val CROP_PLAN_BYTES_SAVED = "crop_plan_bytes_saved"
+    const val GLIDE_CACHE_TRIMS = "glide_cache_trims"
+
+    // Gauges
+    const val BITMAP_CACHE_SIZE_BYTES = "bitmap_cache_size_bytes"
+    const val JAVA_HEAP_USED_BYTES = "java_heap_used_bytes"
+    const val NATIVE_HEAP_ALLOCATED_BYTES = "native_heap_allocated_bytes"
+    const val RECENTS_UPDATED_UPTIME_MS = "recents_updated_uptime_ms"
+    const val CATEGORIES_UPDATED_UPTIME_MS = "categories_updated_uptime_ms"
+    const val GLIDE_DISK_CACHE_MAX_BYTES = "glide_disk_cache_max_bytes"
+    const val GLIDE_MEMORY_CACHE_MAX_BYTES = "glide_memory_cache_max_bytes"
+    const val GLIDE_BITMAP_POOL_MAX_BYTES = "glide_bitmap_pool_max_bytes"
+}
@@ -15,16 +15,77 @@
  */
 package com.android.wallpaper.monitor;
 
+import com.android.wallpaper.module.Injector;
+import com.android.wallpaper.module.InjectorProvider;
 
 /**
  * Interface for classes that monitor the application's performance in terms of memory usage, crash
  * statistics, and network usage.
+ *
+ * <p>Besides the memory snapshot, implementations may record named spans, latency histograms,
+ * counters and gauges. All of those default to no-ops so that a monitor only needs to implement
+ * what it cares about. Metric names used by the app are listed in {@link PerformanceMetrics}.
  */
 public interface PerformanceMonitor {
 
+    /** A monitor that records nothing. */
+    PerformanceMonitor NO_OP = () -> { };
+
+    /**
+     * Returns the {@link PerformanceMonitor} of the current {@link Injector}, or {@link #NO_OP} if
+     * there is none. Takes no lock, so it is cheap enough for hot paths.
+     */
+    static PerformanceMonitor get() {
+        PerformanceMonitor monitor = InjectorProvider.getPerformanceMonitor();
+        return monitor != null ? monitor : NO_OP;
+    }
+
     /**
      * Takes a memory snapshot of the app and should be called when the wallpaper image has completely
      * loaded in a full-window preview.
      */
     void recordFullResPreviewLoadedMemorySnapshot();
+
+    /**
+     * Starts a span that must be ended on the same thread, e.g. around a blocking decode. Its
+     * duration is recorded as a latency of the same name.
+     */
+    default Span beginSpan(String name) {
+        return Span.NO_OP;
+    }
+
+    /**
+     * Starts a span that may be ended on any thread, e.g. around a suspending call or a callback
+     * based operation. Its duration is recorded as a latency of the same name.
+     */
+    default Span beginAsyncSpan(String name) {
+        return Span.NO_OP;
+    }
+
+    /** Records a latency sample of {@code durationNanos} for the metric {@code name}. */
+    default void recordLatency(String name, long durationNanos) {
+    }
+
+    /** Adds {@code delta} to the counter {@code name}. */
+    default void incrementCounter(String name, long delta) {
+    }
+
+    /** Sets the gauge {@code name}, e.g. a cache size, to {@code value}. */
+    default void setGauge(String name, long value) {
+    }
+
+    /** A started span. Ending it more than once has no further effect. */
+    interface Span extends AutoCloseable {
+
+        /** A span that records nothing. */
+        Span NO_OP = () -> { };
+
+        /** Ends the span. */
+        void end();
+
+        @Override
+        default void close() {
+            end();
+        }
+    }
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright (C) 2017 The Android Open Source Project
+ * Copyright (C) 2024 The Android Open Source Project
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -13,20 +13,18 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-package com.android.wallpaper.module;
+
+package com.android.wallpaper.monitor
 
 /**
- * Provides a singleton POJO used to lock file read and write operations and metadata transactions
- * on the daily rotating wallpaper.
+ * Runs [block] inside an async span named [name], so it is safe to use around suspending calls
+ * that may resume on another thread.
  */
-public class RotatingWallpaperLockProvider {
-
-    private static Object sInstance;
-
-    public static synchronized Object getInstance() {
-        if (sInstance == null) {
-            sInstance = new Object();
-        }
-        return sInstance;
+inline fun <T> PerformanceMonitor.measure(name: String, block: () -> T): T {
+    val span = beginAsyncSpan(name)
+    try {
+        return block()
+    } finally {
+        span.end()
     }
 }
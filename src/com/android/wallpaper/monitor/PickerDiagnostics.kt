@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.wallpaper.monitor
+
+import android.content.Context
+import android.os.SystemClock
+import android.util.Log
+import com.android.wallpaper.asset.BitmapCachingAsset
+import com.android.wallpaper.asset.StreamableAsset
+import com.android.wallpaper.asset.WallpaperGlideModule
+import com.android.wallpaper.module.InjectorProvider
+import com.android.wallpaper.util.BackgroundDispatchers
+import com.android.wallpaper.util.wallpaperconnection.WallpaperConnectionUtils
+import dagger.hilt.android.qualifiers.ApplicationContext
+import java.io.PrintWriter
+import javax.inject.Inject
+
+/**
+ * Collects the state of the picker's caches, pools and in-flight work into a single dump, written
+ * as `section.key=value` lines by [DiagnosticsWriter] so that dumps can be diffed across builds.
+ *
+ * Usage: `adb shell dumpsys activity <picker activity>`.
+ */
+class PickerDiagnostics
+@Inject
+constructor(
+    @ApplicationContext private val context: Context,
+    private val backgroundDispatchers: BackgroundDispatchers,
+    private val wallpaperConnectionUtils: WallpaperConnectionUtils,
+) {
+
+    fun dump(printWriter: PrintWriter) {
+        val writer = DiagnosticsWriter(printWriter)
+        writer.value(SECTION_DIAGNOSTICS, "version", VERSION)
+        writer.value(SECTION_DIAGNOSTICS, "uptime_ms", SystemClock.uptimeMillis())
+        val performanceMonitor = PerformanceMonitor.get()
+        val sources =
+            listOf(
+                Dumpable { BitmapCachingAsset.dump(it) },
+                Dumpable { StreamableAsset.dump(it) },
+                Dumpable { WallpaperGlideModule.dump(context, it) },
+                backgroundDispatchers,
+                wallpaperConnectionUtils,
+                Dumpable { dumpCurrentWallpaper(it) },
+                Dumpable { dumpFreshness(it, performanceMonitor) },
+                performanceMonitor as? Dumpable,
+            )
+        sources.filterNotNull().forEachIndexed { index, source ->
+            try {
+                source.dump(writer)
+            } catch (e: Exception) {
+                // Keep going so that one broken section doesn't hide the rest of the dump.
+                Log.w(TAG, "Failed to dump diagnostics source #$index", e)
+                writer.value(SECTION_DIAGNOSTICS, "error.$index", e.javaClass.simpleName)
+            }
+        }
+        writer.flush()
+    }
+
+    private fun dumpCurrentWallpaper(writer: DiagnosticsWriter) {
+        val factory = InjectorProvider.getInjector().getCurrentWallpaperInfoFactory(context)
+        (factory as? Dumpable)?.dump(writer)
+    }
+
+    private fun dumpFreshness(writer: DiagnosticsWriter, performanceMonitor: PerformanceMonitor) {
+        val gauges = (performanceMonitor as? DefaultPerformanceMonitor)?.snapshot()?.gauges
+        val now = SystemClock.uptimeMillis()
+        FRESHNESS_GAUGES.forEach { (key, gauge) ->
+            writer.value(SECTION_FRESHNESS, key, gauges?.get(gauge)?.let { now - it } ?: -1)
+        }
+    }
+
+    companion object {
+        private const val TAG = "PickerDiagnostics"
+        private const val VERSION = 1
+        private const val SECTION_DIAGNOSTICS = "diagnostics"
+        private const val SECTION_FRESHNESS = "freshness"
+        /** Age in milliseconds of the last update of each snapshot, or -1 if never updated. */
+        private val FRESHNESS_GAUGES =
+            listOf(
+                "recents_age_ms" to PerformanceMetrics.RECENTS_UPDATED_UPTIME_MS,
+                "categories_age_ms" to PerformanceMetrics.CATEGORIES_UPDATED_UPTIME_MS,
+            )
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.wallpaper.network;
+
+import android.util.Log;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+
+import com.android.wallpaper.util.AtomicFiles;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Content-addressed disk store for {@link WallpaperDownloadManager}.
+ * <p>
+ * Completed downloads are stored under the SHA-256 of their content, so identical images fetched
+ * from different URLs are kept once, and a URL index maps each URL to its content. Downloads in
+ * progress are kept as partial files along with the HTTP validator (ETag or Last-Modified) they
+ * were fetched with, so they can be resumed with a range request.
+ * <p>
+ * Calls for the same URL must be serialized by the caller. Lookups, commits and trimming are
+ * serialized by the store, and trimming leaves content that was handed out within the last
+ * {@link #TRIM_GRACE_MS} alone, so a caller has time to open a file it was just given.
+ */
+class DownloadStore {
+
+    private static final String TAG = "DownloadStore";
+    private static final String DIR_CONTENT = "content";
+    private static final String DIR_URLS = "urls";
+    private static final String DIR_PARTIAL = "partial";
+    private static final String SUFFIX_VALIDATOR = ".validator";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long TRIM_GRACE_MS = 60_000;
+
+    /** Thrown when downloaded content does not match its expected checksum. */
+    static class ChecksumMismatchException extends IOException {
+        ChecksumMismatchException(String expected, String actual) {
+            super("Expected SHA-256 " + expected + " but got " + actual);
+        }
+    }
+
+    private final File mContentDir;
+    private final File mUrlDir;
+    private final File mPartialDir;
+    private final long mMaxBytes;
+    // Guards the content directory and the URL index.
+    private final Object mLock = new Object();
+
+    DownloadStore(File directory, long maxBytes) {
+        mContentDir = new File(directory, DIR_CONTENT);
+        mUrlDir = new File(directory, DIR_URLS);
+        mPartialDir = new File(directory, DIR_PARTIAL);
+        mMaxBytes = maxBytes;
+    }
+
+    /** Returns the stored content for the given URL, or null if it has not been downloaded. */
+    @Nullable
+    File get(String url) {
+        File indexFile = new File(mUrlDir, sha256(url));
+        synchronized (mLock) {
+            if (!indexFile.exists()) {
+                return null;
+            }
+            try {
+                String hash = new String(Files.readAllBytes(indexFile.toPath()),
+                        StandardCharsets.UTF_8);
+                File contentFile = new File(mContentDir, hash);
+                if (contentFile.exists()) {
+                    // Keep recently used content when trimming.
+                    contentFile.setLastModified(System.currentTimeMillis());
+                    return contentFile;
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "Unable to read download index", e);
+            }
+            return null;
+        }
+    }
+
+    /** Returns the partial file for the given URL, which may not exist. */
+    File getPartialFile(String url) {
+        return new File(mPartialDir, sha256(url));
+    }
+
+    /**
+     * Returns the validator the partial file for the given URL was fetched with, or null if it
+     * cannot be resumed.
+     */
+    @Nullable
+    String getPartialValidator(String url) {
+        File validatorFile = new File(mPartialDir, sha256(url) + SUFFIX_VALIDATOR);
+        if (!validatorFile.exists() || !getPartialFile(url).exists()) {
+            return null;
+        }
+        try {
+            return new String(Files.readAllBytes(validatorFile.toPath()), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Empties the partial file for the given URL and records the validator of the response about
+     * to be written to it.
+     */
+    void resetPartial(String url, @Nullable String validator) throws IOException {
+        ensureDirectory(mPartialDir);
+        File validatorFile = new File(mPartialDir, sha256(url) + SUFFIX_VALIDATOR);
+        validatorFile.delete();
+        File partialFile = getPartialFile(url);
+        partialFile.delete();
+        if (validator != null && !AtomicFiles.write(validatorFile, out -> {
+            try {
+                out.write(validator.getBytes(StandardCharsets.UTF_8));
+                return true;
+            } catch (IOException e) {
+                return false;
+            }
+        })) {
+            throw new IOException("Unable to write download validator");
+        }
+    }
+
+    /** Deletes the partial file for the given URL. */
+    void deletePartial(String url) {
+        getPartialFile(url).delete();
+        new File(mPartialDir, sha256(url) + SUFFIX_VALIDATOR).delete();
+    }
+
+    /**
+     * Verifies the completed partial file for the given URL and moves it into the store.
+     *
+     * @param expectedSha256 expected SHA-256 of the content in hex, or null to skip verification
+     * @return the stored content
+     * @throws ChecksumMismatchException if the content does not match {@code expectedSha256}, in
+     *                                   which case the partial file is discarded
+     */
+    File commit(String url, @Nullable String expectedSha256) throws IOException {
+        File partialFile = getPartialFile(url);
+        String hash;
+        try (InputStream in = new FileInputStream(partialFile)) {
+            hash = sha256(in);
+        }
+        if (expectedSha256 != null && !expectedSha256.equalsIgnoreCase(hash)) {
+            deletePartial(url);
+            throw new ChecksumMismatchException(expectedSha256, hash);
+        }
+
+        synchronized (mLock) {
+            ensureDirectory(mContentDir);
+            ensureDirectory(mUrlDir);
+            File contentFile = new File(mContentDir, hash);
+            if (contentFile.exists()) {
+                // Same content as another URL.
+                partialFile.delete();
+            } else if (!partialFile.renameTo(contentFile)) {
+                throw new IOException("Unable to move download into the store");
+            }
+            deletePartial(url);
+            if (!AtomicFiles.write(new File(mUrlDir, sha256(url)), out -> {
+                try {
+                    out.write(hash.getBytes(StandardCharsets.UTF_8));
+                    return true;
+                } catch (IOException e) {
+                    return false;
+                }
+            })) {
+                throw new IOException("Unable to write download index");
+            }
+            contentFile.setLastModified(System.currentTimeMillis());
+            trim(contentFile);
+            return contentFile;
+        }
+    }
+
+    /**
+     * Deletes the least recently used content until the store fits its size limit. Content handed
+     * out within {@link #TRIM_GRACE_MS} is kept even if the store stays over its limit, since the
+     * caller may not have opened it yet.
+     */
+    @GuardedBy("mLock")
+    private void trim(File keep) {
+        File[] files = mContentDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        long handedOutSince = System.currentTimeMillis() - TRIM_GRACE_MS;
+        for (File file : files) {
+            if (total <= mMaxBytes || file.lastModified() > handedOutSince) {
+                // Files are sorted by last use, so the rest were handed out recently too.
+                break;
+            }
+            if (!file.equals(keep)) {
+                total -= file.length();
+                file.delete();
+            }
+        }
+    }
+
+    private static void ensureDirectory(File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create " + directory);
+        }
+    }
+
+    private static String sha256(String value) {
+        return toHex(newDigest().digest(value.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static String sha256(InputStream in) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            digest.update(buffer, 0, read);
+        }
+        return toHex(digest.digest());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Android device provides SHA-256.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            builder.append(String.format("%02x", b));
+        }
+        return builder.toString();
+    }
+}
@@ -43,6 +43,14 @@ public interface Requester {
      */
     File loadImageFile(Uri imageUrl);
 
+    /**
+     * Same as {@link #loadImageFile(Uri)}, but lets more urgent downloads go first, e.g. a preview
+     * ahead of a prefetch.
+     */
+    default File loadImageFile(Uri imageUrl, @WallpaperDownloadManager.Priority int priority) {
+        return loadImageFile(imageUrl);
+    }
+
     /**
      * Loads an image from Glide's image cache, or if the image has not already downloaded yet,
      * downloads the image from the given URL. Returns a java.io.File for the unprocessed image.
@@ -0,0 +1,298 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.wallpaper.network;
+
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.annotation.IntDef;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Downloads remote wallpaper images into a checksum-verified, content-addressed
+ * {@link DownloadStore}.
+ * <p>
+ * At most a fixed number of downloads run at once, and queued downloads start in priority order,
+ * so that an image the user is waiting for goes ahead of prefetches. Concurrent requests for the
+ * same URL share a single download. A download interrupted by a dropped connection is resumed
+ * from where it stopped with an HTTP range request, provided the server gave a validator (ETag or
+ * Last-Modified) to check the content has not changed in between.
+ */
+public class WallpaperDownloadManager {
+
+    /** An image the user is waiting for, e.g. a preview. */
+    public static final int PRIORITY_USER_VISIBLE = 0;
+    /** An image that may be needed later, e.g. an upcoming rotation wallpaper. */
+    public static final int PRIORITY_PREFETCH = 1;
+
+    /**
+     * Possible download priorities, most urgent first.
+     */
+    @IntDef({
+            PRIORITY_USER_VISIBLE,
+            PRIORITY_PREFETCH
+    })
+    public @interface Priority {
+    }
+
+    /** Decides whether a download may start on the current network. */
+    public interface NetworkPolicy {
+        /** Allows every download. */
+        NetworkPolicy ALLOW_ALL = priority -> true;
+
+        boolean canStart(@Priority int priority);
+    }
+
+    /**
+     * Thrown when a download is not started because the current network does not allow it, e.g.
+     * a prefetch on a metered connection. It is not retried, the caller may ask again later.
+     */
+    public static class DownloadNotAllowedException extends IOException {
+        DownloadNotAllowedException(String message) {
+            super(message);
+        }
+    }
+
+    /** Opens connections, replaceable in tests. */
+    public interface ConnectionFactory {
+        HttpURLConnection open(URL url) throws IOException;
+    }
+
+    private static final String TAG = "WallpaperDownloadMgr";
+    private static final int DEFAULT_MAX_CONCURRENT_DOWNLOADS = 3;
+    private static final long DEFAULT_MAX_STORE_BYTES = 200L * 1024 * 1024;
+    private static final int MAX_ATTEMPTS = 3;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private final DownloadStore mStore;
+    private final NetworkPolicy mNetworkPolicy;
+    private final ConnectionFactory mConnectionFactory;
+    private final ThreadPoolExecutor mExecutor;
+    private final AtomicLong mSequence = new AtomicLong();
+    // Guarded by this.
+    private final Map<String, DownloadTask> mDownloads = new HashMap<>();
+
+    public WallpaperDownloadManager(File directory) {
+        this(directory, NetworkPolicy.ALLOW_ALL);
+    }
+
+    public WallpaperDownloadManager(File directory, NetworkPolicy networkPolicy) {
+        this(directory, DEFAULT_MAX_STORE_BYTES, DEFAULT_MAX_CONCURRENT_DOWNLOADS, networkPolicy,
+                url -> (HttpURLConnection) url.openConnection());
+    }
+
+    @VisibleForTesting
+    public WallpaperDownloadManager(File directory, long maxStoreBytes, int maxConcurrentDownloads,
+            NetworkPolicy networkPolicy, ConnectionFactory connectionFactory) {
+        mStore = new DownloadStore(directory, maxStoreBytes);
+        mNetworkPolicy = networkPolicy;
+        mConnectionFactory = connectionFactory;
+        // Tasks are comparable, so the queue hands them out by priority. They must be passed to
+        // execute() rather than submit(), which would wrap them.
+        mExecutor = new ThreadPoolExecutor(maxConcurrentDownloads, maxConcurrentDownloads,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new PriorityBlockingQueue<>());
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Returns the image at the given URL, downloading it unless it is already stored.
+     *
+     * @param priority       how urgently the image is needed; raises the priority of a queued
+     *                       download of the same URL
+     * @param expectedSha256 expected SHA-256 of the image in hex, or null if unknown
+     * @return a future completed with the stored image file, or failed with the {@link IOException}
+     * of the last attempt, or with a {@link DownloadNotAllowedException} if the network policy
+     * does not allow the download when it would start
+     */
+    public CompletableFuture<File> download(Uri uri, @Priority int priority,
+            @Nullable String expectedSha256) {
+        String url = uri.toString();
+        synchronized (this) {
+            DownloadTask task = mDownloads.get(url);
+            if (task != null) {
+                if (priority < task.mPriority && mExecutor.getQueue().remove(task)) {
+                    task.mPriority = priority;
+                    mExecutor.execute(task);
+                }
+                return task.mResult;
+            }
+            File stored = mStore.get(url);
+            if (stored != null) {
+                return CompletableFuture.completedFuture(stored);
+            }
+            if (!mNetworkPolicy.canStart(priority)) {
+                CompletableFuture<File> result = new CompletableFuture<>();
+                result.completeExceptionally(notAllowed(url, priority));
+                return result;
+            }
+            task = new DownloadTask(url, priority, expectedSha256, mSequence.getAndIncrement());
+            mDownloads.put(url, task);
+            mExecutor.execute(task);
+            return task.mResult;
+        }
+    }
+
+    private File downloadWithRetries(String url, @Nullable String expectedSha256)
+            throws IOException {
+        IOException lastException = null;
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            try {
+                downloadOnce(url);
+                return mStore.commit(url, expectedSha256);
+            } catch (DownloadStore.ChecksumMismatchException e) {
+                // The server sent complete but different content; fetching it again won't help.
+                throw e;
+            } catch (IOException e) {
+                Log.w(TAG, "Download attempt " + (attempt + 1) + " failed for " + url, e);
+                lastException = e;
+            }
+        }
+        throw lastException;
+    }
+
+    /** Downloads the remainder of the image into its partial file. */
+    private void downloadOnce(String url) throws IOException {
+        File partialFile = mStore.getPartialFile(url);
+        String validator = mStore.getPartialValidator(url);
+        long offset = validator != null ? partialFile.length() : 0;
+
+        HttpURLConnection connection = mConnectionFactory.open(new URL(url));
+        try {
+            connection.setConnectTimeout(WallpaperRequester.LONG_TIMEOUT_MS);
+            connection.setReadTimeout(WallpaperRequester.LONG_TIMEOUT_MS);
+            if (offset > 0) {
+                connection.setRequestProperty("Range", "bytes=" + offset + "-");
+                connection.setRequestProperty("If-Range", validator);
+            }
+
+            int responseCode = connection.getResponseCode();
+            boolean resumed = responseCode == HttpURLConnection.HTTP_PARTIAL && offset > 0
+                    && isRangeFrom(connection.getHeaderField("Content-Range"), offset);
+            if (!resumed) {
+                if (responseCode != HttpURLConnection.HTTP_OK) {
+                    // Also covers a range that no longer fits, e.g. 416; start over next time.
+                    mStore.deletePartial(url);
+                    throw new IOException("Unexpected HTTP response " + responseCode);
+                }
+                String newValidator = connection.getHeaderField("ETag");
+                if (newValidator == null) {
+                    newValidator = connection.getHeaderField("Last-Modified");
+                }
+                mStore.resetPartial(url, newValidator);
+                offset = 0;
+            }
+
+            long expectedLength = connection.getContentLengthLong();
+            long written = 0;
+            try (InputStream in = connection.getInputStream();
+                    OutputStream out = new FileOutputStream(partialFile, /* append= */ resumed)) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                    written += read;
+                }
+            }
+            if (expectedLength >= 0 && written != expectedLength) {
+                throw new IOException("Connection closed after " + (offset + written)
+                        + " bytes, expected " + (offset + expectedLength));
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static DownloadNotAllowedException notAllowed(String url, @Priority int priority) {
+        return new DownloadNotAllowedException(
+                "Priority " + priority + " download not allowed on this network: " + url);
+    }
+
+    /** Returns whether a Content-Range header value starts at the given offset. */
+    private static boolean isRangeFrom(@Nullable String contentRange, long offset) {
+        return contentRange != null && contentRange.startsWith("bytes " + offset + "-");
+    }
+
+    private class DownloadTask implements Runnable, Comparable<DownloadTask> {
+        private final String mUrl;
+        @Nullable
+        private final String mExpectedSha256;
+        private final long mSequence;
+        private final CompletableFuture<File> mResult = new CompletableFuture<>();
+        // Only changed while the task is out of the executor's queue, so that the queue's order
+        // stays consistent.
+        @Priority
+        private volatile int mPriority;
+
+        DownloadTask(String url, @Priority int priority, @Nullable String expectedSha256,
+                long sequence) {
+            mUrl = url;
+            mPriority = priority;
+            mExpectedSha256 = expectedSha256;
+            mSequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            File file = null;
+            Exception exception = null;
+            try {
+                // Checked again here since the network may have changed while the task was queued.
+                if (!mNetworkPolicy.canStart(mPriority)) {
+                    throw notAllowed(mUrl, mPriority);
+                }
+                file = downloadWithRetries(mUrl, mExpectedSha256);
+            } catch (IOException | RuntimeException e) {
+                exception = e;
+            } finally {
+                synchronized (WallpaperDownloadManager.this) {
+                    mDownloads.remove(mUrl);
+                }
+                if (file != null) {
+                    mResult.complete(file);
+                } else {
+                    // Also reached on errors, so that callers waiting on the download never hang.
+                    mResult.completeExceptionally(exception != null
+                            ? exception : new IOException("Download did not finish: " + mUrl));
+                }
+            }
+        }
+
+        @Override
+        public int compareTo(DownloadTask other) {
+            if (mPriority != other.mPriority) {
+                return Integer.compare(mPriority, other.mPriority);
+            }
+            return Long.compare(mSequence, other.mSequence);
+        }
+    }
+}
@@ -24,6 +24,8 @@ import android.util.Log;
 import com.android.volley.Request;
 import com.android.volley.RequestQueue;
 import com.android.volley.toolbox.Volley;
+import com.android.wallpaper.picker.network.domain.PrefetchPolicy;
+import com.android.wallpaper.picker.network.domain.PrefetchPolicy.FetchType;
 
 import com.bumptech.glide.Glide;
 import com.bumptech.glide.load.model.stream.HttpGlideUrlLoader;
@@ -33,6 +35,9 @@ import com.bumptech.glide.request.target.Target;
 import dagger.hilt.android.qualifiers.ApplicationContext;
 
 import java.io.File;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -47,14 +52,21 @@ public class WallpaperRequester implements Requester {
     public static final int LONG_TIMEOUT_MS = 10000;
 
     private static final String TAG = "WallpaperRequester";
+    private static final String DOWNLOAD_DIRECTORY = "wallpaper_downloads";
 
     private RequestQueue mRequestQueue;
     private Context mAppContext;
+    private final WallpaperDownloadManager mDownloadManager;
 
     @Inject
-    public WallpaperRequester(@ApplicationContext Context context) {
+    public WallpaperRequester(@ApplicationContext Context context, PrefetchPolicy prefetchPolicy) {
         mAppContext = context;
         mRequestQueue = Volley.newRequestQueue(context);
+        mDownloadManager = new WallpaperDownloadManager(
+                new File(context.getCacheDir(), DOWNLOAD_DIRECTORY),
+                priority -> prefetchPolicy.isAllowed(
+                        priority == WallpaperDownloadManager.PRIORITY_PREFETCH
+                                ? FetchType.PREFETCH : FetchType.USER_REQUESTED));
     }
 
     @Override
@@ -64,6 +76,32 @@ public class WallpaperRequester implements Requester {
 
     @Override
     public File loadImageFile(Uri imageUrl) {
+        return loadImageFile(imageUrl, WallpaperDownloadManager.PRIORITY_USER_VISIBLE);
+    }
+
+    @Override
+    public File loadImageFile(Uri imageUrl, @WallpaperDownloadManager.Priority int priority) {
+        String scheme = imageUrl.getScheme();
+        if ("http".equalsIgnoreCase(scheme) || "https".equalsIgnoreCase(scheme)) {
+            try {
+                return mDownloadManager.download(imageUrl, priority, /* expectedSha256= */ null)
+                        .get(LONG_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof WallpaperDownloadManager.DownloadNotAllowedException) {
+                    Log.i(TAG, "Skipped download on this network: " + imageUrl);
+                } else {
+                    Log.e(TAG, "Unable to download image with url: " + imageUrl, e.getCause());
+                }
+                return null;
+            } catch (TimeoutException e) {
+                Log.e(TAG, "Timed out downloading image with url: " + imageUrl);
+                return null;
+            }
+        }
+
         try {
             return Glide.with(mAppContext)
                     .downloadOnly()
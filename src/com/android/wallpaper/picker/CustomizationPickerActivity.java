@@ -53,6 +53,7 @@ import com.android.wallpaper.module.MultiPanesChecker;
 import com.android.wallpaper.module.NetworkStatusNotifier;
 import com.android.wallpaper.module.NetworkStatusNotifier.NetworkStatus;
 import com.android.wallpaper.module.logging.UserEventLogger;
+import com.android.wallpaper.monitor.PickerDiagnostics;
 import com.android.wallpaper.picker.AppbarFragment.AppbarFragmentHost;
 import com.android.wallpaper.picker.CategorySelectorFragment.CategorySelectorFragmentHost;
 import com.android.wallpaper.picker.MyPhotosStarter.PermissionChangedListener;
@@ -66,6 +67,11 @@ import com.android.wallpaper.widget.BottomActionBar.BottomActionBarHost;
 
 import dagger.hilt.android.AndroidEntryPoint;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+
+import javax.inject.Inject;
+
 /**
  *  Main Activity allowing containing view sections for the user to switch between the different
  *  Fragments providing customization options.
@@ -90,6 +96,8 @@ public class CustomizationPickerActivity extends Hilt_CustomizationPickerActivit
 
     private CategoriesViewModel mCategoriesViewModel;
 
+    @Inject PickerDiagnostics mPickerDiagnostics;
+
     @Override
     protected void onCreate(@Nullable Bundle savedInstanceState) {
         Injector injector = InjectorProvider.getInjector();
@@ -318,6 +326,13 @@ public class CustomizationPickerActivity extends Hilt_CustomizationPickerActivit
         super.onDestroy();
     }
 
+    @Override
+    public void dump(@NonNull String prefix, @Nullable FileDescriptor fd,
+            @NonNull PrintWriter writer, @Nullable String[] args) {
+        super.dump(prefix, fd, writer, args);
+        mPickerDiagnostics.dump(writer);
+    }
+
     @Override
     public void doneFetchingCategories() {
 
@@ -33,11 +33,14 @@ import com.android.wallpaper.model.WallpaperCategory
 import com.android.wallpaper.model.WallpaperInfo
 import com.android.wallpaper.module.DefaultCategoryProvider
 import com.android.wallpaper.module.PartnerProvider
+import com.android.wallpaper.picker.di.modules.PackageScanDispatcher
 import com.android.wallpaper.util.WallpaperParser
 import dagger.hilt.android.qualifiers.ApplicationContext
 import java.util.Locale
 import javax.inject.Inject
 import javax.inject.Singleton
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.withContext
 
 /**
  * This class is responsible for fetching wallpaper categories, listed as follows:
@@ -54,7 +57,8 @@ constructor(
     @ApplicationContext val context: Context,
     private val partnerProvider: PartnerProvider,
     private val wallpaperXMLParser: WallpaperParser,
-    private val liveWallpapersClient: LiveWallpapersClient
+    private val liveWallpapersClient: LiveWallpapersClient,
+    @PackageScanDispatcher private val packageScanDispatcher: CoroutineDispatcher,
 ) : DefaultWallpaperCategoryClient {
 
     private var systemCategories: List<Category>? = null
@@ -105,51 +109,68 @@ constructor(
             }
     }
 
-    override suspend fun getThirdPartyCategory
-                (excludedPackageNames: List<String>): List<Category> {
-        val pickWallpaperIntent = Intent(Intent.ACTION_SET_WALLPAPER)
-        val apps = context.packageManager.queryIntentActivities(pickWallpaperIntent, 0)
-
-        // Get list of image picker intents.
-        val pickImageIntent = Intent(Intent.ACTION_GET_CONTENT)
-        pickImageIntent.setType("image/*")
-        val imagePickerActivities = context.packageManager.queryIntentActivities(pickImageIntent, 0)
-
-        val thirdPartyApps = apps.mapNotNull { info ->
-            val itemComponentName = ComponentName(info.activityInfo.packageName, info.activityInfo.name)
-            val itemPackageName = itemComponentName.packageName
-
-            if (excludedPackageNames.contains(itemPackageName) ||
-                    itemPackageName == context.packageName ||
-                    imagePickerActivities.any { it.activityInfo.packageName == itemPackageName }) {
-                null
-            } else {
-                ThirdPartyAppCategory(
-                        context,
-                        info, context.getString(R.string.third_party_app_wallpaper_collection_id) + "_" + itemPackageName,
-                        PRIORITY_THIRD_PARTY
-                )
-            }
-        }
+    override suspend fun getThirdPartyCategory(
+        excludedPackageNames: List<String>
+    ): List<Category> =
+        withContext(packageScanDispatcher) {
+            val pickWallpaperIntent = Intent(Intent.ACTION_SET_WALLPAPER)
+            val apps = context.packageManager.queryIntentActivities(pickWallpaperIntent, 0)
+
+            // Get list of image picker intents.
+            val pickImageIntent = Intent(Intent.ACTION_GET_CONTENT)
+            pickImageIntent.setType("image/*")
+            val imagePickerActivities =
+                context.packageManager.queryIntentActivities(pickImageIntent, 0)
+
+            val thirdPartyApps =
+                apps.mapNotNull { info ->
+                    val itemComponentName =
+                        ComponentName(info.activityInfo.packageName, info.activityInfo.name)
+                    val itemPackageName = itemComponentName.packageName
+
+                    if (
+                        excludedPackageNames.contains(itemPackageName) ||
+                            itemPackageName == context.packageName ||
+                            imagePickerActivities.any {
+                                it.activityInfo.packageName == itemPackageName
+                            }
+                    ) {
+                        null
+                    } else {
+                        ThirdPartyAppCategory(
+                            context,
+                            info,
+                            context.getString(R.string.third_party_app_wallpaper_collection_id) +
+                                "_" +
+                                itemPackageName,
+                            PRIORITY_THIRD_PARTY
+                        )
+                    }
+                }
 
-        return thirdPartyApps
-    }
+            thirdPartyApps
+        }
 
-    override suspend fun getThirdPartyLiveWallpaperCategory
-                (excludedPackageNames: Set<String>): List<Category> {
-        if (context.packageManager.hasSystemFeature(PackageManager.FEATURE_LIVE_WALLPAPER)) {
-            val liveWallpapers = liveWallpapersClient.getAll(excludedPackageNames)
-            if (liveWallpapers.isNotEmpty()) {
-                val thirdPartyLiveWallpaperCategory = ThirdPartyLiveWallpaperCategory(
-                    context.getString(R.string.live_wallpapers_category_title),
-                    context.getString(R.string.live_wallpaper_collection_id), liveWallpapers,
-                    PRIORITY_LIVE,
-                    getExcludedLiveWallpaperPackageNames() + excludedPackageNames)
-                return listOf(thirdPartyLiveWallpaperCategory)
+    override suspend fun getThirdPartyLiveWallpaperCategory(
+        excludedPackageNames: Set<String>
+    ): List<Category> =
+        withContext(packageScanDispatcher) {
+            if (context.packageManager.hasSystemFeature(PackageManager.FEATURE_LIVE_WALLPAPER)) {
+                val liveWallpapers = liveWallpapersClient.getAll(excludedPackageNames)
+                if (liveWallpapers.isNotEmpty()) {
+                    val thirdPartyLiveWallpaperCategory =
+                        ThirdPartyLiveWallpaperCategory(
+                            context.getString(R.string.live_wallpapers_category_title),
+                            context.getString(R.string.live_wallpaper_collection_id),
+                            liveWallpapers,
+                            PRIORITY_LIVE,
+                            getExcludedLiveWallpaperPackageNames() + excludedPackageNames
+                        )
+                    return@withContext listOf(thirdPartyLiveWallpaperCategory)
+                }
             }
+            listOf()
         }
-        return listOf()
-    }
 
     override fun getExcludedLiveWallpaperPackageNames(): Set<String> {
         val excluded = mutableSetOf<String>()
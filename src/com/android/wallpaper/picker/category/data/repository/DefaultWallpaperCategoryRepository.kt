@@ -17,9 +17,13 @@
 package com.android.wallpaper.picker.category.data.repository
 
 import android.content.Context
+import android.os.SystemClock
 import android.util.Log
 import com.android.wallpaper.config.BaseFlags
 import com.android.wallpaper.model.Category
+import com.android.wallpaper.monitor.PerformanceMetrics.CATEGORIES_UPDATED_UPTIME_MS
+import com.android.wallpaper.monitor.PerformanceMetrics.CATEGORY_LOAD
+import com.android.wallpaper.monitor.PerformanceMonitor
 import com.android.wallpaper.picker.category.client.DefaultWallpaperCategoryClient
 import com.android.wallpaper.picker.data.category.CategoryModel
 import com.android.wallpaper.picker.di.modules.BackgroundDispatcher
@@ -98,6 +102,7 @@ constructor(
     }
 
     private suspend fun fetchAllCategories() {
+        val span = PerformanceMonitor.get().beginAsyncSpan(CATEGORY_LOAD)
         try {
             fetchSystemCategories()
             fetchMyPhotosCategory()
@@ -107,6 +112,9 @@ constructor(
         } catch (e: Exception) {
             Log.e(TAG, "Error fetching default categories", e)
         } finally {
+            span.end()
+            PerformanceMonitor.get()
+                .setGauge(CATEGORIES_UPDATED_UPTIME_MS, SystemClock.uptimeMillis())
             _isDefaultCategoriesFetched.value = true
         }
     }
@@ -25,7 +25,7 @@ import com.android.wallpaper.model.Screen
 import com.android.wallpaper.picker.common.preview.domain.interactor.BasePreviewInteractor
 import com.android.wallpaper.picker.data.WallpaperModel
 import com.android.wallpaper.picker.data.WallpaperModel.StaticWallpaperModel
-import com.android.wallpaper.picker.di.modules.BackgroundDispatcher
+import com.android.wallpaper.picker.di.modules.DecodeDispatcher
 import com.android.wallpaper.picker.preview.shared.model.FullPreviewCropModel
 import dagger.assisted.Assisted
 import dagger.assisted.AssistedFactory
@@ -56,7 +56,7 @@ class StaticPreviewViewModel
 constructor(
     interactor: BasePreviewInteractor,
     @ApplicationContext private val context: Context,
-    @BackgroundDispatcher private val bgDispatcher: CoroutineDispatcher,
+    @DecodeDispatcher private val bgDispatcher: CoroutineDispatcher,
     @Assisted screen: Screen,
     @Assisted viewModelScope: CoroutineScope,
 ) {
@@ -36,6 +36,7 @@ import android.graphics.Point
 import android.graphics.Rect
 import android.net.Uri
 import android.os.Handler
+import android.os.SystemClock
 import android.util.Log
 import androidx.exifinterface.media.ExifInterface
 import com.android.app.tracing.TraceUtils.traceAsync
@@ -53,6 +54,15 @@ import com.android.wallpaper.module.RecentWallpaperManager
 import com.android.wallpaper.module.WallpaperPreferences
 import com.android.wallpaper.module.logging.UserEventLogger
 import com.android.wallpaper.module.logging.UserEventLogger.SetWallpaperEntryPoint
+import com.android.wallpaper.monitor.PerformanceMetrics.COLOR_EXTRACTION
+import com.android.wallpaper.monitor.PerformanceMetrics.CROP_PLANS_APPLIED
+import com.android.wallpaper.monitor.PerformanceMetrics.CROP_PLANS_OVER_CAP
+import com.android.wallpaper.monitor.PerformanceMetrics.CROP_PLAN_BYTES_SAVED
+import com.android.wallpaper.monitor.PerformanceMetrics.RECENTS_QUERY
+import com.android.wallpaper.monitor.PerformanceMetrics.RECENTS_UPDATED_UPTIME_MS
+import com.android.wallpaper.monitor.PerformanceMetrics.WALLPAPER_SET
+import com.android.wallpaper.monitor.PerformanceMonitor
+import com.android.wallpaper.monitor.measure
 import com.android.wallpaper.picker.customization.shared.model.WallpaperDestination
 import com.android.wallpaper.picker.customization.shared.model.WallpaperDestination.BOTH
 import com.android.wallpaper.picker.customization.shared.model.WallpaperDestination.Companion.toDestinationInt
@@ -65,6 +75,7 @@ import com.android.wallpaper.picker.data.WallpaperModel.StaticWallpaperModel
 import com.android.wallpaper.picker.di.modules.BackgroundDispatcher
 import com.android.wallpaper.picker.preview.shared.model.FullPreviewCropModel
 import com.android.wallpaper.util.CurrentWallpaperInfoUtils.getCurrentWallpapers
+import com.android.wallpaper.util.MultiCropPlanner
 import com.android.wallpaper.util.WallpaperCropUtils
 import com.android.wallpaper.util.converter.WallpaperModelFactory
 import dagger.hilt.android.qualifiers.ApplicationContext
@@ -161,22 +172,23 @@ constructor(
             stopWallpaperRotation()
         }
 
-        traceAsync(TAG, "setStaticWallpaper") {
+        traceAndMeasure(WALLPAPER_SET, "setStaticWallpaper") {
             val cropHintsWithParallax =
                 fullPreviewCropModels?.let { cropModels ->
                     cropModels.mapValues { it.value.adjustCropForParallax(wallpaperSize) }
                 } ?: emptyMap()
-            val managerId =
+            val committed =
                 wallpaperManager.setStaticWallpaperToSystem(
-                    asset.getStreamOrFromBitmap(bitmap),
+                    asset.getUnmodifiedStream(),
                     bitmap,
+                    wallpaperSize,
                     cropHintsWithParallax,
                     destination,
                     asset,
                 )
 
             wallpaperPreferences.setStaticWallpaperMetadata(
-                metadata = wallpaperModel.getMetadata(bitmap, managerId),
+                metadata = wallpaperModel.getMetadata(committed.bitmap, committed.managerId),
                 destination = destination,
             )
 
@@ -194,8 +206,8 @@ constructor(
             wallpaperPreferences.addStaticWallpaperToRecentWallpapers(
                 destination,
                 wallpaperModel,
-                bitmap,
-                cropHintsWithParallax,
+                committed.bitmap,
+                committed.cropHints,
             )
         }
     }
@@ -210,34 +222,78 @@ constructor(
     /**
      * Use [WallpaperManager] to set a static wallpaper to the system.
      *
-     * @return Wallpaper manager ID
+     * When the source has to be handed over as a bitmap, only the union of all crops is sent, at
+     * the highest scale any display needs, so that the bitmap encoded for the system is no larger
+     * than the displays require.
+     *
+     * @return the wallpaper manager ID, and the bitmap and crop hints the system stores, from which
+     *   the fingerprint and the recent wallpaper entry are made
      */
     private fun WallpaperManager.setStaticWallpaperToSystem(
         inputStream: InputStream?,
         bitmap: Bitmap,
+        wallpaperSize: Point,
         cropHints: Map<Point, Rect>,
         destination: WallpaperDestination,
         asset: Asset,
-    ): Int {
+    ): CommittedWallpaper {
         // The InputStream of current wallpaper points to system wallpaper file which will be
         // overwritten during set wallpaper and reads 0 bytes, use Bitmap instead.
-        return if (inputStream != null && asset !is CurrentWallpaperAsset) {
-            setStreamWithCrops(
-                inputStream,
-                cropHints,
-                /* allowBackup= */ true,
-                destination.toSetWallpaperFlags(),
+        if (inputStream != null && asset !is CurrentWallpaperAsset) {
+            val managerId =
+                setStreamWithCrops(
+                    inputStream,
+                    cropHints,
+                    /* allowBackup= */ true,
+                    destination.toSetWallpaperFlags(),
+                )
+            return CommittedWallpaper(managerId, bitmap, cropHints)
+        }
+
+        val plan =
+            MultiCropPlanner.plan(wallpaperSize, cropHints)?.takeIf {
+                it.isSmallerThan(wallpaperSize)
+            }
+        val buffer = plan?.let { MultiCropPlanner.produce(it, bitmap, wallpaperSize) }
+        if (plan == null || buffer == null || buffer === bitmap) {
+            if (plan != null && buffer == null) {
+                PerformanceMonitor.get().incrementCounter(CROP_PLANS_OVER_CAP)
+            }
+            val managerId =
+                setBitmapWithCrops(
+                    bitmap,
+                    cropHints,
+                    /* allowBackup= */ true,
+                    destination.toSetWallpaperFlags(),
+                )
+            return CommittedWallpaper(managerId, bitmap, cropHints)
+        }
+        PerformanceMonitor.get().incrementCounter(CROP_PLANS_APPLIED)
+        PerformanceMonitor.get()
+            .incrementCounter(
+                CROP_PLAN_BYTES_SAVED,
+                bitmap.allocationByteCount.toLong() - buffer.allocationByteCount,
             )
-        } else {
+        // The buffer is not recycled here, as it is still needed for the fingerprint and the
+        // recent wallpaper entry.
+        val bufferCropHints = plan.mapCrops(cropHints, buffer.width, buffer.height)
+        val managerId =
             setBitmapWithCrops(
-                bitmap,
-                cropHints,
+                buffer,
+                bufferCropHints,
                 /* allowBackup= */ true,
                 destination.toSetWallpaperFlags(),
             )
-        }
+        return CommittedWallpaper(managerId, buffer, bufferCropHints)
     }
 
+    /** A static wallpaper handed to [WallpaperManager], see [setStaticWallpaperToSystem]. */
+    private class CommittedWallpaper(
+        val managerId: Int,
+        val bitmap: Bitmap,
+        val cropHints: Map<Point, Rect>,
+    )
+
     private fun StaticWallpaperModel.getMetadata(
         bitmap: Bitmap,
         managerId: Int,
@@ -294,7 +350,7 @@ constructor(
             stopWallpaperRotation()
         }
 
-        traceAsync(TAG, "setLiveWallpaper") {
+        traceAndMeasure(WALLPAPER_SET, "setLiveWallpaper") {
             val managerId = wallpaperManager.setLiveWallpaperToSystem(wallpaperModel, destination)
 
             wallpaperPreferences.setLiveWallpaperMetadata(
@@ -450,10 +506,16 @@ constructor(
     private suspend fun queryRecentWallpapers(
         destination: WallpaperDestination
     ): List<RecentWallpaperModel> =
-        if (!areRecentsAvailable()) {
-            listOf(getCurrentWallpaperFromFactory(destination))
-        } else {
-            queryAllRecentWallpapers(destination)
+        PerformanceMonitor.get().measure(RECENTS_QUERY) {
+            val recents =
+                if (!areRecentsAvailable()) {
+                    listOf(getCurrentWallpaperFromFactory(destination))
+                } else {
+                    queryAllRecentWallpapers(destination)
+                }
+            PerformanceMonitor.get()
+                .setGauge(RECENTS_UPDATED_UPTIME_MS, SystemClock.uptimeMillis())
+            recents
         }
 
     private fun queryAllRecentWallpapers(
@@ -618,7 +680,9 @@ constructor(
         bitmap: Bitmap,
         cropHints: Map<Point, Rect>?,
     ): WallpaperColors? {
-        return wallpaperManager.getWallpaperColors(bitmap, cropHints)
+        return PerformanceMonitor.get().measure(COLOR_EXTRACTION) {
+            wallpaperManager.getWallpaperColors(bitmap, cropHints)
+        }
     }
 
     override fun getWallpaperColors(screen: Screen): WallpaperColors? {
@@ -631,6 +695,10 @@ constructor(
         )
     }
 
+    /** Traces [block] as [sectionName] and records its latency as [metric]. */
+    private inline fun <T> traceAndMeasure(metric: String, sectionName: String, block: () -> T): T =
+        PerformanceMonitor.get().measure(metric) { traceAsync(TAG, sectionName, block) }
+
     fun WallpaperDestination.asString(): String {
         return when (this) {
             BOTH -> SCREEN_ALL
@@ -669,14 +737,14 @@ constructor(
         } ?: cropHint
     }
 
-    private suspend fun Asset.getStreamOrFromBitmap(bitmap: Bitmap): InputStream? =
+    /**
+     * Returns the asset's original stream, or null if the asset is not streamable or its stream
+     * would need re-orienting, in which case the decoded bitmap has to be used instead.
+     */
+    private suspend fun Asset.getUnmodifiedStream(): InputStream? =
         suspendCancellableCoroutine { k: CancellableContinuation<InputStream?> ->
-            if (this is StreamableAsset) {
-                if (exifOrientation != ExifInterface.ORIENTATION_NORMAL) {
-                    k.resumeWith(Result.success(BitmapUtils.bitmapToInputStream(bitmap)))
-                } else {
-                    fetchInputStream { k.resumeWith(Result.success(it)) }
-                }
+            if (this is StreamableAsset && exifOrientation == ExifInterface.ORIENTATION_NORMAL) {
+                fetchInputStream { k.resumeWith(Result.success(it)) }
             } else {
                 k.resumeWith(Result.success(null))
             }
@@ -31,6 +31,7 @@ import com.android.wallpaper.picker.customization.shared.model.WallpaperModel
 import com.android.wallpaper.picker.data.WallpaperModel.LiveWallpaperModel
 import com.android.wallpaper.picker.data.WallpaperModel.StaticWallpaperModel
 import com.android.wallpaper.picker.di.modules.BackgroundDispatcher
+import com.android.wallpaper.picker.di.modules.BinderDispatcher
 import com.android.wallpaper.picker.preview.shared.model.FullPreviewCropModel
 import javax.inject.Inject
 import javax.inject.Singleton
@@ -54,7 +55,7 @@ constructor(
     @BackgroundDispatcher private val scope: CoroutineScope,
     private val client: WallpaperClient,
     private val wallpaperPreferences: WallpaperPreferences,
-    @BackgroundDispatcher private val backgroundDispatcher: CoroutineDispatcher,
+    @BinderDispatcher private val backgroundDispatcher: CoroutineDispatcher,
 ) {
     val maxOptions = MAX_OPTIONS
 
@@ -22,6 +22,7 @@ import android.content.IntentFilter
 import com.android.wallpaper.picker.broadcast.BroadcastDispatcher
 import com.android.wallpaper.picker.customization.data.content.WallpaperClient
 import com.android.wallpaper.picker.di.modules.BackgroundDispatcher
+import com.android.wallpaper.picker.di.modules.BinderDispatcher
 import javax.inject.Inject
 import javax.inject.Singleton
 import kotlinx.coroutines.CoroutineDispatcher
@@ -42,7 +43,7 @@ constructor(
     @BackgroundDispatcher private val scope: CoroutineScope,
     private val client: WallpaperClient,
     broadcastDispatcher: BroadcastDispatcher,
-    @BackgroundDispatcher private val backgroundDispatcher: CoroutineDispatcher,
+    @BinderDispatcher private val backgroundDispatcher: CoroutineDispatcher,
 ) {
     private val wallpaperChanged =
         broadcastDispatcher.broadcastFlow(IntentFilter(Intent.ACTION_WALLPAPER_CHANGED)).onStart {
@@ -27,6 +27,7 @@ import androidx.core.view.WindowCompat
 import com.android.customization.picker.clock.ui.view.ClockViewFactory
 import com.android.wallpaper.R
 import com.android.wallpaper.module.MultiPanesChecker
+import com.android.wallpaper.monitor.PickerDiagnostics
 import com.android.wallpaper.picker.AppbarFragment
 import com.android.wallpaper.picker.category.ui.viewmodel.CategoriesViewModel
 import com.android.wallpaper.picker.common.preview.data.repository.PersistentWallpaperModelRepository
@@ -43,6 +44,8 @@ import com.android.wallpaper.util.DisplayUtils
 import com.android.wallpaper.util.converter.WallpaperModelFactory
 import com.android.wallpaper.util.wallpaperconnection.WallpaperConnectionUtils
 import dagger.hilt.android.AndroidEntryPoint
+import java.io.FileDescriptor
+import java.io.PrintWriter
 import javax.inject.Inject
 import kotlinx.coroutines.CoroutineScope
 
@@ -71,6 +74,7 @@ class CustomizationPickerActivity2 :
     @Inject lateinit var wallpaperConnectionUtils: WallpaperConnectionUtils
     @Inject lateinit var colorUpdateViewModel: ColorUpdateViewModel
     @Inject lateinit var clockViewFactory: ClockViewFactory
+    @Inject lateinit var pickerDiagnostics: PickerDiagnostics
 
     private var configuration: Configuration? = null
     private val categoriesViewModel: CategoriesViewModel by viewModels()
@@ -150,6 +154,16 @@ class CustomizationPickerActivity2 :
         return !ActivityUtils.isSUWMode(baseContext)
     }
 
+    override fun dump(
+        prefix: String,
+        fd: FileDescriptor?,
+        writer: PrintWriter,
+        args: Array<out String>?,
+    ) {
+        super.dump(prefix, fd, writer, args)
+        pickerDiagnostics.dump(writer)
+    }
+
     @TargetApi(36)
     override fun onConfigurationChanged(newConfig: Configuration) {
         super.onConfigurationChanged(newConfig)
@@ -46,7 +46,6 @@ import com.android.wallpaper.util.PreviewUtils
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.ExperimentalCoroutinesApi
 import kotlinx.coroutines.launch
-import kotlinx.coroutines.suspendCancellableCoroutine
 import kotlinx.coroutines.withContext
 
 /** Controls the screen preview section. */
@@ -168,23 +167,16 @@ open class ScreenPreviewSectionController(
                     )
                 },
             wallpaperInfoProvider = { forceReload ->
-                suspendCancellableCoroutine { continuation ->
-                    wallpaperInfoFactory.createCurrentWallpaperInfos(
-                        context,
-                        forceReload,
-                    ) { homeWallpaper, lockWallpaper, _ ->
-                        val wallpaper =
-                            if (isOnLockScreen) {
-                                lockWallpaper ?: homeWallpaper
-                            } else {
-                                homeWallpaper ?: lockWallpaper
-                            }
-                        loadInitialColors(
-                            context = context,
-                            screen = screen,
-                        )
-                        continuation.resume(wallpaper, null)
-                    }
+                val (homeWallpaper, lockWallpaper, _) =
+                    wallpaperInfoFactory.getCurrentWallpaperInfoPair(context, forceReload)
+                loadInitialColors(
+                    context = context,
+                    screen = screen,
+                )
+                if (isOnLockScreen) {
+                    lockWallpaper ?: homeWallpaper
+                } else {
+                    homeWallpaper ?: lockWallpaper
                 }
             },
             onWallpaperColorChanged = { colors ->
@@ -226,20 +218,12 @@ open class ScreenPreviewSectionController(
     }
 
     private suspend fun getWallpaperInfo(context: Context): WallpaperInfo? {
-        return suspendCancellableCoroutine { continuation ->
-            wallpaperInfoFactory.createCurrentWallpaperInfos(
-                context,
-                true,
-            ) { homeWallpaper, lockWallpaper, _ ->
-                continuation.resume(
-                    if (isOnLockScreen) {
-                        lockWallpaper ?: homeWallpaper
-                    } else {
-                        homeWallpaper
-                    },
-                    null
-                )
-            }
+        val (homeWallpaper, lockWallpaper, _) =
+            wallpaperInfoFactory.getCurrentWallpaperInfoPair(context, forceRefresh = true)
+        return if (isOnLockScreen) {
+            lockWallpaper ?: homeWallpaper
+        } else {
+            homeWallpaper
         }
     }
 
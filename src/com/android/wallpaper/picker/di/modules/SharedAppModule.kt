@@ -57,6 +57,7 @@ import com.android.wallpaper.system.PowerManagerImpl
 import com.android.wallpaper.system.PowerManagerWrapper
 import com.android.wallpaper.system.UiModeManagerImpl
 import com.android.wallpaper.system.UiModeManagerWrapper
+import com.android.wallpaper.util.BackgroundDispatchers
 import com.android.wallpaper.util.WallpaperParser
 import com.android.wallpaper.util.WallpaperParserImpl
 import com.android.wallpaper.util.converter.category.CategoryFactory
@@ -71,8 +72,10 @@ import java.util.concurrent.Executor
 import javax.inject.Qualifier
 import javax.inject.Singleton
 import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.CoroutineName
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
 
 /** Qualifier for main thread [CoroutineDispatcher] bound to app lifecycle. */
 @Qualifier annotation class MainDispatcher
@@ -80,6 +83,15 @@ import kotlinx.coroutines.Dispatchers
 /** Qualifier for background thread [CoroutineDispatcher] for long running and blocking tasks. */
 @Qualifier annotation class BackgroundDispatcher
 
+/** Qualifier for the bounded [CoroutineDispatcher] lane for bitmap decoding. */
+@Qualifier annotation class DecodeDispatcher
+
+/** Qualifier for the bounded [CoroutineDispatcher] lane for binder calls. */
+@Qualifier annotation class BinderDispatcher
+
+/** Qualifier for the bounded [CoroutineDispatcher] lane for PackageManager queries. */
+@Qualifier annotation class PackageScanDispatcher
+
 @Module
 @InstallIn(SingletonComponent::class)
 abstract class SharedAppModule {
@@ -169,8 +181,25 @@ abstract class SharedAppModule {
         fun provideBackgroundDispatcher(): CoroutineDispatcher = Dispatchers.IO
 
         @Provides
+        @Singleton
         @BackgroundDispatcher
-        fun provideBackgroundScope(): CoroutineScope = CoroutineScope(Dispatchers.IO)
+        fun provideBackgroundScope(): CoroutineScope =
+            CoroutineScope(SupervisorJob() + Dispatchers.IO + CoroutineName("WallpaperPickerBg"))
+
+        @Provides
+        @DecodeDispatcher
+        fun provideDecodeDispatcher(dispatchers: BackgroundDispatchers): CoroutineDispatcher =
+            dispatchers.decode
+
+        @Provides
+        @BinderDispatcher
+        fun provideBinderDispatcher(dispatchers: BackgroundDispatchers): CoroutineDispatcher =
+            dispatchers.binder
+
+        @Provides
+        @PackageScanDispatcher
+        fun providePackageScanDispatcher(dispatchers: BackgroundDispatchers): CoroutineDispatcher =
+            dispatchers.packageScan
 
         /** Provide a BroadcastRunning Executor (for sending and receiving broadcasts). */
         @Provides
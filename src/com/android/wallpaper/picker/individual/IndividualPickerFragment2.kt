@@ -43,6 +43,7 @@ import android.widget.Toast
 import androidx.annotation.DrawableRes
 import androidx.cardview.widget.CardView
 import androidx.core.content.ContextCompat
+import androidx.core.view.doOnNextLayout
 import androidx.core.widget.ContentLoadingProgressBar
 import androidx.fragment.app.DialogFragment
 import androidx.lifecycle.LifecycleOwner
@@ -75,6 +76,7 @@ import com.android.wallpaper.picker.customization.ui.viewmodel.ColorUpdateViewMo
 import com.android.wallpaper.util.ActivityUtils
 import com.android.wallpaper.util.LaunchUtils
 import com.android.wallpaper.util.SizeCalculator
+import com.android.wallpaper.util.wallpaperconnection.WallpaperConnectionUtils
 import com.android.wallpaper.widget.GridPaddingDecoration
 import com.android.wallpaper.widget.GridPaddingDecorationCreativeCategory
 import com.android.wallpaper.widget.WallpaperPickerRecyclerViewAccessibilityDelegate
@@ -85,7 +87,9 @@ import com.google.android.material.appbar.AppBarLayout
 import dagger.hilt.android.AndroidEntryPoint
 import java.util.Date
 import javax.inject.Inject
+import kotlinx.coroutines.Job
 import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.delay
 import kotlinx.coroutines.launch
 
 @AndroidEntryPoint(AppbarFragment::class)
@@ -114,6 +118,7 @@ class IndividualPickerFragment2 :
         private const val PROGRESS_DIALOG_INDETERMINATE = true
         private const val KEY_NIGHT_MODE = "IndividualPickerFragment.NIGHT_MODE"
         private const val MAX_CAPACITY_IN_FEWER_COLUMN_LAYOUT = 8
+        private const val WARM_UP_SETTLE_DELAY_MS = 300L
         private val PROGRESS_DIALOG_NO_TITLE = null
         private var isCreativeCategory = false
 
@@ -139,6 +144,7 @@ class IndividualPickerFragment2 :
     }
 
     @Inject lateinit var colorUpdateViewModel: ColorUpdateViewModel
+    @Inject lateinit var wallpaperConnectionUtils: WallpaperConnectionUtils
 
     private lateinit var imageGrid: RecyclerView
     private var adapter: IndividualAdapter? = null
@@ -158,6 +164,7 @@ class IndividualPickerFragment2 :
     private var appliedWallpaperIds: Set<String> = setOf()
     private var mIsCreativeWallpaperEnabled = false
     private var categoryRefactorFlag = false
+    private var warmUpJob: Job? = null
     private var isNewPickerUi = false
 
     private var refreshCreativeCategories: CategoriesViewModel.CategoryType? = null
@@ -316,6 +323,7 @@ class IndividualPickerFragment2 :
                 }
                 maybeSetUpImageGrid()
                 adapter?.notifyDataSetChanged()
+                warmUpAfterNextLayout()
 
                 // Finish activity if no wallpapers are found (on phone)
                 if (fetchedWallpapers.isEmpty()) {
@@ -501,6 +509,18 @@ class IndividualPickerFragment2 :
         loading = view.requireViewById(R.id.loading_indicator)
         updateLoading()
         maybeSetUpImageGrid()
+        warmUpAfterNextLayout()
+        imageGrid.addOnScrollListener(
+            object : RecyclerView.OnScrollListener() {
+                override fun onScrollStateChanged(recyclerView: RecyclerView, newState: Int) {
+                    if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+                        scheduleLiveWallpaperWarmUp()
+                    } else {
+                        cancelLiveWallpaperWarmUp()
+                    }
+                }
+            }
+        )
         // For nav bar edge-to-edge effect.
         imageGrid.setOnApplyWindowInsetsListener { v: View, windowInsets: WindowInsets ->
             v.setPadding(
@@ -651,6 +671,55 @@ class IndividualPickerFragment2 :
         imageGrid.layoutManager = gridLayoutManager
     }
 
+    /**
+     * Pre-binds the services of the live wallpapers whose tiles stay visible for
+     * [WARM_UP_SETTLE_DELAY_MS], so that opening one of their previews starts faster.
+     */
+    private fun scheduleLiveWallpaperWarmUp() {
+        warmUpJob?.cancel()
+        warmUpJob =
+            viewLifecycleOwner.lifecycleScope.launch {
+                delay(WARM_UP_SETTLE_DELAY_MS)
+                val layoutManager = imageGrid.layoutManager as? GridLayoutManager ?: return@launch
+                val first = layoutManager.findFirstCompletelyVisibleItemPosition()
+                val last = layoutManager.findLastCompletelyVisibleItemPosition()
+                if (first == RecyclerView.NO_POSITION || last == RecyclerView.NO_POSITION) {
+                    return@launch
+                }
+                for (position in first..minOf(last, items.size - 1)) {
+                    val wallpaperInfo =
+                        (items[position] as? PickerItem.WallpaperItem)?.wallpaperInfo
+                            as? LiveWallpaperInfo ?: continue
+                    val component = wallpaperInfo.wallpaperComponent ?: continue
+                    if (!wallpaperConnectionUtils.warmUp(component)) {
+                        // No free engine slot left.
+                        break
+                    }
+                }
+            }
+    }
+
+    /**
+     * Schedules a warm-up once the grid has laid out its tiles, so that live wallpapers visible
+     * without any scrolling are warmed up as well.
+     */
+    private fun warmUpAfterNextLayout() {
+        if (!this::imageGrid.isInitialized || view == null) {
+            return
+        }
+        imageGrid.doOnNextLayout {
+            if (view != null && imageGrid.scrollState == RecyclerView.SCROLL_STATE_IDLE) {
+                scheduleLiveWallpaperWarmUp()
+            }
+        }
+    }
+
+    private fun cancelLiveWallpaperWarmUp() {
+        warmUpJob?.cancel()
+        warmUpJob = null
+        wallpaperConnectionUtils.cancelWarmUps()
+    }
+
     private suspend fun fetchWallpapersIfNeeded() {
         coroutineScope {
             if (isWallpapersReceived && (shouldReloadWallpapers || isAppliedWallpaperChanged())) {
@@ -687,6 +756,7 @@ class IndividualPickerFragment2 :
     }
 
     override fun onDestroyView() {
+        cancelLiveWallpaperWarmUp()
         super.onDestroyView()
     }
 
@@ -16,11 +16,19 @@
 
 package com.android.wallpaper.picker.network.data
 
+import android.content.BroadcastReceiver
 import android.content.Context
+import android.content.Intent
+import android.content.IntentFilter
+import android.net.ConnectivityManager
+import android.net.ConnectivityManager.RESTRICT_BACKGROUND_STATUS_ENABLED
+import android.net.Network
+import android.net.NetworkCapabilities
 import android.util.Log
 import com.android.wallpaper.module.NetworkStatusNotifier
 import com.android.wallpaper.module.NetworkStatusNotifier.NETWORK_CONNECTED
 import com.android.wallpaper.module.NetworkStatusNotifier.NETWORK_NOT_INITIALIZED
+import com.android.wallpaper.picker.network.shared.model.NetworkConditionsModel
 import dagger.hilt.android.qualifiers.ApplicationContext
 import javax.inject.Inject
 import javax.inject.Singleton
@@ -28,6 +36,7 @@ import kotlinx.coroutines.channels.awaitClose
 import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.callbackFlow
+import kotlinx.coroutines.flow.distinctUntilChanged
 
 @Singleton
 open class DefaultNetworkStatusRepository
@@ -38,6 +47,7 @@ constructor(
 ) : NetworkStatusRepository {
 
     private val _networkStatus = MutableStateFlow<Int>(NETWORK_NOT_INITIALIZED)
+    private val connectivityManager = context.getSystemService(ConnectivityManager::class.java)
 
     init {
         _networkStatus.value = networkStatusNotifier.networkStatus
@@ -59,6 +69,74 @@ constructor(
         awaitClose { networkStatusNotifier.unregisterListener(listener) }
     }
 
+    override fun networkConditionsFlow(): Flow<NetworkConditionsModel> =
+        callbackFlow {
+                val callback =
+                    object : ConnectivityManager.NetworkCallback() {
+                        override fun onCapabilitiesChanged(
+                            network: Network,
+                            capabilities: NetworkCapabilities,
+                        ) {
+                            trySend(toConditions(capabilities))
+                        }
+
+                        override fun onLost(network: Network) {
+                            trySend(NetworkConditionsModel.DISCONNECTED)
+                        }
+                    }
+                // Data Saver toggles do not change the network capabilities, only this broadcast.
+                val dataSaverReceiver =
+                    object : BroadcastReceiver() {
+                        override fun onReceive(context: Context, intent: Intent) {
+                            trySend(getNetworkConditions())
+                        }
+                    }
+
+                trySend(getNetworkConditions())
+                connectivityManager.registerDefaultNetworkCallback(callback)
+                context.registerReceiver(
+                    dataSaverReceiver,
+                    IntentFilter(ConnectivityManager.ACTION_RESTRICT_BACKGROUND_CHANGED),
+                )
+
+                awaitClose {
+                    connectivityManager.unregisterNetworkCallback(callback)
+                    context.unregisterReceiver(dataSaverReceiver)
+                }
+            }
+            .distinctUntilChanged()
+
+    override fun getNetworkConditions(): NetworkConditionsModel {
+        val network =
+            connectivityManager.activeNetwork ?: return NetworkConditionsModel.DISCONNECTED
+        val capabilities =
+            connectivityManager.getNetworkCapabilities(network)
+                ?: return NetworkConditionsModel.DISCONNECTED
+        return toConditions(capabilities)
+    }
+
+    private fun toConditions(capabilities: NetworkCapabilities): NetworkConditionsModel {
+        val notMetered =
+            capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_METERED) ||
+                capabilities.hasCapability(
+                    NetworkCapabilities.NET_CAPABILITY_TEMPORARILY_NOT_METERED
+                )
+        return NetworkConditionsModel(
+            isConnected =
+                capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET) &&
+                    networkStatusNotifier.networkStatus == NETWORK_CONNECTED,
+            isValidated =
+                capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED) &&
+                    !capabilities.hasCapability(
+                        NetworkCapabilities.NET_CAPABILITY_CAPTIVE_PORTAL
+                    ),
+            isMetered = !notMetered,
+            isDataSaverOn =
+                connectivityManager.restrictBackgroundStatus == RESTRICT_BACKGROUND_STATUS_ENABLED,
+            downstreamBandwidthKbps = capabilities.linkDownstreamBandwidthKbps,
+        )
+    }
+
     companion object {
         private const val TAG = "DefaultNetworkStatusRepository"
     }
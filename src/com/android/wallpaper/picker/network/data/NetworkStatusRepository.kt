@@ -16,6 +16,7 @@
 
 package com.android.wallpaper.picker.network.data
 
+import com.android.wallpaper.picker.network.shared.model.NetworkConditionsModel
 import kotlinx.coroutines.flow.Flow
 
 /** An interface which allows consumers to collect network status information */
@@ -32,4 +33,13 @@ interface NetworkStatusRepository {
      * @return A [Flow] of [Boolean] representing the network connectivity status.
      */
     fun networkStateFlow(): Flow<Boolean>
+
+    /**
+     * Returns a [Flow] of the conditions of the default network, emitting the current value on
+     * collection and again whenever metering, validation, bandwidth or Data Saver change.
+     */
+    fun networkConditionsFlow(): Flow<NetworkConditionsModel>
+
+    /** Returns the current conditions of the default network. Safe to call from any thread. */
+    fun getNetworkConditions(): NetworkConditionsModel
 }
@@ -17,6 +17,7 @@
 package com.android.wallpaper.picker.network.domain
 
 import com.android.wallpaper.picker.network.data.NetworkStatusRepository
+import com.android.wallpaper.picker.network.shared.model.NetworkConditionsModel
 import javax.inject.Inject
 import javax.inject.Singleton
 import kotlinx.coroutines.flow.Flow
@@ -27,4 +28,6 @@ class DefaultNetworkStatusInteractor
 constructor(private val networkStatusRepository: NetworkStatusRepository) :
     NetworkStatusInteractor {
     override val isConnectionObtained: Flow<Boolean> = networkStatusRepository.networkStateFlow()
+    override val networkConditions: Flow<NetworkConditionsModel> =
+        networkStatusRepository.networkConditionsFlow()
 }
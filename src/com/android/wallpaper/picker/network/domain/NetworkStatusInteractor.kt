@@ -16,8 +16,10 @@
 
 package com.android.wallpaper.picker.network.domain
 
+import com.android.wallpaper.picker.network.shared.model.NetworkConditionsModel
 import kotlinx.coroutines.flow.Flow
 
 interface NetworkStatusInteractor {
     val isConnectionObtained: Flow<Boolean>
+    val networkConditions: Flow<NetworkConditionsModel>
 }
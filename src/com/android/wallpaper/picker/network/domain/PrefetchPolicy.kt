@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.wallpaper.picker.network.domain
+
+import com.android.wallpaper.picker.network.data.NetworkStatusRepository
+import com.android.wallpaper.picker.network.shared.model.NetworkConditionsModel
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Decides which network fetches may run under the current [NetworkConditionsModel].
+ *
+ * Prefetches (upcoming rotation wallpapers, speculative thumbnails) only run on an unmetered,
+ * validated link with reasonable bandwidth and Data Saver off. On a constrained link only fetches
+ * the user is waiting for go through, and offline nothing does.
+ */
+@Singleton
+class PrefetchPolicy
+@Inject
+constructor(private val networkStatusRepository: NetworkStatusRepository) {
+
+    enum class FetchType {
+        /** A fetch whose result the user is waiting to see. */
+        USER_REQUESTED,
+        /** A speculative fetch whose result may never be shown. */
+        PREFETCH,
+    }
+
+    enum class Mode {
+        /** Any fetch may run. */
+        AGGRESSIVE,
+        /** Only [FetchType.USER_REQUESTED] fetches may run. */
+        USER_REQUESTED_ONLY,
+        /** No fetch may run. */
+        OFFLINE,
+    }
+
+    fun getMode(): Mode = modeFor(networkStatusRepository.getNetworkConditions())
+
+    fun isAllowed(type: FetchType): Boolean = isAllowed(type, getMode())
+
+    companion object {
+        /** Below this estimate, in kbps, the link is treated as constrained. */
+        const val LOW_BANDWIDTH_KBPS = 1_000
+
+        @JvmStatic
+        fun modeFor(conditions: NetworkConditionsModel): Mode =
+            when {
+                !conditions.isConnected -> Mode.OFFLINE
+                conditions.isMetered ||
+                    conditions.isDataSaverOn ||
+                    !conditions.isValidated ||
+                    isLowBandwidth(conditions.downstreamBandwidthKbps) ->
+                    Mode.USER_REQUESTED_ONLY
+                else -> Mode.AGGRESSIVE
+            }
+
+        @JvmStatic
+        fun isAllowed(type: FetchType, mode: Mode): Boolean =
+            when (mode) {
+                Mode.AGGRESSIVE -> true
+                Mode.USER_REQUESTED_ONLY -> type == FetchType.USER_REQUESTED
+                Mode.OFFLINE -> false
+            }
+
+        private fun isLowBandwidth(kbps: Int): Boolean =
+            kbps != NetworkConditionsModel.UNKNOWN_BANDWIDTH && kbps < LOW_BANDWIDTH_KBPS
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.wallpaper.picker.network.shared.model
+
+/** Snapshot of the properties of the default network that decide how much we may download. */
+data class NetworkConditionsModel(
+    val isConnected: Boolean,
+    /** Whether the network has been validated, i.e. is not behind a captive portal. */
+    val isValidated: Boolean,
+    /** Whether traffic on the network may cost the user money, including temporarily metered. */
+    val isMetered: Boolean,
+    /** Whether the user restricted background data for this app with Data Saver. */
+    val isDataSaverOn: Boolean,
+    /** Estimated downstream bandwidth in kbps, or [UNKNOWN_BANDWIDTH] if not reported. */
+    val downstreamBandwidthKbps: Int,
+) {
+    companion object {
+        const val UNKNOWN_BANDWIDTH = 0
+
+        @JvmField
+        val DISCONNECTED =
+            NetworkConditionsModel(
+                isConnected = false,
+                isValidated = false,
+                isMetered = true,
+                isDataSaverOn = false,
+                downstreamBandwidthKbps = UNKNOWN_BANDWIDTH,
+            )
+    }
+}
@@ -23,7 +23,7 @@ import android.util.Log
 import com.android.wallpaper.model.WallpaperAction
 import com.android.wallpaper.model.WallpaperInfoContract
 import com.android.wallpaper.picker.data.CreativeWallpaperEffectsData
-import com.android.wallpaper.picker.di.modules.BackgroundDispatcher
+import com.android.wallpaper.picker.di.modules.BinderDispatcher
 import com.android.wallpaper.picker.preview.shared.model.CreativeEffectsModel
 import dagger.hilt.android.qualifiers.ApplicationContext
 import dagger.hilt.android.scopes.ActivityRetainedScoped
@@ -38,7 +38,7 @@ class CreativeEffectsRepository
 @Inject
 constructor(
     @ApplicationContext private val context: Context,
-    @BackgroundDispatcher private val bgDispatcher: CoroutineDispatcher,
+    @BinderDispatcher private val bgDispatcher: CoroutineDispatcher,
 ) {
 
     private val _creativeEffectsModel = MutableStateFlow<CreativeEffectsModel?>(null)
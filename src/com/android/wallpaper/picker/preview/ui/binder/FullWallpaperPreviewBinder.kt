@@ -50,6 +50,7 @@ import com.android.wallpaper.picker.preview.ui.viewmodel.WallpaperPreviewViewMod
 import com.android.wallpaper.util.DisplayUtils
 import com.android.wallpaper.util.SurfaceViewUtils
 import com.android.wallpaper.util.WallpaperCropUtils
+import com.android.wallpaper.util.wallpaperconnection.PreviewTouchChannel
 import com.android.wallpaper.util.wallpaperconnection.WallpaperConnectionUtils
 import com.android.wallpaper.util.wallpaperconnection.WallpaperConnectionUtils.Companion.shouldEnforceSingleEngine
 import com.davemorrissey.labs.subscaleview.SubsamplingScaleImageView
@@ -304,6 +305,7 @@ object FullWallpaperPreviewBinder {
         return object : SurfaceViewUtils.SurfaceCallback {
 
             var job: Job? = null
+            var touchChannel: PreviewTouchChannel? = null
 
             // Suppress lint warning for setting on touch listener to a live wallpaper surface view.
             // This is because the touch effect on a live wallpaper is purely visual, instead of
@@ -333,16 +335,18 @@ object FullWallpaperPreviewBinder {
                                     isFirstBindingDeferred,
                                 )
                                 if (!viewModel.isAccessibilityEnabled()) {
+                                    touchChannel?.close()
+                                    val channel =
+                                        wallpaperConnectionUtils.openTouchChannel(
+                                            wallpaper,
+                                            engineRenderingConfig,
+                                            config.screen.toFlag(),
+                                            lifecycleOwner.lifecycleScope,
+                                        )
+                                    touchChannel = channel
                                     surfaceTouchForwardingLayout.initTouchForwarding(surfaceView)
                                     surfaceView.setOnTouchListener { _, event ->
-                                        lifecycleOwner.lifecycleScope.launch {
-                                            wallpaperConnectionUtils.dispatchTouchEvent(
-                                                wallpaper,
-                                                engineRenderingConfig,
-                                                config.screen.toFlag(),
-                                                event,
-                                            )
-                                        }
+                                        channel?.send(event)
                                         false
                                     }
                                 }
@@ -440,6 +444,8 @@ object FullWallpaperPreviewBinder {
                 // Clean up surface view's on touche listener
                 surfaceTouchForwardingLayout.removeTouchForwarding()
                 surfaceView.setOnTouchListener(null)
+                touchChannel?.close()
+                touchChannel = null
                 // Note that we disconnect wallpaper connection for live wallpapers in
                 // WallpaperPreviewActivity's onDestroy().
                 // This is to reduce multiple times of connecting and disconnecting live
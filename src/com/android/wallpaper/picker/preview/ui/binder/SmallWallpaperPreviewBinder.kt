@@ -19,8 +19,10 @@ import android.app.WallpaperColors
 import android.content.Context
 import android.graphics.Point
 import android.view.LayoutInflater
+import android.view.SurfaceControlViewHost
 import android.view.SurfaceHolder
 import android.view.SurfaceView
+import android.widget.ImageView
 import androidx.lifecycle.Lifecycle
 import androidx.lifecycle.LifecycleOwner
 import androidx.lifecycle.lifecycleScope
@@ -33,13 +35,16 @@ import com.android.wallpaper.picker.data.WallpaperModel
 import com.android.wallpaper.picker.preview.ui.view.SystemScaledSubsamplingScaleImageView
 import com.android.wallpaper.picker.preview.ui.viewmodel.WallpaperPreviewViewModel
 import com.android.wallpaper.util.SurfaceViewUtils
+import com.android.wallpaper.util.SurfaceViewUtils.attachView
 import com.android.wallpaper.util.wallpaperconnection.WallpaperConnectionUtils
 import com.android.wallpaper.util.wallpaperconnection.WallpaperConnectionUtils.Companion.shouldEnforceSingleEngine
 import com.android.wallpaper.util.wallpaperconnection.WallpaperEngineConnection.WallpaperEngineConnectionListener
 import kotlinx.coroutines.CompletableDeferred
 import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.Job
 import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
 
 /**
  * Bind the [SurfaceView] with [WallpaperPreviewViewModel] for rendering static or live wallpaper
@@ -90,6 +95,30 @@ object SmallWallpaperPreviewBinder {
         }
     }
 
+    /**
+     * Shows the thumbnail of a live wallpaper whose engine failed to come up in time, instead of
+     * leaving the preview blank. Returns the host of the thumbnail, which the caller must release.
+     */
+    private suspend fun bindLiveWallpaperThumbnail(
+        applicationContext: Context,
+        surface: SurfaceView,
+        wallpaper: WallpaperModel.LiveWallpaperModel,
+    ): SurfaceControlViewHost? {
+        val thumbnail =
+            withContext(Dispatchers.IO) {
+                wallpaper.liveWallpaperData.systemWallpaperInfo.loadThumbnail(
+                    applicationContext.packageManager
+                )
+            } ?: return null
+        val thumbnailView =
+            ImageView(applicationContext).apply {
+                scaleType = ImageView.ScaleType.CENTER_CROP
+                setImageDrawable(thumbnail)
+            }
+        val surfacePosition = surface.holder.surfaceFrame
+        return surface.attachView(thumbnailView, surfacePosition.width(), surfacePosition.height())
+    }
+
     /**
      * Create a surface callback that binds the surface when surface created. Note that we return
      * the surface callback reference so that we can remove the callback from the surface when the
@@ -112,37 +141,53 @@ object SmallWallpaperPreviewBinder {
 
             var job: Job? = null
             var loadingAnimationBinding: PreviewEffectsLoadingBinder.Binding? = null
+            var thumbnailHost: SurfaceControlViewHost? = null
+
+            fun releaseThumbnail() {
+                thumbnailHost?.release()
+                thumbnailHost = null
+            }
 
             override fun surfaceCreated(holder: SurfaceHolder) {
                 job =
                     // Ensure the wallpaper connection is connected / disconnected in [mainScope].
                     mainScope.launch {
                         viewModel.smallWallpaper.collect { (wallpaper, whichPreview) ->
+                            releaseThumbnail()
                             if (wallpaper is WallpaperModel.LiveWallpaperModel) {
-                                wallpaperConnectionUtils.connect(
-                                    applicationContext,
-                                    wallpaper,
-                                    whichPreview,
-                                    screen.toFlag(),
-                                    surface,
-                                    WallpaperConnectionUtils.Companion.EngineRenderingConfig(
-                                        wallpaper.shouldEnforceSingleEngine(),
-                                        deviceDisplayType = deviceDisplayType,
-                                        viewModel.smallerDisplaySize,
-                                        viewModel.wallpaperDisplaySize.value,
-                                    ),
-                                    isFirstBindingDeferred,
-                                    object : WallpaperEngineConnectionListener {
-                                        override fun onWallpaperColorsChanged(
-                                            colors: WallpaperColors?,
-                                            displayId: Int,
-                                        ) {
-                                            viewModel.setWallpaperConnectionColors(
-                                                WallpaperColorsModel.Loaded(colors)
-                                            )
-                                        }
-                                    },
-                                )
+                                val connected =
+                                    wallpaperConnectionUtils.connect(
+                                        applicationContext,
+                                        wallpaper,
+                                        whichPreview,
+                                        screen.toFlag(),
+                                        surface,
+                                        WallpaperConnectionUtils.Companion.EngineRenderingConfig(
+                                            wallpaper.shouldEnforceSingleEngine(),
+                                            deviceDisplayType = deviceDisplayType,
+                                            viewModel.smallerDisplaySize,
+                                            viewModel.wallpaperDisplaySize.value,
+                                        ),
+                                        isFirstBindingDeferred,
+                                        object : WallpaperEngineConnectionListener {
+                                            override fun onWallpaperColorsChanged(
+                                                colors: WallpaperColors?,
+                                                displayId: Int,
+                                            ) {
+                                                viewModel.setWallpaperConnectionColors(
+                                                    WallpaperColorsModel.Loaded(colors)
+                                                )
+                                            }
+                                        },
+                                    )
+                                if (!connected) {
+                                    thumbnailHost =
+                                        bindLiveWallpaperThumbnail(
+                                            applicationContext,
+                                            surface,
+                                            wallpaper,
+                                        )
+                                }
                             } else if (wallpaper is WallpaperModel.StaticWallpaperModel) {
                                 val staticPreviewView =
                                     LayoutInflater.from(applicationContext)
@@ -181,6 +226,7 @@ object SmallWallpaperPreviewBinder {
             override fun surfaceDestroyed(holder: SurfaceHolder) {
                 job?.cancel()
                 job = null
+                releaseThumbnail()
                 loadingAnimationBinding?.destroy()
                 loadingAnimationBinding = null
                 // Note that we disconnect wallpaper connection for live wallpapers in
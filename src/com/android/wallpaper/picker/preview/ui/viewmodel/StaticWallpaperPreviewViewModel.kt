@@ -26,6 +26,7 @@ import com.android.wallpaper.module.WallpaperPreferences
 import com.android.wallpaper.picker.customization.shared.model.WallpaperColorsModel
 import com.android.wallpaper.picker.data.WallpaperModel.StaticWallpaperModel
 import com.android.wallpaper.picker.di.modules.BackgroundDispatcher
+import com.android.wallpaper.picker.di.modules.DecodeDispatcher
 import com.android.wallpaper.picker.preview.domain.interactor.WallpaperPreviewInteractor
 import com.android.wallpaper.picker.preview.shared.model.FullPreviewCropModel
 import com.android.wallpaper.picker.preview.ui.WallpaperPreviewActivity
@@ -220,7 +221,7 @@ constructor(
         private val interactor: WallpaperPreviewInteractor,
         @ApplicationContext private val context: Context,
         private val wallpaperPreferences: WallpaperPreferences,
-        @BackgroundDispatcher private val bgDispatcher: CoroutineDispatcher,
+        @DecodeDispatcher private val bgDispatcher: CoroutineDispatcher,
         private val displaysProvider: DisplaysProvider,
     ) {
         fun create(viewModelScope: CoroutineScope): StaticWallpaperPreviewViewModel {
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.wallpaper.util
+
+import android.util.Log
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+
+/** Helpers for replacing files so that readers only ever see the old or the new content. */
+object AtomicFiles {
+
+    private const val TAG = "AtomicFiles"
+    private const val SUFFIX_TEMP = ".tmp"
+
+    /**
+     * Replaces [target] with what [write] produces. The content goes to a temporary file next to
+     * [target] first, which is synced and then renamed over [target]. A reader that already opened
+     * the old file keeps reading the old content.
+     *
+     * Writers of the same [target] must be serialized by the caller, since they share the temporary
+     * file.
+     *
+     * @param write writes the content and returns whether it succeeded
+     * @return whether [target] was replaced; if not, [target] is left untouched
+     */
+    @JvmStatic
+    fun write(target: File, write: (FileOutputStream) -> Boolean): Boolean {
+        val temp = File(target.parentFile, target.name + SUFFIX_TEMP)
+        return try {
+            val written =
+                FileOutputStream(temp).use { out -> write(out).also { if (it) out.fd.sync() } }
+            written && temp.renameTo(target)
+        } catch (e: IOException) {
+            Log.w(TAG, "Unable to write ${target.name}", e)
+            false
+        } finally {
+            temp.delete()
+        }
+    }
+}
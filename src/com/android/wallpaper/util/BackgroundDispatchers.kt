@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.wallpaper.util
+
+import android.content.ComponentCallbacks2
+import android.content.Context
+import android.content.res.Configuration
+import com.android.wallpaper.monitor.DiagnosticsWriter
+import com.android.wallpaper.monitor.Dumpable
+import com.android.wallpaper.picker.di.modules.BackgroundDispatcher
+import dagger.hilt.android.qualifiers.ApplicationContext
+import javax.inject.Inject
+import javax.inject.Singleton
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.cancelChildren
+import kotlinx.coroutines.job
+import kotlinx.coroutines.plus
+
+/**
+ * Bounded background dispatcher lanes, one per kind of blocking work, so that e.g. a burst of
+ * bitmap decodes cannot starve binder calls of threads.
+ *
+ * Each lane runs on its own threads, named after the lane and capped by its own parallelism.
+ */
+@Singleton
+class BackgroundDispatchers
+@Inject
+constructor(
+    @ApplicationContext context: Context,
+    @BackgroundDispatcher applicationScope: CoroutineScope,
+) : Dumpable {
+
+    /** Bitmap decoding. Kept narrow since every task may hold a full-size bitmap. */
+    val decode = LaneDispatcher("decode", DECODE_PARALLELISM)
+
+    /** Binder calls into system services and content providers. */
+    val binder = LaneDispatcher("binder", BINDER_PARALLELISM)
+
+    /** PackageManager queries, which are slow and serialized in system_server anyway. */
+    val packageScan = LaneDispatcher("package-scan", PACKAGE_SCAN_PARALLELISM)
+
+    val lanes: List<LaneDispatcher> = listOf(decode, binder, packageScan)
+
+    /**
+     * Scope for best-effort work such as prefetches and warm-ups. Its children are cancelled when
+     * the process is asked to trim memory in the background, but the scope itself stays usable.
+     */
+    val trimmableScope: CoroutineScope =
+        applicationScope + SupervisorJob(applicationScope.coroutineContext.job)
+
+    init {
+        context.registerComponentCallbacks(
+            object : ComponentCallbacks2 {
+                override fun onTrimMemory(level: Int) {
+                    if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+                        trimmableScope.coroutineContext.cancelChildren()
+                    }
+                }
+
+                override fun onConfigurationChanged(newConfig: Configuration) {}
+
+                @Deprecated("Deprecated in Java") override fun onLowMemory() {}
+            }
+        )
+    }
+
+    override fun dump(writer: DiagnosticsWriter) {
+        lanes.forEach { lane ->
+            val stats = lane.stats()
+            val prefix = stats.name
+            writer.value(DUMP_SECTION, "$prefix.parallelism", stats.parallelism)
+            writer.value(DUMP_SECTION, "$prefix.queue_depth", stats.queueDepth)
+            writer.value(DUMP_SECTION, "$prefix.running", stats.running)
+            writer.value(DUMP_SECTION, "$prefix.completed", stats.completedTasks)
+            writer.value(DUMP_SECTION, "$prefix.avg_queue_us", stats.averageQueueTimeNanos / 1000)
+            writer.value(DUMP_SECTION, "$prefix.max_queue_us", stats.maxQueueTimeNanos / 1000)
+            writer.value(DUMP_SECTION, "$prefix.avg_run_us", stats.averageRunTimeNanos / 1000)
+            writer.value(DUMP_SECTION, "$prefix.max_run_us", stats.maxRunTimeNanos / 1000)
+        }
+    }
+
+    companion object {
+        private const val DUMP_SECTION = "lane"
+        private const val DECODE_PARALLELISM = 2
+        private const val BINDER_PARALLELISM = 4
+        private const val PACKAGE_SCAN_PARALLELISM = 1
+    }
+}
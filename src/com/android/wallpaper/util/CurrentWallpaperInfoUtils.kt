@@ -22,8 +22,6 @@ import com.android.wallpaper.model.CurrentWallpaperInfo
 import com.android.wallpaper.model.Screen
 import com.android.wallpaper.model.WallpaperInfo
 import com.android.wallpaper.module.InjectorProvider
-import kotlin.coroutines.resume
-import kotlin.coroutines.suspendCoroutine
 
 /** Utils for [CurrentWallpaperInfo]. */
 object CurrentWallpaperInfoUtils {
@@ -38,52 +36,50 @@ object CurrentWallpaperInfoUtils {
         updateRecents: Boolean,
         forceRefresh: Boolean,
         onFetchUri: (CurrentWallpaperInfo, Screen) -> Uri?,
-    ): Pair<WallpaperInfo, WallpaperInfo> = suspendCoroutine { continuation ->
+    ): Pair<WallpaperInfo, WallpaperInfo> {
         val injector = InjectorProvider.getInjector()
-        val currentWallpaperFactory = injector.getCurrentWallpaperInfoFactory(context)
-        currentWallpaperFactory.createCurrentWallpaperInfos(context, forceRefresh) {
-            homeWallpaper,
-            lockWallpaper,
-            _ ->
-            val preferences = injector.getPreferences(context)
-            val hw =
-                if (homeWallpaper is CurrentWallpaperInfo) {
-                    homeWallpaper.augmentByRecent(
+        val (homeWallpaper, lockWallpaper, _) =
+            injector
+                .getCurrentWallpaperInfoFactory(context)
+                .getCurrentWallpaperInfoPair(context, forceRefresh)
+        val preferences = injector.getPreferences(context)
+        val hw =
+            if (homeWallpaper is CurrentWallpaperInfo) {
+                homeWallpaper.augmentByRecent(
+                    context,
+                    Screen.HOME_SCREEN,
+                    preferences.getHomeWallpaperRecentsKey(),
+                    updateRecents,
+                    onFetchUri.invoke(homeWallpaper, Screen.HOME_SCREEN),
+                )
+            } else {
+                homeWallpaper
+            }
+        val lw =
+            when (lockWallpaper) {
+                null -> {
+                    hw
+                }
+                is CurrentWallpaperInfo -> {
+                    lockWallpaper.augmentByRecent(
                         context,
-                        Screen.HOME_SCREEN,
-                        preferences.getHomeWallpaperRecentsKey(),
+                        Screen.LOCK_SCREEN,
+                        preferences.getLockWallpaperRecentsKey(),
                         updateRecents,
-                        onFetchUri.invoke(homeWallpaper, Screen.HOME_SCREEN),
+                        onFetchUri.invoke(lockWallpaper, Screen.LOCK_SCREEN),
                     )
-                } else {
-                    homeWallpaper
                 }
-            val lw =
-                when (lockWallpaper) {
-                    null -> {
-                        hw
-                    }
-                    is CurrentWallpaperInfo -> {
-                        lockWallpaper.augmentByRecent(
-                            context,
-                            Screen.LOCK_SCREEN,
-                            preferences.getLockWallpaperRecentsKey(),
-                            updateRecents,
-                            onFetchUri.invoke(lockWallpaper, Screen.LOCK_SCREEN),
-                        )
-                    }
-                    else -> {
-                        lockWallpaper
-                    }
+                else -> {
+                    lockWallpaper
                 }
-
-            if (updateRecents) {
-                preferences.setHomeWallpaperRecentsKey(hw.wallpaperId)
-                preferences.setLockWallpaperRecentsKey(lw.wallpaperId)
             }
 
-            continuation.resume(Pair(hw, lw))
+        if (updateRecents) {
+            preferences.setHomeWallpaperRecentsKey(hw.wallpaperId)
+            preferences.setLockWallpaperRecentsKey(lw.wallpaperId)
         }
+
+        return Pair(hw, lw)
     }
 
     /** Augments the current wallpaper info by its recent wallpaper data. */
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.wallpaper.util
+
+import android.os.Trace
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.ThreadFactory
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+import kotlin.coroutines.CoroutineContext
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.Runnable
+
+/**
+ * A named [CoroutineDispatcher] that runs at most [parallelism] tasks at once on its own threads,
+ * and keeps queue-depth and task-latency counters.
+ *
+ * The lane's threads are named after it and a trace section is open while a task runs, so the work
+ * shows up under the lane's name in Perfetto. The queue depth is also published as a trace
+ * counter. Idle threads exit after [KEEP_ALIVE_SECONDS].
+ */
+class LaneDispatcher(
+    val name: String,
+    val parallelism: Int,
+) : CoroutineDispatcher() {
+
+    private val traceSectionName = "$TRACE_PREFIX$name"
+    private val traceCounterName = "$TRACE_PREFIX$name.queue"
+
+    private val executor =
+        ThreadPoolExecutor(
+                parallelism,
+                parallelism,
+                KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS,
+                LinkedBlockingQueue(),
+                LaneThreadFactory(traceSectionName),
+            )
+            .apply { allowCoreThreadTimeOut(true) }
+
+    private val queueDepth = AtomicInteger()
+    private val running = AtomicInteger()
+    private val completedTasks = AtomicLong()
+    private val totalQueueTimeNanos = AtomicLong()
+    private val maxQueueTimeNanos = AtomicLong()
+    private val totalRunTimeNanos = AtomicLong()
+    private val maxRunTimeNanos = AtomicLong()
+
+    override fun dispatch(context: CoroutineContext, block: Runnable) {
+        val enqueuedAt = System.nanoTime()
+        Trace.setCounter(traceCounterName, queueDepth.incrementAndGet().toLong())
+        executor.execute { runTask(block, enqueuedAt) }
+    }
+
+    private fun runTask(block: Runnable, enqueuedAt: Long) {
+        val startedAt = System.nanoTime()
+        Trace.setCounter(traceCounterName, queueDepth.decrementAndGet().toLong())
+        running.incrementAndGet()
+        recordLatency(startedAt - enqueuedAt, totalQueueTimeNanos, maxQueueTimeNanos)
+
+        Trace.beginSection(traceSectionName)
+        try {
+            block.run()
+        } finally {
+            Trace.endSection()
+            running.decrementAndGet()
+            completedTasks.incrementAndGet()
+            recordLatency(System.nanoTime() - startedAt, totalRunTimeNanos, maxRunTimeNanos)
+        }
+    }
+
+    /** Returns a point-in-time copy of this lane's counters. */
+    fun stats(): Stats {
+        val completed = completedTasks.get()
+        return Stats(
+            name = name,
+            parallelism = parallelism,
+            queueDepth = queueDepth.get(),
+            running = running.get(),
+            completedTasks = completed,
+            averageQueueTimeNanos = if (completed > 0) totalQueueTimeNanos.get() / completed else 0,
+            maxQueueTimeNanos = maxQueueTimeNanos.get(),
+            averageRunTimeNanos = if (completed > 0) totalRunTimeNanos.get() / completed else 0,
+            maxRunTimeNanos = maxRunTimeNanos.get(),
+        )
+    }
+
+    override fun toString(): String = "LaneDispatcher[$name, parallelism=$parallelism]"
+
+    private fun recordLatency(nanos: Long, total: AtomicLong, max: AtomicLong) {
+        total.addAndGet(nanos)
+        max.accumulateAndGet(nanos, Math::max)
+    }
+
+    /** Point-in-time counters of a [LaneDispatcher]. */
+    data class Stats(
+        val name: String,
+        val parallelism: Int,
+        val queueDepth: Int,
+        val running: Int,
+        val completedTasks: Long,
+        val averageQueueTimeNanos: Long,
+        val maxQueueTimeNanos: Long,
+        val averageRunTimeNanos: Long,
+        val maxRunTimeNanos: Long,
+    )
+
+    /** Names the lane's threads "wp-<lane>-<n>" once, when they are created. */
+    private class LaneThreadFactory(private val prefix: String) : ThreadFactory {
+        private val threadCount = AtomicInteger()
+
+        override fun newThread(runnable: Runnable): Thread =
+            Thread(runnable, "$prefix-${threadCount.incrementAndGet()}").apply { isDaemon = true }
+    }
+
+    companion object {
+        private const val TRACE_PREFIX = "wp-"
+        private const val KEEP_ALIVE_SECONDS = 10L
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.wallpaper.util
+
+import android.graphics.Bitmap
+import android.graphics.Matrix
+import android.graphics.Point
+import android.graphics.Rect
+import kotlin.math.ceil
+import kotlin.math.floor
+import kotlin.math.max
+import kotlin.math.roundToInt
+
+/**
+ * Plans a single buffer from which the crops of every display can be derived.
+ *
+ * On a foldable, a static wallpaper carries one crop per display size and orientation. Rather than
+ * handing the whole source over once per crop, the planner takes the union of all crops and the
+ * highest scale any display needs, so that one buffer covers every display at full quality.
+ */
+object MultiCropPlanner {
+
+    /** Upper bound on the size of a planned buffer, about a 4K frame at ARGB_8888. */
+    const val DEFAULT_MAX_BUFFER_BYTES = 48L * 1024 * 1024
+
+    private const val BYTES_PER_PIXEL = 4
+
+    /**
+     * Plan for one buffer covering [sourceRect] of the source at [scale].
+     *
+     * @property sourceRect union of all crops, in source coordinates
+     * @property scale buffer pixels per source pixel, the highest any display needs and at most 1
+     */
+    data class Plan(
+        val sourceRect: Rect,
+        val scale: Float,
+        val bufferWidth: Int,
+        val bufferHeight: Int,
+    ) {
+        val bufferBytes: Long
+            get() = bufferWidth.toLong() * bufferHeight * BYTES_PER_PIXEL
+
+        /** Whether the buffer holds fewer pixels than the whole source at full scale. */
+        fun isSmallerThan(sourceSize: Point): Boolean =
+            bufferWidth.toLong() * bufferHeight < sourceSize.x.toLong() * sourceSize.y
+
+        /**
+         * Maps [cropHints] from source coordinates to coordinates in a buffer of the given size
+         * holding [sourceRect], which may differ slightly from the planned size after decoding.
+         */
+        fun mapCrops(cropHints: Map<Point, Rect>, width: Int, height: Int): Map<Point, Rect> {
+            val scaleX = width.toFloat() / sourceRect.width()
+            val scaleY = height.toFloat() / sourceRect.height()
+            return cropHints.mapValues { (_, crop) ->
+                Rect(
+                        floor((crop.left - sourceRect.left) * scaleX).toInt(),
+                        floor((crop.top - sourceRect.top) * scaleY).toInt(),
+                        ceil((crop.right - sourceRect.left) * scaleX).toInt(),
+                        ceil((crop.bottom - sourceRect.top) * scaleY).toInt(),
+                    )
+                    .apply { intersect(0, 0, width, height) }
+            }
+        }
+    }
+
+    /**
+     * Plans the buffer for the given crops of a source of [sourceSize].
+     *
+     * @param cropHints crops keyed by the display size they are shown on, in source coordinates
+     * @return the plan, or null if there are no usable crops
+     */
+    fun plan(sourceSize: Point, cropHints: Map<Point, Rect>): Plan? {
+        val bounds = Rect(0, 0, sourceSize.x, sourceSize.y)
+        val union = Rect()
+        var scale = 0f
+        cropHints.forEach { (displaySize, cropHint) ->
+            val crop = Rect(cropHint)
+            if (!crop.intersect(bounds) || displaySize.x <= 0 || displaySize.y <= 0) {
+                return@forEach
+            }
+            union.union(crop)
+            scale =
+                max(
+                    scale,
+                    max(
+                        displaySize.x.toFloat() / crop.width(),
+                        displaySize.y.toFloat() / crop.height(),
+                    ),
+                )
+        }
+        if (union.isEmpty) {
+            return null
+        }
+        scale = scale.coerceAtMost(1f)
+        return Plan(
+            sourceRect = union,
+            scale = scale,
+            bufferWidth = (union.width() * scale).roundToInt().coerceAtLeast(1),
+            bufferHeight = (union.height() * scale).roundToInt().coerceAtLeast(1),
+        )
+    }
+
+    /**
+     * Produces the planned buffer from [source], an already decoded copy of a source of
+     * [sourceSize] that may have been decoded at a lower resolution.
+     *
+     * @return the buffer, or null if it would exceed [maxBytes]; callers then fall back to the
+     *   whole source
+     */
+    fun produce(
+        plan: Plan,
+        source: Bitmap,
+        sourceSize: Point,
+        maxBytes: Long = DEFAULT_MAX_BUFFER_BYTES,
+    ): Bitmap? {
+        if (plan.bufferBytes > maxBytes) {
+            return null
+        }
+        val ratioX = source.width.toFloat() / sourceSize.x
+        val ratioY = source.height.toFloat() / sourceSize.y
+        val rect =
+            Rect(
+                    floor(plan.sourceRect.left * ratioX).toInt(),
+                    floor(plan.sourceRect.top * ratioY).toInt(),
+                    ceil(plan.sourceRect.right * ratioX).toInt(),
+                    ceil(plan.sourceRect.bottom * ratioY).toInt(),
+                )
+                .apply { intersect(0, 0, source.width, source.height) }
+        if (rect.isEmpty) {
+            return null
+        }
+        val matrix =
+            Matrix().apply {
+                setScale(
+                    (plan.bufferWidth.toFloat() / rect.width()).coerceAtMost(1f),
+                    (plan.bufferHeight.toFloat() / rect.height()).coerceAtMost(1f),
+                )
+            }
+        return Bitmap.createBitmap(
+            source,
+            rect.left,
+            rect.top,
+            rect.width(),
+            rect.height(),
+            matrix,
+            /* filter= */ true,
+        )
+    }
+}
@@ -26,7 +26,6 @@ import android.os.Handler
 import android.os.Looper
 import android.os.Message
 import android.text.TextUtils
-import java.util.concurrent.Executors
 
 /** Util class for wallpaper preview. */
 class PreviewUtils(
@@ -84,15 +83,14 @@ class PreviewUtils(
      * @param callback to receive the results, it will be called on the main thread.
      */
     fun renderPreview(bundle: Bundle?, callback: WorkspacePreviewCallback) {
-        EXECUTOR_SERVICE.submit {
-            val result =
-                context.contentResolver.call(
-                    getUri(PREVIEW),
-                    METHOD_GET_PREVIEW,
-                    null,
-                    bundle,
-                )
-            Handler(Looper.getMainLooper()).post { callback.onPreviewRendered(result) }
+        val mainHandler = Handler(Looper.getMainLooper())
+        val authority = providerInfo?.authority
+        if (authority == null) {
+            mainHandler.post { callback.onPreviewRendered(null) }
+            return
+        }
+        WorkspacePreviewRendererClient.forAuthority(context, authority).render(bundle) { result ->
+            mainHandler.post { callback.onPreviewRendered(result) }
         }
     }
 
@@ -117,10 +115,6 @@ class PreviewUtils(
     }
 
     companion object {
-        private const val PREVIEW = "preview"
-        private const val METHOD_GET_PREVIEW = "get_preview"
-        private val EXECUTOR_SERVICE = Executors.newSingleThreadExecutor()
-
         private fun homeAuthority(context: Context, authorityMetadataKey: String): String? {
             val homeIntent = Intent(Intent.ACTION_MAIN).addCategory(Intent.CATEGORY_HOME)
             val info =
@@ -20,6 +20,8 @@ import android.graphics.Bitmap
 import android.graphics.BitmapFactory
 import android.graphics.ColorSpace
 import android.os.Handler
+import com.android.wallpaper.monitor.PerformanceMetrics.COLOR_EXTRACTION
+import com.android.wallpaper.monitor.PerformanceMonitor
 import java.io.ByteArrayOutputStream
 import java.util.concurrent.Executor
 import java.util.concurrent.atomic.AtomicInteger
@@ -45,24 +47,13 @@ class WallpaperColorsExtractor(
     ) {
         mExecutor.execute {
             val taskId = mCurrentTaskId.incrementAndGet()
-
-            val tmpOut = ByteArrayOutputStream()
-            var shouldRecycle = false
-            var cropped = wallpaperBitmap
-            if (cropped.compress(Bitmap.CompressFormat.PNG, 100, tmpOut)) {
-                val outByteArray = tmpOut.toByteArray()
-                val options = BitmapFactory.Options()
-                options.inPreferredColorSpace = ColorSpace.get(ColorSpace.Named.SRGB)
-                cropped = BitmapFactory.decodeByteArray(outByteArray, 0, outByteArray.size)
-            }
-            if (cropped.config == Bitmap.Config.HARDWARE) {
-                cropped = cropped.copy(Bitmap.Config.ARGB_8888, false)
-                shouldRecycle = true
-            }
-            val colors = WallpaperColors.fromBitmap(cropped)
-            if (shouldRecycle) {
-                cropped.recycle()
-            }
+            val span = PerformanceMonitor.get().beginSpan(COLOR_EXTRACTION)
+            val colors =
+                try {
+                    extractColors(wallpaperBitmap)
+                } finally {
+                    span.end()
+                }
             // This makes sure that the listener only listen to the latest results, when multiple
             // extractWallpaperColors tasks are executed.
             if (taskId == mCurrentTaskId.get()) {
@@ -70,4 +61,25 @@ class WallpaperColorsExtractor(
             }
         }
     }
+
+    private fun extractColors(wallpaperBitmap: Bitmap): WallpaperColors {
+        val tmpOut = ByteArrayOutputStream()
+        var shouldRecycle = false
+        var cropped = wallpaperBitmap
+        if (cropped.compress(Bitmap.CompressFormat.PNG, 100, tmpOut)) {
+            val outByteArray = tmpOut.toByteArray()
+            val options = BitmapFactory.Options()
+            options.inPreferredColorSpace = ColorSpace.get(ColorSpace.Named.SRGB)
+            cropped = BitmapFactory.decodeByteArray(outByteArray, 0, outByteArray.size)
+        }
+        if (cropped.config == Bitmap.Config.HARDWARE) {
+            cropped = cropped.copy(Bitmap.Config.ARGB_8888, false)
+            shouldRecycle = true
+        }
+        val colors = WallpaperColors.fromBitmap(cropped)
+        if (shouldRecycle) {
+            cropped.recycle()
+        }
+        return colors
+    }
 }
@@ -244,6 +244,38 @@ public final class WallpaperCropUtils {
         return cropRect;
     }
 
+    /**
+     * Calculates the default crop of a wallpaper shown on a screen of the given size, at the
+     * minimum zoom and centered as in the preview, in raw wallpaper coordinates.
+     *
+     * @param wallpaperSize full ("raw") wallpaper size
+     * @param screenSize size of the screen the wallpaper is shown on
+     * @param cropSurfaceSize @see #getDefaultCropSurfaceSize(Resources, Display)
+     */
+    public static Rect calculateDefaultCropHint(Context context, Point wallpaperSize,
+            Point screenSize, Point cropSurfaceSize) {
+        // Determine minimum zoom to fit maximum visible area of wallpaper on crop surface.
+        float minWallpaperZoom = calculateMinZoom(wallpaperSize, screenSize);
+
+        PointF centerPosition = calculateDefaultCenter(context, wallpaperSize,
+                calculateVisibleRect(wallpaperSize, screenSize));
+
+        Point scaledCenter = new Point((int) (minWallpaperZoom * centerPosition.x),
+                (int) (minWallpaperZoom * centerPosition.y));
+
+        int offsetX = Math.max(0, -(screenSize.x / 2 - scaledCenter.x));
+        int offsetY = Math.max(0, -(screenSize.y / 2 - scaledCenter.y));
+
+        Rect cropRect = calculateCropRect(context, minWallpaperZoom, wallpaperSize,
+                cropSurfaceSize, screenSize, offsetX, offsetY, /* cropExtraWidth= */ true);
+
+        return new Rect(
+                (int) Math.floor((float) cropRect.left / minWallpaperZoom),
+                (int) Math.floor((float) cropRect.top / minWallpaperZoom),
+                (int) Math.floor((float) cropRect.right / minWallpaperZoom),
+                (int) Math.floor((float) cropRect.bottom / minWallpaperZoom));
+    }
+
     /**
      * Calculates the center area of the outer rectangle which is visible in the inner rectangle
      * after applying the minimum zoom.
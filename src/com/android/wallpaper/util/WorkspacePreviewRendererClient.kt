@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.wallpaper.util
+
+import android.content.ContentProviderClient
+import android.content.Context
+import android.os.Bundle
+import android.os.DeadObjectException
+import android.os.Handler
+import android.os.Looper
+import android.os.RemoteException
+import android.util.Log
+import androidx.annotation.GuardedBy
+import com.android.wallpaper.monitor.PerformanceMetrics.WORKSPACE_PREVIEW_RENDER
+import com.android.wallpaper.monitor.PerformanceMetrics.WORKSPACE_PREVIEW_REQUEST
+import com.android.wallpaper.monitor.PerformanceMonitor
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+
+/**
+ * Client of the workspace preview renderer behind one provider authority, e.g. the launcher's or
+ * the lockscreen's.
+ *
+ * The provider connection is kept open across requests instead of being set up again for every
+ * call, and closed once no request was made for [CLIENT_IDLE_TIMEOUT_MS]. If the renderer process
+ * dies, the next request connects again. Independent requests, such as home and lock previews on
+ * several displays, are rendered concurrently. Every request gets its own result, as the surface
+ * package and callback in it belong to the surface the request was made for.
+ */
+class WorkspacePreviewRendererClient
+private constructor(
+    private val context: Context,
+    private val authority: String,
+) {
+
+    private val lock = Any()
+    @GuardedBy("lock") private var providerClient: ContentProviderClient? = null
+    @GuardedBy("lock") private var activeCalls = 0
+    private val handler = Handler(Looper.getMainLooper())
+    private val releaseIdleClient = Runnable {
+        val client =
+            synchronized(lock) {
+                if (activeCalls > 0) null else providerClient.also { providerClient = null }
+            }
+        client?.close()
+    }
+
+    /**
+     * Asks the renderer for a preview. [callback] is called on a background thread, with null if
+     * the renderer failed.
+     */
+    fun render(request: Bundle?, callback: (Bundle?) -> Unit) {
+        val requestedAtNanos = System.nanoTime()
+        val monitor = PerformanceMonitor.get()
+        EXECUTOR.execute {
+            val span = monitor.beginSpan(WORKSPACE_PREVIEW_RENDER)
+            val result =
+                try {
+                    call(request)
+                } finally {
+                    span.end()
+                }
+            monitor.recordLatency(WORKSPACE_PREVIEW_REQUEST, System.nanoTime() - requestedAtNanos)
+            callback(result)
+        }
+    }
+
+    private fun call(request: Bundle?): Bundle? {
+        synchronized(lock) { activeCalls++ }
+        handler.removeCallbacks(releaseIdleClient)
+        try {
+            return callWithRetry(request)
+        } finally {
+            if (synchronized(lock) { --activeCalls == 0 }) {
+                handler.postDelayed(releaseIdleClient, CLIENT_IDLE_TIMEOUT_MS)
+            }
+        }
+    }
+
+    private fun callWithRetry(request: Bundle?): Bundle? {
+        // Retry once with a new connection if the renderer process died since the last call.
+        repeat(2) {
+            val client = acquireClient() ?: return null
+            try {
+                return client.call(METHOD_GET_PREVIEW, null, request)
+            } catch (e: DeadObjectException) {
+                releaseClient(client)
+            } catch (e: RemoteException) {
+                Log.w(TAG, "Failed to render preview from $authority", e)
+                // Do not reuse a connection that failed.
+                releaseClient(client)
+                return null
+            } catch (e: RuntimeException) {
+                Log.w(TAG, "Renderer $authority failed to render preview", e)
+                return null
+            }
+        }
+        return null
+    }
+
+    private fun acquireClient(): ContentProviderClient? =
+        synchronized(lock) {
+            providerClient
+                ?: context.contentResolver.acquireUnstableContentProviderClient(authority).also {
+                    if (it == null) {
+                        Log.w(TAG, "Preview renderer $authority is not available")
+                    }
+                    providerClient = it
+                }
+        }
+
+    private fun releaseClient(client: ContentProviderClient) {
+        synchronized(lock) {
+            if (providerClient === client) {
+                providerClient = null
+            }
+        }
+        client.close()
+    }
+
+    companion object {
+        private const val TAG = "WorkspacePreviewRenderer"
+        private const val METHOD_GET_PREVIEW = "get_preview"
+        /** Enough for the home and lock previews of both displays of a foldable. */
+        private const val MAX_CONCURRENT_RENDERS = 4
+        private const val IDLE_THREAD_TIMEOUT_SECONDS = 10L
+        private const val CLIENT_IDLE_TIMEOUT_MS = 30_000L
+
+        private val EXECUTOR =
+            ThreadPoolExecutor(
+                    MAX_CONCURRENT_RENDERS,
+                    MAX_CONCURRENT_RENDERS,
+                    IDLE_THREAD_TIMEOUT_SECONDS,
+                    TimeUnit.SECONDS,
+                    LinkedBlockingQueue(),
+                )
+                .apply { allowCoreThreadTimeOut(true) }
+
+        private val clients = ConcurrentHashMap<String, WorkspacePreviewRendererClient>()
+
+        /** Returns the client shared by all previews rendered by [authority]. */
+        fun forAuthority(context: Context, authority: String): WorkspacePreviewRendererClient =
+            clients.getOrPut(authority) {
+                WorkspacePreviewRendererClient(context.applicationContext, authority)
+            }
+    }
+}
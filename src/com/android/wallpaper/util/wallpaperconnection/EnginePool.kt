@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.wallpaper.util.wallpaperconnection
+
+import android.app.ActivityManager
+import android.content.Context
+import android.graphics.Point
+import android.view.View
+import com.android.wallpaper.R
+import java.lang.ref.WeakReference
+import kotlin.math.abs
+
+/**
+ * Book-keeping for the live wallpaper preview engines attached by [WallpaperConnectionUtils].
+ *
+ * Engines are kept in least-recently-used order. When a new engine is added and the pool is over
+ * [maxEngines] or [memoryBudgetBytes], idle engines are picked for eviction, oldest first. An
+ * engine is idle when none of the views it was last mirrored into are attached to a window. Engines
+ * that are on screen are never evicted, so the pool may briefly exceed its limits. A newly added
+ * engine is pinned until its first [use], so that a concurrent bring-up cannot evict it before it
+ * is mirrored into its host.
+ *
+ * Not thread-safe on its own; callers synchronize on the pool.
+ */
+class EnginePool(val maxEngines: Int, val memoryBudgetBytes: Long) {
+
+    private val entries = LinkedHashMap<String, Entry>(INITIAL_CAPACITY, LOAD_FACTOR, true)
+
+    val size: Int
+        get() = entries.size
+
+    val estimatedBytes: Long
+        get() = entries.values.sumOf { it.estimatedBytes }
+
+    var evictionCount = 0L
+        private set
+
+    /**
+     * Adds the engine for [engineKey] and returns the keys of the idle engines that must be
+     * disconnected to bring the pool back within its limits.
+     */
+    fun add(engineKey: String, baseKey: String, displaySize: Point): List<String> {
+        entries[engineKey] = Entry(baseKey, Point(displaySize))
+        val evicted = mutableListOf<String>()
+        val candidates = entries.entries.filter { it.key != engineKey && it.value.isIdle() }
+        for ((key, _) in candidates) {
+            if (entries.size <= maxEngines && estimatedBytes <= memoryBudgetBytes) {
+                break
+            }
+            entries.remove(key)
+            evicted.add(key)
+        }
+        evictionCount += evicted.size
+        return evicted
+    }
+
+    /**
+     * Marks the engine for [engineKey] as most recently used and as shown in [host], and unpins it
+     * if it was just added.
+     */
+    fun use(engineKey: String, host: View) {
+        entries[engineKey]?.apply {
+            pinned = false
+            hosts.removeAll { it.get() == null || it.get() == host }
+            hosts.add(WeakReference(host))
+        }
+    }
+
+    /**
+     * Returns the key of a pooled engine for the same wallpaper as [baseKey] whose display has the
+     * same aspect ratio as [displaySize], so that it can be scaled onto the new surface instead of
+     * starting another engine.
+     */
+    fun findReusable(baseKey: String, displaySize: Point): String? =
+        entries.entries
+            .firstOrNull { (_, entry) ->
+                entry.baseKey == baseKey && entry.displaySize.hasSameAspectRatio(displaySize)
+            }
+            ?.key
+
+    fun displaySizeOf(engineKey: String): Point? = entries[engineKey]?.displaySize
+
+    fun remove(engineKey: String) {
+        entries.remove(engineKey)
+    }
+
+    fun clear() {
+        entries.clear()
+    }
+
+    private class Entry(val baseKey: String, val displaySize: Point) {
+        val hosts = mutableListOf<WeakReference<View>>()
+        val estimatedBytes = displaySize.x.toLong() * displaySize.y * BYTES_PER_PIXEL * BUFFERS
+        // Set until the first use, while the engine has no host yet.
+        var pinned = true
+
+        fun isIdle(): Boolean = !pinned && hosts.none { it.get()?.isAttachedToWindow == true }
+    }
+
+    companion object {
+        private const val INITIAL_CAPACITY = 8
+        private const val LOAD_FACTOR = 0.75f
+        private const val BYTES_PER_PIXEL = 4
+        // An engine surface is usually triple buffered.
+        private const val BUFFERS = 3
+        private const val ASPECT_RATIO_TOLERANCE = 0.01f
+
+        /** Creates a pool sized from resources, halved on low-RAM devices. */
+        fun create(context: Context): EnginePool {
+            val resources = context.resources
+            val isLowRam =
+                context.getSystemService(ActivityManager::class.java)?.isLowRamDevice ?: false
+            val divisor = if (isLowRam) 2 else 1
+            val maxEngines =
+                resources.getInteger(R.integer.live_wallpaper_engine_pool_max_engines) / divisor
+            val budgetMb =
+                resources.getInteger(R.integer.live_wallpaper_engine_pool_budget_mb) / divisor
+            return EnginePool(maxEngines.coerceAtLeast(1), budgetMb * 1024L * 1024L)
+        }
+
+        private fun Point.hasSameAspectRatio(other: Point): Boolean {
+            if (y == 0 || other.y == 0) {
+                return false
+            }
+            return abs(x.toFloat() / y - other.x.toFloat() / other.y) < ASPECT_RATIO_TOLERANCE
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.wallpaper.util.wallpaperconnection
+
+import android.app.WallpaperManager
+import android.os.RemoteException
+import android.service.wallpaper.IWallpaperEngine
+import android.util.Log
+import android.view.Choreographer
+import android.view.MotionEvent
+import androidx.annotation.MainThread
+import androidx.annotation.VisibleForTesting
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.channels.consumeEach
+import kotlinx.coroutines.launch
+
+/**
+ * Forwards the touch events of one preview surface to its wallpaper engine, which is resolved
+ * once when the channel is opened rather than for every event.
+ *
+ * [MotionEvent.ACTION_MOVE]s are batched to at most one per frame, and if the binder falls behind,
+ * queued moves are replaced by the latest one so that the engine never replays stale input. Other
+ * actions are always delivered, in order. Copies of the events come from, and go back to, the
+ * [MotionEvent] pool, so steady-state forwarding does not allocate.
+ */
+class PreviewTouchChannel
+@VisibleForTesting
+constructor(
+    scope: CoroutineScope,
+    dispatcher: CoroutineDispatcher,
+    private val dispatch: (MotionEvent) -> Unit,
+) {
+
+    constructor(
+        engine: IWallpaperEngine,
+        scope: CoroutineScope,
+        dispatcher: CoroutineDispatcher,
+    ) : this(scope, dispatcher, { event -> engine.dispatchPreviewTouch(event) })
+
+    private val lock = Any()
+    // Events waiting for the binder, guarded by [lock].
+    private val queue = ArrayDeque<MotionEvent>()
+    private val wakeUp = Channel<Unit>(Channel.CONFLATED)
+    private val sender =
+        scope.launch(dispatcher) {
+            wakeUp.consumeEach {
+                while (true) {
+                    val event = synchronized(lock) { queue.removeFirstOrNull() } ?: break
+                    try {
+                        dispatch(event)
+                    } finally {
+                        event.recycle()
+                    }
+                }
+            }
+        }
+
+    // The latest move of the current frame, only accessed on the main thread.
+    private var pendingMove: MotionEvent? = null
+    private var isFrameScheduled = false
+    private val frameCallback = Choreographer.FrameCallback {
+        isFrameScheduled = false
+        flushPendingMove()
+    }
+
+    /** Forwards [event] to the engine. The event is copied, so the caller may recycle it. */
+    @MainThread
+    fun send(event: MotionEvent) {
+        val copy = MotionEvent.obtainNoHistory(event)
+        if (event.actionMasked == MotionEvent.ACTION_MOVE) {
+            pendingMove?.recycle()
+            pendingMove = copy
+            if (!isFrameScheduled) {
+                isFrameScheduled = true
+                Choreographer.getInstance().postFrameCallback(frameCallback)
+            }
+        } else {
+            // Keep the order of events: the engine must see the last move before e.g. an up.
+            flushPendingMove()
+            enqueue(copy, coalesce = false)
+        }
+    }
+
+    /** Stops forwarding and drops any event that was not delivered yet. */
+    @MainThread
+    fun close() {
+        if (isFrameScheduled) {
+            isFrameScheduled = false
+            Choreographer.getInstance().removeFrameCallback(frameCallback)
+        }
+        pendingMove?.recycle()
+        pendingMove = null
+        sender.cancel()
+        wakeUp.close()
+        synchronized(lock) {
+            queue.forEach { it.recycle() }
+            queue.clear()
+        }
+    }
+
+    @VisibleForTesting
+    @MainThread
+    fun flushPendingMove() {
+        pendingMove?.let {
+            pendingMove = null
+            enqueue(it, coalesce = true)
+        }
+    }
+
+    private fun enqueue(event: MotionEvent, coalesce: Boolean) {
+        synchronized(lock) {
+            if (coalesce && queue.lastOrNull()?.actionMasked == MotionEvent.ACTION_MOVE) {
+                // The binder has not caught up with the previous frame, only send the latest move.
+                queue.removeLast().recycle()
+            }
+            queue.addLast(event)
+        }
+        wakeUp.trySend(Unit)
+    }
+
+    companion object {
+        private const val TAG = "PreviewTouchChannel"
+
+        /**
+         * Sends [event] to the engine, and translates the end of a tap into the corresponding
+         * wallpaper command.
+         */
+        internal fun IWallpaperEngine.dispatchPreviewTouch(event: MotionEvent) {
+            try {
+                dispatchPointer(event)
+                when (event.actionMasked) {
+                    MotionEvent.ACTION_UP ->
+                        dispatchWallpaperCommand(
+                            WallpaperManager.COMMAND_TAP,
+                            event.x.toInt(),
+                            event.y.toInt(),
+                            0,
+                            null,
+                        )
+                    MotionEvent.ACTION_POINTER_UP -> {
+                        val pointerIndex = event.actionIndex
+                        dispatchWallpaperCommand(
+                            WallpaperManager.COMMAND_SECONDARY_TAP,
+                            event.getX(pointerIndex).toInt(),
+                            event.getY(pointerIndex).toInt(),
+                            0,
+                            null,
+                        )
+                    }
+                }
+            } catch (e: RemoteException) {
+                Log.e(TAG, "Remote exception of wallpaper connection", e)
+            }
+        }
+    }
+}
@@ -1,7 +1,6 @@
 package com.android.wallpaper.util.wallpaperconnection
 
 import android.app.WallpaperInfo
-import android.app.WallpaperManager
 import android.app.wallpaper.WallpaperDescription
 import android.content.ComponentName
 import android.content.ContentValues
@@ -24,28 +23,56 @@ import android.view.View
 import com.android.app.tracing.TraceUtils.traceAsync
 import com.android.wallpaper.R
 import com.android.wallpaper.model.wallpaper.DeviceDisplayType
+import com.android.wallpaper.monitor.DiagnosticsWriter
+import com.android.wallpaper.monitor.Dumpable
+import com.android.wallpaper.monitor.PerformanceMetrics.ENGINE_FIRST_FRAME_COLD
+import com.android.wallpaper.monitor.PerformanceMetrics.ENGINE_FIRST_FRAME_WARM
+import com.android.wallpaper.monitor.PerformanceMetrics.LIVE_ENGINE_BIND
+import com.android.wallpaper.monitor.PerformanceMetrics.LIVE_ENGINE_STAGE_ATTACH
+import com.android.wallpaper.monitor.PerformanceMetrics.LIVE_ENGINE_STAGE_BIND
+import com.android.wallpaper.monitor.PerformanceMetrics.LIVE_ENGINE_STAGE_MIRROR
+import com.android.wallpaper.monitor.PerformanceMetrics.LIVE_ENGINE_TIMEOUTS
+import com.android.wallpaper.monitor.PerformanceMetrics.LIVE_WARM_UPS_STARTED
+import com.android.wallpaper.monitor.PerformanceMetrics.LIVE_WARM_UPS_USED
+import com.android.wallpaper.monitor.PerformanceMonitor
+import com.android.wallpaper.monitor.measure
 import com.android.wallpaper.picker.customization.shared.model.WallpaperDestination
 import com.android.wallpaper.picker.customization.shared.model.WallpaperDestination.Companion.toSetWallpaperFlags
 import com.android.wallpaper.picker.data.WallpaperModel.LiveWallpaperModel
+import com.android.wallpaper.util.BackgroundDispatchers
 import com.android.wallpaper.util.WallpaperConnection.WhichPreview
+import com.android.wallpaper.util.wallpaperconnection.PreviewTouchChannel.Companion.dispatchPreviewTouch
 import dagger.hilt.android.qualifiers.ApplicationContext
 import dagger.hilt.android.scopes.ActivityRetainedScoped
 import java.lang.ref.WeakReference
 import java.util.concurrent.ConcurrentHashMap
 import javax.inject.Inject
 import kotlinx.coroutines.CancellableContinuation
+import kotlinx.coroutines.CancellationException
 import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.CoroutineStart
 import kotlinx.coroutines.Deferred
+import kotlinx.coroutines.ExperimentalCoroutinesApi
 import kotlinx.coroutines.async
+import kotlinx.coroutines.cancelAndJoin
 import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.currentCoroutineContext
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.ensureActive
+import kotlinx.coroutines.launch
 import kotlinx.coroutines.suspendCancellableCoroutine
 import kotlinx.coroutines.sync.Mutex
 import kotlinx.coroutines.sync.withLock
+import kotlinx.coroutines.withTimeoutOrNull
 
 @ActivityRetainedScoped
 class WallpaperConnectionUtils
 @Inject
-constructor(@ApplicationContext private val context: Context) {
+constructor(
+    @ApplicationContext private val context: Context,
+    private val backgroundDispatchers: BackgroundDispatchers,
+) : Dumpable {
 
     // The engineMap and the surfaceControlMap are used for disconnecting wallpaper services.
     private val wallpaperConnectionMap = ConcurrentHashMap<String, Deferred<WallpaperConnection>>()
@@ -58,9 +85,27 @@ constructor(@ApplicationContext private val context: Context) {
     // update queries for the same preview.
     private val creativeWallpaperConfigPreviewUriMap = mutableMapOf<String, Uri>()
 
+    // Maps engine keys to the key of a pooled engine that was reused for them, see [EnginePool].
+    private val engineKeyAliases = ConcurrentHashMap<String, String>()
+    private val enginePool = EnginePool.create(context)
+
+    // Guards structural changes of the maps above and of the engine pool. Only held briefly, the
+    // bring-up of an engine is serialized by its per-key lock in [engineLocks] instead.
     private val mutex = Mutex()
+    // Per-key locks, removed again once no coroutine holds or waits for them.
+    private val engineLocks = HashMap<String, KeyLock>()
+    // Engines that are still binding or attaching, so that disconnecting can cancel them.
+    private val pendingBringUps = ConcurrentHashMap<String, Deferred<WallpaperConnection?>>()
 
-    /** Only call this function when the surface view is attached. */
+    /**
+     * Only call this function when the surface view is attached.
+     *
+     * Engines with different keys, e.g. for different destinations or displays, are brought up in
+     * parallel. Each stage of the bring-up is bounded by a timeout.
+     *
+     * @return whether the engine is rendering onto [surfaceView]. When false the engine failed or
+     *   timed out, and the caller should fall back to a static thumbnail.
+     */
     suspend fun connect(
         context: Context,
         wallpaperModel: LiveWallpaperModel,
@@ -70,10 +115,10 @@ constructor(@ApplicationContext private val context: Context) {
         engineRenderingConfig: EngineRenderingConfig,
         isFirstBindingDeferred: CompletableDeferred<Boolean>,
         listener: WallpaperEngineConnection.WallpaperEngineConnectionListener? = null,
-    ) {
+    ): Boolean {
         val wallpaperInfo = wallpaperModel.liveWallpaperData.systemWallpaperInfo
         val engineDisplaySize = engineRenderingConfig.getEngineDisplaySize()
-        val engineKey =
+        val requestedEngineKey =
             wallpaperInfo.engineKey(
                 engineDisplaySize,
                 wallpaperModel.liveWallpaperData.description,
@@ -81,7 +126,7 @@ constructor(@ApplicationContext private val context: Context) {
                 destinationFlag,
             )
 
-        traceAsync(TAG, "connect") {
+        return traceAsync(TAG, "connect") {
             // Update the creative wallpaper uri before starting the service.
             // We call this regardless of liveWallpaperContentHandling() because it's possible that
             // the flag is true here but false in the code we're calling.
@@ -93,7 +138,7 @@ constructor(@ApplicationContext private val context: Context) {
                         destinationFlag = destinationFlag,
                     )
                 if (!creativeWallpaperConfigPreviewUriMap.containsKey(uriKey)) {
-                    mutex.withLock {
+                    withKeyLock(uriKey) {
                         if (!creativeWallpaperConfigPreviewUriMap.containsKey(uriKey)) {
                             // First time binding wallpaper should initialize wallpaper preview.
                             if (isFirstBindingDeferred.await()) {
@@ -105,47 +150,149 @@ constructor(@ApplicationContext private val context: Context) {
                 }
             }
 
+            val baseKey =
+                wallpaperInfo.engineKey(
+                    description = wallpaperModel.liveWallpaperData.description,
+                    component = wallpaperModel.liveWallpaperData.systemWallpaperInfo.component,
+                    destinationFlag = destinationFlag,
+                )
+            var engineKey = resolveEngineKey(requestedEngineKey)
+            var evictedConnections = emptyList<Deferred<WallpaperConnection>>()
             if (!wallpaperConnectionMap.containsKey(engineKey)) {
-                mutex.withLock {
-                    if (!wallpaperConnectionMap.containsKey(engineKey)) {
-                        wallpaperConnectionMap[engineKey] = coroutineScope {
-                            async {
-                                initEngine(
-                                    context,
-                                    wallpaperModel.getWallpaperServiceIntent(),
-                                    engineDisplaySize,
-                                    destinationFlag,
-                                    whichPreview,
-                                    surfaceView,
-                                    listener,
-                                    wallpaperModel.liveWallpaperData.description,
-                                )
+                val connected =
+                    withKeyLock(requestedEngineKey) {
+                        engineKey = resolveEngineKey(requestedEngineKey)
+                        if (wallpaperConnectionMap.containsKey(engineKey)) {
+                            return@withKeyLock true
+                        }
+                        // An engine that only differs in display size can be scaled onto this
+                        // surface instead of starting another one.
+                        val reusableKey =
+                            synchronized(enginePool) {
+                                enginePool.findReusable(baseKey, engineDisplaySize)
                             }
+                        if (
+                            reusableKey != null && wallpaperConnectionMap.containsKey(reusableKey)
+                        ) {
+                            engineKeyAliases[requestedEngineKey] = reusableKey
+                            engineKey = reusableKey
+                            return@withKeyLock true
                         }
+                        val warmBinding = warmBindings.remove(wallpaperInfo.component)
+                        evictedConnections =
+                            bringUpEngine(engineKey, baseKey, engineDisplaySize) {
+                                PerformanceMonitor.get().measure(LIVE_ENGINE_BIND) {
+                                    initEngine(
+                                        context,
+                                        wallpaperModel.getWallpaperServiceIntent(),
+                                        engineDisplaySize,
+                                        destinationFlag,
+                                        whichPreview,
+                                        surfaceView,
+                                        listener,
+                                        wallpaperModel.liveWallpaperData.description,
+                                        warmBinding,
+                                    )
+                                }
+                            } ?: return@withKeyLock false
+                        true
                     }
+                if (!connected) {
+                    return@traceAsync false
                 }
             }
+            // Evicted engines are idle and off screen, disconnect them outside of the lock.
+            evictedConnections.forEach { it.await().disconnect(context) }
+            synchronized(enginePool) { enginePool.use(engineKey, surfaceView) }
 
             val serviceKey =
                 wallpaperInfo.serviceKey(
                     wallpaperModel.liveWallpaperData.description,
                     wallpaperModel.liveWallpaperData.systemWallpaperInfo.component,
                 )
-            latestConnectionMap[serviceKey] =
-                wallpaperConnectionMap[engineKey] as Deferred<WallpaperConnection>
-
-            wallpaperConnectionMap[engineKey]?.await()?.let { (engineConnection, _, _, _) ->
-                engineConnection.get()?.engine?.let {
-                    mirrorAndReparent(
-                        engineKey,
-                        it,
-                        surfaceView,
-                        engineRenderingConfig.getEngineDisplaySize(),
-                        engineRenderingConfig.enforceSingleEngine,
-                    )
+            wallpaperConnectionMap[engineKey]?.let { latestConnectionMap[serviceKey] = it }
+
+            val engine =
+                wallpaperConnectionMap[engineKey]?.await()?.engineConnection?.get()?.engine
+                    ?: return@traceAsync false
+            PerformanceMonitor.get().measure(LIVE_ENGINE_STAGE_MIRROR) {
+                mirrorAndReparent(
+                    engineKey,
+                    engine,
+                    surfaceView,
+                    synchronized(enginePool) { enginePool.displaySizeOf(engineKey) }
+                        ?: engineDisplaySize,
+                    engineRenderingConfig.enforceSingleEngine,
+                )
+            }
+            true
+        }
+    }
+
+    /**
+     * Speculatively binds the service of [wallpaperInfo] at low priority, so that a later [connect]
+     * for it skips the service process start and creation. Meant for tiles that settled in the
+     * viewport while browsing; call [cancelWarmUps] as soon as scrolling resumes.
+     *
+     * Warm-ups are capped by the free slots of the engine pool, run in a scope that is cancelled
+     * on memory trim, and are released after [WARM_UP_TIMEOUT_MS] if unused.
+     *
+     * @return whether a warm-up for the service is in place.
+     */
+    fun warmUp(wallpaperInfo: WallpaperInfo): Boolean {
+        val component = wallpaperInfo.component
+        if (warmBindings.containsKey(component)) {
+            return true
+        }
+        val componentPrefix = "${wallpaperInfo.packageName}:${wallpaperInfo.serviceName}:"
+        if (wallpaperConnectionMap.keys.any { it.startsWith(componentPrefix) }) {
+            // Already connected, nothing to warm up.
+            return true
+        }
+        val freeSlots = synchronized(enginePool) { enginePool.maxEngines - enginePool.size }
+        if (warmBindings.size >= freeSlots) {
+            return false
+        }
+        val scope = backgroundDispatchers.trimmableScope
+        val intent =
+            Intent(WallpaperService.SERVICE_INTERFACE)
+                .setClassName(wallpaperInfo.packageName, wallpaperInfo.serviceName)
+        val binding =
+            scope.async(start = CoroutineStart.LAZY) {
+                bindWallpaperService(context, intent, WARM_UP_BIND_FLAGS)
+            }
+        if (warmBindings.putIfAbsent(component, binding) != null) {
+            return true
+        }
+        binding.start()
+        PerformanceMonitor.get().incrementCounter(LIVE_WARM_UPS_STARTED, 1)
+        scope.launch {
+            try {
+                delay(WARM_UP_TIMEOUT_MS)
+            } finally {
+                if (warmBindings.remove(component, binding)) {
+                    releaseWarmBinding(binding)
                 }
             }
         }
+        return true
+    }
+
+    /** Cancels all pending warm-ups started by [warmUp] and releases their service bindings. */
+    fun cancelWarmUps() {
+        warmBindings.keys.forEach { component ->
+            warmBindings.remove(component)?.let { releaseWarmBinding(it) }
+        }
+    }
+
+    @OptIn(ExperimentalCoroutinesApi::class)
+    private fun releaseWarmBinding(binding: Deferred<Pair<ServiceConnection, IWallpaperService>>) {
+        if (!binding.isCompleted) {
+            // bindWallpaperService unbinds on cancellation.
+            binding.cancel()
+        } else if (binding.getCompletionExceptionOrNull() == null) {
+            context.unbindService(binding.getCompleted().first)
+        }
     }
 
     suspend fun disconnectAll(context: Context) {
@@ -170,61 +317,154 @@ constructor(@ApplicationContext private val context: Context) {
      * when switching from static to live wallpapers again.
      */
     suspend fun disconnectAllServices(context: Context) {
+        // Engines that are still coming up release what they bound when cancelled.
+        pendingBringUps.keys.forEach { key -> pendingBringUps.remove(key)?.cancelAndJoin() }
         wallpaperConnectionMap.keys.map { key ->
             mutex.withLock { wallpaperConnectionMap.remove(key)?.await()?.disconnect(context) }
         }
 
         creativeWallpaperConfigPreviewUriMap.clear()
         latestConnectionMap.clear()
+        engineKeyAliases.clear()
+        synchronized(enginePool) { enginePool.clear() }
+    }
+
+    /**
+     * Removes the engine for [engineKey] from all maps and releases its mirrored surfaces. Returns
+     * its connection, which the caller must disconnect. Must be called with [mutex] held.
+     */
+    private fun removeEngine(engineKey: String): Deferred<WallpaperConnection>? {
+        val connection = wallpaperConnectionMap.remove(engineKey) ?: return null
+        engineKeyAliases.values.removeAll { it == engineKey }
+        latestConnectionMap.values.removeAll { it === connection }
+        surfaceControlMap.remove(engineKey)?.forEach { it.release() }
+        return connection
+    }
+
+    private fun resolveEngineKey(engineKey: String): String =
+        engineKeyAliases[engineKey] ?: engineKey
+
+    /**
+     * Runs [init] as the bring-up of [engineKey], which [disconnectAllServices] cancels, and adds
+     * its connection to the maps and the engine pool. Returns the connections of the engines
+     * evicted from the pool, which the caller must disconnect, or null if [init] failed or the
+     * bring-up was cancelled by a disconnect.
+     */
+    private suspend fun bringUpEngine(
+        engineKey: String,
+        baseKey: String,
+        engineDisplaySize: Point,
+        init: suspend () -> WallpaperConnection?,
+    ): List<Deferred<WallpaperConnection>>? = coroutineScope {
+        val bringUp = async(start = CoroutineStart.LAZY) { init() }
+        pendingBringUps[engineKey] = bringUp
+        try {
+            bringUp.start()
+            val connection =
+                try {
+                    bringUp.await()
+                } catch (e: CancellationException) {
+                    // Rethrow if this caller was cancelled rather than the bring-up.
+                    ensureActive()
+                    null
+                }
+            mutex.withLock {
+                if (!pendingBringUps.remove(engineKey, bringUp)) {
+                    // A disconnect raced with the end of the bring-up.
+                    connection?.disconnect(context)
+                    return@withLock null
+                }
+                if (connection == null) {
+                    return@withLock null
+                }
+                wallpaperConnectionMap[engineKey] = CompletableDeferred(connection)
+                val evictedKeys =
+                    synchronized(enginePool) {
+                        enginePool.add(engineKey, baseKey, engineDisplaySize)
+                    }
+                evictedKeys.mapNotNull { removeEngine(it) }
+            }
+        } finally {
+            pendingBringUps.remove(engineKey, bringUp)
+        }
+    }
+
+    /**
+     * Runs [block] holding the lock for [key]. The lock is dropped from [engineLocks] once no
+     * coroutine holds or waits for it, so that the map does not grow with every engine key.
+     */
+    private suspend fun <T> withKeyLock(key: String, block: suspend () -> T): T {
+        val lock =
+            synchronized(engineLocks) { engineLocks.getOrPut(key) { KeyLock() }.apply { users++ } }
+        try {
+            return lock.mutex.withLock { block() }
+        } finally {
+            synchronized(engineLocks) {
+                if (--lock.users == 0) {
+                    engineLocks.remove(key)
+                }
+            }
+        }
+    }
+
+    private class KeyLock {
+        val mutex = Mutex()
+        // Coroutines holding or waiting for [mutex], guarded by the lock map.
+        var users = 0
+    }
+
+    /**
+     * Opens a [PreviewTouchChannel] to the engine previewing [wallpaperModel] with the given
+     * config, or returns null if that engine is not connected. Close the channel when the preview
+     * surface goes away or the engine is connected again.
+     */
+    suspend fun openTouchChannel(
+        wallpaperModel: LiveWallpaperModel,
+        engineRenderingConfig: EngineRenderingConfig,
+        destinationFlag: Int,
+        scope: CoroutineScope,
+    ): PreviewTouchChannel? {
+        val engine =
+            findEngine(wallpaperModel, engineRenderingConfig, destinationFlag) ?: return null
+        return PreviewTouchChannel(engine, scope, backgroundDispatchers.binder)
     }
 
+    /**
+     * Forwards a single event to the preview engine. Prefer [openTouchChannel] for a stream of
+     * events, which does not look up the engine and copy the event for every call.
+     */
     suspend fun dispatchTouchEvent(
         wallpaperModel: LiveWallpaperModel,
         engineRenderingConfig: EngineRenderingConfig,
         destinationFlag: Int,
         event: MotionEvent,
     ) {
-        val engine =
-            wallpaperModel.liveWallpaperData.systemWallpaperInfo
-                .engineKey(
-                    engineRenderingConfig.getEngineDisplaySize(),
-                    wallpaperModel.liveWallpaperData.description,
-                    wallpaperModel.liveWallpaperData.systemWallpaperInfo.component,
-                    destinationFlag,
-                )
-                .let { engineKey ->
-                    wallpaperConnectionMap[engineKey]?.await()?.engineConnection?.get()?.engine
-                }
-
-        if (engine != null) {
-            val action: Int = event.actionMasked
-            val dup = MotionEvent.obtainNoHistory(event).also { it.setLocation(event.x, event.y) }
-            val pointerIndex = event.actionIndex
-            try {
-                engine.dispatchPointer(dup)
-                if (action == MotionEvent.ACTION_UP) {
-                    engine.dispatchWallpaperCommand(
-                        WallpaperManager.COMMAND_TAP,
-                        event.x.toInt(),
-                        event.y.toInt(),
-                        0,
-                        null,
-                    )
-                } else if (action == MotionEvent.ACTION_POINTER_UP) {
-                    engine.dispatchWallpaperCommand(
-                        WallpaperManager.COMMAND_SECONDARY_TAP,
-                        event.getX(pointerIndex).toInt(),
-                        event.getY(pointerIndex).toInt(),
-                        0,
-                        null,
-                    )
-                }
-            } catch (e: RemoteException) {
-                Log.e(TAG, "Remote exception of wallpaper connection", e)
-            }
+        findEngine(wallpaperModel, engineRenderingConfig, destinationFlag)?.let { engine ->
+            val dup = MotionEvent.obtainNoHistory(event)
+            engine.dispatchPreviewTouch(dup)
+            dup.recycle()
         }
     }
 
+    private suspend fun findEngine(
+        wallpaperModel: LiveWallpaperModel,
+        engineRenderingConfig: EngineRenderingConfig,
+        destinationFlag: Int,
+    ): IWallpaperEngine? {
+        val engineKey =
+            wallpaperModel.liveWallpaperData.systemWallpaperInfo.engineKey(
+                engineRenderingConfig.getEngineDisplaySize(),
+                wallpaperModel.liveWallpaperData.description,
+                wallpaperModel.liveWallpaperData.systemWallpaperInfo.component,
+                destinationFlag,
+            )
+        return wallpaperConnectionMap[resolveEngineKey(engineKey)]
+            ?.await()
+            ?.engineConnection
+            ?.get()
+            ?.engine
+    }
+
     // Calls IWallpaperEngine#apply(which). Throws NoSuchMethodException if that method is not
     // defined, null if the Engine is not available, otherwise the result (which could also be
     // null).
@@ -246,6 +486,31 @@ constructor(@ApplicationContext private val context: Context) {
         return null
     }
 
+    override fun dump(writer: DiagnosticsWriter) {
+        val connections = wallpaperConnectionMap.values
+        writer.value(DUMP_SECTION, "engines", connections.size)
+        writer.value(DUMP_SECTION, "engines_binding", pendingBringUps.size)
+        writer.value(DUMP_SECTION, "latest_services", latestConnectionMap.size)
+        writer.value(DUMP_SECTION, "mirrored_surfaces", surfaceControlMap.values.sumOf { it.size })
+        writer.value(
+            DUMP_SECTION,
+            "creative_config_uris",
+            creativeWallpaperConfigPreviewUriMap.size,
+        )
+        synchronized(enginePool) {
+            writer.value(DUMP_SECTION, "pool.size", enginePool.size)
+            writer.value(DUMP_SECTION, "pool.max_engines", enginePool.maxEngines)
+            writer.value(DUMP_SECTION, "pool.estimated_bytes", enginePool.estimatedBytes)
+            writer.value(DUMP_SECTION, "pool.budget_bytes", enginePool.memoryBudgetBytes)
+            writer.value(DUMP_SECTION, "pool.evictions", enginePool.evictionCount)
+        }
+        writer.value(DUMP_SECTION, "reused_keys", engineKeyAliases.size)
+        writer.value(DUMP_SECTION, "warm_bindings", warmBindings.size)
+        wallpaperConnectionMap.keys.sorted().forEachIndexed { index, engineKey ->
+            writer.value(DUMP_SECTION, "engine.$index", engineKey)
+        }
+    }
+
     private fun LiveWallpaperModel.getWallpaperServiceIntent(): Intent {
         return liveWallpaperData.systemWallpaperInfo.let {
             Intent(WallpaperService.SERVICE_INTERFACE).setClassName(it.packageName, it.serviceName)
@@ -261,26 +526,89 @@ constructor(@ApplicationContext private val context: Context) {
         surfaceView: SurfaceView,
         listener: WallpaperEngineConnection.WallpaperEngineConnectionListener?,
         description: WallpaperDescription,
-    ): WallpaperConnection {
-        // Bind service and get service connection and wallpaper service
-        val (serviceConnection, wallpaperService) = bindWallpaperService(context, wallpaperIntent)
+        warmBinding: Deferred<Pair<ServiceConnection, IWallpaperService>>?,
+    ): WallpaperConnection? {
+        val monitor = PerformanceMonitor.get()
+        val startNanos = System.nanoTime()
+        var warmServiceConnection: ServiceConnection? = null
+        // Bind service and get service connection and wallpaper service. With a warm binding the
+        // service is already running, so this binding only raises its priority.
+        val binding =
+            monitor.measure(LIVE_ENGINE_STAGE_BIND) {
+                withTimeoutOrNull(BIND_TIMEOUT_MS) {
+                    warmServiceConnection = warmBinding?.let { awaitWarmBinding(it) }
+                    bindWallpaperService(context, wallpaperIntent)
+                }
+            }
+        warmBinding?.let { releaseWarmBinding(it) }
+        if (binding == null) {
+            onStageTimeout("bind", wallpaperIntent)
+            return null
+        }
+        if (warmServiceConnection != null) {
+            monitor.incrementCounter(LIVE_WARM_UPS_USED, 1)
+        }
+        val (serviceConnection, wallpaperService) = binding
         val engineConnection = WallpaperEngineConnection(displayMetrics, whichPreview)
         listener?.let { engineConnection.setListener(it) }
-        // Attach wallpaper connection to service and get wallpaper engine
-        engineConnection
-            .getEngine(wallpaperService, destinationFlag, surfaceView, description)
-            .apply {
-                surfaceView.viewTreeObserver.addOnWindowVisibilityChangeListener { visibility ->
-                    setVisibility(visibility == View.VISIBLE)
+        val connection =
+            WallpaperConnection(
+                WeakReference(engineConnection),
+                WeakReference(serviceConnection),
+                WeakReference(wallpaperService),
+                WeakReference(surfaceView.windowToken),
+            )
+        // Attach wallpaper connection to service and get wallpaper engine, which returns once the
+        // engine has shown its first frame.
+        val engine =
+            try {
+                monitor.measure(LIVE_ENGINE_STAGE_ATTACH) {
+                    withTimeoutOrNull(ATTACH_TIMEOUT_MS) {
+                        engineConnection.getEngine(
+                            wallpaperService,
+                            destinationFlag,
+                            surfaceView,
+                            description,
+                        )
+                    }
                 }
+            } catch (e: CancellationException) {
+                connection.disconnect(context)
+                throw e
             }
-
-        return WallpaperConnection(
-            WeakReference(engineConnection),
-            WeakReference(serviceConnection),
-            WeakReference(wallpaperService),
-            WeakReference(surfaceView.windowToken),
+        if (engine == null) {
+            onStageTimeout("attach", wallpaperIntent)
+            connection.disconnect(context)
+            return null
+        }
+        surfaceView.viewTreeObserver.addOnWindowVisibilityChangeListener { visibility ->
+            engine.setVisibility(visibility == View.VISIBLE)
+        }
+        monitor.recordLatency(
+            if (warmServiceConnection != null) ENGINE_FIRST_FRAME_WARM else ENGINE_FIRST_FRAME_COLD,
+            System.nanoTime() - startNanos,
         )
+        return connection
+    }
+
+    private suspend fun awaitWarmBinding(
+        warmBinding: Deferred<Pair<ServiceConnection, IWallpaperService>>
+    ): ServiceConnection? {
+        if (warmBinding.isCancelled) {
+            return null
+        }
+        return try {
+            warmBinding.await().first
+        } catch (e: Exception) {
+            // The warm-up failed or was cancelled, bind from scratch.
+            currentCoroutineContext().ensureActive()
+            null
+        }
+    }
+
+    private fun onStageTimeout(stage: String, wallpaperIntent: Intent) {
+        Log.w(TAG, "Timed out at $stage stage of ${wallpaperIntent.component}")
+        PerformanceMonitor.get().incrementCounter(LIVE_ENGINE_TIMEOUTS, 1)
     }
 
     // Calculates a unique key for the wallpaper engine instance
@@ -318,6 +646,7 @@ constructor(@ApplicationContext private val context: Context) {
     private suspend fun bindWallpaperService(
         context: Context,
         intent: Intent,
+        flags: Int = BIND_FLAGS,
     ): Pair<ServiceConnection, IWallpaperService> =
         suspendCancellableCoroutine {
             k: CancellableContinuation<Pair<ServiceConnection, IWallpaperService>> ->
@@ -336,17 +665,13 @@ constructor(@ApplicationContext private val context: Context) {
                         }
                     }
                 )
-            val success =
-                context.bindService(
-                    intent,
-                    serviceConnection,
-                    Context.BIND_AUTO_CREATE or
-                        Context.BIND_IMPORTANT or
-                        Context.BIND_ALLOW_ACTIVITY_STARTS,
-                )
+            val success = context.bindService(intent, serviceConnection, flags)
             if (!success && k.isActive) {
                 k.resumeWith(Result.failure(Exception("Fail to bind the live wallpaper service.")))
             }
+            if (success) {
+                k.invokeOnCancellation { context.unbindService(serviceConnection) }
+            }
         }
 
     private suspend fun mirrorAndReparent(
@@ -434,6 +759,21 @@ constructor(@ApplicationContext private val context: Context) {
 
     companion object {
         private const val TAG = "WallpaperConnectionUtils"
+        private const val DUMP_SECTION = "live_connections"
+        private const val BIND_FLAGS =
+            Context.BIND_AUTO_CREATE or Context.BIND_IMPORTANT or Context.BIND_ALLOW_ACTIVITY_STARTS
+        private const val WARM_UP_BIND_FLAGS =
+            Context.BIND_AUTO_CREATE or Context.BIND_NOT_FOREGROUND
+        private const val WARM_UP_TIMEOUT_MS = 10_000L
+        // Third-party services may need to start their process, and engines may load assets
+        // before their first frame. Past these the preview falls back to a thumbnail.
+        private const val BIND_TIMEOUT_MS = 5_000L
+        private const val ATTACH_TIMEOUT_MS = 8_000L
+
+        // Low-priority service bindings started by [warmUp], keyed by service component. Shared by
+        // all instances so that a warm-up started while browsing can be used by the preview.
+        private val warmBindings =
+            ConcurrentHashMap<ComponentName, Deferred<Pair<ServiceConnection, IWallpaperService>>>()
 
         data class EngineRenderingConfig(
             val enforceSingleEngine: Boolean,
@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.wallpaper.benchmark
+
+import android.content.Context
+import android.content.res.Configuration
+import android.graphics.Point
+import android.graphics.Rect
+import android.media.ExifInterface
+import androidx.benchmark.junit4.BenchmarkRule
+import androidx.benchmark.junit4.measureRepeated
+import androidx.test.platform.app.InstrumentationRegistry
+import com.android.wallpaper.asset.BitmapUtils
+import com.android.wallpaper.asset.CropRectRotator
+import com.android.wallpaper.config.BaseFlags
+import com.android.wallpaper.module.Injector
+import com.android.wallpaper.module.InjectorProvider
+import com.android.wallpaper.picker.preview.ui.util.CropSizeUtil
+import com.android.wallpaper.picker.preview.ui.util.CropSizeUtil.findMaxRectWithRatioIn
+import com.android.wallpaper.picker.preview.ui.util.FullResImageViewUtil
+import com.android.wallpaper.util.WallpaperCropUtils
+import java.util.Locale
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.junit.runners.Parameterized
+import org.mockito.Mockito.mock
+import org.mockito.Mockito.`when`
+
+/**
+ * Benchmarks the crop geometry and sampling math that runs on every gesture frame while cropping,
+ * for each combination of display, wallpaper orientation and layout direction.
+ *
+ * Results, in ns/op and allocations/op, are written by [BenchmarkRule] to the benchmark JSON.
+ */
+@RunWith(Parameterized::class)
+class CropGeometryBenchmark(
+    private val display: Point,
+    private val wallpaper: Point,
+    private val isRtl: Boolean,
+) {
+
+    @get:Rule val benchmarkRule = BenchmarkRule()
+
+    private lateinit var context: Context
+    private lateinit var cropSurfaceSize: Point
+    private lateinit var visibleRect: Rect
+
+    @Before
+    fun setUp() {
+        if (InjectorProvider.getInjector() == null) {
+            // WallpaperCropUtils reads its flags through the injector.
+            val injector = mock(Injector::class.java)
+            `when`(injector.getFlags()).thenReturn(object : BaseFlags() {})
+            InjectorProvider.setInjector(injector)
+        }
+        val baseContext = InstrumentationRegistry.getInstrumentation().targetContext
+        val configuration =
+            Configuration(baseContext.resources.configuration).apply {
+                setLayoutDirection(if (isRtl) Locale("ar") else Locale.US)
+            }
+        context = baseContext.createConfigurationContext(configuration)
+        // Parallax crop surface, as returned by getDefaultCropSurfaceSize on a phone.
+        cropSurfaceSize = Point((display.x * PARALLAX_FACTOR).toInt(), display.y)
+        visibleRect = WallpaperCropUtils.calculateVisibleRect(wallpaper, display)
+    }
+
+    @Test
+    fun calculateCropRect() {
+        val zoom = WallpaperCropUtils.calculateMinZoom(wallpaper, display)
+        benchmarkRule.measureRepeated {
+            WallpaperCropUtils.calculateCropRect(
+                context,
+                display,
+                cropSurfaceSize,
+                wallpaper,
+                visibleRect,
+                zoom,
+            )
+        }
+    }
+
+    @Test
+    fun calculateVisibleRect() {
+        benchmarkRule.measureRepeated {
+            WallpaperCropUtils.calculateVisibleRect(wallpaper, display)
+        }
+    }
+
+    @Test
+    fun calculateMinZoom() {
+        benchmarkRule.measureRepeated { WallpaperCropUtils.calculateMinZoom(wallpaper, display) }
+    }
+
+    @Test
+    fun calculateCenterPosition() {
+        val outer = Point(maxOf(wallpaper.x, display.x), maxOf(wallpaper.y, display.y))
+        benchmarkRule.measureRepeated {
+            WallpaperCropUtils.calculateCenterPosition(
+                outer,
+                display,
+                /* alignStart= */ true,
+                isRtl,
+            )
+        }
+    }
+
+    @Test
+    fun rotateCropRectForExifOrientation() {
+        benchmarkRule.measureRepeated {
+            EXIF_ORIENTATIONS.forEach {
+                CropRectRotator.rotateCropRectForExifOrientation(wallpaper, visibleRect, it)
+            }
+        }
+    }
+
+    @Test
+    fun calculateInSampleSize() {
+        benchmarkRule.measureRepeated {
+            BitmapUtils.calculateInSampleSize(wallpaper.x, wallpaper.y, display.x, display.y)
+        }
+    }
+
+    @Test
+    fun getScaleAndCenter() {
+        benchmarkRule.measureRepeated {
+            // getScaleAndCenter scales the view size in place, so it needs a fresh Point per call.
+            val viewSize = runWithTimingDisabled { Point(display) }
+            FullResImageViewUtil.getScaleAndCenter(
+                viewSize,
+                wallpaper,
+                display,
+                visibleRect,
+                isRtl,
+                SYSTEM_SCALE,
+            )
+        }
+    }
+
+    @Test
+    fun findMaxRectWithRatioIn() {
+        benchmarkRule.measureRepeated { display.findMaxRectWithRatioIn(wallpaper) }
+    }
+
+    @Test
+    fun fitCropRectToLayoutDirection() {
+        benchmarkRule.measureRepeated {
+            CropSizeUtil.fitCropRectToLayoutDirection(visibleRect, display, isRtl)
+        }
+    }
+
+    companion object {
+        private const val PARALLAX_FACTOR = 1.2f
+        private const val SYSTEM_SCALE = 1.15f
+        private val EXIF_ORIENTATIONS =
+            intArrayOf(
+                ExifInterface.ORIENTATION_NORMAL,
+                ExifInterface.ORIENTATION_ROTATE_90,
+                ExifInterface.ORIENTATION_ROTATE_180,
+                ExifInterface.ORIENTATION_ROTATE_270,
+            )
+
+        private val DISPLAYS =
+            listOf(
+                Point(1080, 2400), // Phone, portrait
+                Point(2400, 1080), // Phone, landscape
+                Point(2208, 1840), // Foldable, unfolded
+                Point(2560, 1600), // Tablet, landscape
+            )
+        private val WALLPAPERS =
+            listOf(
+                Point(4032, 3024), // Landscape camera photo
+                Point(3024, 4032), // Portrait camera photo
+                Point(1440, 3120), // Phone-sized wallpaper
+            )
+
+        @JvmStatic
+        @Parameterized.Parameters(name = "display={0},wallpaper={1},rtl={2}")
+        fun parameters(): List<Array<Any>> =
+            DISPLAYS.flatMap { display ->
+                WALLPAPERS.flatMap { wallpaper ->
+                    listOf(false, true).map { isRtl -> arrayOf<Any>(display, wallpaper, isRtl) }
+                }
+            }
+    }
+}
@@ -39,7 +39,10 @@ import com.android.wallpaper.picker.category.domain.interactor.MyPhotosInteracto
 import com.android.wallpaper.picker.category.ui.binder.BannerProvider
 import com.android.wallpaper.picker.customization.data.content.WallpaperClient
 import com.android.wallpaper.picker.di.modules.BackgroundDispatcher
+import com.android.wallpaper.picker.di.modules.BinderDispatcher
+import com.android.wallpaper.picker.di.modules.DecodeDispatcher
 import com.android.wallpaper.picker.di.modules.MainDispatcher
+import com.android.wallpaper.picker.di.modules.PackageScanDispatcher
 import com.android.wallpaper.picker.di.modules.SharedAppModule
 import com.android.wallpaper.picker.di.modules.SharedAppModule.Companion.BROADCAST_SLOW_DELIVERY_THRESHOLD
 import com.android.wallpaper.picker.di.modules.SharedAppModule.Companion.BROADCAST_SLOW_DISPATCH_THRESHOLD
@@ -94,6 +97,21 @@ internal abstract class SharedAppTestModule {
     @BackgroundDispatcher
     abstract fun bindBackgroundDispatcher(impl: TestDispatcher): CoroutineDispatcher
 
+    @Binds
+    @Singleton
+    @DecodeDispatcher
+    abstract fun bindDecodeDispatcher(impl: TestDispatcher): CoroutineDispatcher
+
+    @Binds
+    @Singleton
+    @BinderDispatcher
+    abstract fun bindBinderDispatcher(impl: TestDispatcher): CoroutineDispatcher
+
+    @Binds
+    @Singleton
+    @PackageScanDispatcher
+    abstract fun bindPackageScanDispatcher(impl: TestDispatcher): CoroutineDispatcher
+
     @Binds
     @Singleton
     abstract fun bindCategoryFactory(impl: FakeDefaultCategoryFactory): CategoryFactory
@@ -17,12 +17,16 @@ package com.android.wallpaper.testing
 
 import android.content.Context
 import com.android.wallpaper.model.WallpaperInfo
+import com.android.wallpaper.model.WallpaperInfoPair
 import com.android.wallpaper.model.WallpaperMetadata
 import com.android.wallpaper.module.CurrentWallpaperInfoFactory
 import com.android.wallpaper.module.CurrentWallpaperInfoFactory.WallpaperInfoCallback
 import com.android.wallpaper.module.WallpaperRefresher
 import javax.inject.Inject
 import javax.inject.Singleton
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.flow.asStateFlow
 
 /** Test double of [CurrentWallpaperInfoFactory]. */
 @Singleton
@@ -31,6 +35,7 @@ class FakeCurrentWallpaperInfoFactory @Inject constructor(refresher: FakeWallpap
     private val mRefresher: WallpaperRefresher = refresher
     private var homeWallpaper: WallpaperInfo? = null
     private var lockWallpaper: WallpaperInfo? = null
+    private val currentWallpaperInfos = MutableStateFlow<WallpaperInfoPair?>(null)
 
     /**
      * Uses [mHomeWallpaper] and [mLockWallpaper] if provided, otherwise creates instance(s) of
@@ -62,18 +67,27 @@ class FakeCurrentWallpaperInfoFactory @Inject constructor(refresher: FakeWallpap
                         lockWallpaperMetadata.collectionId,
                     )
             }
+            currentWallpaperInfos.value =
+                WallpaperInfoPair(homeWallpaper, lockWallpaper, presentationMode)
             callback.onWallpaperInfoCreated(homeWallpaper, lockWallpaper, presentationMode)
         }
     }
 
-    override fun clearCurrentWallpaperInfos() {}
+    override fun getCurrentWallpaperInfos(): StateFlow<WallpaperInfoPair?> =
+        currentWallpaperInfos.asStateFlow()
+
+    override fun clearCurrentWallpaperInfos() {
+        currentWallpaperInfos.value = null
+    }
 
     fun setHomeWallpaper(info: WallpaperInfo?) {
         homeWallpaper = info
+        clearCurrentWallpaperInfos()
     }
 
     fun setLockWallpaper(info: WallpaperInfo?) {
         lockWallpaper = info
+        clearCurrentWallpaperInfos()
     }
 
     companion object {
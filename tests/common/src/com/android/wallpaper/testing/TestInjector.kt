@@ -62,6 +62,7 @@ import com.android.wallpaper.picker.customization.data.repository.WallpaperRepos
 import com.android.wallpaper.picker.customization.domain.interactor.WallpaperInteractor
 import com.android.wallpaper.picker.customization.domain.interactor.WallpaperSnapshotRestorer
 import com.android.wallpaper.picker.individual.IndividualPickerFragment2
+import com.android.wallpaper.picker.network.domain.PrefetchPolicy
 import com.android.wallpaper.picker.undo.data.repository.UndoRepository
 import com.android.wallpaper.picker.undo.domain.interactor.UndoInteractor
 import com.android.wallpaper.util.DisplayUtils
@@ -79,6 +80,7 @@ constructor(
     private val displayUtils: DisplayUtils,
     private val requester: Requester,
     private val networkStatusNotifier: NetworkStatusNotifier,
+    private val prefetchPolicy: PrefetchPolicy,
     private val partnerProvider: PartnerProvider,
     private val wallpaperClient: FakeWallpaperClient,
     private val injectedWallpaperInteractor: WallpaperInteractor,
@@ -178,6 +180,10 @@ constructor(
         return networkStatusNotifier
     }
 
+    override fun getPrefetchPolicy(context: Context): PrefetchPolicy {
+        return prefetchPolicy
+    }
+
     override fun getPackageStatusNotifier(context: Context): PackageStatusNotifier {
         return testStatusNotifier
     }
@@ -75,8 +75,9 @@ public class TestWallpaperPersister implements WallpaperPersister {
     }
 
     @Override
-    public void setIndividualWallpaper(final WallpaperInfo wallpaperInfo, Asset asset,
-            @Nullable final Rect cropRect, final float scale, final @Destination int destination,
+    public SetWallpaperHandle setIndividualWallpaper(final WallpaperInfo wallpaperInfo,
+            Asset asset, @Nullable final Rect cropRect, final float scale,
+            final @Destination int destination,
             final WallpaperPersister.SetWallpaperCallback callback) {
         asset.decodeBitmap(50, 50, bitmap -> {
             if (destination == DEST_HOME_SCREEN || destination == DEST_BOTH) {
@@ -97,6 +98,7 @@ public class TestWallpaperPersister implements WallpaperPersister {
             mScale = scale;
             mWallpaperInfo = wallpaperInfo;
         });
+        return () -> { };
     }
 
     @Override
@@ -123,6 +125,13 @@ public class TestWallpaperPersister implements WallpaperPersister {
         return 1;
     }
 
+    @Override
+    public int setPreparedWallpaperInRotation(String key, List<String> attributions,
+            String actionUrl, String collectionId, int whichWallpaper) {
+        // Nothing is ever prepared ahead of time in tests.
+        return 0;
+    }
+
     @Override
     public boolean finalizeWallpaperForNextRotation(List<String> attributions, String actionUrl,
             String collectionId, int wallpaperId, String remoteId) {
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.wallpaper.asset
+
+import android.content.Context
+import android.graphics.Bitmap
+import android.graphics.BitmapFactory
+import android.graphics.drawable.BitmapDrawable
+import androidx.test.core.app.ApplicationProvider
+import com.google.common.truth.Truth.assertThat
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.GraphicsMode
+
+@RunWith(RobolectricTestRunner::class)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+class BitmapUtilsTest {
+
+    @Test
+    fun setTargetSize_quality_onlySubsamplesByPowerOfTwo() {
+        val options = BitmapFactory.Options()
+
+        BitmapUtils.setTargetSize(options, 4000, 3000, 1440, 1000, DecodeSizing.QUALITY)
+
+        assertThat(options.inSampleSize).isEqualTo(2)
+        assertThat(BitmapUtils.getDensityScale(options)).isEqualTo(1f)
+    }
+
+    @Test
+    fun setTargetSize_memory_scalesDownToCoverTarget() {
+        val options = BitmapFactory.Options()
+
+        BitmapUtils.setTargetSize(options, 4000, 3000, 1440, 1000, DecodeSizing.MEMORY)
+
+        // 4000x3000 subsamples to 2000x1500, then scales by 1440/2000 to 1440x1080, which still
+        // covers the 1440x1000 target.
+        assertThat(options.inSampleSize).isEqualTo(2)
+        assertThat(options.inScaled).isTrue()
+        assertThat(options.inDensity).isEqualTo(2000)
+        assertThat(options.inTargetDensity).isEqualTo(1440)
+    }
+
+    @Test
+    fun setTargetSize_memory_scalesByTheLimitingDimension() {
+        val options = BitmapFactory.Options()
+
+        BitmapUtils.setTargetSize(options, 4000, 3000, 1000, 1200, DecodeSizing.MEMORY)
+
+        // Scaling 2000x1500 to a width of 1000 would leave it 750 high, so scale by height.
+        assertThat(options.inDensity).isEqualTo(1500)
+        assertThat(options.inTargetDensity).isEqualTo(1200)
+    }
+
+    @Test
+    fun decodeStream_scaledByTargetSize_isNotScaledAgainByDrawable() {
+        val encoded = ByteArrayOutputStream()
+        Bitmap.createBitmap(400, 300, Bitmap.Config.ARGB_8888)
+            .compress(Bitmap.CompressFormat.PNG, 100, encoded)
+        val options = BitmapFactory.Options()
+        BitmapUtils.setTargetSize(options, 400, 300, 144, 100, DecodeSizing.MEMORY)
+
+        val bitmap =
+            BitmapUtils.decodeStream(ByteArrayInputStream(encoded.toByteArray()), options)!!
+        val drawable =
+            BitmapDrawable(ApplicationProvider.getApplicationContext<Context>().resources, bitmap)
+
+        // 400x300 subsamples to 200x150, then scales by 144/200 to 144x108.
+        assertThat(bitmap.width).isEqualTo(144)
+        assertThat(bitmap.density).isEqualTo(Bitmap.DENSITY_NONE)
+        assertThat(drawable.intrinsicWidth).isEqualTo(144)
+        assertThat(drawable.intrinsicHeight).isEqualTo(108)
+    }
+
+    @Test
+    fun setTargetSize_memory_noTarget_doesNotScale() {
+        val options = BitmapFactory.Options()
+
+        BitmapUtils.setTargetSize(options, 4000, 3000, 0, 0, DecodeSizing.MEMORY)
+
+        assertThat(options.inSampleSize).isEqualTo(1)
+        assertThat(BitmapUtils.getDensityScale(options)).isEqualTo(1f)
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.wallpaper.asset
+
+import android.content.ComponentCallbacks2
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+
+@RunWith(RobolectricTestRunner::class)
+class GlideCacheSizingTest {
+
+    @Test
+    fun compute_typicalPhone_matchesHistoricalDefaults() {
+        val sizing = GlideCacheSizing.compute(256, false, PHONE_PIXELS, 64 * GB)
+
+        assertThat(sizing.bitmapPoolScreens).isEqualTo(2f)
+        assertThat(sizing.memoryCacheScreens).isEqualTo(1.2f)
+        assertThat(sizing.diskCacheSizeBytes).isEqualTo(PHONE_PIXELS * 4 * 10)
+    }
+
+    @Test
+    fun compute_scalesWithMemoryClass() {
+        val lowRam = GlideCacheSizing.compute(512, true, PHONE_PIXELS, 64 * GB)
+        val small = GlideCacheSizing.compute(192, false, PHONE_PIXELS, 64 * GB)
+        val huge = GlideCacheSizing.compute(512, false, PHONE_PIXELS, 64 * GB)
+
+        assertThat(lowRam.bitmapPoolScreens).isLessThan(small.bitmapPoolScreens)
+        assertThat(small.bitmapPoolScreens).isLessThan(2f)
+        assertThat(huge.bitmapPoolScreens).isGreaterThan(2f)
+        assertThat(huge.memoryCacheScreens).isGreaterThan(1.2f)
+    }
+
+    @Test
+    fun compute_largeScreen_dropsOneTier() {
+        val sizing = GlideCacheSizing.compute(256, false, TABLET_PIXELS, 64 * GB)
+
+        assertThat(sizing.bitmapPoolScreens).isEqualTo(1f)
+        assertThat(sizing.memoryCacheScreens).isEqualTo(1f)
+    }
+
+    @Test
+    fun compute_diskCache_isBoundedByFreeSpaceAndLimits() {
+        assertThat(GlideCacheSizing.compute(256, false, UHD_PIXELS, 64 * GB).diskCacheSizeBytes)
+            .isEqualTo(250 * MB)
+        assertThat(GlideCacheSizing.compute(256, false, PHONE_PIXELS, GB).diskCacheSizeBytes)
+            .isEqualTo(GB / 20)
+        assertThat(GlideCacheSizing.compute(256, false, PHONE_PIXELS, 0).diskCacheSizeBytes)
+            .isEqualTo(16 * MB)
+    }
+
+    @Test
+    fun shouldShrinkMemoryCaches_onlyUnderPressure() {
+        assertThat(
+                WallpaperGlideModule.shouldShrinkMemoryCaches(
+                    ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE
+                )
+            )
+            .isFalse()
+        assertThat(
+                WallpaperGlideModule.shouldShrinkMemoryCaches(
+                    ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN
+                )
+            )
+            .isFalse()
+        assertThat(
+                WallpaperGlideModule.shouldShrinkMemoryCaches(
+                    ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW
+                )
+            )
+            .isTrue()
+        assertThat(
+                WallpaperGlideModule.shouldShrinkMemoryCaches(
+                    ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                )
+            )
+            .isTrue()
+    }
+
+    private companion object {
+        const val MB = 1024L * 1024
+        const val GB = 1024 * MB
+        const val PHONE_PIXELS = 1080L * 2400
+        const val TABLET_PIXELS = 2560L * 1600
+        const val UHD_PIXELS = 3840L * 2160
+    }
+}
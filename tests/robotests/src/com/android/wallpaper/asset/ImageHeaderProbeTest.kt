@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.wallpaper.asset
+
+import com.google.common.truth.Truth.assertThat
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+
+@RunWith(RobolectricTestRunner::class)
+class ImageHeaderProbeTest {
+
+    @Test
+    fun sniffMimeType_recognizesMagicNumbers() {
+        assertThat(sniff(0xFF, 0xD8, 0xFF, 0xE1)).isEqualTo(ImageHeaderProbe.MIME_TYPE_JPEG)
+        assertThat(sniff(0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A))
+            .isEqualTo(ImageHeaderProbe.MIME_TYPE_PNG)
+        assertThat(sniff('G', 'I', 'F', '8', '9', 'a')).isEqualTo(ImageHeaderProbe.MIME_TYPE_GIF)
+        assertThat(sniff('B', 'M', 0, 0)).isEqualTo(ImageHeaderProbe.MIME_TYPE_BMP)
+        assertThat(sniff('R', 'I', 'F', 'F', 0, 0, 0, 0, 'W', 'E', 'B', 'P'))
+            .isEqualTo(ImageHeaderProbe.MIME_TYPE_WEBP)
+    }
+
+    @Test
+    fun sniffMimeType_readsIsoMediaBrands() {
+        assertThat(sniff(*ftyp("heic", "mif1"))).isEqualTo(ImageHeaderProbe.MIME_TYPE_HEIF)
+        assertThat(sniff(*ftyp("avif", "mif1"))).isEqualTo(ImageHeaderProbe.MIME_TYPE_AVIF)
+        assertThat(sniff(*ftyp("mif1", "avif"))).isEqualTo(ImageHeaderProbe.MIME_TYPE_AVIF)
+        assertThat(sniff(*ftyp("isom", "mp41"))).isNull()
+    }
+
+    @Test
+    fun sniffMimeType_truncatedHeader_returnsNull() {
+        assertThat(ImageHeaderProbe.sniffMimeType(byteArrayOf(0xFF.toByte(), 0xD8.toByte()), 2))
+            .isNull()
+        assertThat(ImageHeaderProbe.sniffMimeType(ByteArray(0), 0)).isNull()
+    }
+
+    @Test
+    fun probe_webpWithExifAfterImageData_leavesExifToFullStream() {
+        val webp = webpWithTrailingExif(imageDataBytes = 256 * 1024)
+
+        val result = ImageHeaderProbe.probe(ByteArrayInputStream(webp))
+
+        assertThat(result).isNotNull()
+        assertThat(result!!.mimeType).isEqualTo(ImageHeaderProbe.MIME_TYPE_WEBP)
+        assertThat(result.exif).isNull()
+        assertThat(result.exifOrientation).isEqualTo(ExifInterfaceCompat.EXIF_ORIENTATION_UNKNOWN)
+    }
+
+    private fun sniff(vararg bytes: Any): String? {
+        val header =
+            ByteArray(bytes.size) {
+                when (val value = bytes[it]) {
+                    is Char -> value.code.toByte()
+                    else -> (value as Int).toByte()
+                }
+            }
+        return ImageHeaderProbe.sniffMimeType(header, header.size)
+    }
+
+    /**
+     * Returns an extended WebP whose EXIF chunk, with a rotated orientation, follows
+     * [imageDataBytes] of image data, as written by encoders that append metadata.
+     */
+    private fun webpWithTrailingExif(imageDataBytes: Int): ByteArray {
+        val chunks = ByteArrayOutputStream()
+        // VP8X header with the EXIF flag set, for a 1x1 canvas.
+        chunks.writeChunk("VP8X", byteArrayOf(0x08, 0, 0, 0, 0, 0, 0, 0, 0, 0))
+        chunks.writeChunk("VP8L", ByteArray(imageDataBytes))
+        // Big-endian TIFF header with a single IFD entry: orientation (0x0112) = 6.
+        val tiff =
+            byteArrayOf('M'.code.toByte(), 'M'.code.toByte(), 0, 42, 0, 0, 0, 8) +
+                byteArrayOf(0, 1, 0x01, 0x12, 0, 3, 0, 0, 0, 1, 0, 6, 0, 0) +
+                byteArrayOf(0, 0, 0, 0)
+        chunks.writeChunk("EXIF", tiff)
+        val riff = ByteArrayOutputStream()
+        riff.write("RIFF".toByteArray(Charsets.US_ASCII))
+        riff.writeIntLe(4 + chunks.size())
+        riff.write("WEBP".toByteArray(Charsets.US_ASCII))
+        chunks.writeTo(riff)
+        return riff.toByteArray()
+    }
+
+    private fun ByteArrayOutputStream.writeChunk(fourCc: String, payload: ByteArray) {
+        write(fourCc.toByteArray(Charsets.US_ASCII))
+        writeIntLe(payload.size)
+        write(payload)
+        if (payload.size % 2 != 0) {
+            write(0)
+        }
+    }
+
+    private fun ByteArrayOutputStream.writeIntLe(value: Int) {
+        for (shift in 0 until 32 step 8) {
+            write(value ushr shift and 0xFF)
+        }
+    }
+
+    /** Returns an ISO base media file type box with a major brand and one compatible brand. */
+    private fun ftyp(majorBrand: String, compatibleBrand: String): Array<Any> {
+        val size = 20
+        val box = mutableListOf<Any>(0, 0, 0, size, 'f', 't', 'y', 'p')
+        box.addAll(majorBrand.toList())
+        box.addAll(listOf(0, 0, 0, 0))
+        box.addAll(compatibleBrand.toList())
+        return box.toTypedArray()
+    }
+}
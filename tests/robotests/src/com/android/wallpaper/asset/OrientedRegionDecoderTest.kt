@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.wallpaper.asset
+
+import android.graphics.Bitmap
+import android.graphics.BitmapFactory
+import android.graphics.Canvas
+import android.graphics.Rect
+import android.media.ExifInterface
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.GraphicsMode
+
+@RunWith(RobolectricTestRunner::class)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+class OrientedRegionDecoderTest {
+
+    private val source =
+        Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888).apply {
+            for (x in 0 until WIDTH) {
+                for (y in 0 until HEIGHT) {
+                    setPixel(x, y, pixelFor(x, y))
+                }
+            }
+        }
+
+    @Test
+    fun decode_allOrientations_matchesExifOrientation() {
+        for (orientation in ORIENTATIONS) {
+            val regionSource = FakeRegionSource()
+
+            val result =
+                OrientedRegionDecoder.decode(
+                    regionSource,
+                    Rect(0, 0, WIDTH, HEIGHT),
+                    /* sampleSize= */ 1,
+                    /* scale= */ 1f,
+                    orientation,
+                    STRIP_ROWS,
+                )!!
+
+            val swapped = OrientedRegionDecoder.swapsDimensions(orientation)
+            assertThat(result.width).isEqualTo(if (swapped) HEIGHT else WIDTH)
+            assertThat(result.height).isEqualTo(if (swapped) WIDTH else HEIGHT)
+            for (x in 0 until WIDTH) {
+                for (y in 0 until HEIGHT) {
+                    val (displayX, displayY) = displayedPosition(orientation, x, y)
+                    assertThat(result.getPixel(displayX, displayY)).isEqualTo(pixelFor(x, y))
+                }
+            }
+        }
+    }
+
+    @Test
+    fun decode_allOrientations_peakAllocationIsOutputPlusOneStrip() {
+        for (orientation in ORIENTATIONS) {
+            val regionSource = FakeRegionSource()
+
+            val result =
+                OrientedRegionDecoder.decode(
+                    regionSource,
+                    Rect(0, 0, WIDTH, HEIGHT),
+                    /* sampleSize= */ 1,
+                    /* scale= */ 1f,
+                    orientation,
+                    STRIP_ROWS,
+                )!!
+
+            // Every strip was decoded into the same reused bitmap, so the only allocations are the
+            // output and that one strip.
+            assertThat(regionSource.decoderAllocations).isEqualTo(0)
+            assertThat(regionSource.stripBuffers).hasSize(1)
+            assertThat(result.allocationByteCount).isEqualTo(WIDTH * HEIGHT * BYTES_PER_PIXEL)
+        }
+    }
+
+    @Test
+    fun decode_sourceFails_returnsNull() {
+        val failingSource = OrientedRegionDecoder.RegionSource { _, _ -> null }
+
+        val result =
+            OrientedRegionDecoder.decode(
+                failingSource,
+                Rect(0, 0, WIDTH, HEIGHT),
+                /* sampleSize= */ 1,
+                /* scale= */ 1f,
+                ExifInterface.ORIENTATION_ROTATE_90,
+                STRIP_ROWS,
+            )
+
+        assertThat(result).isNull()
+    }
+
+    /** Decodes regions of [source] into the reused strip, like a region decoder with inBitmap. */
+    private inner class FakeRegionSource : OrientedRegionDecoder.RegionSource {
+        val stripBuffers = mutableSetOf<Bitmap>()
+        var decoderAllocations = 0
+
+        override fun decodeRegion(rect: Rect, options: BitmapFactory.Options): Bitmap {
+            val target =
+                options.inBitmap?.also { stripBuffers.add(it) }
+                    ?: Bitmap.createBitmap(rect.width(), rect.height(), Bitmap.Config.ARGB_8888)
+                        .also { decoderAllocations++ }
+            Canvas(target).drawBitmap(source, rect, Rect(0, 0, rect.width(), rect.height()), null)
+            return target
+        }
+    }
+
+    private fun displayedPosition(orientation: Int, x: Int, y: Int): Pair<Int, Int> =
+        when (orientation) {
+            ExifInterface.ORIENTATION_FLIP_HORIZONTAL -> WIDTH - 1 - x to y
+            ExifInterface.ORIENTATION_ROTATE_180 -> WIDTH - 1 - x to HEIGHT - 1 - y
+            ExifInterface.ORIENTATION_FLIP_VERTICAL -> x to HEIGHT - 1 - y
+            ExifInterface.ORIENTATION_TRANSPOSE -> y to x
+            ExifInterface.ORIENTATION_ROTATE_90 -> HEIGHT - 1 - y to x
+            ExifInterface.ORIENTATION_TRANSVERSE -> HEIGHT - 1 - y to WIDTH - 1 - x
+            ExifInterface.ORIENTATION_ROTATE_270 -> y to WIDTH - 1 - x
+            else -> x to y
+        }
+
+    private fun pixelFor(x: Int, y: Int): Int = (0xFF000000 or (x * 40L shl 8) or y * 60L).toInt()
+
+    companion object {
+        private const val WIDTH = 6
+        private const val HEIGHT = 4
+        // Not a divisor of HEIGHT, so that the last strip is shorter than the rest.
+        private const val STRIP_ROWS = 3
+        private const val BYTES_PER_PIXEL = 4
+        private val ORIENTATIONS = (1..8).toList()
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.wallpaper.backup
+
+import android.content.Context
+import android.graphics.Bitmap
+import android.os.ParcelFileDescriptor
+import androidx.test.core.app.ApplicationProvider
+import com.android.wallpaper.asset.BitmapUtils
+import com.google.common.truth.Truth.assertThat
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.File
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.GraphicsMode
+
+@RunWith(RobolectricTestRunner::class)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+class StreamingHashCodeGeneratorTest {
+
+    private val bitmap =
+        Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888).apply {
+            for (x in 0 until WIDTH) {
+                for (y in 0 until HEIGHT) {
+                    setPixel(x, y, 0xFF000000.toInt() or ((x * 7919 + y * 104729) and 0xFFFFFF))
+                }
+            }
+        }
+    private val png =
+        ByteArrayOutputStream()
+            .also { bitmap.compress(Bitmap.CompressFormat.PNG, 100, it) }
+            .toByteArray()
+
+    @Test
+    fun generate_matchesFullBitmapHash() {
+        val hash = generate(resumeFrom = null) { true }
+
+        assertThat(hash).isEqualTo(BitmapUtils.generateHashCode(bitmap))
+    }
+
+    @Test
+    fun generate_fromFile_matchesFullBitmapHash() {
+        val file =
+            File(ApplicationProvider.getApplicationContext<Context>().cacheDir, "wallpaper.png")
+        file.writeBytes(png)
+
+        val hash =
+            ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY).use {
+                StreamingHashCodeGenerator.generate(it)
+            }
+
+        assertThat(hash).isEqualTo(BitmapUtils.generateHashCode(bitmap))
+    }
+
+    @Test
+    fun generate_tinyMemoryBudget_matchesFullBitmapHash() {
+        val hash =
+            StreamingHashCodeGenerator.generate(ByteArrayInputStream(png), null, 1) { true }
+
+        assertThat(hash).isEqualTo(BitmapUtils.generateHashCode(bitmap))
+    }
+
+    @Test
+    fun generate_stoppedAndResumed_matchesFullBitmapHash() {
+        var saved: StreamingHashCodeGenerator.Progress? = null
+        val stopped =
+            generate(resumeFrom = null) { progress ->
+                saved = progress
+                progress.rowsDone < 3
+            }
+        assertThat(stopped).isNull()
+        assertThat(saved!!.rowsDone).isEqualTo(3)
+
+        val resumed =
+            generate(StreamingHashCodeGenerator.Progress.parse(saved!!.serialize())) { true }
+
+        assertThat(resumed).isEqualTo(BitmapUtils.generateHashCode(bitmap))
+    }
+
+    @Test
+    fun generate_progressForOtherSize_isIgnored() {
+        val other = StreamingHashCodeGenerator.Progress(WIDTH + 1, HEIGHT, IntArray(0))
+
+        assertThat(generate(other) { true }).isEqualTo(BitmapUtils.generateHashCode(bitmap))
+    }
+
+    @Test
+    fun parse_malformed_returnsNull() {
+        assertThat(StreamingHashCodeGenerator.Progress.parse(null)).isNull()
+        assertThat(StreamingHashCodeGenerator.Progress.parse("12")).isNull()
+        assertThat(StreamingHashCodeGenerator.Progress.parse("12,a,3")).isNull()
+        // Not a whole number of rows.
+        assertThat(StreamingHashCodeGenerator.Progress.parse("12,12,1,2")).isNull()
+    }
+
+    private fun generate(
+        resumeFrom: StreamingHashCodeGenerator.Progress?,
+        listener: StreamingHashCodeGenerator.ProgressListener,
+    ): Long? =
+        StreamingHashCodeGenerator.generate(
+            ByteArrayInputStream(png),
+            resumeFrom,
+            StreamingHashCodeGenerator.DEFAULT_MEMORY_BUDGET_BYTES,
+            listener,
+        )
+
+    companion object {
+        private const val WIDTH = 300
+        private const val HEIGHT = 200
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.wallpaper.module
+
+import android.content.Context
+import android.graphics.Point
+import android.graphics.Rect
+import androidx.test.core.app.ApplicationProvider
+import com.android.wallpaper.config.BaseFlags
+import com.android.wallpaper.model.WallpaperInfo
+import com.android.wallpaper.model.WallpaperMetadata
+import com.android.wallpaper.picker.customization.data.content.WallpaperClient
+import com.android.wallpaper.testing.FakeDisplaysProvider
+import com.android.wallpaper.testing.FakeDisplaysProvider.Companion.HANDHELD
+import com.android.wallpaper.util.DisplayUtils
+import com.google.common.truth.Truth.assertThat
+import kotlinx.coroutines.test.StandardTestDispatcher
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.mockito.ArgumentCaptor
+import org.mockito.Mockito.RETURNS_DEFAULTS
+import org.mockito.Mockito.mock
+import org.mockito.Mockito.verify
+import org.mockito.Mockito.`when`
+import org.robolectric.RobolectricTestRunner
+
+@RunWith(RobolectricTestRunner::class)
+class DefaultCurrentWallpaperInfoFactoryTest {
+
+    private val testDispatcher = StandardTestDispatcher()
+    private val flags =
+        object : BaseFlags() {
+            override fun isMultiCropEnabled() = true
+        }
+
+    private lateinit var context: Context
+    private lateinit var factory: DefaultCurrentWallpaperInfoFactory
+    private lateinit var wallpaperChangedListener: WallpaperChangedNotifier.Listener
+    private var refreshCount = 0
+
+    @Before
+    fun setUp() {
+        context = ApplicationProvider.getApplicationContext()
+        val injector = mock(Injector::class.java)
+        `when`(injector.getFlags()).thenReturn(flags)
+        InjectorProvider.setInjector(injector)
+
+        val displaysProvider = FakeDisplaysProvider(context)
+        displaysProvider.setDisplays(listOf(HANDHELD))
+        // Crop hints that cover the whole display, one for every queried size.
+        val wallpaperClient =
+            mock(WallpaperClient::class.java) { invocation ->
+                if (invocation.method.name == "getCurrentCropHints") {
+                    @Suppress("UNCHECKED_CAST") val sizes = invocation.arguments[0] as List<Point>
+                    sizes.associateWith { Rect(0, 0, it.x, it.y) }
+                } else {
+                    RETURNS_DEFAULTS.answer(invocation)
+                }
+            }
+        val refresher = WallpaperRefresher { listener ->
+            refreshCount++
+            listener.onRefreshed(
+                WallpaperMetadata(
+                    listOf("title"),
+                    /* actionUrl= */ null,
+                    /* collectionId= */ null,
+                    /* wallpaperComponent= */ null,
+                    /* cropHints= */ null,
+                    /* imageUri= */ null,
+                ),
+                /* lockWallpaperMetadata= */ null,
+                WallpaperPreferences.PRESENTATION_MODE_STATIC,
+            )
+        }
+        val wallpaperChangedNotifier = mock(WallpaperChangedNotifier::class.java)
+        factory =
+            DefaultCurrentWallpaperInfoFactory(
+                context,
+                refresher,
+                wallpaperChangedNotifier,
+                mock(LiveWallpaperInfoFactory::class.java),
+                wallpaperClient,
+                DisplayUtils(context, displaysProvider),
+                flags,
+                testDispatcher,
+            )
+        val listenerCaptor = ArgumentCaptor.forClass(WallpaperChangedNotifier.Listener::class.java)
+        verify(wallpaperChangedNotifier).registerListener(listenerCaptor.capture())
+        wallpaperChangedListener = listenerCaptor.value
+    }
+
+    @Test
+    fun getCurrentWallpaperInfos_beforeFirstRefresh_isNull() {
+        assertThat(factory.getCurrentWallpaperInfos().value).isNull()
+    }
+
+    @Test
+    fun createCurrentWallpaperInfos_publishesResolvedCropHints() {
+        createCurrentWallpaperInfos()
+        testDispatcher.scheduler.advanceUntilIdle()
+
+        val published = factory.getCurrentWallpaperInfos().value
+        assertThat(published).isNotNull()
+        val cropHints = published!!.homeWallpaper.wallpaperCropHints
+        assertThat(cropHints).isNotEmpty()
+        cropHints!!.forEach { (size, rect) ->
+            assertThat(rect).isEqualTo(Rect(0, 0, size.x, size.y))
+        }
+        assertThat(refreshCount).isEqualTo(1)
+    }
+
+    @Test
+    fun createCurrentWallpaperInfos_doesNotMutateDeliveredInfos() {
+        val delivered = createCurrentWallpaperInfos()
+        val cropHintsBefore = delivered.wallpaperCropHints
+
+        testDispatcher.scheduler.advanceUntilIdle()
+
+        val published = factory.getCurrentWallpaperInfos().value!!.homeWallpaper
+        assertThat(published).isNotSameInstanceAs(delivered)
+        assertThat(delivered.wallpaperCropHints).isEqualTo(cropHintsBefore)
+        assertThat(published.wallpaperCropHints).isNotEqualTo(cropHintsBefore)
+    }
+
+    @Test
+    fun clearCurrentWallpaperInfos_refreshesOnNextCall() {
+        createCurrentWallpaperInfos()
+        testDispatcher.scheduler.advanceUntilIdle()
+
+        factory.clearCurrentWallpaperInfos()
+        createCurrentWallpaperInfos(forceRefresh = false)
+
+        assertThat(refreshCount).isEqualTo(2)
+    }
+
+    @Test
+    fun clearCurrentWallpaperInfos_clearsPublishedInfos() {
+        createCurrentWallpaperInfos()
+        testDispatcher.scheduler.advanceUntilIdle()
+
+        factory.clearCurrentWallpaperInfos()
+
+        assertThat(factory.getCurrentWallpaperInfos().value).isNull()
+    }
+
+    @Test
+    fun wallpaperChangedByApp_republishesInfos() {
+        createCurrentWallpaperInfos()
+        testDispatcher.scheduler.advanceUntilIdle()
+
+        wallpaperChangedListener.onWallpaperChanged()
+        testDispatcher.scheduler.advanceUntilIdle()
+
+        assertThat(refreshCount).isEqualTo(2)
+        assertThat(factory.getCurrentWallpaperInfos().value).isNotNull()
+    }
+
+    private fun createCurrentWallpaperInfos(forceRefresh: Boolean = true): WallpaperInfo {
+        var home: WallpaperInfo? = null
+        factory.createCurrentWallpaperInfos(context, forceRefresh) { homeWallpaper, _, _ ->
+            home = homeWallpaper
+        }
+        return checkNotNull(home)
+    }
+}
@@ -24,27 +24,40 @@ import static com.google.common.truth.Truth.assertThat;
 
 import static kotlinx.coroutines.test.TestCoroutineDispatchersKt.StandardTestDispatcher;
 
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
 import static org.robolectric.shadows.ShadowLooper.shadowMainLooper;
 
 import android.app.WallpaperManager;
 import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Color;
 import android.graphics.drawable.BitmapDrawable;
+import android.os.ParcelFileDescriptor;
 import android.util.Log;
 
 import androidx.annotation.Nullable;
 import androidx.test.platform.app.InstrumentationRegistry;
 
+import com.android.wallpaper.asset.BitmapUtils;
 import com.android.wallpaper.model.WallpaperInfo;
 import com.android.wallpaper.module.DefaultWallpaperPersisterTest.TestSetWallpaperCallback.SetWallpaperStatus;
 import com.android.wallpaper.module.WallpaperPersister.SetWallpaperCallback;
+import com.android.wallpaper.module.WallpaperPersister.SetWallpaperHandle;
 import com.android.wallpaper.module.logging.TestUserEventLogger;
 import com.android.wallpaper.network.Requester;
 import com.android.wallpaper.picker.category.wrapper.WallpaperCategoryWrapper;
 import com.android.wallpaper.picker.customization.data.repository.WallpaperRepository;
 import com.android.wallpaper.picker.customization.domain.interactor.WallpaperInteractor;
+import com.android.wallpaper.picker.network.data.NetworkStatusRepository;
+import com.android.wallpaper.picker.network.domain.PrefetchPolicy;
 import com.android.wallpaper.testing.FakeCurrentWallpaperInfoFactory;
 import com.android.wallpaper.testing.FakeDisplaysProvider;
 import com.android.wallpaper.testing.FakeWallpaperClient;
@@ -67,9 +80,13 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
-import org.robolectric.android.util.concurrent.PausedExecutorService;
-import org.robolectric.shadows.ShadowPausedAsyncTask;
+import org.robolectric.annotation.GraphicsMode;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -78,6 +95,8 @@ import java.util.List;
 public class DefaultWallpaperPersisterTest {
     private static final String TAG = "DefaultWallpaperPersisterTest";
     private static final String ACTION_URL = "http://google.com";
+    private static final int STORED_WIDTH = 30;
+    private static final int STORED_HEIGHT = 20;
 
     private Context mContext;
     /** DefaultWallpaperPersister object under test */
@@ -86,8 +105,8 @@ public class DefaultWallpaperPersisterTest {
     private WallpaperManager mManager;
     /** Fake instance of WallpaperPreferences */
     private TestWallpaperPreferences mPrefs;
-    /** Executor to use for AsyncTask */
-    private final PausedExecutorService mPausedExecutor = new PausedExecutorService();
+    /** Scope the wallpaper set pipeline runs in */
+    private TestScope mTestScope;
 
     private TestPackageStatusNotifier mTestPackageStatusNotifier;
 
@@ -103,6 +122,7 @@ public class DefaultWallpaperPersisterTest {
         TestWallpaperStatusChecker statusChecker = new TestWallpaperStatusChecker();
         TestDispatcher testDispatcher = StandardTestDispatcher(null, null);
         TestScope testScope = TestScopeKt.TestScope(testDispatcher);
+        mTestScope = testScope;
         mTestPackageStatusNotifier = new TestPackageStatusNotifier();
         WallpaperInteractor wallpaperInteractor =
                 new WallpaperInteractor(
@@ -122,6 +142,7 @@ public class DefaultWallpaperPersisterTest {
                 new DisplayUtils(mContext, mock(DisplaysProvider.class)),
                 mock(Requester.class),
                 mock(NetworkStatusNotifier.class),
+                new PrefetchPolicy(mock(NetworkStatusRepository.class)),
                 mock(PartnerProvider.class),
                 new FakeWallpaperClient(),
                 wallpaperInteractor,
@@ -134,7 +155,8 @@ public class DefaultWallpaperPersisterTest {
 
 
         mPersister = new DefaultWallpaperPersister(mContext, mManager, mPrefs, changedNotifier,
-                displayUtils, cropper, statusChecker, wallpaperInfoFactory, false);
+                displayUtils, cropper, statusChecker, wallpaperInfoFactory, false,
+                testScope.getBackgroundScope(), testDispatcher);
     }
 
     @Test
@@ -177,6 +199,52 @@ public class DefaultWallpaperPersisterTest {
         assertThat(mPrefs.getLockWallpaperActionUrl()).isEqualTo(ACTION_URL);
     }
 
+    @Test
+    public void setBitmapWallpaper_cancelledBeforeCommit_leavesWallpaperManagerUntouched()
+            throws IOException {
+        TestStaticWallpaperInfo wallpaperInfo = newStaticWallpaperInfo();
+        prepareWallpaperSetFromInfo(wallpaperInfo);
+        TestSetWallpaperCallback callback = new TestSetWallpaperCallback();
+
+        SetWallpaperHandle handle = mPersister.setIndividualWallpaper(wallpaperInfo,
+                wallpaperInfo.getAsset(mContext), null, 1.0f, DEST_BOTH, callback);
+        // Execute pending Asset#decodeBitmap; launches the set wallpaper pipeline
+        shadowMainLooper().idle();
+        handle.cancel();
+        mTestScope.getTestScheduler().advanceUntilIdle();
+
+        verify(mManager, never()).setStream(any(InputStream.class), any(), anyBoolean(),
+                anyInt());
+        verify(mManager, never()).setBitmap(any(Bitmap.class), any(), anyBoolean(), anyInt());
+        assertThat(callback.getStatus()).isEqualTo(SetWallpaperStatus.UNCALLED);
+        assertThat(mPrefs.getHomeWallpaperRemoteId()).isNull();
+    }
+
+    @Test
+    @GraphicsMode(GraphicsMode.Mode.NATIVE)
+    public void setBitmapWallpaper_storedAtOtherSize_hashesStoredWallpaper() throws IOException {
+        TestStaticWallpaperInfo wallpaperInfo = newStaticWallpaperInfo();
+        prepareWallpaperSetFromInfo(wallpaperInfo);
+        // WallpaperManager stored the wallpaper at another size than the bitmap it was given.
+        Bitmap stored = Bitmap.createBitmap(STORED_WIDTH, STORED_HEIGHT, Bitmap.Config.ARGB_8888);
+        stored.eraseColor(Color.BLUE);
+        stored.setPixel(1, 1, Color.RED);
+        File storedFile = new File(mContext.getCacheDir(), "stored_wallpaper.png");
+        try (OutputStream out = new FileOutputStream(storedFile)) {
+            stored.compress(Bitmap.CompressFormat.PNG, 100, out);
+        }
+        doAnswer(invocation -> ParcelFileDescriptor.open(storedFile,
+                ParcelFileDescriptor.MODE_READ_ONLY)).when(mManager).getWallpaperFile(anyInt());
+        TestSetWallpaperCallback callback = new TestSetWallpaperCallback();
+
+        mPersister.setIndividualWallpaper(wallpaperInfo, wallpaperInfo.getAsset(mContext), null,
+                1.0f, DEST_BOTH, callback);
+
+        verifyWallpaperSetSuccess(callback);
+        assertThat(mPrefs.getHomeWallpaperHashCode())
+                .isEqualTo(BitmapUtils.generateHashCode(stored));
+    }
+
      // Creates a basic test wallpaper info instance.
     private static TestStaticWallpaperInfo newStaticWallpaperInfo() {
         List<String> attributions = new ArrayList<>();
@@ -195,22 +263,18 @@ public class DefaultWallpaperPersisterTest {
     // Call this method to prepare for a call to setIndividualWallpaper with non-streamable bitmap.
     private void prepareWallpaperSetFromInfo(TestStaticWallpaperInfo wallpaperInfo) {
         // Retrieve the bitmap to be set by the given WallpaperInfo, and override the return value
-        // from WallpaperManager.getDrawable().
+        // from WallpaperManager.getDrawable(), which is read back if the stored wallpaper differs.
         TestAsset asset = (TestAsset) wallpaperInfo.getAsset(mContext);
-        doReturn(new BitmapDrawable(mContext.getResources(), asset.getBitmap())).when(mManager)
-                .getDrawable();
-        // Override the background executor for AsyncTask to that we can explicitly execute its
-        // tasks - otherwise this will remain in the queue even after main looper idle.
-        ShadowPausedAsyncTask.overrideExecutor(mPausedExecutor);
+        BitmapDrawable drawable = new BitmapDrawable(mContext.getResources(), asset.getBitmap());
+        doReturn(drawable).when(mManager).getDrawable();
+        doReturn(drawable).when(mManager).getDrawable(anyInt());
     }
 
     private void verifyWallpaperSetSuccess(TestSetWallpaperCallback callback) {
-        // Execute pending Asset#decodeBitmap; queues SetWallpaperTask background job
-        shadowMainLooper().idle();
-        // Execute SetWallpaperTask background job; queues onPostExecute on main thread
-        mPausedExecutor.runAll();
-        // Execute SetWallpaperTask#onPostExecute
+        // Execute pending Asset#decodeBitmap; launches the set wallpaper pipeline
         shadowMainLooper().idle();
+        // Run the pipeline's stages and its callback
+        mTestScope.getTestScheduler().advanceUntilIdle();
 
         assertThat(callback.getStatus()).isEqualTo(SetWallpaperStatus.SUCCESS);
     }
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.wallpaper.module
+
+import android.content.Context
+import androidx.test.core.app.ApplicationProvider
+import com.google.common.truth.Truth.assertThat
+import java.io.File
+import java.util.concurrent.Executor
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+
+@RunWith(RobolectricTestRunner::class)
+class PendingStateJournalTest {
+
+    private lateinit var file: File
+    private val directExecutor = Executor { it.run() }
+
+    @Before
+    fun setUp() {
+        file =
+            File(ApplicationProvider.getApplicationContext<Context>().filesDir, "test.journal")
+        file.delete()
+    }
+
+    @Test
+    fun putSync_isReplayedOnReload() {
+        PendingStateJournal(file, directExecutor).putSync(KEY, 1)
+
+        assertThat(PendingStateJournal(file, directExecutor).get(KEY)).isEqualTo(1)
+    }
+
+    @Test
+    fun get_unknownKey_returnsNull() {
+        assertThat(PendingStateJournal(file, directExecutor).get(KEY)).isNull()
+    }
+
+    @Test
+    fun put_lastValuePerKeyWins() {
+        val journal = PendingStateJournal(file, directExecutor)
+        journal.put(KEY, 1)
+        journal.put(OTHER_KEY, 5)
+        journal.put(KEY, 2)
+
+        val reloaded = PendingStateJournal(file, directExecutor)
+
+        assertThat(reloaded.get(KEY)).isEqualTo(2)
+        assertThat(reloaded.get(OTHER_KEY)).isEqualTo(5)
+    }
+
+    @Test
+    fun put_overtakenByPutSync_doesNotReplayOverIt() {
+        val queued = mutableListOf<Runnable>()
+        val journal = PendingStateJournal(file) { queued.add(it) }
+
+        journal.put(KEY, 1)
+        journal.putSync(KEY, 2)
+        while (queued.isNotEmpty()) {
+            queued.removeAt(0).run()
+        }
+
+        assertThat(journal.get(KEY)).isEqualTo(2)
+        assertThat(PendingStateJournal(file, directExecutor).get(KEY)).isEqualTo(2)
+    }
+
+    @Test
+    fun tornTrailingRecord_isDropped() {
+        PendingStateJournal(file, directExecutor).putSync(KEY, 1)
+        file.appendBytes(byteArrayOf(KEY.toByte(), 0, 0, 0))
+
+        val reloaded = PendingStateJournal(file, directExecutor)
+        reloaded.putSync(KEY, 3)
+
+        assertThat(PendingStateJournal(file, directExecutor).get(KEY)).isEqualTo(3)
+    }
+
+    @Test
+    fun manyUpdates_compactFile() {
+        val journal = PendingStateJournal(file, directExecutor)
+        repeat(PendingStateJournal.COMPACT_AFTER_RECORDS) { journal.putSync(KEY, it) }
+        journal.putSync(OTHER_KEY, 7)
+
+        assertThat(file.length()).isLessThan(16L * 9)
+        val reloaded = PendingStateJournal(file, directExecutor)
+        assertThat(reloaded.get(KEY)).isEqualTo(PendingStateJournal.COMPACT_AFTER_RECORDS - 1)
+        assertThat(reloaded.get(OTHER_KEY)).isEqualTo(7)
+    }
+
+    companion object {
+        private const val KEY = 1
+        private const val OTHER_KEY = 2
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.wallpaper.module
+
+import android.app.WallpaperColors
+import android.content.Context
+import android.graphics.Bitmap
+import android.graphics.Color
+import android.graphics.Point
+import android.graphics.Rect
+import androidx.test.core.app.ApplicationProvider
+import com.google.common.truth.Truth.assertThat
+import java.io.File
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+
+@RunWith(RobolectricTestRunner::class)
+class RotationCacheTest {
+
+    private lateinit var directory: File
+    private lateinit var cache: RotationCache
+
+    @Before
+    fun setUp() {
+        directory =
+            File(ApplicationProvider.getApplicationContext<Context>().cacheDir, "rotation_cache")
+        directory.deleteRecursively()
+        cache = RotationCache(directory)
+    }
+
+    @Test
+    fun put_thenGet_returnsCropHintsAndColors() {
+        val cropHints =
+            mapOf(Point(1080, 2400) to Rect(0, 0, 540, 1200), Point(2400, 1080) to Rect(1, 2, 3, 4))
+        val colors = WallpaperColors(Color.valueOf(Color.RED), Color.valueOf(Color.BLUE), null, 0)
+
+        assertThat(cache.put(KEY, createBitmap(), cropHints, colors)).isTrue()
+        val entry = cache.get(KEY)
+
+        assertThat(entry).isNotNull()
+        assertThat(entry!!.file.exists()).isTrue()
+        assertThat(entry.cropHints).isEqualTo(cropHints)
+        assertThat(entry.colors!!.primaryColor.toArgb()).isEqualTo(Color.RED)
+        assertThat(entry.colors!!.secondaryColor!!.toArgb()).isEqualTo(Color.BLUE)
+        assertThat(entry.colors!!.tertiaryColor).isNull()
+    }
+
+    @Test
+    fun get_unknownKey_returnsNull() {
+        assertThat(cache.get(KEY)).isNull()
+        assertThat(cache.contains(KEY)).isFalse()
+    }
+
+    @Test
+    fun retainOnly_removesOtherEntries() {
+        cache.put(KEY, createBitmap(), emptyMap(), null)
+        cache.put(OTHER_KEY, createBitmap(), emptyMap(), null)
+
+        cache.retainOnly(listOf(OTHER_KEY))
+
+        assertThat(cache.contains(KEY)).isFalse()
+        assertThat(cache.contains(OTHER_KEY)).isTrue()
+    }
+
+    @Test
+    fun remove_dropsEntry() {
+        cache.put(KEY, createBitmap(), emptyMap(), null)
+
+        cache.remove(KEY)
+
+        assertThat(cache.get(KEY)).isNull()
+    }
+
+    private fun createBitmap() = Bitmap.createBitmap(4, 4, Bitmap.Config.ARGB_8888)
+
+    companion object {
+        private const val KEY = "https://example.com/wallpaper/1"
+        private const val OTHER_KEY = "https://example.com/wallpaper/2"
+    }
+}
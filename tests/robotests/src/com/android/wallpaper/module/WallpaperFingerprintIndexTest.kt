@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.wallpaper.module
+
+import android.content.Context
+import android.content.pm.ApplicationInfo
+import android.content.pm.PackageInfo
+import android.graphics.Bitmap
+import androidx.test.core.app.ApplicationProvider
+import com.android.wallpaper.asset.Asset
+import com.android.wallpaper.asset.BitmapUtils
+import com.android.wallpaper.asset.FileAsset
+import com.android.wallpaper.model.WallpaperCategory
+import com.android.wallpaper.testing.FakeDefaultWallpaperCategoryClient
+import com.android.wallpaper.testing.TestPartnerProvider
+import com.android.wallpaper.testing.TestStaticWallpaperInfo
+import com.google.common.truth.Truth.assertThat
+import java.io.File
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.test.UnconfinedTestDispatcher
+import kotlinx.coroutines.test.runTest
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.Shadows.shadowOf
+import org.robolectric.annotation.GraphicsMode
+
+@OptIn(ExperimentalCoroutinesApi::class)
+@RunWith(RobolectricTestRunner::class)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+class WallpaperFingerprintIndexTest {
+
+    private val context: Context = ApplicationProvider.getApplicationContext()
+    private val categoryClient = FakeDefaultWallpaperCategoryClient()
+    private val partnerProvider = TestPartnerProvider()
+    private val red = createBitmap(0xFFFF0000.toInt())
+    private val blue = createBitmap(0xFF0000FF.toInt())
+
+    @Before
+    fun setUp() {
+        File(context.noBackupFilesDir, "wallpaper_fingerprints.json").delete()
+        installPartnerPackage(versionCode = 1)
+        partnerProvider.setPackageName(PARTNER_PACKAGE)
+        categoryClient.setOnDeviceCategory(
+            WallpaperCategory(
+                "On device",
+                "on_device",
+                listOf(wallpaperInfo("red", red), wallpaperInfo("blue", blue)),
+                /* priority= */ 0,
+            )
+        )
+    }
+
+    @Test
+    fun lookup_matchingHashCode_returnsMetadata() = runTest {
+        val entry = createIndex().lookup(BitmapUtils.generateHashCode(blue))
+
+        assertThat(entry).isNotNull()
+        assertThat(entry!!.wallpaperId).isEqualTo("blue")
+        assertThat(entry.attributions).containsExactly("blue title", null).inOrder()
+        assertThat(entry.actionUrl).isEqualTo("https://example.com/blue")
+        assertThat(entry.collectionId).isEqualTo("collection")
+    }
+
+    @Test
+    fun lookup_unknownHashCode_returnsNull() = runTest {
+        val unknown = createBitmap(0xFF00FF00.toInt())
+
+        assertThat(createIndex().lookup(BitmapUtils.generateHashCode(unknown))).isNull()
+    }
+
+    @Test
+    fun lookup_afterRestart_usesPersistedIndex() = runTest {
+        createIndex().lookup(0)
+        categoryClient.setOnDeviceCategory(null)
+
+        val entry = createIndex().lookup(BitmapUtils.generateHashCode(red))
+
+        assertThat(entry?.wallpaperId).isEqualTo("red")
+    }
+
+    @Test
+    fun lookup_afterPartnerUpdate_rebuildsIndex() = runTest {
+        createIndex().lookup(0)
+        categoryClient.setOnDeviceCategory(null)
+        installPartnerPackage(versionCode = 2)
+
+        assertThat(createIndex().lookup(BitmapUtils.generateHashCode(red))).isNull()
+    }
+
+    private fun createIndex() =
+        WallpaperFingerprintIndex(
+            context,
+            categoryClient,
+            partnerProvider,
+            UnconfinedTestDispatcher(),
+        )
+
+    private fun installPartnerPackage(versionCode: Long) {
+        shadowOf(context.packageManager)
+            .installPackage(
+                PackageInfo().apply {
+                    packageName = PARTNER_PACKAGE
+                    longVersionCode = versionCode
+                    applicationInfo = ApplicationInfo().apply { packageName = PARTNER_PACKAGE }
+                }
+            )
+    }
+
+    private fun wallpaperInfo(id: String, bitmap: Bitmap): TestStaticWallpaperInfo {
+        val file = File(context.cacheDir, "$id.png")
+        file.outputStream().use { bitmap.compress(Bitmap.CompressFormat.PNG, 100, it) }
+        return object : TestStaticWallpaperInfo(bitmap.getPixel(0, 0)) {
+                override fun getAsset(context: Context): Asset = FileAsset(file)
+            }
+            .apply {
+                setWallpaperId(id)
+                setAttributions(listOf("$id title", null))
+                setActionUrl("https://example.com/$id")
+                setCollectionId("collection")
+            }
+    }
+
+    private fun createBitmap(color: Int): Bitmap =
+        Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888).apply { eraseColor(color) }
+
+    companion object {
+        private const val PARTNER_PACKAGE = "com.example.partner"
+        private const val WIDTH = 64
+        private const val HEIGHT = 48
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.wallpaper.monitor
+
+import com.google.common.truth.Truth.assertThat
+import java.io.PrintWriter
+import java.io.StringWriter
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+
+@RunWith(RobolectricTestRunner::class)
+class DiagnosticsWriterTest {
+
+    @Test
+    fun value_writesSectionKeyValueLine() {
+        val output = StringWriter()
+        val writer = DiagnosticsWriter(PrintWriter(output))
+
+        writer.value("bitmap_cache", "size_bytes", 1024)
+        writer.flush()
+
+        assertThat(output.toString().lines()).contains("bitmap_cache.size_bytes=1024")
+    }
+
+    @Test
+    fun value_replacesWhitespaceAndSeparators() {
+        val output = StringWriter()
+        val writer = DiagnosticsWriter(PrintWriter(output))
+
+        writer.value("live connections", "engine=0", "a b\nc")
+        writer.flush()
+
+        assertThat(output.toString().lines()).contains("live_connections.engine_0=a_b_c")
+    }
+
+    @Test
+    fun defaultPerformanceMonitor_dumpsPercentilesCountersAndGauges() {
+        val monitor = DefaultPerformanceMonitor()
+        monitor.recordLatency("decode", 2_000_000)
+        monitor.incrementCounter("hits", 3)
+        monitor.setGauge("size", 7)
+        val output = StringWriter()
+        val writer = DiagnosticsWriter(PrintWriter(output))
+
+        monitor.dump(writer)
+        writer.flush()
+
+        val lines = output.toString().lines()
+        assertThat(lines)
+            .containsAtLeast("latency.decode.count=1", "counter.hits=3", "gauge.size=7")
+        assertThat(lines.filter { it.startsWith("latency.decode.p") }).hasSize(3)
+    }
+}
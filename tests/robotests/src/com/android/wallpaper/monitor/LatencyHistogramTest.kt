@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.wallpaper.monitor
+
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+
+@RunWith(RobolectricTestRunner::class)
+class LatencyHistogramTest {
+
+    @Test
+    fun bucketIndex_roundTripsThroughBounds() {
+        for (index in 0 until LatencyHistogram.BUCKET_COUNT) {
+            val lower = LatencyHistogram.bucketLowerBound(index)
+            val upper = LatencyHistogram.bucketUpperBound(index)
+            assertThat(LatencyHistogram.bucketIndex(lower)).isEqualTo(index)
+            assertThat(LatencyHistogram.bucketIndex(upper)).isEqualTo(index)
+        }
+    }
+
+    @Test
+    fun bucketIndex_clampsLargeValuesToLastBucket() {
+        assertThat(LatencyHistogram.bucketIndex(Long.MAX_VALUE))
+            .isEqualTo(LatencyHistogram.BUCKET_COUNT - 1)
+    }
+
+    @Test
+    fun snapshot_reportsCountMeanAndMax() {
+        val histogram = LatencyHistogram()
+        histogram.recordNanos(1_000_000)
+        histogram.recordNanos(3_000_000)
+
+        val snapshot = histogram.snapshot()
+
+        assertThat(snapshot.count).isEqualTo(2)
+        assertThat(snapshot.meanMicros).isEqualTo(2_000)
+        assertThat(snapshot.maxMicros).isEqualTo(3_000)
+    }
+
+    @Test
+    fun percentileMicros_isWithinBucketPrecision() {
+        val histogram = LatencyHistogram()
+        for (millis in 1..100) {
+            histogram.recordNanos(millis * 1_000_000L)
+        }
+
+        val snapshot = histogram.snapshot()
+
+        val p50 = snapshot.percentileMicros(50.0)
+        assertThat(p50).isAtLeast(50_000)
+        assertThat(p50).isAtMost(50_000 * 5 / 4)
+        assertThat(snapshot.percentileMicros(100.0)).isEqualTo(100_000)
+    }
+
+    @Test
+    fun percentileMicros_emptyHistogram_returnsZero() {
+        assertThat(LatencyHistogram().snapshot().percentileMicros(99.0)).isEqualTo(0)
+    }
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.wallpaper.network
+
+import android.content.Context
+import android.net.Uri
+import androidx.test.core.app.ApplicationProvider
+import com.android.wallpaper.network.WallpaperDownloadManager.PRIORITY_PREFETCH
+import com.android.wallpaper.network.WallpaperDownloadManager.PRIORITY_USER_VISIBLE
+import com.google.common.truth.Truth.assertThat
+import com.sun.net.httpserver.HttpExchange
+import com.sun.net.httpserver.HttpServer
+import java.io.File
+import java.io.IOException
+import java.net.HttpURLConnection
+import java.net.InetAddress
+import java.net.InetSocketAddress
+import java.security.MessageDigest
+import java.util.Collections
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Future
+import java.util.concurrent.TimeUnit
+import org.junit.After
+import org.junit.Assert.assertThrows
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+
+/** Tests [WallpaperDownloadManager] against a local HTTP server. */
+@RunWith(RobolectricTestRunner::class)
+class WallpaperDownloadManagerTest {
+
+    private lateinit var server: HttpServer
+    private lateinit var directory: File
+    private val requests: MutableList<Request> = Collections.synchronizedList(mutableListOf())
+    @Volatile private var handler: (HttpExchange) -> Unit = { it.respond(CONTENT) }
+    @Volatile private var connectionError: RuntimeException? = null
+
+    @Before
+    fun setUp() {
+        directory =
+            File(ApplicationProvider.getApplicationContext<Context>().cacheDir, "downloads")
+        directory.deleteRecursively()
+        server = HttpServer.create(InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0)
+        server.createContext("/") { exchange ->
+            requests.add(
+                Request(
+                    exchange.requestURI.path,
+                    exchange.requestHeaders.getFirst("Range"),
+                    exchange.requestHeaders.getFirst("If-Range"),
+                )
+            )
+            try {
+                handler(exchange)
+            } finally {
+                exchange.close()
+            }
+        }
+        server.start()
+    }
+
+    @After
+    fun tearDown() {
+        server.stop(0)
+    }
+
+    @Test
+    fun download_storesContentUnderItsHash() {
+        val file = createManager().download(uri("/a"), PRIORITY_USER_VISIBLE, null).await()
+
+        assertThat(file.readBytes()).isEqualTo(CONTENT)
+        assertThat(file.name).isEqualTo(sha256(CONTENT))
+    }
+
+    @Test
+    fun download_alreadyStored_doesNotHitNetwork() {
+        val manager = createManager()
+        manager.download(uri("/a"), PRIORITY_USER_VISIBLE, null).await()
+
+        val file = manager.download(uri("/a"), PRIORITY_USER_VISIBLE, null).await()
+
+        assertThat(file.readBytes()).isEqualTo(CONTENT)
+        assertThat(requests).hasSize(1)
+    }
+
+    @Test
+    fun download_sameUrlConcurrently_sharesOneDownload() {
+        val release = CountDownLatch(1)
+        handler = {
+            release.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)
+            it.respond(CONTENT)
+        }
+        val manager = createManager()
+
+        val first = manager.download(uri("/a"), PRIORITY_PREFETCH, null)
+        val second = manager.download(uri("/a"), PRIORITY_USER_VISIBLE, null)
+        release.countDown()
+
+        assertThat(second).isSameInstanceAs(first)
+        assertThat(first.await().readBytes()).isEqualTo(CONTENT)
+        assertThat(requests).hasSize(1)
+    }
+
+    @Test
+    fun download_droppedConnection_resumesWithRangeRequest() {
+        val half = CONTENT.size / 2
+        handler = { exchange ->
+            val range = exchange.requestHeaders.getFirst("Range")
+            if (range == null) {
+                exchange.responseHeaders.add("ETag", ETAG)
+                exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, CONTENT.size.toLong())
+                exchange.responseBody.write(CONTENT, 0, half)
+                exchange.responseBody.flush()
+                // Closing with bytes missing drops the connection.
+                try {
+                    exchange.responseBody.close()
+                } catch (e: IOException) {}
+            } else {
+                exchange.responseHeaders.add("ETag", ETAG)
+                exchange.responseHeaders.add(
+                    "Content-Range",
+                    "bytes $half-${CONTENT.size - 1}/${CONTENT.size}",
+                )
+                exchange.sendResponseHeaders(
+                    HttpURLConnection.HTTP_PARTIAL,
+                    (CONTENT.size - half).toLong(),
+                )
+                exchange.responseBody.write(CONTENT, half, CONTENT.size - half)
+            }
+        }
+
+        val file = createManager().download(uri("/a"), PRIORITY_USER_VISIBLE, null).await()
+
+        assertThat(file.readBytes()).isEqualTo(CONTENT)
+        assertThat(requests).hasSize(2)
+        assertThat(requests[1].range).isEqualTo("bytes=$half-")
+        assertThat(requests[1].ifRange).isEqualTo(ETAG)
+    }
+
+    @Test
+    fun download_checksumMismatch_fails() {
+        val result = createManager().download(uri("/a"), PRIORITY_USER_VISIBLE, "00")
+
+        val exception = assertThrows(ExecutionException::class.java) { result.await() }
+
+        assertThat(exception.cause)
+            .isInstanceOf(DownloadStore.ChecksumMismatchException::class.java)
+        assertThat(requests).hasSize(1)
+    }
+
+    @Test
+    fun download_matchingChecksum_succeeds() {
+        val file =
+            createManager().download(uri("/a"), PRIORITY_USER_VISIBLE, sha256(CONTENT)).await()
+
+        assertThat(file.readBytes()).isEqualTo(CONTENT)
+    }
+
+    @Test
+    fun download_queued_startsByPriority() {
+        val started = CountDownLatch(1)
+        val release = CountDownLatch(1)
+        handler = { exchange ->
+            if (exchange.requestURI.path == "/blocking") {
+                started.countDown()
+                release.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)
+            }
+            exchange.respond(exchange.requestURI.path.toByteArray())
+        }
+        val manager = createManager(maxConcurrentDownloads = 1)
+
+        val blocking = manager.download(uri("/blocking"), PRIORITY_USER_VISIBLE, null)
+        started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)
+        val prefetch = manager.download(uri("/prefetch"), PRIORITY_PREFETCH, null)
+        val visible = manager.download(uri("/visible"), PRIORITY_USER_VISIBLE, null)
+        release.countDown()
+        listOf(blocking, prefetch, visible).forEach { it.await() }
+
+        assertThat(requests.map { it.path })
+            .containsExactly("/blocking", "/visible", "/prefetch")
+            .inOrder()
+    }
+
+    @Test
+    fun download_notAllowedByNetworkPolicy_failsWithoutHittingNetwork() {
+        val manager =
+            createManager(networkPolicy = { priority -> priority == PRIORITY_USER_VISIBLE })
+
+        val prefetch = manager.download(uri("/prefetch"), PRIORITY_PREFETCH, null)
+        val visible = manager.download(uri("/visible"), PRIORITY_USER_VISIBLE, null).await()
+
+        val exception = assertThrows(ExecutionException::class.java) { prefetch.await() }
+        assertThat(exception.cause)
+            .isInstanceOf(WallpaperDownloadManager.DownloadNotAllowedException::class.java)
+        assertThat(visible.readBytes()).isEqualTo(CONTENT)
+        assertThat(requests.map { it.path }).containsExactly("/visible")
+    }
+
+    @Test
+    fun download_overStoreLimit_keepsRecentlyHandedOutContent() {
+        handler = { it.respond(it.requestURI.path.toByteArray()) }
+        val manager = createManager(maxStoreBytes = 1)
+
+        val first = manager.download(uri("/first"), PRIORITY_USER_VISIBLE, null).await()
+        manager.download(uri("/second"), PRIORITY_USER_VISIBLE, null).await()
+
+        assertThat(first.readBytes()).isEqualTo("/first".toByteArray())
+    }
+
+    @Test
+    fun download_overStoreLimit_trimsLeastRecentlyUsedContent() {
+        handler = { it.respond(it.requestURI.path.toByteArray()) }
+        val manager = createManager(maxStoreBytes = 1)
+        val first = manager.download(uri("/first"), PRIORITY_USER_VISIBLE, null).await()
+        first.setLastModified(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1))
+
+        val second = manager.download(uri("/second"), PRIORITY_USER_VISIBLE, null).await()
+
+        assertThat(first.exists()).isFalse()
+        assertThat(second.readBytes()).isEqualTo("/second".toByteArray())
+    }
+
+    @Test
+    fun download_unexpectedError_failsAndLetsUrlBeDownloadedAgain() {
+        val manager = createManager()
+        connectionError = IllegalStateException("broken")
+
+        val failed = manager.download(uri("/a"), PRIORITY_USER_VISIBLE, null)
+
+        val exception = assertThrows(ExecutionException::class.java) { failed.await() }
+        assertThat(exception.cause).isInstanceOf(IllegalStateException::class.java)
+        connectionError = null
+        val retried = manager.download(uri("/a"), PRIORITY_USER_VISIBLE, null)
+        assertThat(retried).isNotSameInstanceAs(failed)
+        assertThat(retried.await().readBytes()).isEqualTo(CONTENT)
+    }
+
+    private fun createManager(
+        maxConcurrentDownloads: Int = 3,
+        networkPolicy: WallpaperDownloadManager.NetworkPolicy =
+            WallpaperDownloadManager.NetworkPolicy.ALLOW_ALL,
+        maxStoreBytes: Long = Long.MAX_VALUE,
+    ) =
+        WallpaperDownloadManager(directory, maxStoreBytes, maxConcurrentDownloads, networkPolicy) {
+            connectionError?.let { error -> throw error }
+            it.openConnection() as HttpURLConnection
+        }
+
+    private fun uri(path: String): Uri =
+        Uri.parse("http://${server.address.hostString}:${server.address.port}$path")
+
+    private fun HttpExchange.respond(body: ByteArray) {
+        sendResponseHeaders(HttpURLConnection.HTTP_OK, body.size.toLong())
+        responseBody.write(body)
+    }
+
+    private fun <T> Future<T>.await(): T = get(TIMEOUT_SECONDS, TimeUnit.SECONDS)
+
+    private fun sha256(bytes: ByteArray): String =
+        MessageDigest.getInstance("SHA-256").digest(bytes).joinToString("") { "%02x".format(it) }
+
+    private data class Request(val path: String, val range: String?, val ifRange: String?)
+
+    companion object {
+        private const val TIMEOUT_SECONDS = 5L
+        private const val ETAG = "\"v1\""
+        private val CONTENT = ByteArray(256 * 1024) { (it % 251).toByte() }
+    }
+}
@@ -77,7 +77,8 @@ class DefaultWallpaperCategoryClientImplTest {
                 context,
                 partnerProvider,
                 wallpaperXMLParser,
-                liveWallpapersClient
+                liveWallpapersClient,
+                testDispatcher,
             )
         InjectorProvider.setInjector(testInjector)
         val resources = context.resources
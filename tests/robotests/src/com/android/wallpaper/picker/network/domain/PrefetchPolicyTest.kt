@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.wallpaper.picker.network.domain
+
+import com.android.wallpaper.picker.network.data.NetworkStatusRepository
+import com.android.wallpaper.picker.network.domain.PrefetchPolicy.FetchType
+import com.android.wallpaper.picker.network.domain.PrefetchPolicy.Mode
+import com.android.wallpaper.picker.network.shared.model.NetworkConditionsModel
+import com.google.common.truth.Truth.assertThat
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.map
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+
+@RunWith(RobolectricTestRunner::class)
+class PrefetchPolicyTest {
+
+    private val repository = FakeNetworkStatusRepository()
+    private val policy = PrefetchPolicy(repository)
+
+    @Test
+    fun unmeteredFastLink_allowsPrefetch() {
+        repository.conditions.value = UNMETERED
+
+        assertThat(policy.getMode()).isEqualTo(Mode.AGGRESSIVE)
+        assertThat(policy.isAllowed(FetchType.PREFETCH)).isTrue()
+        assertThat(policy.isAllowed(FetchType.USER_REQUESTED)).isTrue()
+    }
+
+    @Test
+    fun unknownBandwidth_isNotTreatedAsConstrained() {
+        repository.conditions.value =
+            UNMETERED.copy(downstreamBandwidthKbps = NetworkConditionsModel.UNKNOWN_BANDWIDTH)
+
+        assertThat(policy.getMode()).isEqualTo(Mode.AGGRESSIVE)
+    }
+
+    @Test
+    fun meteredLink_allowsOnlyUserRequested() {
+        repository.conditions.value = UNMETERED.copy(isMetered = true)
+
+        assertThat(policy.isAllowed(FetchType.PREFETCH)).isFalse()
+        assertThat(policy.isAllowed(FetchType.USER_REQUESTED)).isTrue()
+    }
+
+    @Test
+    fun dataSaverOn_allowsOnlyUserRequested() {
+        repository.conditions.value = UNMETERED.copy(isDataSaverOn = true)
+
+        assertThat(policy.getMode()).isEqualTo(Mode.USER_REQUESTED_ONLY)
+    }
+
+    @Test
+    fun captivePortal_allowsOnlyUserRequested() {
+        repository.conditions.value = UNMETERED.copy(isValidated = false)
+
+        assertThat(policy.getMode()).isEqualTo(Mode.USER_REQUESTED_ONLY)
+    }
+
+    @Test
+    fun lowBandwidth_allowsOnlyUserRequested() {
+        repository.conditions.value =
+            UNMETERED.copy(downstreamBandwidthKbps = PrefetchPolicy.LOW_BANDWIDTH_KBPS - 1)
+
+        assertThat(policy.getMode()).isEqualTo(Mode.USER_REQUESTED_ONLY)
+    }
+
+    @Test
+    fun disconnected_allowsNothing() {
+        repository.conditions.value = NetworkConditionsModel.DISCONNECTED
+
+        assertThat(policy.isAllowed(FetchType.PREFETCH)).isFalse()
+        assertThat(policy.isAllowed(FetchType.USER_REQUESTED)).isFalse()
+    }
+
+    @Test
+    fun conditionsChange_isPickedUpOnNextCheck() {
+        repository.conditions.value = UNMETERED
+        assertThat(policy.isAllowed(FetchType.PREFETCH)).isTrue()
+
+        repository.conditions.value = UNMETERED.copy(isMetered = true)
+
+        assertThat(policy.isAllowed(FetchType.PREFETCH)).isFalse()
+    }
+
+    private class FakeNetworkStatusRepository : NetworkStatusRepository {
+        val conditions = MutableStateFlow(NetworkConditionsModel.DISCONNECTED)
+
+        override fun networkStateFlow(): Flow<Boolean> = conditions.map { it.isConnected }
+
+        override fun networkConditionsFlow(): Flow<NetworkConditionsModel> = conditions
+
+        override fun getNetworkConditions(): NetworkConditionsModel = conditions.value
+    }
+
+    companion object {
+        private val UNMETERED =
+            NetworkConditionsModel(
+                isConnected = true,
+                isValidated = true,
+                isMetered = false,
+                isDataSaverOn = false,
+                downstreamBandwidthKbps = 20_000,
+            )
+    }
+}
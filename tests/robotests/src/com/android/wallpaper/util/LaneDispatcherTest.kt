@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.wallpaper.util
+
+import com.google.common.truth.Truth.assertThat
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.withContext
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+
+@RunWith(RobolectricTestRunner::class)
+class LaneDispatcherTest {
+
+    @Test
+    fun dispatch_runsAtMostParallelismTasksAtOnce() = runBlocking {
+        val lane = LaneDispatcher("test", 2)
+        val release = CountDownLatch(1)
+        val started = CountDownLatch(2)
+        val concurrent = AtomicInteger()
+        val maxConcurrent = AtomicInteger()
+
+        val jobs =
+            List(6) {
+                launch(lane) {
+                    maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max)
+                    started.countDown()
+                    release.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                    concurrent.decrementAndGet()
+                }
+            }
+        withContext(Dispatchers.IO) { started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS) }
+
+        val stats = lane.stats()
+        assertThat(stats.running).isEqualTo(2)
+        assertThat(stats.queueDepth).isEqualTo(4)
+
+        release.countDown()
+        jobs.forEach { it.join() }
+        assertThat(maxConcurrent.get()).isEqualTo(2)
+    }
+
+    @Test
+    fun stats_countsCompletedTasks() = runBlocking {
+        val lane = LaneDispatcher("test", 3)
+
+        List(10) { async(lane) { Thread.sleep(1) } }.awaitAll()
+
+        val stats = lane.stats()
+        assertThat(stats.completedTasks).isEqualTo(10)
+        assertThat(stats.queueDepth).isEqualTo(0)
+        assertThat(stats.running).isEqualTo(0)
+        assertThat(stats.maxRunTimeNanos).isAtLeast(TimeUnit.MILLISECONDS.toNanos(1))
+        assertThat(stats.averageRunTimeNanos).isAtMost(stats.maxRunTimeNanos)
+    }
+
+    @Test
+    fun dispatch_runsOnThreadsNamedAfterTheLane() = runBlocking {
+        val lane = LaneDispatcher("decode", 1)
+
+        val threadName = withContext(lane) { Thread.currentThread().name }
+
+        assertThat(threadName).startsWith("wp-decode-")
+    }
+
+    private companion object {
+        const val TIMEOUT_SECONDS = 5L
+    }
+}
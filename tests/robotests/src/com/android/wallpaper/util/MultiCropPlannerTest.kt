@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.wallpaper.util
+
+import android.graphics.Bitmap
+import android.graphics.Point
+import android.graphics.Rect
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+
+@RunWith(RobolectricTestRunner::class)
+class MultiCropPlannerTest {
+
+    @Test
+    fun plan_coversUnionAtHighestScale() {
+        val cropHints =
+            mapOf(
+                Point(1000, 2000) to Rect(1000, 0, 2000, 2000),
+                Point(2000, 1000) to Rect(0, 500, 4000, 2500),
+            )
+
+        val plan = MultiCropPlanner.plan(Point(6000, 3000), cropHints)
+
+        assertThat(plan).isNotNull()
+        assertThat(plan!!.sourceRect).isEqualTo(Rect(0, 0, 4000, 2500))
+        // The first display needs 1 buffer pixel per source pixel, the second only 1/2.
+        assertThat(plan.scale).isEqualTo(1f)
+        assertThat(plan.bufferWidth).isEqualTo(4000)
+        assertThat(plan.bufferHeight).isEqualTo(2500)
+        assertThat(plan.isSmallerThan(Point(6000, 3000))).isTrue()
+    }
+
+    @Test
+    fun plan_downscalesWhenNoDisplayNeedsFullResolution() {
+        val cropHints =
+            mapOf(
+                Point(500, 1000) to Rect(0, 0, 2000, 4000),
+                Point(1000, 500) to Rect(0, 1000, 4000, 3000),
+            )
+
+        val plan = MultiCropPlanner.plan(Point(4000, 4000), cropHints)!!
+
+        assertThat(plan.scale).isEqualTo(0.25f)
+        assertThat(plan.bufferWidth).isEqualTo(1000)
+        assertThat(plan.bufferHeight).isEqualTo(1000)
+    }
+
+    @Test
+    fun plan_withoutCrops_returnsNull() {
+        assertThat(MultiCropPlanner.plan(Point(100, 100), emptyMap())).isNull()
+    }
+
+    @Test
+    fun mapCrops_translatesAndScalesIntoBuffer() {
+        val plan = MultiCropPlanner.Plan(Rect(1000, 0, 3000, 2000), 0.5f, 1000, 1000)
+        val cropHints = mapOf(Point(500, 1000) to Rect(1000, 0, 2000, 2000))
+
+        val mapped = plan.mapCrops(cropHints, 1000, 1000)
+
+        assertThat(mapped[Point(500, 1000)]).isEqualTo(Rect(0, 0, 500, 1000))
+    }
+
+    @Test
+    fun produce_cropsAndScalesSource() {
+        val plan = MultiCropPlanner.Plan(Rect(100, 0, 300, 200), 0.5f, 100, 100)
+        val source = Bitmap.createBitmap(400, 200, Bitmap.Config.ARGB_8888)
+
+        val buffer = MultiCropPlanner.produce(plan, source, Point(400, 200))
+
+        assertThat(buffer).isNotNull()
+        assertThat(buffer!!.width).isEqualTo(100)
+        assertThat(buffer.height).isEqualTo(100)
+    }
+
+    @Test
+    fun produce_fromLowerResolutionSource_mapsSourceRect() {
+        val plan = MultiCropPlanner.Plan(Rect(200, 0, 600, 400), 0.25f, 100, 100)
+        val source = Bitmap.createBitmap(400, 200, Bitmap.Config.ARGB_8888)
+
+        val buffer = MultiCropPlanner.produce(plan, source, Point(800, 400))
+
+        assertThat(buffer!!.width).isEqualTo(100)
+        assertThat(buffer.height).isEqualTo(100)
+    }
+
+    @Test
+    fun produce_overCap_returnsNull() {
+        val plan = MultiCropPlanner.Plan(Rect(0, 0, 200, 200), 1f, 200, 200)
+        val source = Bitmap.createBitmap(200, 200, Bitmap.Config.ARGB_8888)
+
+        assertThat(MultiCropPlanner.produce(plan, source, Point(200, 200), maxBytes = 1024))
+            .isNull()
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.wallpaper.util.wallpaperconnection
+
+import android.app.Activity
+import android.graphics.Point
+import android.view.View
+import android.widget.FrameLayout
+import androidx.test.core.app.ApplicationProvider
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.Robolectric
+import org.robolectric.RobolectricTestRunner
+
+@RunWith(RobolectricTestRunner::class)
+class EnginePoolTest {
+
+    private val detachedView = View(ApplicationProvider.getApplicationContext())
+
+    @Test
+    fun add_overMaxEngines_evictsLeastRecentlyUsedIdleEngine() {
+        val pool = EnginePool(maxEngines = 2, memoryBudgetBytes = Long.MAX_VALUE)
+        pool.add("a:1080x2400", "a", PHONE)
+        pool.add("b:1080x2400", "b", PHONE)
+        pool.use("b:1080x2400", detachedView)
+        pool.use("a:1080x2400", detachedView)
+
+        val evicted = pool.add("c:1080x2400", "c", PHONE)
+
+        assertThat(evicted).containsExactly("b:1080x2400")
+        assertThat(pool.size).isEqualTo(2)
+        assertThat(pool.evictionCount).isEqualTo(1)
+    }
+
+    @Test
+    fun add_overMemoryBudget_evictsUntilWithinBudget() {
+        val engineBytes = PHONE.x.toLong() * PHONE.y * 4 * 3
+        val pool = EnginePool(maxEngines = 10, memoryBudgetBytes = engineBytes * 2)
+        pool.add("a", "a", PHONE)
+        pool.use("a", detachedView)
+        pool.add("b", "b", PHONE)
+        pool.use("b", detachedView)
+
+        val evicted = pool.add("c", "c", PHONE)
+
+        assertThat(evicted).containsExactly("a")
+        assertThat(pool.estimatedBytes).isAtMost(engineBytes * 2)
+    }
+
+    @Test
+    fun add_engineNotUsedYet_isNotEvicted() {
+        val pool = EnginePool(maxEngines = 1, memoryBudgetBytes = Long.MAX_VALUE)
+        pool.add("a", "a", PHONE)
+
+        val evicted = pool.add("b", "b", PHONE)
+
+        assertThat(evicted).isEmpty()
+        assertThat(pool.size).isEqualTo(2)
+
+        pool.use("a", detachedView)
+
+        assertThat(pool.add("c", "c", PHONE)).containsExactly("a")
+    }
+
+    @Test
+    fun add_engineOnScreen_isNotEvicted() {
+        val activity = Robolectric.buildActivity(Activity::class.java).setup().get()
+        val attachedView = View(activity)
+        activity.setContentView(FrameLayout(activity).apply { addView(attachedView) })
+        val pool = EnginePool(maxEngines = 1, memoryBudgetBytes = Long.MAX_VALUE)
+        pool.add("a", "a", PHONE)
+        pool.use("a", attachedView)
+
+        val evicted = pool.add("b", "b", PHONE)
+
+        assertThat(evicted).isEmpty()
+        assertThat(pool.size).isEqualTo(2)
+    }
+
+    @Test
+    fun findReusable_sameAspectRatio_returnsPooledEngine() {
+        val pool = EnginePool(maxEngines = 4, memoryBudgetBytes = Long.MAX_VALUE)
+        pool.add("a:1080x2400", "a", PHONE)
+
+        assertThat(pool.findReusable("a", Point(720, 1600))).isEqualTo("a:1080x2400")
+        assertThat(pool.displaySizeOf("a:1080x2400")).isEqualTo(PHONE)
+    }
+
+    @Test
+    fun findReusable_differentAspectRatioOrWallpaper_returnsNull() {
+        val pool = EnginePool(maxEngines = 4, memoryBudgetBytes = Long.MAX_VALUE)
+        pool.add("a:1080x2400", "a", PHONE)
+
+        assertThat(pool.findReusable("a", Point(2208, 1840))).isNull()
+        assertThat(pool.findReusable("b", PHONE)).isNull()
+    }
+
+    companion object {
+        private val PHONE = Point(1080, 2400)
+    }
+}
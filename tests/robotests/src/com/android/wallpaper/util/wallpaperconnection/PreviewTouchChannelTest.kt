@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.wallpaper.util.wallpaperconnection
+
+import android.view.MotionEvent
+import com.google.common.truth.Truth.assertThat
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.test.StandardTestDispatcher
+import kotlinx.coroutines.test.TestScope
+import kotlinx.coroutines.test.advanceUntilIdle
+import org.junit.After
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+
+@OptIn(ExperimentalCoroutinesApi::class)
+@RunWith(RobolectricTestRunner::class)
+class PreviewTouchChannelTest {
+
+    private val testDispatcher = StandardTestDispatcher()
+    private val testScope = TestScope(testDispatcher)
+    private val dispatched = mutableListOf<Pair<Int, Float>>()
+    private val channel =
+        PreviewTouchChannel(testScope, testDispatcher) { event ->
+            dispatched.add(event.actionMasked to event.x)
+        }
+
+    @After
+    fun tearDown() {
+        channel.close()
+    }
+
+    @Test
+    fun send_movesWithinFrame_onlyDeliversLatestMove() {
+        channel.send(event(MotionEvent.ACTION_DOWN, 0f))
+        channel.send(event(MotionEvent.ACTION_MOVE, 1f))
+        channel.send(event(MotionEvent.ACTION_MOVE, 2f))
+        channel.send(event(MotionEvent.ACTION_MOVE, 3f))
+        channel.flushPendingMove()
+        testScope.advanceUntilIdle()
+
+        assertThat(dispatched)
+            .containsExactly(MotionEvent.ACTION_DOWN to 0f, MotionEvent.ACTION_MOVE to 3f)
+            .inOrder()
+    }
+
+    @Test
+    fun send_upBeforeFrame_deliversPendingMoveFirst() {
+        channel.send(event(MotionEvent.ACTION_DOWN, 0f))
+        channel.send(event(MotionEvent.ACTION_MOVE, 1f))
+        channel.send(event(MotionEvent.ACTION_UP, 2f))
+        testScope.advanceUntilIdle()
+
+        assertThat(dispatched)
+            .containsExactly(
+                MotionEvent.ACTION_DOWN to 0f,
+                MotionEvent.ACTION_MOVE to 1f,
+                MotionEvent.ACTION_UP to 2f,
+            )
+            .inOrder()
+    }
+
+    @Test
+    fun send_binderBehindByFrames_replacesQueuedMoves() {
+        channel.send(event(MotionEvent.ACTION_DOWN, 0f))
+        channel.send(event(MotionEvent.ACTION_MOVE, 1f))
+        channel.flushPendingMove()
+        channel.send(event(MotionEvent.ACTION_MOVE, 2f))
+        channel.flushPendingMove()
+        channel.send(event(MotionEvent.ACTION_UP, 3f))
+        testScope.advanceUntilIdle()
+
+        assertThat(dispatched)
+            .containsExactly(
+                MotionEvent.ACTION_DOWN to 0f,
+                MotionEvent.ACTION_MOVE to 2f,
+                MotionEvent.ACTION_UP to 3f,
+            )
+            .inOrder()
+    }
+
+    @Test
+    fun close_dropsUndeliveredEvents() {
+        channel.send(event(MotionEvent.ACTION_DOWN, 0f))
+        channel.close()
+        testScope.advanceUntilIdle()
+
+        assertThat(dispatched).isEmpty()
+    }
+
+    private fun event(action: Int, x: Float): MotionEvent =
+        MotionEvent.obtain(0L, 0L, action, x, 0f, 0)
+}